@@ -6,22 +6,25 @@ import java.util.Collections;
 import java.util.Iterator;
 import java.util.List;
 
-import android.util.Log;
-
 import com.mym.landlords.card.Airplane;
-import com.mym.landlords.card.Bomb;
 import com.mym.landlords.card.BombType;
 import com.mym.landlords.card.Card;
+import com.mym.landlords.card.CardSet;
 import com.mym.landlords.card.CardSuit;
 import com.mym.landlords.card.CardType;
 import com.mym.landlords.card.DoubleStraight;
+import com.mym.landlords.card.MoveCode;
+import com.mym.landlords.card.MoveGenerator;
 import com.mym.landlords.card.NonBombType;
 import com.mym.landlords.card.Pair;
+import com.mym.landlords.card.RankHistogram;
 import com.mym.landlords.card.Rocket;
 import com.mym.landlords.card.Single;
 import com.mym.landlords.card.Straight;
 import com.mym.landlords.card.Three;
+import com.mym.util.GameLog;
 import com.mym.util.LangUtils;
+import com.mym.util.SplitMix64;
 
 /**
  * 处理游戏的AI逻辑。
@@ -33,10 +36,67 @@ import com.mym.util.LangUtils;
 final class AI {
 	
 	private final String LOG_TAG/* = "AI"*/;
+	private static final int ANALYSIS_CACHE_CAPACITY = 4096;
+	/** 默认的残局张数：三家剩余的总张数不超过该值时使用残局求解器。 */
+	static final int DEFAULT_ENDGAME_THRESHOLD = 15;
+	//残局求解器没有得出必胜走法时的返回值
+	private static final long ENDGAME_UNSOLVED = -1L;
+	//残局求解时抽取的牌局数目，同一走法在每一种牌局中都必胜才会被采用
+	private static final int ENDGAME_SAMPLES = 3;
+	//使用评估器叫牌时，叫3分、2分和1分所需的获胜概率
+	private static final double WIN_RATE_THREE = 0.72;
+	private static final double WIN_RATE_TWO = 0.6;
+	private static final double WIN_RATE_ONE = 0.5;
+	//枚举底牌叫牌时，叫3分、2分和1分所需的期望强度（控制牌数目减去手数）
+	private static final double STRENGTH_THREE = -5.0;
+	private static final double STRENGTH_TWO = -6.0;
+	private static final double STRENGTH_ONE = -6.5;
 	/**
 	 * 保存关联的AI Player对象。
 	 */
 	private final Player bindPlayer;
+	/**
+	 * 拆牌跟牌时使用的出牌生成器。
+	 */
+	private final MoveGenerator moveGenerator = new MoveGenerator();
+	/**
+	 * 组合手牌时使用的拆分器。
+	 */
+	private final HandDecomposer decomposer = new HandDecomposer();
+	/**
+	 * 残局求解器，以及使用它的剩余总张数上限，0表示不使用。
+	 */
+	private final EndgameSolver endgameSolver = new EndgameSolver();
+	private int endgameThreshold = DEFAULT_ENDGAME_THRESHOLD;
+	/**
+	 * 为残局求解抽取牌局时使用的随机数生成器和手牌。
+	 */
+	private final SplitMix64 random = new SplitMix64(System.nanoTime());
+	private final long[] endgameHands = new long[3];
+	/**
+	 * 出牌策略，为null时使用基本的出牌逻辑；以及每步出牌的时间预算，0表示不搜索。
+	 */
+	private PlayStrategy playStrategy;
+	private long moveBudgetNanos = Difficulty.Normal.getBudgetMillis() * 1000000L;
+	/**
+	 * 叫牌评估器，为null时按大牌计分叫牌。
+	 */
+	private BiddingEvaluator biddingEvaluator;
+	/**
+	 * 离线生成的手牌强度表和底牌枚举器，依次在没有设置叫牌评估器时使用；都为null时按大牌计分叫牌。
+	 */
+	private HandStrengthTable strengthTable;
+	private KittyEnumerator kittyEnumerator;
+	/**
+	 * 对两个对手手牌的信念状态，只在使用搜索策略时更新；以及观察到的最后一手牌和出牌者座位。
+	 */
+	private final BeliefState belief = new BeliefState();
+	private long observedMove = MoveCode.NONE;
+	private int observedSeat = -1;
+	/**
+	 * 所有AI共享的手牌组合结果缓存。
+	 */
+	static final HandAnalysisCache analysisCache = new HandAnalysisCache(ANALYSIS_CACHE_CAPACITY);
 	
 	//package access
 	AI(Player player){
@@ -79,7 +139,7 @@ final class AI {
 		}
 		//TODO add bomb count;
 		
-		Log.d(LOG_TAG, "evaluateScore="+evaluateScore);
+		GameLog.d(LOG_TAG, "evaluateScore="+evaluateScore);
 		
 		if ( evaluateScore > 8){
 			return Game.BASIC_SCORE_THREE;
@@ -95,6 +155,51 @@ final class AI {
 		}
 	}
 	
+	/**
+	 * 按照当地主的获胜概率叫牌，概率来自 {@link BiddingEvaluator}或 {@link HandStrengthTable}。
+	 * @return 返回0~3之间的某个数值。
+	 */
+	private int scoreOfWinRate(double winRate){
+		GameLog.d(LOG_TAG, "winRate="+winRate);
+		if (winRate >= WIN_RATE_THREE){
+			return Game.BASIC_SCORE_THREE;
+		}
+		else if (winRate >= WIN_RATE_TWO){
+			return Game.BASIC_SCORE_TWO;
+		}
+		else if (winRate >= WIN_RATE_ONE){
+			return Game.BASIC_SCORE_ONE;
+		}
+		else{
+			return Game.BASIC_SCORE_NONE;
+		}
+	}
+	
+	/**
+	 * 按照枚举所有底牌得到的期望强度叫牌，参见 {@link KittyEnumerator}。
+	 * @return 返回0~3之间的某个数值。
+	 */
+	private int callLandlordByKitties(ArrayList<Card> list){
+		KittyEnumerator.Estimate estimate = kittyEnumerator.evaluate(CardSet.of(list));
+		GameLog.d(LOG_TAG, "kitty estimate="+estimate);
+		if (estimate==null){
+			return Game.BASIC_SCORE_NONE;
+		}
+		double strength = estimate.getExpectedStrength();
+		if (strength >= STRENGTH_THREE){
+			return Game.BASIC_SCORE_THREE;
+		}
+		else if (strength >= STRENGTH_TWO){
+			return Game.BASIC_SCORE_TWO;
+		}
+		else if (strength >= STRENGTH_ONE){
+			return Game.BASIC_SCORE_ONE;
+		}
+		else{
+			return Game.BASIC_SCORE_NONE;
+		}
+	}
+	
 	/**
 	 * 返回叫牌信息。
 	 * @param cards 手牌列表。
@@ -102,11 +207,107 @@ final class AI {
 	 * @return 返回一个比minScore更大的分数，或者 是{@link Game#BASIC_BASIC_SCORE_NONE}，表示不叫。
 	 */
 	protected final int callLandlord(ArrayList<Card> cards, int minScore) {
-		int alalysis = callLandlord(cards);
+		int alalysis;
+		double tableWinRate = Double.NaN;
+		if (biddingEvaluator==null && strengthTable!=null){
+			long histogram = RankHistogram.of(CardSet.of(cards));
+			tableWinRate = strengthTable.lookup(histogram, decomposer.countPlays(histogram));
+			GameLog.d(LOG_TAG, "table winRate="+tableWinRate);
+		}
+		if (biddingEvaluator!=null){
+			alalysis = scoreOfWinRate(biddingEvaluator.evaluate(CardSet.of(cards)));
+		}
+		else if (!Double.isNaN(tableWinRate)){
+			alalysis = scoreOfWinRate(tableWinRate);
+		}
+		else if (kittyEnumerator!=null){
+			alalysis = callLandlordByKitties(cards);
+		}
+		else{
+			alalysis = callLandlord(cards);
+		}
 		return alalysis > minScore ? alalysis : Game.BASIC_SCORE_NONE;
 	}
 	
+	/**
+	 * 设置使用残局求解器的剩余总张数上限。
+	 * 残局求解器需要完整的牌局，AI不读取另外两家的手牌，而是按公开的信息抽取牌局，参见 {@link #solveEndgame(CardType)}。
+	 * @param threshold 三家剩余的总张数不超过该值时使用残局求解器，0表示不使用。
+	 */
+	void setEndgameThreshold(int threshold){
+		if (threshold < 0){
+			throw new IllegalArgumentException("invalid threshold:"+threshold);
+		}
+		endgameThreshold = threshold;
+	}
+	
+	/**
+	 * 设置叫牌评估器。
+	 * @param evaluator 叫牌评估器，为null表示按大牌计分叫牌。
+	 */
+	void setBiddingEvaluator(BiddingEvaluator evaluator){
+		biddingEvaluator = evaluator;
+	}
+	
+	/**
+	 * 设置手牌强度表，没有设置叫牌评估器时使用，表中没有的手牌再使用底牌枚举器。
+	 * @param table 手牌强度表，为null表示不使用。
+	 */
+	void setHandStrengthTable(HandStrengthTable table){
+		strengthTable = table;
+	}
+	
+	/**
+	 * 设置底牌枚举器，没有设置叫牌评估器时使用。
+	 * @param enumerator 底牌枚举器，为null表示不使用。
+	 */
+	void setKittyEnumerator(KittyEnumerator enumerator){
+		kittyEnumerator = enumerator;
+	}
+	
+	/**
+	 * 设置出牌策略。
+	 * @param strategy 出牌策略，为null表示使用基本的出牌逻辑。
+	 */
+	void setPlayStrategy(PlayStrategy strategy){
+		playStrategy = strategy;
+	}
+	
+	/**
+	 * 设置每步出牌的时间预算，包括残局求解和出牌策略的搜索。
+	 * @param budgetMillis 时间预算（毫秒），0表示不搜索，只使用基本的出牌逻辑。
+	 */
+	void setMoveBudgetMillis(long budgetMillis){
+		if (budgetMillis < 0){
+			throw new IllegalArgumentException("invalid budget:"+budgetMillis);
+		}
+		moveBudgetNanos = budgetMillis * 1000000L;
+	}
+	
+	/**
+	 * 取消出牌策略正在进行和之后的所有搜索，之后只使用基本的出牌逻辑。
+	 */
+	void cancel(){
+		PlayStrategy strategy = playStrategy;
+		if (strategy!=null){
+			strategy.cancel();
+		}
+	}
+	
 	protected CardType followCards(CardType lastType){
+		long deadline = System.nanoTime() + moveBudgetNanos;
+		long decideMove = ENDGAME_UNSOLVED;
+		if (moveBudgetNanos > 0){
+			//残局时如果能求出必胜的走法，则直接按其出牌
+			decideMove = solveEndgame(lastType);
+			if (decideMove == ENDGAME_UNSOLVED){
+				decideMove = decideBySearch(lastType, deadline);
+			}
+		}
+		if (decideMove != ENDGAME_UNSOLVED){
+			return decideMove==MoveCode.NONE ? null
+					: MoveCode.toCardType(decideMove, bindPlayer.getHandCards());
+		}
 		CardType decideType = null;
 		ArrayList<CardType> cardTypes = bindPlayer.cardsInfo.cardTypes;
 		if (lastType==null){
@@ -142,11 +343,202 @@ final class AI {
 						break;
 					}
 				}
+				//飞机可能需要拆牌跟
+				if (decideType==null && needToForce && lastType instanceof Airplane){
+					decideType = forceFollow(lastType);
+				}
 			}
 		}
 		return decideType;
 	}
 	
+	/**
+	 * 使用残局求解器求解。座位0为自己，1为下家，2为上家。
+	 * <p>求解器需要完整的牌局，而AI只能使用公开的信息，因此先把看不到的牌分给另外两家（有信念状态时按其粒子抽取，
+	 * 否则均匀随机），共抽取 {@link #ENDGAME_SAMPLES}种牌局分别求解，只有同一走法在每一种牌局中都必胜时才采用。</p>
+	 * @return 采用的出牌编码（{@link MoveCode#NONE}表示不出）；不是残局，或者某一种牌局必败、超出预算、
+	 *         最佳走法与其他牌局不同时返回 {@link #ENDGAME_UNSOLVED}。
+	 */
+	private long solveEndgame(CardType lastType){
+		if (bindPlayer==null || endgameThreshold==0){
+			return ENDGAME_UNSOLVED;
+		}
+		long[] known = new long[3];
+		int[] sizes = new int[3];
+		long unseen = collectPublicInfo(known, sizes);
+		if (sizes[0] + sizes[1] + sizes[2] > endgameThreshold){
+			return ENDGAME_UNSOLVED;
+		}
+		int lastMover = lastMoverSeat(lastType);
+		if (lastMover < 0){
+			return ENDGAME_UNSOLVED;
+		}
+		long before = lastType==null ? MoveCode.NONE : lastType.getMoveCode();
+		BeliefState particles = belief.matches(unseen, sizes) ? belief : null;
+		if (particles==null){
+			applyTrackerLimits(known, sizes, unseen);
+		}
+		long move = ENDGAME_UNSOLVED;
+		for (int i = 0; i < ENDGAME_SAMPLES; i++){
+			Determinizer.sample(known, sizes, unseen, particles, random, endgameHands);
+			int result = endgameSolver.solve(endgameHands, landlordSeat(), 0, before, lastMover);
+			GameLog.d(LOG_TAG, "endgame sample="+i+", result="+result
+					+", nodes="+endgameSolver.getNodeCount());
+			if (result!=EndgameSolver.RESULT_WIN || (i > 0 && endgameSolver.getBestMove()!=move)){
+				return ENDGAME_UNSOLVED;
+			}
+			move = endgameSolver.getBestMove();
+		}
+		return move;
+	}
+	
+	/**
+	 * 观察一次出牌或不出，增量更新信念状态。必须在出牌者的手牌改变之前调用。
+	 * @param player 出牌的玩家，可以是自己。
+	 * @param type 打出的牌型，为null表示不出。
+	 */
+	void observe(Player player, CardType type){
+		if (playStrategy==null || bindPlayer==null){
+			return;
+		}
+		int seat = player==bindPlayer ? 0 : (player==bindPlayer.getNextPlayer() ? 1 : 2);
+		if (!belief.isInitialized()){
+			initBelief();
+		}
+		if (type!=null){
+			belief.onPlay(seat, type.getCardSet());
+			observedMove = type.getMoveCode();
+			observedSeat = seat;
+		}
+		//只有对手的牌不出才说明可能压不过，队友之间常常有意让牌
+		else if (observedSeat >= 0 && observedSeat != seat
+				&& isLandlordSeat(seat) != isLandlordSeat(observedSeat)){
+			belief.onPass(seat, observedMove);
+		}
+	}
+	
+	/**
+	 * 丢弃信念状态，在重新发牌时调用。
+	 */
+	void resetBelief(){
+		belief.reset();
+		observedMove = MoveCode.NONE;
+		observedSeat = -1;
+	}
+	
+	//根据当前的公开信息生成信念状态的粒子
+	private void initBelief(){
+		long[] known = new long[3];
+		int[] sizes = new int[3];
+		belief.init(known, sizes, collectPublicInfo(known, sizes));
+	}
+	
+	/**
+	 * 收集公开的信息：各家确定持有的牌和剩余张数。
+	 * @return 返回自己看不到的所有牌。
+	 */
+	private long collectPublicInfo(long[] known, int[] sizes){
+		Player[] players = {bindPlayer, bindPlayer.getNextPlayer(), bindPlayer.getPriorPlayer()};
+		long unseen = CardSet.minus(CardSet.FULL_PACK, bindPlayer.getHandCardSet());
+		for (int seat = 0; seat < players.length; seat++){
+			Player player = players[seat];
+			sizes[seat] = CardSet.size(player.getHandCardSet());
+			unseen = CardSet.minus(unseen, player.getPlayedCardSet());
+			known[seat] = seat==0 ? player.getHandCardSet()
+					: CardSet.minus(player.getAwardCardSet(), player.getPlayedCardSet());
+		}
+		return unseen;
+	}
+	
+	/**
+	 * 使用记牌器的推断：某个对手不可能持有的点数中看不到的牌，都作为另一个对手确定持有的牌。
+	 * <p>推断并不总是成立（例如对手有大牌却有意不出），信念状态已经通过 {@link BeliefState#onPass(int, long)}
+	 * 以权重的形式使用了同样的信息，因此只在没有可用的信念状态、需要均匀随机分配看不到的牌时使用。
+	 * 推断与剩余张数矛盾时不使用。</p>
+	 * @param known 由 {@link #collectPublicInfo(long[], int[])}得到的确定持有的牌，推断出的牌被加入其中。
+	 */
+	private void applyTrackerLimits(long[] known, int[] sizes, long unseen){
+		CardTracker tracker = bindPlayer.getCardTracker();
+		if (tracker==null){
+			return;
+		}
+		Player[] players = {bindPlayer, bindPlayer.getNextPlayer(), bindPlayer.getPriorPlayer()};
+		for (int seat = 1; seat < players.length; seat++){
+			int other = players.length - seat;
+			int values = ~RankHistogram.valuesWithCount(tracker.getCeilingHistogram(players[seat]), 1)
+					& ((1 << RankHistogram.VALUE_KINDS) - 1);
+			long absent = CardSet.EMPTY;
+			for (; values != 0; values &= values - 1){
+				int value = Card.CARD_VALUE_3 + Integer.numberOfTrailingZeros(values);
+				long mask = CardSet.valueMask(value);
+				//确定持有该点数的牌，说明推断不成立
+				if (CardSet.intersect(known[seat], mask) == CardSet.EMPTY){
+					absent |= mask;
+				}
+			}
+			long deduced = known[other] | CardSet.intersect(unseen, absent);
+			if (CardSet.size(deduced) <= sizes[other]){
+				known[other] = deduced;
+			}
+		}
+	}
+	
+	/**
+	 * 使用出牌策略出牌。只使用公开的信息：各家打出过的牌、剩余张数，以及地主尚未打出的底牌。
+	 * @param deadline 截止时间，以 {@link System#nanoTime()}为准。
+	 * @return 返回出牌编码（{@link MoveCode#NONE}表示不出）；没有设置策略或策略没有做出决定时返回 {@link #ENDGAME_UNSOLVED}。
+	 */
+	private long decideBySearch(CardType lastType, long deadline){
+		if (playStrategy==null || bindPlayer==null){
+			return ENDGAME_UNSOLVED;
+		}
+		int lastMover = lastMoverSeat(lastType);
+		if (lastMover < 0){
+			return ENDGAME_UNSOLVED;
+		}
+		long[] known = new long[3];
+		int[] sizes = new int[3];
+		long unseen = collectPublicInfo(known, sizes);
+		if (!belief.isInitialized()){
+			belief.init(known, sizes, unseen);
+		}
+		if (!belief.matches(unseen, sizes)){
+			applyTrackerLimits(known, sizes, unseen);
+		}
+		long before = lastType==null ? MoveCode.NONE : lastType.getMoveCode();
+		long move = playStrategy.decide(known, sizes, unseen, landlordSeat(), before, lastMover,
+				belief, deadline);
+		GameLog.d(LOG_TAG, "strategy move="+move+", overtime="
+				+Math.max(0, System.nanoTime()-deadline)/1000+"us");
+		return move==PlayStrategy.UNDECIDED ? ENDGAME_UNSOLVED : move;
+	}
+	
+	/**
+	 * 获得最后一手牌的出牌者座位（0为自己，1为下家，2为上家）。
+	 * @return 自由出牌时返回0；无法确定时返回-1。
+	 */
+	private int lastMoverSeat(CardType lastType){
+		if (lastType==null){
+			return 0;
+		}
+		if (bindPlayer.getPriorPlayer().getLastCards()==lastType){
+			return 2;
+		}
+		if (bindPlayer.getNextPlayer().getLastCards()==lastType){
+			return 1;
+		}
+		return -1;
+	}
+	
+	//地主的座位（0为自己，1为下家，2为上家）
+	private int landlordSeat(){
+		return bindPlayer.isLandlord() ? 0 : (bindPlayer.getNextPlayer().isLandlord() ? 1 : 2);
+	}
+	
+	private boolean isLandlordSeat(int seat){
+		return seat==landlordSeat();
+	}
+	
 	private CardType findBombType(PlayerCardsInfo info, NonBombType followType){
 		ArrayList<CardType> cardTypes = info.cardTypes;
 		if (info.bombCount > 0) {
@@ -181,16 +573,14 @@ final class AI {
 			return null;
 		}
 		//拆牌跟
-		ArrayList<Straight> list = StraightAnalyst.forceGetStraights(
-				followType, bindPlayer.getHandCards());
-		return list==null || list.isEmpty()? null : list.get(0);
+		return forceFollow(followType);
 	}
 	
 	/**
 	 * 处理连对的跟牌策略。
 	 */
 	private CardType followDoubleStraights(DoubleStraight followType, boolean needToForce){
-		Log.d(LOG_TAG, "followDoubleStraights:"+needToForce);
+		GameLog.d(LOG_TAG, "followDoubleStraights:"+needToForce);
 		PlayerCardsInfo info = bindPlayer.cardsInfo;
 		ArrayList<CardType> cardTypes = info.cardTypes;
 		// 如果有现成的单牌且比原来的大，则返回
@@ -208,11 +598,33 @@ final class AI {
 		if (!needToForce){
 			return null;
 		}
-		Log.d(LOG_TAG, "force :"+bindPlayer.getHandCards());
+		GameLog.d(LOG_TAG, "force :"+bindPlayer.getHandCards());
 		//拆牌跟
-		ArrayList<DoubleStraight> list = StraightAnalyst.forceGetDoubleStraights(
-				followType, bindPlayer.getHandCards());
-		return list==null || list.isEmpty()? null : list.get(0);
+		return forceFollow(followType);
+	}
+	
+	/**
+	 * 从全部手牌中拆出与要跟的牌牌型相同的最小的牌。
+	 * @return 如果没有同类型的牌可出则返回null（不考虑炸弹）。
+	 */
+	private CardType forceFollow(CardType followType){
+		long follow = followType.getMoveCode();
+		//不带牌的顺子、连对和飞机直接查表
+		if (MoveCode.kickerValues(follow)==0){
+			long move = StraightAnalyst.forceGetSmallestChain(follow,
+					RankHistogram.of(bindPlayer.getHandCardSet()));
+			if (move != MoveCode.NONE){
+				return MoveCode.toCardType(move, bindPlayer.getHandCards());
+			}
+		}
+		moveGenerator.reset(bindPlayer.getHandCardSet(), follow);
+		if (moveGenerator.hasNext()){
+			long move = moveGenerator.next();
+			if (!MoveCode.isBomb(move)){
+				return MoveCode.toCardType(move, bindPlayer.getHandCards());
+			}
+		}
+		return null;
 	}
 	
 	/**
@@ -361,21 +773,21 @@ final class AI {
 		boolean hasRightAttachment = false;
 		if (followType.getAttachType() instanceof Single) {
 			// This is a hack. we just create a "least" card and follow it.
-			attachType = followSingle(new Single(new Card(CardSuit.Spade,
+			attachType = followSingle(new Single(Card.valueOf(CardSuit.Spade,
 					Card.CARD_VALUE_3)), needToForce);
 			if ( (attachType!=null) && (attachType instanceof Single)) {
 				hasRightAttachment = true;
 			}
 		} else if (followType.getAttachType() instanceof Pair) {
 			attachType = followPair(
-					new Pair(LangUtils.createList(new Card(CardSuit.Spade,
-							Card.CARD_VALUE_3), new Card(CardSuit.Spade,
+					new Pair(LangUtils.createList(Card.valueOf(CardSuit.Spade,
+							Card.CARD_VALUE_3), Card.valueOf(CardSuit.Heart,
 							Card.CARD_VALUE_3))), needToForce);
 			if ( (attachType!=null) && (attachType instanceof Pair)) {
 				hasRightAttachment = true;
 			}
 		}
-		Log.v(LOG_TAG, "follow:"+followType+", hasAttach:"+hasRightAttachment+","+attachType);
+		GameLog.v(LOG_TAG, "follow:"+followType+", hasAttach:"+hasRightAttachment+","+attachType);
 		if (hasRightAttachment) {
 			for (CardType type : cardTypes) {
 				if (type instanceof Three && type.compareTo(followType)>0) {
@@ -432,13 +844,13 @@ final class AI {
 	 */
 	protected ArrayList<Card> takeoutCards(int[] targetPattern, ArrayList<Card> list){
 		if (targetPattern==null || list==null){
-			Log.w(LOG_TAG, "takecards return null due to null param.");
+			GameLog.w(LOG_TAG, "takecards return null due to null param.");
 			return null;
 		}
 		int patternLength = targetPattern.length;
 		int cardLength = list.size();
 		if (patternLength > cardLength){
-			Log.d(LOG_TAG, "takecards return null due to no enough length.");
+			GameLog.d(LOG_TAG, "takecards return null due to no enough length.");
 			return null;
 		}
 		ArrayList<Card> targetList = new ArrayList<>();
@@ -463,15 +875,16 @@ final class AI {
 		internalTempList.clear();
 		if (targetList.size() != targetPattern.length){
 			targetList.clear();
-			Log.v(LOG_TAG, "takecards: pattern="+Arrays.toString(targetPattern)+ ", not found");
+			GameLog.v(LOG_TAG, "takecards: pattern="+Arrays.toString(targetPattern)+ ", not found");
 			return null;
 		}
-		Log.d(LOG_TAG, "takecards: pattern="+Arrays.toString(targetPattern)+ ", res="+targetList.toString());
+		GameLog.d(LOG_TAG, "takecards: pattern="+Arrays.toString(targetPattern)+ ", res="+targetList.toString());
 		return targetList;
 	}
 	
 	/**
-	 * 将手牌按照一般原则进行组合。
+	 * 将手牌组合成出完所需手数最少的若干牌型（参见 {@link HandDecomposer}）。
+	 * 组合结果只与点数有关，因此会按点数缓存在 {@link #analysisCache}中。
 	 * @param list 手牌列表
 	 * @return 返回封装后的 PlayerCardsInfo 对象，其中的 cardTypes字段保证不为null且已进行过排序。
 	 */
@@ -479,218 +892,77 @@ final class AI {
 		if (list==null || list.size()==0){
 			return null;
 		}
-		Log.d(LOG_TAG, "cards before make: "+list.toString());
-		//复制一个列表以便内部操作，避免直接操纵玩家手牌。
-		PlayerCardsInfo playerInfo = new PlayerCardsInfo();
-		ArrayList<Card> cloneList= new ArrayList<>(list);
-		Collections.sort(cloneList, Card.COMPARATOR_WITH_SUIT);
-		//判断王炸是否存在。
-		ArrayList<Card> rocket = takeoutCards(new int[] {
-				Card.CARD_VALUE_JOKER_S, Card.CARD_VALUE_JOKER_B }, cloneList);
-		if (rocket!=null){
-			playerInfo.cardTypes.add(new Rocket(rocket));
-			cloneList.removeAll(rocket);
-		}
-		//找出所有的炸弹。通常情况下，炸弹也是不会进行拆分处理的。
-		//注意：这里使用lastNotFoundValue跳过相同点数的数值，避免无谓的循环。
-		ArrayList<Bomb> bombs = new ArrayList<>();
-		for (int i = 0, lastNotFoundValue=0, lastFoundValue=0; i < cloneList.size(); i++) {
-			int cardValue = cloneList.get(i).getValue();
-			if (lastNotFoundValue==cardValue || lastFoundValue==cardValue){
-				continue ;
-			}
-			int[] bombPattern = new int[] { cardValue, cardValue, cardValue,
-					cardValue };
-			ArrayList<Card> bombCards = takeoutCards(bombPattern, cloneList);
-			if (bombCards != null) {
-				lastFoundValue = cardValue;
-				bombs.add(new Bomb(bombCards));
-			}
-			else{
-				lastNotFoundValue = cardValue;
-			}
-		}
-		for (Bomb bomb: bombs){
-			cloneList.removeAll(bomb.getCardList());
-			playerInfo.cardTypes.add(bomb);
-		}
-		//找出所有的顺子
-		List<StraightNumbers> numbers = StraightAnalyst.getAllStraights(cloneList);
-		ArrayList<Straight> straights = new ArrayList<>();
-		for (StraightNumbers num : numbers){
-			ArrayList<Card> tempList = takeoutCards(num.asIntegerArray(), cloneList);
-			if (tempList != null){
-				Straight tempStr = new Straight(tempList);
-				straights.add(tempStr);
-			}
-		}
-		for (Straight str:straights){
-			playerInfo.cardTypes.add(str);
-			cloneList.removeAll(str.getCardList());
-		}
-		
-		//找出所有的三条
-		ArrayList<Three> threesWithNoAirplane = new ArrayList<>();
-		for (int i = 0, lastNotFoundValue=0, lastFoundValue=0; i < cloneList.size(); i++) {
-			int cardValue = cloneList.get(i).getValue();
-			if (lastNotFoundValue==cardValue || lastFoundValue==cardValue){
-				continue ;
-			}
-			int[] threePattern = new int[] { cardValue, cardValue, cardValue};
-			ArrayList<Card> threes = takeoutCards(threePattern, cloneList);
-			if (threes != null) {
-				lastFoundValue = cardValue;
-				threesWithNoAirplane.add(new Three(threes));
-			}
-			else{
-				lastNotFoundValue = cardValue;
-			}
-		}
-		for (Three thr: threesWithNoAirplane){
-			cloneList.removeAll(thr.getCardList());
-		}
-		//优化为飞机后再加入三条列表
-		if (threesWithNoAirplane.size()>2){
-			ArrayList<Airplane> planes = makeAirplaneUsingThree(threesWithNoAirplane);
-			for (Airplane air:planes){
-				playerInfo.cardTypes.add(air);
-				threesWithNoAirplane.removeAll(air.getBodyThrees());
-			}
-		}
-		playerInfo.cardTypes.addAll(threesWithNoAirplane);
-		
-		//找出所有的对子
-		ArrayList<Pair> pairsSeparately = new ArrayList<>();
-		for (int i = 0, lastFoundValue=0; i < cloneList.size(); i++) {
-			int cardValue = cloneList.get(i).getValue();
-			if (cardValue==lastFoundValue){
-				continue;
-			}
-			int[] pairPattern = new int[] { cardValue, cardValue};
-			ArrayList<Card> pairs = takeoutCards(pairPattern, cloneList);
-			if (pairs != null) {
-				lastFoundValue = cardValue;
-				pairsSeparately.add(new Pair(pairs));
-			}
-		}
-		for (Pair pair: pairsSeparately){
-			cloneList.removeAll(pair.getCardList());
+		long hand = CardSet.of(list);
+		long histogram = RankHistogram.of(hand);
+		long[] moves = analysisCache.get(histogram);
+		if (moves != null){
+			return restoreCardsInfo(moves, hand);
 		}
-		if (pairsSeparately.size()>2){
-			ArrayList<DoubleStraight> dbs = makeDoubleStraightUsingPairs(pairsSeparately);
-			for (DoubleStraight db: dbs){
-				playerInfo.cardTypes.add(db);
-			}
-		}
-		playerInfo.cardTypes.addAll(pairsSeparately);
-		
-		//剩下的都是单牌
-		Iterator<Card> singleIterator = cloneList.iterator();
-		while (singleIterator.hasNext()){
-			playerInfo.cardTypes.add(new Single(singleIterator.next()));
-			singleIterator.remove();
+		GameLog.d(LOG_TAG, "cards before make: "+list.toString());
+		moves = decomposer.decompose(histogram);
+		analysisCache.put(histogram, moves);
+		return restoreCardsInfo(moves, hand);
+	}
+	
+	//从缓存的出牌编码还原组合结果，每个牌型都从剩余的手牌中挑选卡牌。
+	private PlayerCardsInfo restoreCardsInfo(long[] moves, long hand){
+		PlayerCardsInfo playerInfo = new PlayerCardsInfo();
+		long rest = hand;
+		for (long move : moves) {
+			long cards = MoveCode.toCardSet(move, rest);
+			rest = CardSet.minus(rest, cards);
+			playerInfo.cardTypes.add(CardType.createObjectFromCards(CardSet.toList(cards)));
 		}
-		Collections.sort(playerInfo.cardTypes, CardType.SORT_COMPARATOR);
 		statPlayerCardsInfo(playerInfo);
 		return playerInfo;
 	}
 	
 	/**
-	 * 使用三条组装飞机。注意：如果能组成飞机，则所有组成飞机的三条都将被移除。
+	 * 打出一手牌后增量更新手牌分析结果，避免对全部手牌重新执行 {@link #makeCards(List)}。
+	 * <p>完全包含在这手牌中的牌型直接移除；被拆开的牌型所剩下的卡牌，连同与之点数相同的其他牌型，
+	 * 重新组合后再加入结果。通常打出的正是分析结果中的某个牌型，此时不需要重新组合。</p>
+	 * @param info 需要更新的分析结果。
+	 * @param played 以 {@link CardSet}表示的打出的卡牌。
 	 */
-	private ArrayList<Airplane> makeAirplaneUsingThree(ArrayList<Three> threes){
-		int lastValue=0;
-		ArrayList<Three> tempAirThreeRef = new ArrayList<>();
-		ArrayList<Airplane> tempAirplanes = new ArrayList<>();
-		ArrayList<Three> toBeRemoved = new ArrayList<>();
-		for (Three tr : threes) {
-			int thisValue = tr.getBodyList().get(0).getValue();
-			//飞机不会包含2以上的数字
-			if (thisValue>=Card.CARD_VALUE_2){
-				break;
-			}
-			// 两个或更多三条可以组成飞机
-			if (lastValue != 0 && (thisValue - lastValue != 1) && tempAirThreeRef.size() >= 2) {
-				ArrayList<Card> cards = new ArrayList<>();
-				for (Three airThr : tempAirThreeRef) {
-					toBeRemoved.add(airThr);
-					cards.addAll(airThr.getCardList());
-				}
-				tempAirplanes.add(new Airplane(cards));
-				lastValue = 0;
-				tempAirThreeRef.clear();
-			}
-			//否则，如果不连续则清空后加入，连续则直接加入
-			else{
-				if (lastValue!=0 && thisValue-lastValue!=1){
-					tempAirThreeRef.clear();
+	protected void updateCardsInfo(PlayerCardsInfo info, long played){
+		ArrayList<CardType> cardTypes = info.cardTypes;
+		//出牌时临时组合的带牌需要还原，带的牌本身仍然是独立的牌型。
+		//刚打出的三条已经成为桌面上的牌，只能移除，不能修改
+		for (int i = cardTypes.size()-1; i >= 0; i--) {
+			CardType type = cardTypes.get(i);
+			if (type instanceof Three && ((Three) type).getAttachType()!=null){
+				if (CardSet.containsAll(played, type.getCardSet())){
+					cardTypes.remove(i);
 				}
-				lastValue = thisValue;
-				tempAirThreeRef.add(tr);
-			}
-		}
-		//循环结束进行最后的判断。由于过程中不连续的已经被剔除，所以这里一定是连续的。
-		if (tempAirThreeRef.size() >= 2) {
-			ArrayList<Card> cards = new ArrayList<>();
-			for (Three airThr : tempAirThreeRef) {
-				toBeRemoved.add(airThr);
-				cards.addAll(airThr.getCardList());
-			}
-			tempAirplanes.add(new Airplane(cards));
-			tempAirThreeRef.clear();
-		}
-		threes.removeAll(toBeRemoved);
-		return tempAirplanes;
-	}
-	
-	/**
-	 * 使用对子组装连对。注意：如果能组成连对，则所有组成连对的对子都将被移除。
-	 */
-	private ArrayList<DoubleStraight> makeDoubleStraightUsingPairs(
-			ArrayList<Pair> pairs) {
-		int lastValue = 0;
-		ArrayList<Pair> tempPairRef = new ArrayList<>();
-		ArrayList<DoubleStraight> tempDoubles = new ArrayList<>();
-		ArrayList<Pair> toBeRemoved = new ArrayList<>();
-		for (Pair tr : pairs) {
-			int thisValue = tr.getCardList().get(0).getValue();
-			//如果列表中的对子不再连续或遇到2，且能组成连对
-			if (lastValue != 0
-					&& ((thisValue - lastValue != 1) || thisValue >= Card.CARD_VALUE_2)) {
-				// 三个或更多对子可以组成连对
-				if (tempPairRef.size() >= 3) {
-					ArrayList<Card> cards = new ArrayList<>();
-					for (Pair airThr : tempPairRef) {
-						toBeRemoved.add(airThr);
-						cards.addAll(airThr.getCardList());
-					}
-					tempDoubles.add(new DoubleStraight(cards));
-					tempPairRef.clear();
+				else{
+					((Three) type).setAttachType(null);
 				}
 			}
-			//否则，如果不连续则清空，连续则加入
-			else if (lastValue!=0 && thisValue-lastValue!=1){
-				tempPairRef.clear();
-			}
-			else{
-				tempPairRef.add(tr);
+		}
+		long leftover = CardSet.EMPTY;
+		for (int i = cardTypes.size()-1; i >= 0; i--) {
+			long cards = cardTypes.get(i).getCardSet();
+			if (CardSet.intersect(cards, played) != CardSet.EMPTY) {
+				cardTypes.remove(i);
+				leftover |= CardSet.minus(cards, played);
 			}
-			// 无论是不是，都更新最新的值
-			lastValue = thisValue;
 		}
-		//循环结束进行最后的判断。由于过程中不连续的已经被剔除，所以这里一定是连续的。
-		if (tempPairRef.size() >= 3) {
-			//判断其中装的是不是一样的
-			ArrayList<Card> cards = new ArrayList<>();
-			for (Pair airThr : tempPairRef) {
-				toBeRemoved.add(airThr);
-				cards.addAll(airThr.getCardList());
+		if (leftover != CardSet.EMPTY){
+			int values = RankHistogram.valuesWithCount(RankHistogram.of(leftover), 1);
+			for (int i = cardTypes.size()-1; i >= 0; i--) {
+				long cards = cardTypes.get(i).getCardSet();
+				if ((RankHistogram.valuesWithCount(RankHistogram.of(cards), 1) & values) != 0) {
+					cardTypes.remove(i);
+					leftover |= cards;
+				}
 			}
-			tempDoubles.add(new DoubleStraight(cards));
-			tempPairRef.clear();
+			GameLog.d(LOG_TAG, "update cards info, re-make: "+CardSet.toList(leftover));
+			PlayerCardsInfo partInfo = makeCards(CardSet.toList(leftover));
+			cardTypes.addAll(partInfo.cardTypes);
+			partInfo.recycle();
 		}
-		pairs.removeAll(toBeRemoved);
-		return tempDoubles;
+		Collections.sort(cardTypes, CardType.SORT_COMPARATOR);
+		statPlayerCardsInfo(info);
 	}
 	
 	//判断是否需要跟牌
@@ -0,0 +1,298 @@
+package com.mym.landlords.ai;
+
+import com.mym.landlords.card.CardSet;
+import com.mym.landlords.card.MoveCode;
+import com.mym.landlords.card.MoveGenerator;
+import com.mym.util.SplitMix64;
+
+/**
+ * 对两个对手手牌的信念状态（粒子滤波）。
+ * <p>
+ * <h1>粒子</h1>
+ * 每个粒子是一种带权重的假设：把自己看不到的牌分给下家和上家的一种方式。由于两家的牌合起来就是看不到的牌，
+ * 每个粒子只需要保存下家的手牌（以 {@link CardSet}表示）。确定在某家手中的牌（例如地主尚未打出的底牌）在所有粒子中都固定不变。
+ * </p>
+ * <p>
+ * <h1>增量更新</h1>
+ * 粒子在一局开始时生成一次，之后随着每次出牌和不出逐步修正，而不是每次决策都重新抽样：
+ * <ul>
+ * <li>出牌：不持有这些牌的粒子被修复，即与另一家交换相同张数的牌，并按交换的张数降低权重；</li>
+ * <li>不出：对手的牌不出时，能用非炸弹压过的粒子降低权重；</li>
+ * <li>有效粒子数低于总数的一半时按权重重新抽样，并对复制出的粒子随机交换几张牌，以保持多样性。</li>
+ * </ul>
+ * </p>
+ * 座位的编号与 {@link EndgameSolver}相同：座位0为自己，1为下家，2为上家。
+ * 更新方法只能在决策之间调用；{@link #draw(SplitMix64)}等查询方法可以由多个线程同时调用。
+ */
+public final class BeliefState {
+
+	/** 默认的粒子数目。 */
+	public static final int DEFAULT_PARTICLES = 256;
+	private static final int SEATS = 3;
+	//不出但能压过时，以及每修复一张牌时，权重乘以的系数
+	private static final double PASS_PENALTY = 0.25;
+	private static final double REPAIR_PENALTY = 0.5;
+	//重新抽样后为每个粒子随机交换的牌数
+	private static final int REJUVENATION_SWAPS = 2;
+
+	private final int particleCount;
+	private final long[] nextHands;
+	private final double[] weights;
+	private final double[] cumulative;
+	private final long[] resampleBuffer;
+	private final SplitMix64 random;
+	private final MoveGenerator generator = new MoveGenerator();
+
+	private boolean initialized;
+	private long unseen;
+	private final long[] known = new long[SEATS];
+	private final int[] sizes = new int[SEATS];
+	private int resampleCount;
+
+	/**
+	 * 使用默认的粒子数目创建。
+	 */
+	public BeliefState() {
+		this(DEFAULT_PARTICLES, System.nanoTime());
+	}
+
+	/**
+	 * 创建信念状态。
+	 * @param particles 粒子数目，必须为正数。
+	 * @param seed 随机数种子。
+	 */
+	public BeliefState(int particles, long seed) {
+		if (particles <= 0) {
+			throw new IllegalArgumentException("invalid particles:" + particles);
+		}
+		particleCount = particles;
+		nextHands = new long[particles];
+		weights = new double[particles];
+		cumulative = new double[particles];
+		resampleBuffer = new long[particles];
+		random = new SplitMix64(seed);
+	}
+
+	/**
+	 * 根据一局开始时（或第一次使用时）的局面生成粒子。
+	 * @param knownCards 每个座位确定持有的牌，含义与 {@link PlayStrategy#decide}的 known 参数相同。
+	 * @param handSizes 每个座位剩余的张数。
+	 * @param unseenCards 自己看不到的所有牌。
+	 */
+	public void init(long[] knownCards, int[] handSizes, long unseenCards) {
+		unseen = unseenCards;
+		for (int seat = 0; seat < SEATS; seat++) {
+			known[seat] = knownCards[seat];
+			sizes[seat] = handSizes[seat];
+		}
+		long free = freeCards();
+		int need = sizes[1] - CardSet.size(known[1]);
+		for (int i = 0; i < particleCount; i++) {
+			nextHands[i] = known[1] | CardSet.pick(free, need, random);
+			weights[i] = 1.0;
+		}
+		resampleCount = 0;
+		initialized = true;
+		rebuildCumulative();
+	}
+
+	/**
+	 * 丢弃所有粒子，等待下一局重新生成。
+	 */
+	public void reset() {
+		initialized = false;
+	}
+
+	public boolean isInitialized() {
+		return initialized;
+	}
+
+	/**
+	 * 判断粒子是否与给出的局面一致，不一致时（例如漏掉了某次更新）不应当再使用。
+	 */
+	public boolean matches(long unseenCards, int[] handSizes) {
+		return initialized && unseen == unseenCards && sizes[1] == handSizes[1]
+				&& sizes[2] == handSizes[2];
+	}
+
+	/**
+	 * 记录一次出牌。
+	 * @param seat 出牌的座位。
+	 * @param cards 打出的牌（以 {@link CardSet}表示）。
+	 */
+	public void onPlay(int seat, long cards) {
+		if (!initialized || seat == 0) {
+			return;
+		}
+		for (int i = 0; i < particleCount; i++) {
+			long next = nextHands[i];
+			//不在出牌者手中的牌需要从另一家换过来
+			long missing = seat == 1 ? CardSet.minus(cards, next) : CardSet.intersect(cards, next);
+			int count = CardSet.size(missing);
+			if (count > 0) {
+				if (seat == 1) {
+					long giveBack = CardSet.pick(CardSet.minus(next, known[1] | cards), count, random);
+					next = CardSet.minus(next, giveBack) | missing;
+				}
+				else {
+					long other = CardSet.minus(unseen, next | known[2] | cards);
+					next = CardSet.minus(next, missing) | CardSet.pick(other, count, random);
+				}
+				weights[i] *= Math.pow(REPAIR_PENALTY, count);
+			}
+			nextHands[i] = seat == 1 ? CardSet.minus(next, cards) : next;
+		}
+		unseen = CardSet.minus(unseen, cards);
+		known[seat] = CardSet.minus(known[seat], cards);
+		sizes[seat] -= CardSet.size(cards);
+		normalize();
+	}
+
+	/**
+	 * 记录一次不出。
+	 * @param seat 不出的座位。
+	 * @param before 他没有压的牌，应当是对手打出的。
+	 */
+	public void onPass(int seat, long before) {
+		if (!initialized || seat == 0 || before == MoveCode.NONE) {
+			return;
+		}
+		for (int i = 0; i < particleCount; i++) {
+			if (canBeat(handOf(i, seat), before)) {
+				weights[i] *= PASS_PENALTY;
+			}
+		}
+		normalize();
+	}
+
+	/**
+	 * 按权重随机选择一个粒子。
+	 * @param rnd 调用者的随机数生成器。
+	 * @return 返回粒子的下标。
+	 */
+	public int draw(SplitMix64 rnd) {
+		double target = rnd.nextDouble() * cumulative[particleCount - 1];
+		int low = 0;
+		int high = particleCount - 1;
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (cumulative[mid] > target) {
+				high = mid;
+			}
+			else {
+				low = mid + 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * 获得粒子中指定座位的手牌。
+	 * @param seat 1或2。
+	 */
+	public long handOf(int particle, int seat) {
+		long next = nextHands[particle];
+		return seat == 1 ? next : CardSet.minus(unseen, next);
+	}
+
+	/**
+	 * 获得有效粒子数，即权重的平方和的倒数（权重已归一化）。
+	 */
+	public double getEffectiveSize() {
+		double sum = 0;
+		for (int i = 0; i < particleCount; i++) {
+			sum += weights[i] * weights[i];
+		}
+		return 1.0 / sum;
+	}
+
+	/**
+	 * 获得本局重新抽样的次数。
+	 */
+	public int getResampleCount() {
+		return resampleCount;
+	}
+
+	//能否用非炸弹压过
+	private boolean canBeat(long hand, long before) {
+		generator.reset(hand, before);
+		while (generator.hasNext()) {
+			if (!MoveCode.isBomb(generator.next())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	//归一化权重，有效粒子数过低时重新抽样
+	private void normalize() {
+		double total = 0;
+		for (int i = 0; i < particleCount; i++) {
+			total += weights[i];
+		}
+		if (total <= 0) {
+			//所有粒子都不可信，退回均匀分布
+			for (int i = 0; i < particleCount; i++) {
+				weights[i] = 1.0 / particleCount;
+			}
+		}
+		else {
+			for (int i = 0; i < particleCount; i++) {
+				weights[i] /= total;
+			}
+		}
+		if (getEffectiveSize() < particleCount / 2) {
+			resample();
+		}
+		rebuildCumulative();
+	}
+
+	//系统重抽样：按权重复制粒子，复制出的粒子随机交换几张牌
+	private void resample() {
+		double step = 1.0 / particleCount;
+		double position = random.nextDouble() * step;
+		double sum = weights[0];
+		int source = 0;
+		for (int i = 0; i < particleCount; i++) {
+			while (position > sum && source < particleCount - 1) {
+				sum += weights[++source];
+			}
+			resampleBuffer[i] = nextHands[source];
+			position += step;
+		}
+		for (int i = 0; i < particleCount; i++) {
+			long next = resampleBuffer[i];
+			if (i > 0 && next == resampleBuffer[i - 1]) {
+				next = swap(next, REJUVENATION_SWAPS);
+			}
+			nextHands[i] = next;
+			weights[i] = step;
+		}
+		resampleCount++;
+	}
+
+	//在两家之间交换若干张不确定归属的牌
+	private long swap(long next, int count) {
+		long fromNext = CardSet.minus(next, known[1]);
+		long fromPrior = CardSet.minus(unseen, next | known[2]);
+		int swaps = Math.min(count, Math.min(CardSet.size(fromNext), CardSet.size(fromPrior)));
+		if (swaps == 0) {
+			return next;
+		}
+		return CardSet.minus(next, CardSet.pick(fromNext, swaps, random))
+				| CardSet.pick(fromPrior, swaps, random);
+	}
+
+	private void rebuildCumulative() {
+		double sum = 0;
+		for (int i = 0; i < particleCount; i++) {
+			sum += weights[i];
+			cumulative[i] = sum;
+		}
+	}
+
+	//不确定归属的牌
+	private long freeCards() {
+		return CardSet.minus(unseen, known[1] | known[2]);
+	}
+}
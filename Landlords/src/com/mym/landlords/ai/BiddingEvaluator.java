@@ -0,0 +1,216 @@
+package com.mym.landlords.ai;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import com.mym.landlords.card.CardSet;
+import com.mym.landlords.card.MoveCode;
+import com.mym.landlords.card.RankHistogram;
+import com.mym.util.SplitMix64;
+import com.mym.util.WorkerPool;
+
+/**
+ * 叫牌时使用的模拟评估器，估计拿到底牌当地主的获胜概率。
+ * <p>
+ * <h1>算法</h1>
+ * 反复随机分配自己看不到的37张牌：3张作为底牌加入自己的手牌，其余分给两个农民各17张，
+ * 然后由自己先出牌，用 {@link RolloutPolicy}快速模拟到终局，统计地主获胜的比例。
+ * 与按大牌计分相比，这样自然地考虑了炸弹、顺子、飞机等牌型以及底牌可能带来的改善。
+ * </p>
+ * <p>
+ * <h1>预算与缓存</h1>
+ * 模拟分给若干个工作线程同时进行，达到抽样数目或用完时间预算就停止，因此叫牌不会有明显的停顿。
+ * 模拟只与点数有关，因此结果按手牌的点数直方图（参见 {@link RankHistogram}）缓存，
+ * 花色不同而点数相同的手牌再次评估时直接返回。缓存超过容量时淘汰最久未使用的项。
+ * </p>
+ * 评估器可以由多个玩家共用，{@link #evaluate(long)}是同步的。不再使用时应调用 {@link #shutdown()}。
+ */
+public final class BiddingEvaluator {
+
+	/** 默认的时间预算（毫秒）。 */
+	public static final long DEFAULT_BUDGET_MILLIS = 50;
+	/** 默认的抽样数目上限，此时胜率的标准误差约为0.5%。 */
+	public static final int DEFAULT_MAX_SAMPLES = 10000;
+	private static final int CACHE_CAPACITY = 1024;
+	private static final int SEATS = 3;
+	private static final int KITTY_SIZE = 3;
+	private static final int FARMER_SIZE = 17;
+
+	private final WorkerPool pool;
+	private final Worker[] workers;
+	private final Map<Long, Double> cache;
+	private volatile long budgetNanos;
+	private volatile int maxSamples = DEFAULT_MAX_SAMPLES;
+	private volatile boolean cancelled;
+
+	//本次评估的输入，由各工作线程只读共享
+	private long hand;
+	private long deadline;
+	private long lastSampleCount;
+	private long hitCount;
+
+	/**
+	 * 创建一个使用默认预算、线程数与处理器数目相同的评估器。
+	 */
+	public BiddingEvaluator() {
+		this(DEFAULT_BUDGET_MILLIS, Runtime.getRuntime().availableProcessors(),
+				System.nanoTime());
+	}
+
+	/**
+	 * 创建评估器。
+	 * @param budgetMillis 每次评估的时间预算（毫秒），必须为正数。
+	 * @param threads 工作线程数，必须为正数。
+	 * @param seed 随机数种子。
+	 */
+	public BiddingEvaluator(long budgetMillis, int threads, long seed) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("invalid threads:" + threads);
+		}
+		setBudgetMillis(budgetMillis);
+		SplitMix64 random = new SplitMix64(seed);
+		workers = new Worker[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Worker(random.split());
+		}
+		cache = new LinkedHashMap<Long, Double>(CACHE_CAPACITY, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, Double> eldest) {
+				return size() > CACHE_CAPACITY;
+			}
+		};
+		pool = new WorkerPool("BiddingWorker", threads);
+	}
+
+	/**
+	 * 设置每次评估的时间预算。
+	 * @param budgetMillis 时间预算（毫秒），必须为正数。
+	 */
+	public void setBudgetMillis(long budgetMillis) {
+		if (budgetMillis <= 0) {
+			throw new IllegalArgumentException("invalid budget:" + budgetMillis);
+		}
+		budgetNanos = budgetMillis * 1000000L;
+	}
+
+	/**
+	 * 设置每次评估的抽样数目上限。
+	 * @param samples 抽样数目，必须为正数。
+	 */
+	public void setMaxSamples(int samples) {
+		if (samples <= 0) {
+			throw new IllegalArgumentException("invalid samples:" + samples);
+		}
+		maxSamples = samples;
+	}
+
+	/**
+	 * 关闭工作线程，可以在任意线程调用。正在进行的评估会尽快返回，之后的评估直接返回0。
+	 */
+	public void shutdown() {
+		cancelled = true;
+		pool.shutdown();
+	}
+
+	/**
+	 * 估计当地主的获胜概率。
+	 * @param handCards 叫牌时的手牌（以 {@link CardSet}表示），不含底牌。
+	 * @return 返回0~1之间的获胜概率。
+	 */
+	public synchronized double evaluate(long handCards) {
+		Long key = RankHistogram.of(handCards);
+		Double cached = cache.get(key);
+		if (cached != null) {
+			hitCount++;
+			lastSampleCount = 0;
+			return cached;
+		}
+		if (cancelled) {
+			return 0;
+		}
+		hand = handCards;
+		deadline = System.nanoTime() + budgetNanos;
+		int quota = (maxSamples + workers.length - 1) / workers.length;
+		for (Worker worker : workers) {
+			worker.quota = quota;
+		}
+		if (!pool.runAll(workers)) {
+			return 0;
+		}
+		long wins = 0;
+		long samples = 0;
+		for (Worker worker : workers) {
+			wins += worker.wins;
+			samples += worker.samples;
+		}
+		lastSampleCount = samples;
+		if (samples == 0 || cancelled) {
+			return 0;
+		}
+		double probability = (double) wins / samples;
+		cache.put(key, probability);
+		return probability;
+	}
+
+	/**
+	 * 获得最近一次评估的抽样次数，命中缓存时为0。
+	 */
+	public synchronized long getLastSampleCount() {
+		return lastSampleCount;
+	}
+
+	/**
+	 * 获得缓存命中的次数。
+	 */
+	public synchronized long getHitCount() {
+		return hitCount;
+	}
+
+	/**
+	 * 清空缓存。
+	 */
+	public synchronized void clearCache() {
+		cache.clear();
+	}
+
+	//工作线程：反复分配看不到的牌，由地主先出模拟一局
+	private final class Worker implements Callable<Worker> {
+		private final SplitMix64 workerRandom;
+		private final RolloutPolicy policy = new RolloutPolicy();
+		private final long[] hands = new long[SEATS];
+		private int quota;
+		private long wins;
+		private long samples;
+
+		Worker(SplitMix64 random) {
+			workerRandom = random;
+		}
+
+		@Override
+		public Worker call() {
+			wins = 0;
+			samples = 0;
+			do {
+				deal();
+				if (policy.playout(hands, 0, 0, MoveCode.NONE, 0) == 0) {
+					wins++;
+				}
+				samples++;
+			} while (samples < quota && System.nanoTime() < deadline && !cancelled);
+			return this;
+		}
+
+		//随机选出底牌和下家的手牌，其余的归上家
+		private void deal() {
+			long unseen = CardSet.minus(CardSet.FULL_PACK, hand);
+			long kitty = CardSet.pick(unseen, KITTY_SIZE, workerRandom);
+			long next = CardSet.pick(CardSet.minus(unseen, kitty), FARMER_SIZE, workerRandom);
+			hands[0] = hand | kitty;
+			hands[1] = next;
+			hands[2] = CardSet.minus(unseen, kitty | next);
+		}
+	}
+}
@@ -0,0 +1,186 @@
+package com.mym.landlords.ai;
+
+import com.mym.landlords.card.Card;
+import com.mym.landlords.card.CardKind;
+import com.mym.landlords.card.CardSet;
+import com.mym.landlords.card.CardType;
+import com.mym.landlords.card.MoveCode;
+import com.mym.landlords.card.RankHistogram;
+
+/**
+ * 记牌器，记录一局中每个玩家打出的牌以及由“不出”推断出的限制。
+ * <p>
+ * <h1>记录的内容</h1>
+ * <ul>
+ * <li>尚未打出的每种点数的张数（以 {@link RankHistogram}直方图表示）；某个玩家看不到的牌再减去他自己的手牌即可；</li>
+ * <li>每个玩家打出过的牌；</li>
+ * <li>每个玩家每种点数最多可能持有的张数。对手打出单张2（或小王）而玩家选择不出时，
+ * 推断他没有更大的单张：例如对手打出单张2而不出，则认为他没有大小王。
+ * 但王炸不会被拆开出单张，只要玩家还可能同时持有大小王，就不作限制。
+ * 对更小的单张和对子，玩家常常为了不拆牌而不出，不能据此推断，因此不记录。</li>
+ * </ul>
+ * </p>
+ * <p>
+ * <h1>复杂度</h1>
+ * 每次出牌或不出的记录，以及所有查询，都只是若干次直方图的整数运算，与牌局进行的程度无关，
+ * 因此AI每次决策、界面每次绘制时都可以直接查询。
+ * </p>
+ * 记牌器通过 {@link Player#setCardTracker(CardTracker)}与玩家关联后，由 {@link Player#giveOutCards(CardType)}自动记录。
+ * 所有方法都是同步的，可以在逻辑线程记录的同时在界面线程查询。
+ */
+public final class CardTracker {
+
+	private static final int SEATS = 3;
+	//一副牌的点数直方图
+	private static final long FULL_PACK = RankHistogram.of(CardSet.FULL_PACK);
+	//每个计数器都为1的直方图
+	private static final long NIBBLE_ONES = 0x0111111111111111L;
+
+	private final Player[] players = new Player[SEATS];
+	private final long[] playedCards = new long[SEATS];
+	//每个玩家每种点数最多可能持有的张数
+	private final long[] ceilings = new long[SEATS];
+	private long remaining;
+	private long lastMove;
+	private int lastSeat;
+
+	/**
+	 * 创建一个空的记牌器。
+	 */
+	public CardTracker() {
+		reset();
+	}
+
+	/**
+	 * 清空所有记录，开始新的一局。
+	 */
+	public synchronized void reset() {
+		for (int seat = 0; seat < SEATS; seat++) {
+			players[seat] = null;
+			playedCards[seat] = CardSet.EMPTY;
+			ceilings[seat] = FULL_PACK;
+		}
+		remaining = FULL_PACK;
+		lastMove = MoveCode.NONE;
+		lastSeat = -1;
+	}
+
+	/**
+	 * 记录一次出牌。
+	 * @param player 出牌的玩家。
+	 * @param type 打出的牌型，不能为null。
+	 */
+	public synchronized void recordPlay(Player player, CardType type) {
+		int seat = seatOf(player);
+		long cards = type.getCardSet();
+		playedCards[seat] = CardSet.union(playedCards[seat], cards);
+		remaining -= RankHistogram.of(cards);
+		lastMove = type.getMoveCode();
+		lastSeat = seat;
+	}
+
+	/**
+	 * 记录一次不出。如果场上最后一手牌是对手打出的大牌，则据此更新该玩家的持牌限制。
+	 * @param player 选择不出的玩家。
+	 */
+	public synchronized void recordPass(Player player) {
+		int seat = seatOf(player);
+		if (lastSeat < 0 || lastSeat == seat) {
+			return;
+		}
+		Player last = players[lastSeat];
+		if (player.isLandlord() == last.isLandlord()) {
+			return;
+		}
+		int value = MoveCode.primaryValue(lastMove);
+		if (MoveCode.kind(lastMove) != CardKind.SINGLE || value < Card.CARD_VALUE_2) {
+			return;
+		}
+		//比最后一手牌大的点数只有大小王，不会组成炸弹；可能持有王炸时不能推断
+		long held = RankHistogram.min(ceilings[seat], remaining);
+		if (RankHistogram.count(held, Card.CARD_VALUE_JOKER_S) > 0
+				&& RankHistogram.count(held, Card.CARD_VALUE_JOKER_B) > 0) {
+			return;
+		}
+		//比最后一手牌大的点数都不持有
+		int shift = (value - Card.CARD_VALUE_3 + 1) * 4;
+		long above = (NIBBLE_ONES >>> shift) << shift;
+		ceilings[seat] = RankHistogram.min(ceilings[seat], FULL_PACK & ~(above * 0xF));
+	}
+
+	/**
+	 * 获得尚未打出的每种点数的张数（以 {@link RankHistogram}直方图表示）。
+	 */
+	public synchronized long getRemainingHistogram() {
+		return remaining;
+	}
+
+	/**
+	 * 获得指定点数尚未打出的张数。
+	 */
+	public synchronized int getRemainingCount(int value) {
+		return RankHistogram.count(remaining, value);
+	}
+
+	/**
+	 * 获得指定玩家看不到的每种点数的张数，即尚未打出且不在他手中的牌。
+	 */
+	public synchronized long getUnseenHistogram(Player viewer) {
+		return remaining - RankHistogram.of(viewer.getHandCardSet());
+	}
+
+	/**
+	 * 获得指定玩家打出过的牌（以 {@link CardSet}表示）。
+	 */
+	public synchronized long getPlayedCardSet(Player player) {
+		int seat = indexOf(player);
+		return seat < 0 ? CardSet.EMPTY : playedCards[seat];
+	}
+
+	/**
+	 * 获得所有玩家打出过的牌（以 {@link CardSet}表示）。
+	 */
+	public synchronized long getAllPlayedCardSet() {
+		return playedCards[0] | playedCards[1] | playedCards[2];
+	}
+
+	/**
+	 * 获得推断出的指定玩家每种点数最多可能持有的张数（以 {@link RankHistogram}直方图表示），
+	 * 已经考虑了尚未打出的张数，但没有扣除查询者自己的手牌。
+	 */
+	public synchronized long getCeilingHistogram(Player player) {
+		int seat = indexOf(player);
+		return RankHistogram.min(seat < 0 ? FULL_PACK : ceilings[seat], remaining);
+	}
+
+	/**
+	 * 判断指定玩家是否可能持有某个点数的牌。
+	 */
+	public boolean mayHold(Player player, int value) {
+		return RankHistogram.count(getCeilingHistogram(player), value) > 0;
+	}
+
+	private int indexOf(Player player) {
+		for (int seat = 0; seat < SEATS; seat++) {
+			if (players[seat] == player) {
+				return seat;
+			}
+		}
+		return -1;
+	}
+
+	//获得玩家的下标，第一次出现时为其分配一个
+	private int seatOf(Player player) {
+		int seat = indexOf(player);
+		if (seat >= 0) {
+			return seat;
+		}
+		for (seat = 0; seat < SEATS; seat++) {
+			if (players[seat] == null) {
+				players[seat] = player;
+				return seat;
+			}
+		}
+		throw new IllegalStateException("too many players:" + player.getPlayerName());
+	}
+}
@@ -0,0 +1,37 @@
+package com.mym.landlords.ai;
+
+import com.mym.landlords.card.CardSet;
+import com.mym.util.SplitMix64;
+
+/**
+ * 确定化抽样：把自己看不到的牌分给另外两家，得到一种与已知信息一致的完整牌局。
+ * <p>
+ * 有信念状态时按权重抽取一个粒子，否则把不确定归属的牌均匀随机地分给座位1和座位2。
+ * 参数的含义与 {@link PlayStrategy#decide}相同，座位0为自己。
+ * </p>
+ */
+final class Determinizer {
+
+	private Determinizer() {
+	}
+
+	/**
+	 * 抽取一种牌局，不产生任何对象。
+	 * @param belief 与当前局面一致的信念状态，可以为null。
+	 * @param out 长度至少为3的数组，依次写入三家的手牌。
+	 */
+	static void sample(long[] known, int[] sizes, long unseen, BeliefState belief,
+			SplitMix64 random, long[] out) {
+		out[0] = known[0];
+		if (belief != null) {
+			int particle = belief.draw(random);
+			out[1] = belief.handOf(particle, 1);
+			out[2] = belief.handOf(particle, 2);
+			return;
+		}
+		long free = CardSet.minus(unseen, known[1] | known[2]);
+		long chosen = CardSet.pick(free, sizes[1] - CardSet.size(known[1]), random);
+		out[1] = known[1] | chosen;
+		out[2] = known[2] | CardSet.minus(free, chosen);
+	}
+}
@@ -0,0 +1,32 @@
+package com.mym.landlords.ai;
+
+/**
+ * AI的难度，即每步出牌的时间预算。
+ */
+public enum Difficulty {
+	/**
+	 * 简单，不进行搜索，只使用基本的出牌逻辑。
+	 */
+	Easy(0),
+	/**
+	 * 普通，每步搜索100毫秒。
+	 */
+	Normal(100),
+	/**
+	 * 困难，每步搜索500毫秒。
+	 */
+	Hard(500);
+
+	private final long budgetMillis;
+
+	private Difficulty(long budgetMillis) {
+		this.budgetMillis = budgetMillis;
+	}
+
+	/**
+	 * 获得每步出牌的时间预算（毫秒），0表示不搜索。
+	 */
+	public long getBudgetMillis() {
+		return budgetMillis;
+	}
+}
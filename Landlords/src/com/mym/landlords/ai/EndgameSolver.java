@@ -0,0 +1,303 @@
+package com.mym.landlords.ai;
+
+import java.util.Arrays;
+
+import com.mym.landlords.card.MoveCode;
+import com.mym.landlords.card.MoveGenerator;
+import com.mym.landlords.card.RankHistogram;
+import com.mym.util.SplitMix64;
+
+/**
+ * 残局求解器，在三家手牌都已知时求出当前玩家一方能否必胜，以及必胜的出牌。
+ * <p>
+ * <h1>状态与搜索</h1>
+ * 三个座位按出牌顺序编号为0、1、2（座位 i 的下家是座位 (i+1)%3），每家手牌只用点数直方图表示。
+ * 局面由三家的直方图、轮到的座位、场上最后一手牌及其出牌者组成。结果只有胜负两种，
+ * 因此在(-1, 1)的窗口下进行alpha-beta搜索，找到第一个必胜的走法后立即剪枝，置换表中保存的都是精确值。
+ * 置换表使用Zobrist散列，在多次求解之间保留，可以复用之前的结果。
+ * </p>
+ * <p>
+ * <h1>走法排序</h1>
+ * 出牌按张数从多到少排列，能一次出完的牌因此总是最先被找到；如果最后一手牌是队友出的，优先尝试不出。
+ * </p>
+ * <p>
+ * <h1>预算</h1>
+ * 每次求解都有节点数和时间的上限，超出后立即停止并返回 {@link #RESULT_UNKNOWN}，调用者应当改用其他策略。
+ * 求解器对象不是线程安全的。
+ * </p>
+ */
+public final class EndgameSolver {
+
+	/** 预算耗尽，没有得出结果。 */
+	public static final int RESULT_UNKNOWN = 0;
+	/** 当前玩家一方必胜。 */
+	public static final int RESULT_WIN = 1;
+	/** 当前玩家一方必败。 */
+	public static final int RESULT_LOSS = -1;
+
+	private static final int SEATS = 3;
+	private static final int DEFAULT_NODE_LIMIT = 200000;
+	private static final long DEFAULT_TIME_LIMIT_MILLIS = 5;
+	private static final int TABLE_BITS = 16;
+	//一手牌最多的张数
+	private static final int MAX_MOVE_SIZE = 20;
+
+	//Zobrist散列键：每个座位每个点数的每种张数（张数为0的键为0），以及地主座位、轮到的座位和最后出牌者
+	private static final long[] ZOBRIST_COUNTS = new long[SEATS * RankHistogram.VALUE_KINDS * 5];
+	private static final long[] ZOBRIST_LANDLORDS = new long[SEATS];
+	private static final long[] ZOBRIST_TURNS = new long[SEATS];
+	private static final long[] ZOBRIST_LAST_MOVERS = new long[SEATS];
+	static {
+		long seed = 0x5DEECE66DL;
+		for (int i = 0; i < ZOBRIST_COUNTS.length; i++) {
+			seed += 0x9E3779B97F4A7C15L;
+			ZOBRIST_COUNTS[i] = i % 5 == 0 ? 0L : SplitMix64.mix(seed);
+		}
+		for (int i = 0; i < SEATS; i++) {
+			seed += 0x9E3779B97F4A7C15L;
+			ZOBRIST_LANDLORDS[i] = SplitMix64.mix(seed);
+			seed += 0x9E3779B97F4A7C15L;
+			ZOBRIST_TURNS[i] = SplitMix64.mix(seed);
+			seed += 0x9E3779B97F4A7C15L;
+			ZOBRIST_LAST_MOVERS[i] = SplitMix64.mix(seed);
+		}
+	}
+
+	//置换表，值为0表示空项
+	private final long[] tableKeys = new long[1 << TABLE_BITS];
+	private final byte[] tableValues = new byte[1 << TABLE_BITS];
+	private final long[] tableMoves = new long[1 << TABLE_BITS];
+
+	//搜索状态
+	private final long[] hands = new long[SEATS];
+	private int landlord;
+	private long hash;
+	private long bestMove;
+	private long nodeCount;
+	private long nodeLimit = DEFAULT_NODE_LIMIT;
+	private long timeLimitNanos = DEFAULT_TIME_LIMIT_MILLIS * 1000000L;
+	private long deadline;
+	private boolean aborted;
+
+	//每层搜索使用的生成器和走法缓冲区，按需创建
+	private MoveGenerator[] generators = new MoveGenerator[0];
+	private long[][] moveBuffers = new long[0][];
+	//排序走法时使用的临时空间，各层共用
+	private long[] sortBuffer = new long[64];
+	private final int[] sizeOffsets = new int[MAX_MOVE_SIZE + 1];
+
+	/**
+	 * 设置每次求解的预算。
+	 * @param maxNodes 最多搜索的节点数，必须为正数。
+	 * @param timeLimitMillis 最长搜索时间（毫秒），必须为正数。
+	 */
+	public void setLimits(long maxNodes, long timeLimitMillis) {
+		if (maxNodes <= 0 || timeLimitMillis <= 0) {
+			throw new IllegalArgumentException("invalid limits:" + maxNodes + ", "
+					+ timeLimitMillis);
+		}
+		nodeLimit = maxNodes;
+		timeLimitNanos = timeLimitMillis * 1000000L;
+	}
+
+	/**
+	 * 求解残局。
+	 * @param handCardSets 三个座位的手牌（以 {@link com.mym.landlords.card.CardSet}表示），按出牌顺序排列。
+	 * @param landlordSeat 地主的座位。
+	 * @param toMove 轮到出牌的座位。
+	 * @param lastMove 场上最后一手牌的编码；{@link MoveCode#NONE}表示自由出牌。
+	 * @param lastMover 最后一手牌的出牌者座位，自由出牌时忽略。
+	 * @return 返回 {@link #RESULT_WIN}、{@link #RESULT_LOSS}或 {@link #RESULT_UNKNOWN}。
+	 */
+	public int solve(long[] handCardSets, int landlordSeat, int toMove, long lastMove,
+			int lastMover) {
+		landlord = landlordSeat;
+		hash = ZOBRIST_LANDLORDS[landlordSeat];
+		for (int seat = 0; seat < SEATS; seat++) {
+			hands[seat] = RankHistogram.of(handCardSets[seat]);
+			for (int index = 0; index < RankHistogram.VALUE_KINDS; index++) {
+				hash ^= zobrist(seat, index, hands[seat]);
+			}
+		}
+		bestMove = MoveCode.NONE;
+		nodeCount = 0;
+		aborted = false;
+		deadline = System.nanoTime() + timeLimitNanos;
+		int result = search(toMove, lastMove, lastMover, 0);
+		return aborted ? RESULT_UNKNOWN : result;
+	}
+
+	/**
+	 * 获得最近一次求解得出的走法。必胜时是任意一个必胜的走法，必败时是第一个尝试的走法；
+	 * {@link MoveCode#NONE}表示不出。
+	 */
+	public long getBestMove() {
+		return bestMove;
+	}
+
+	/**
+	 * 获得最近一次求解搜索的节点数。
+	 */
+	public long getNodeCount() {
+		return nodeCount;
+	}
+
+	/**
+	 * 清空置换表。
+	 */
+	public void clear() {
+		for (int i = 0; i < tableKeys.length; i++) {
+			tableKeys[i] = 0L;
+			tableValues[i] = 0;
+			tableMoves[i] = MoveCode.NONE;
+		}
+	}
+
+	//返回值以轮到的座位一方为准：1为必胜，-1为必败；预算耗尽时返回值无意义
+	private int search(int toMove, long lastMove, int lastMover, int depth) {
+		nodeCount++;
+		//每个节点都要生成全部走法，相比之下读取时间的开销可以忽略
+		if (nodeCount > nodeLimit || System.nanoTime() > deadline) {
+			aborted = true;
+		}
+		if (aborted) {
+			return 0;
+		}
+		long key = hash ^ ZOBRIST_TURNS[toMove];
+		if (lastMove != MoveCode.NONE) {
+			key ^= SplitMix64.mix(lastMove) ^ ZOBRIST_LAST_MOVERS[lastMover];
+		}
+		int slot = (int) key & (tableKeys.length - 1);
+		if (tableKeys[slot] == key && tableValues[slot] != 0) {
+			if (depth == 0) {
+				bestMove = tableMoves[slot];
+			}
+			return tableValues[slot];
+		}
+
+		int count = generateMoves(toMove, lastMove, depth);
+		long[] moves = moveBuffers[depth];
+		int next = (toMove + 1) % SEATS;
+		boolean canPass = lastMove != MoveCode.NONE;
+		boolean partnerLast = canPass && lastMover != toMove && sameTeam(lastMover, toMove);
+		int best = -1;
+		long chosen = count > 0 ? moves[0] : MoveCode.NONE;
+		if (partnerLast) {
+			chosen = MoveCode.NONE;
+			best = searchPass(toMove, next, lastMove, lastMover, depth);
+		}
+		for (int i = 0; i < count && best < 1 && !aborted; i++) {
+			long move = moves[i];
+			long played = MoveCode.toHistogram(move);
+			long hand = hands[toMove];
+			if (played == hand) {
+				//一次出完，直接获胜
+				best = 1;
+				chosen = move;
+				break;
+			}
+			changeHand(toMove, hand - played);
+			int value = search(next, move, toMove, depth + 1);
+			changeHand(toMove, hand);
+			if (!sameTeam(toMove, next)) {
+				value = -value;
+			}
+			if (value > best) {
+				best = value;
+				chosen = move;
+			}
+		}
+		if (best < 1 && canPass && !partnerLast && !aborted) {
+			if (searchPass(toMove, next, lastMove, lastMover, depth) > best) {
+				best = 1;
+				chosen = MoveCode.NONE;
+			}
+		}
+		if (aborted) {
+			return 0;
+		}
+		tableKeys[slot] = key;
+		tableValues[slot] = (byte) best;
+		tableMoves[slot] = chosen;
+		if (depth == 0) {
+			bestMove = chosen;
+		}
+		return best;
+	}
+
+	//不出，下家出牌；如果下家就是最后出牌者，则由他自由出牌
+	private int searchPass(int toMove, int next, long lastMove, int lastMover, int depth) {
+		long nextLast = next == lastMover ? MoveCode.NONE : lastMove;
+		int value = search(next, nextLast, lastMover, depth + 1);
+		return sameTeam(toMove, next) ? value : -value;
+	}
+
+	//生成所有出牌（不含不出）到第 depth 层的缓冲区，按张数从多到少排列，返回走法数
+	private int generateMoves(int toMove, long lastMove, int depth) {
+		if (depth >= generators.length) {
+			int capacity = Math.max(depth + 1, generators.length * 2);
+			MoveGenerator[] newGenerators = new MoveGenerator[capacity];
+			long[][] newBuffers = new long[capacity][];
+			System.arraycopy(generators, 0, newGenerators, 0, generators.length);
+			System.arraycopy(moveBuffers, 0, newBuffers, 0, moveBuffers.length);
+			for (int i = generators.length; i < capacity; i++) {
+				newGenerators[i] = new MoveGenerator();
+				newBuffers[i] = new long[64];
+			}
+			generators = newGenerators;
+			moveBuffers = newBuffers;
+		}
+		MoveGenerator generator = generators[depth].reset(
+				RankHistogram.toCardSet(hands[toMove]), lastMove);
+		long[] moves = moveBuffers[depth];
+		int count = 0;
+		while (generator.hasNext()) {
+			if (count == moves.length) {
+				long[] grown = new long[moves.length * 2];
+				System.arraycopy(moves, 0, grown, 0, count);
+				moves = grown;
+				moveBuffers[depth] = grown;
+			}
+			moves[count++] = generator.next();
+		}
+		//按张数计数排序：张数多的在前，相同张数保持生成顺序
+		if (sortBuffer.length < count) {
+			sortBuffer = new long[moves.length];
+		}
+		int[] offsets = sizeOffsets;
+		Arrays.fill(offsets, 0);
+		for (int i = 0; i < count; i++) {
+			offsets[MoveCode.size(moves[i])]++;
+		}
+		for (int size = offsets.length - 1, position = 0; size >= 0; size--) {
+			int sizeCount = offsets[size];
+			offsets[size] = position;
+			position += sizeCount;
+		}
+		for (int i = 0; i < count; i++) {
+			sortBuffer[offsets[MoveCode.size(moves[i])]++] = moves[i];
+		}
+		System.arraycopy(sortBuffer, 0, moves, 0, count);
+		return count;
+	}
+
+	private void changeHand(int seat, long newHand) {
+		long oldHand = hands[seat];
+		long changed = oldHand ^ newHand;
+		while (changed != 0) {
+			int index = Long.numberOfTrailingZeros(changed) >>> 2;
+			changed &= ~(0xFL << (index << 2));
+			hash ^= zobrist(seat, index, oldHand) ^ zobrist(seat, index, newHand);
+		}
+		hands[seat] = newHand;
+	}
+
+	private boolean sameTeam(int seat1, int seat2) {
+		return seat1 == seat2 || (seat1 != landlord && seat2 != landlord);
+	}
+
+	private static long zobrist(int seat, int index, long histogram) {
+		int count = (int) (histogram >>> (index << 2)) & 0xF;
+		return ZOBRIST_COUNTS[(seat * RankHistogram.VALUE_KINDS + index) * 5 + count];
+	}
+}
@@ -1,9 +1,5 @@
 package com.mym.landlords.ai;
 
-import java.util.ArrayList;
-
-import com.mym.landlords.card.Card;
-
 /**
  * 代表一盘游戏的实体类，用于记录游戏内的各个变量。
  * @author Muyangmin
@@ -38,9 +34,8 @@ public final class Game {
 	/** 地主玩家 */
 	public Player landlordPlayer;
 	
-	public ArrayList<Card> playerLeftCards = new ArrayList<>();		//记牌器功能
-	public ArrayList<Card> playerHumanCards = new ArrayList<>();	//记牌器功能
-	public ArrayList<Card> playerRightCards = new ArrayList<>();	//记牌器功能
+	/** 记牌器，玩家通过 {@link Player#setCardTracker(CardTracker)}关联后自动记录。 */
+	public final CardTracker cardTracker = new CardTracker();
 	
 	private static Game instance = new Game();
 	
@@ -53,13 +48,28 @@ public final class Game {
 	 */
 	public static Game newGame(){
 		//采用享元模式设计，始终使用同一个对象，降低内存消耗。
-		instance.basicScore = 0;
-		instance.boomCount =0;
-		instance.status = Status.Preparing;
-		instance.landlordPlayer = null;
-		instance.playerHumanCards.clear();
-		instance.playerLeftCards.clear();
-		instance.playerRightCards.clear();
+		instance.reset();
 		return instance;
 	}
+	
+	/**
+	 * 创建一个独立的游戏变量，用于同时进行多局游戏的场合，例如服务器上的多张牌桌或批量模拟。
+	 * @return 返回一个初始化后的游戏变量。
+	 */
+	public static Game newStandaloneGame(){
+		Game game = new Game();
+		game.reset();
+		return game;
+	}
+	
+	/**
+	 * 清除本局的所有记录，回到准备阶段。
+	 */
+	public void reset(){
+		basicScore = 0;
+		boomCount =0;
+		status = Status.Preparing;
+		landlordPlayer = null;
+		cardTracker.reset();
+	}
 }
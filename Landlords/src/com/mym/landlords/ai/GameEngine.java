@@ -0,0 +1,454 @@
+package com.mym.landlords.ai;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.mym.landlords.ai.Game.Status;
+import com.mym.landlords.card.BombType;
+import com.mym.landlords.card.Card;
+import com.mym.landlords.card.CardSet;
+import com.mym.landlords.card.CardType;
+import com.mym.landlords.card.Dealer;
+import com.mym.util.GameLog;
+
+/**
+ * 与界面无关的牌局流程（状态机），负责发牌、叫地主、出牌轮转和胜负判定。
+ * <p>
+ * <h1>驱动</h1>
+ * 宿主反复调用 {@link #step()}，每次执行一步操作（发牌、一次AI叫牌或一次AI出牌）。
+ * 轮到人类玩家时引擎不做任何事，等待宿主调用 {@link #submitCall(int)}或 {@link #submitPlay(CardType)}。
+ * 引擎自己不等待、不休眠，因此可以在普通的JVM上全速运行（批量模拟、服务器），
+ * 界面需要的停顿、音效和动画由宿主在 {@link Listener}的回调中自行处理。
+ * </p>
+ * <p>
+ * <h1>状态</h1>
+ * 引擎依次把 {@link Game#status}设置为 {@link Status#Preparing}、{@link Status#CallingLandlord}、
+ * {@link Status#Playing}和 {@link Status#Gameover}；三家都不叫时重新发牌。
+ * {@link Status#ShowingAICards}只用于界面展示，引擎在该状态和游戏结束状态下不做任何事。
+ * 本局结束后调用 {@link #restart()}开始下一局。
+ * </p>
+ * 驱动和提交操作的方法是同步的；查询方法不加锁，AI思考时也可以在绘制线程中调用。
+ * 监听器在调用 {@link #step()}或提交操作的线程中回调。
+ */
+public final class GameEngine {
+
+	private static final String LOG_TAG = "GameEngine";
+	private static final int SEATS = 3;
+
+	/**
+	 * 牌局事件的监听器。回调时引擎的状态已经更新。
+	 */
+	public interface Listener {
+		/** 状态改变。 */
+		void onStatusChanged(Status status);
+
+		/** 发牌完成，三家都已拿到手牌。 */
+		void onCardsDealt(List<Card> landlordCards);
+
+		/** 轮到玩家叫地主，只能叫比 minScore 大的分数或者不叫。 */
+		void onBidding(Player player, int minScore);
+
+		/** 玩家叫了地主，score 为 {@link Game#BASIC_SCORE_NONE}时表示不叫。 */
+		void onCalled(Player player, int score);
+
+		/** 地主已经确定，并已拿到底牌。 */
+		void onLandlord(Player landlord, List<Card> landlordCards);
+
+		/** 轮到玩家出牌，lastType 为null时表示自由出牌（不能不出）。 */
+		void onTurn(Player player, CardType lastType);
+
+		/** 玩家出了牌，type 为null时表示不出；isFirst 表示这手牌是本轮的第一手。 */
+		void onPlayed(Player player, CardType type, boolean isFirst);
+
+		/** 本局结束，winners 为获胜的玩家（地主，或者两个农民）。 */
+		void onGameOver(List<Player> winners);
+	}
+
+	/**
+	 * 所有回调都为空的监听器，便于只关心部分事件的宿主继承。
+	 */
+	public static class SimpleListener implements Listener {
+		@Override
+		public void onStatusChanged(Status status) {
+		}
+
+		@Override
+		public void onCardsDealt(List<Card> landlordCards) {
+		}
+
+		@Override
+		public void onBidding(Player player, int minScore) {
+		}
+
+		@Override
+		public void onCalled(Player player, int score) {
+		}
+
+		@Override
+		public void onLandlord(Player landlord, List<Card> landlordCards) {
+		}
+
+		@Override
+		public void onTurn(Player player, CardType lastType) {
+		}
+
+		@Override
+		public void onPlayed(Player player, CardType type, boolean isFirst) {
+		}
+
+		@Override
+		public void onGameOver(List<Player> winners) {
+		}
+	}
+
+	private final Game game;
+	private final Player[] players;
+	private final Dealer dealer;
+	private final ArrayList<Listener> listeners = new ArrayList<>();
+
+	private final ArrayList<Card> landlordCards = new ArrayList<>(3);
+	private final List<Card> landlordCardsView = Collections.unmodifiableList(landlordCards);
+	private final ArrayList<Player> winners = new ArrayList<>(2);
+	private final List<Player> winnersView = Collections.unmodifiableList(winners);
+	private Player startPlayer;					//叫地主时第一个叫的玩家
+	private Player tempLandlord;				//叫地主分数最高的玩家
+	private long nextDealSeed;					//由 restart(long) 指定的下一次发牌的种子
+	private boolean hasNextDealSeed;
+	private volatile Player currentPlayer;		//当前应该操作的玩家
+	private volatile CardType currentType;		//本轮最大的一手牌，为null表示自由出牌
+	private volatile boolean waitingForHuman;	//是否在等待人类玩家操作
+
+	/**
+	 * 创建引擎，并为三个玩家分配座位、关联记牌器。出牌顺序为 first、second、third。
+	 * @param game 游戏变量。多个引擎同时运行时应当使用 {@link Game#newStandaloneGame()}分别创建。
+	 * @param seed 随机数种子，相同的种子得到相同的发牌序列，参见 {@link Dealer}。
+	 */
+	public GameEngine(Game game, Player first, Player second, Player third, long seed) {
+		if (game == null || first == null || second == null || third == null) {
+			throw new IllegalArgumentException("game and players cannot be null.");
+		}
+		this.game = game;
+		players = new Player[] {first, second, third};
+		dealer = new Dealer(seed);
+		first.setSeat(third, second);
+		second.setSeat(first, third);
+		third.setSeat(second, first);
+		for (Player player : players) {
+			player.setCardTracker(game.cardTracker);
+		}
+	}
+
+	public synchronized void addListener(Listener listener) {
+		listeners.add(listener);
+	}
+
+	public synchronized void removeListener(Listener listener) {
+		listeners.remove(listener);
+	}
+
+	public Game getGame() {
+		return game;
+	}
+
+	/**
+	 * 获得玩家的座位号，即创建引擎时的出牌顺序0、1、2。
+	 * @return 不是本引擎的玩家时返回-1。
+	 */
+	public int getSeat(Player player) {
+		for (int seat = 0; seat < SEATS; seat++) {
+			if (players[seat] == player) {
+				return seat;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * 获得当前应该操作的玩家，发牌前和本局结束后为null。
+	 */
+	public Player getCurrentPlayer() {
+		return currentPlayer;
+	}
+
+	/**
+	 * 获得本轮最大的一手牌，为null表示当前玩家自由出牌。
+	 */
+	public CardType getCurrentType() {
+		return currentType;
+	}
+
+	/**
+	 * 获得本局的底牌，发牌前为空列表。返回的列表不能修改。
+	 */
+	public List<Card> getLandlordCards() {
+		return landlordCardsView;
+	}
+
+	/**
+	 * 获得获胜的玩家，本局结束前为空列表。返回的列表不能修改。
+	 */
+	public List<Player> getWinners() {
+		return winnersView;
+	}
+
+	/**
+	 * 获得本局发牌的种子，用 {@link #restart(long)}可以重现这副牌。
+	 */
+	public long getDealSeed() {
+		return dealer.getSeed();
+	}
+
+	/**
+	 * 是否正在等待人类玩家叫地主或出牌。
+	 */
+	public boolean isWaitingForHuman() {
+		return waitingForHuman;
+	}
+
+	/**
+	 * 执行一步操作。
+	 * @return 执行了操作时返回true；正在等待人类玩家，或者本局已经结束时返回false。
+	 */
+	public synchronized boolean step() {
+		if (waitingForHuman) {
+			return false;
+		}
+		switch (game.status) {
+		case Preparing:
+			deal();
+			return true;
+		case CallingLandlord:
+			currentPlayer.callLandlord(minScore());
+			afterCall(currentPlayer.getCalledScore());
+			return true;
+		case Playing:
+			boolean isFirst = currentType == null;
+			CardType type = currentPlayer.followCards(currentType);
+			currentPlayer.giveOutCards(type);
+			afterPlay(type, isFirst);
+			return true;
+		case ShowingAICards:
+		case Gameover:
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * 连续执行，直到需要人类玩家操作或本局结束。三家都是AI时会一直执行到本局结束。
+	 * @return 返回此时的状态。
+	 */
+	public synchronized Status run() {
+		while (step()) {
+			//继续执行
+		}
+		return game.status;
+	}
+
+	/**
+	 * 提交人类玩家叫的分数。
+	 * @param score 分数，必须为 {@link Game#BASIC_SCORE_NONE}，或者比之前叫的最高分数大。
+	 * @return 操作被接受时返回true；不是人类玩家叫地主的时候，或者分数不合法时返回false。
+	 */
+	public synchronized boolean submitCall(int score) {
+		if (!waitingForHuman || game.status != Status.CallingLandlord) {
+			return false;
+		}
+		if (score != Game.BASIC_SCORE_NONE
+				&& (score <= minScore() || score > Game.BASIC_SCORE_THREE)) {
+			return false;
+		}
+		waitingForHuman = false;
+		currentPlayer.setCalledScore(score);
+		afterCall(score);
+		return true;
+	}
+
+	/**
+	 * 提交人类玩家打出的牌。
+	 * @param type 打出的牌型，为null表示不出。
+	 * @return 操作被接受时返回true；不是人类玩家出牌的时候，牌不在手中、压不过本轮最大的牌，
+	 *         或者自由出牌时选择不出，返回false。
+	 */
+	public synchronized boolean submitPlay(CardType type) {
+		if (!waitingForHuman || game.status != Status.Playing) {
+			return false;
+		}
+		boolean isFirst = currentType == null;
+		if (type == null ? isFirst
+				: !CardSet.containsAll(currentPlayer.getHandCardSet(), type.getCardSet())
+						|| !type.canAgainstType(currentType)) {
+			return false;
+		}
+		waitingForHuman = false;
+		currentPlayer.giveOutCards(type);
+		afterPlay(type, isFirst);
+		return true;
+	}
+
+	/**
+	 * 清除本局的所有记录，回到准备阶段，下一次 {@link #step()}重新发牌。
+	 */
+	public synchronized void restart() {
+		hasNextDealSeed = false;
+		game.reset();
+		resetRound();
+		setStatus(Status.Preparing);
+	}
+
+	/**
+	 * 同 {@link #restart()}，但下一次发牌使用指定的种子，用于回放和调试。
+	 * 第一个叫地主的玩家也由种子决定，三家都是AI且AI的设置相同时，整局游戏都可以重现。
+	 * @param dealSeed 发牌的种子，通常是之前某局的 {@link #getDealSeed()}。
+	 */
+	public synchronized void restart(long dealSeed) {
+		restart();
+		nextDealSeed = dealSeed;
+		hasNextDealSeed = true;
+	}
+
+	//洗牌发牌，随机选择第一个叫地主的玩家
+	private void deal() {
+		resetRound();
+		if (hasNextDealSeed) {
+			hasNextDealSeed = false;
+			dealer.deal(nextDealSeed);
+		}
+		else {
+			dealer.deal();
+		}
+		for (int i = 0; i < SEATS; i++) {
+			players[i].setHandCards(dealer.getHand(i));
+		}
+		CardSet.fill(landlordCards, dealer.getKitty());
+		game.cardTracker.reset();
+		setStatus(Status.CallingLandlord);
+		for (Listener listener : listeners) {
+			listener.onCardsDealt(landlordCards);
+		}
+		//发牌的种子本身就是均匀分布的随机数，由它决定第一个叫地主的玩家，使整局可以由种子重现
+		startPlayer = players[(int) ((dealer.getSeed() >>> 1) % SEATS)];
+		beginCall(startPlayer);
+	}
+
+	private void beginCall(Player player) {
+		currentPlayer = player;
+		waitingForHuman = !player.isAiPlayer();
+		int minScore = minScore();
+		for (Listener listener : listeners) {
+			listener.onBidding(player, minScore);
+		}
+	}
+
+	private void afterCall(int score) {
+		//记录叫牌分数最高者，作为暂时的地主
+		if (score > Game.BASIC_SCORE_NONE
+				&& (tempLandlord == null || score > tempLandlord.getCalledScore())) {
+			tempLandlord = currentPlayer;
+		}
+		for (Listener listener : listeners) {
+			listener.onCalled(currentPlayer, score);
+		}
+		boolean isFinalCall = currentPlayer.getNextPlayer() == startPlayer;
+		if (isFinalCall && tempLandlord == null) {
+			GameLog.d(LOG_TAG, "nobody called, deal again.");
+			currentPlayer = null;
+			setStatus(Status.Preparing);
+			return;
+		}
+		//已经叫到三分或已经是最后一个，开始出牌
+		if (score == Game.BASIC_SCORE_THREE || isFinalCall) {
+			beginPlay();
+		}
+		else {
+			beginCall(currentPlayer.getNextPlayer());
+		}
+	}
+
+	private void beginPlay() {
+		Player landlord = tempLandlord;
+		landlord.setLandlord(dealer.getKitty());
+		game.landlordPlayer = landlord;
+		game.basicScore = landlord.getCalledScore();
+		GameLog.d(LOG_TAG, "Landlord is " + landlord.getPlayerName());
+		setStatus(Status.Playing);
+		for (Listener listener : listeners) {
+			listener.onLandlord(landlord, landlordCards);
+		}
+		currentType = null;
+		beginTurn(landlord);
+	}
+
+	private void beginTurn(Player player) {
+		currentPlayer = player;
+		waitingForHuman = !player.isAiPlayer();
+		for (Listener listener : listeners) {
+			listener.onTurn(player, currentType);
+		}
+	}
+
+	private void afterPlay(CardType type, boolean isFirst) {
+		Player player = currentPlayer;
+		if (type != null) {
+			currentType = type;
+			if (type instanceof BombType) {
+				game.boomCount++;
+			}
+		}
+		for (Listener listener : listeners) {
+			listener.onPlayed(player, type, isFirst);
+		}
+		if (player.getHandCards().isEmpty()) {
+			finish(player);
+			return;
+		}
+		Player next = player.getNextPlayer();
+		//另外两家都不出，由这位玩家开始新的一轮
+		if (next.getPriorPlayer().getLastCards() == null
+				&& next.getNextPlayer().getLastCards() == null) {
+			currentType = null;
+		}
+		beginTurn(next);
+	}
+
+	//率先出完牌的玩家不是地主时，另一个农民同时获胜
+	private void finish(Player zeroCardPlayer) {
+		winners.add(zeroCardPlayer);
+		if (!zeroCardPlayer.isLandlord()) {
+			winners.add(zeroCardPlayer.getNextPlayer().isLandlord()
+					? zeroCardPlayer.getPriorPlayer() : zeroCardPlayer.getNextPlayer());
+		}
+		GameLog.i(LOG_TAG, "winner:" + winners);
+		currentPlayer = null;
+		setStatus(Status.Gameover);
+		for (Listener listener : listeners) {
+			listener.onGameOver(winnersView);
+		}
+	}
+
+	private int minScore() {
+		return tempLandlord == null ? Game.BASIC_SCORE_NONE : tempLandlord.getCalledScore();
+	}
+
+	private void setStatus(Status status) {
+		game.status = status;
+		for (Listener listener : listeners) {
+			listener.onStatusChanged(status);
+		}
+	}
+
+	//清除上一次发牌留下的记录
+	private void resetRound() {
+		for (Player player : players) {
+			if (player.getHandCards() != null) {
+				player.reset();
+			}
+		}
+		landlordCards.clear();
+		winners.clear();
+		startPlayer = currentPlayer = tempLandlord = null;
+		currentType = null;
+		waitingForHuman = false;
+	}
+}
@@ -0,0 +1,504 @@
+package com.mym.landlords.ai;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+
+import com.mym.landlords.card.Card;
+import com.mym.landlords.card.CardSet;
+import com.mym.landlords.card.CardType;
+import com.mym.landlords.card.Dealer;
+import com.mym.landlords.card.MoveCode;
+import com.mym.landlords.card.MoveGenerator;
+
+/**
+ * 一局游戏的记录：发牌、叫分和出牌序列，可以编码为紧凑的二进制形式，参见 {@link GameRecordWriter}和
+ * {@link GameRecordReader}。
+ * <p>
+ * <h1>编码</h1>
+ * 所有多字节的值都是小端序，“变长整数”是每字节7位、最高位表示后面还有字节的无符号整数。
+ * <ul>
+ * <li>第0~1字节：第0位表示发牌是否直接记录（否则记录种子），第1~2位为第一个叫分的座位，第3~4位为叫分次数，
+ * 第5~10位依次为每次叫的分数（各2位）；</li>
+ * <li>发牌：8字节的种子（参见 {@link Dealer#deal(long)}），或者54张牌各用2位记录的去向（座位0~2，3为底牌），共14字节；</li>
+ * <li>其余的字节：从地主开始依次记录每一步出牌，每步一个变长整数。</li>
+ * </ul>
+ * 出牌记录为这手牌在 {@link MoveGenerator}列出的出牌中的序号，跟牌时0表示不出、其余的值减1为序号。
+ * 序号等于出牌的总数时表示这手牌不在列出的出牌中，后面再跟一个变长整数，按位记录出了手牌中的哪几张。
+ * 大多数出牌只需要1个字节，一局通常不超过50个字节。地主、底牌、胜负和炸弹数都可以由以上内容推算，不单独记录。
+ * </p>
+ * <p>
+ * <h1>花色</h1>
+ * 出牌只按点数记录，还原时每个点数总是选择花色序号较小的牌（与 {@link MoveCode#toCardSet(long, long)}相同）。
+ * 还原出的每手牌与实际打出的牌点数完全相同，但花色可能不同；发牌和每家的剩余点数总是准确的。
+ * 需要原样重现时，用记录的种子调用 {@link GameEngine#restart(long)}。
+ * </p>
+ * 记录对象可以反复使用，编码和解码都不创建对象，但不是线程安全的。座位按 {@link GameEngine}的出牌顺序编号为0、1、2。
+ */
+public final class GameRecord {
+
+	/** 一局记录编码后的最大字节数（不含长度）。 */
+	public static final int MAX_ENCODED_SIZE = 1024;
+	private static final int SEATS = 3;
+	private static final int KITTY = 3;					//发牌时表示底牌的去向
+	private static final int FLAG_EXPLICIT_DEAL = 1;
+	private static final int FIRST_BIDDER_SHIFT = 1;
+	private static final int BID_COUNT_SHIFT = 3;
+	private static final int BIDS_SHIFT = 5;
+	private static final int DEAL_BYTES = (CardSet.PACK_SIZE * 2 + 7) / 8;
+
+	private boolean seeded;
+	private long dealSeed;
+	private final long[] deal = new long[SEATS + 1];	//三家的手牌和底牌
+	private final Dealer dealer = new Dealer(0L);
+	private int firstBidder;
+	private int bidCount;
+	private final int[] bids = new int[SEATS];
+	private int moveCount;
+	private long[] moves = new long[64];				//每步出牌的卡牌集合，不出为空集合
+	//编码和解码时使用
+	private final long[] hands = new long[SEATS];
+	private final MoveGenerator generator = new MoveGenerator();
+
+	/**
+	 * 清除记录，发牌由种子决定。
+	 * @param seed 发牌的种子，参见 {@link GameEngine#getDealSeed()}。
+	 */
+	public void reset(long seed) {
+		seeded = true;
+		dealSeed = seed;
+		dealer.deal(seed);
+		for (int seat = 0; seat < SEATS; seat++) {
+			deal[seat] = dealer.getHand(seat);
+		}
+		deal[SEATS] = dealer.getKitty();
+		clearActions();
+	}
+
+	/**
+	 * 清除记录，直接记录三家的手牌，例如由 {@link com.mym.landlords.card.DealSampler}生成的牌局。
+	 * 其余的牌为底牌，张数不限，例如地主已经拿到底牌的20、17、17张的牌局没有底牌。
+	 */
+	public void reset(long hand0, long hand1, long hand2) {
+		if ((hand0 & hand1) != 0 || ((hand0 | hand1) & hand2) != 0) {
+			throw new IllegalArgumentException("hands overlap.");
+		}
+		seeded = false;
+		dealSeed = 0L;
+		deal[0] = hand0;
+		deal[1] = hand1;
+		deal[2] = hand2;
+		deal[SEATS] = CardSet.FULL_PACK & ~(hand0 | hand1 | hand2);
+		clearActions();
+	}
+
+	private void clearActions() {
+		firstBidder = 0;
+		bidCount = 0;
+		moveCount = 0;
+	}
+
+	/**
+	 * 记录一次叫分。
+	 * @param seat 叫分的座位，第一次之后必须按出牌顺序轮流。
+	 * @param score 叫的分数，{@link Game#BASIC_SCORE_NONE}表示不叫。
+	 */
+	public void addBid(int seat, int score) {
+		if (bidCount == 0) {
+			firstBidder = seat;
+		}
+		else if (seat != (firstBidder + bidCount) % SEATS) {
+			throw new IllegalArgumentException("seat " + seat + " cannot bid now.");
+		}
+		if (bidCount == SEATS || score < Game.BASIC_SCORE_NONE || score > Game.BASIC_SCORE_THREE) {
+			throw new IllegalArgumentException("invalid bid:" + score);
+		}
+		bids[bidCount++] = score;
+	}
+
+	/**
+	 * 记录一步出牌，第一步由地主出，之后按出牌顺序轮流。
+	 * @param cardSet 打出的卡牌集合，{@link CardSet#EMPTY}表示不出。
+	 */
+	public void addMove(long cardSet) {
+		if (moveCount == moves.length) {
+			moves = Arrays.copyOf(moves, moveCount * 2);
+		}
+		moves[moveCount++] = cardSet;
+	}
+
+	/** 发牌是否由种子决定。 */
+	public boolean isSeeded() {
+		return seeded;
+	}
+
+	/** 获得发牌的种子，仅当 {@link #isSeeded()}时有意义。 */
+	public long getDealSeed() {
+		return dealSeed;
+	}
+
+	/** 获得某家发到的手牌（不含底牌）。 */
+	public long getHand(int seat) {
+		return deal[seat];
+	}
+
+	/** 获得底牌。 */
+	public long getKitty() {
+		return deal[SEATS];
+	}
+
+	/** 获得第一个叫分的座位。 */
+	public int getFirstBidder() {
+		return firstBidder;
+	}
+
+	public int getBidCount() {
+		return bidCount;
+	}
+
+	/** 获得第 index 次叫的分数，叫分的座位为 (第一个叫分的座位 + index) % 3。 */
+	public int getBid(int index) {
+		return bids[index];
+	}
+
+	/**
+	 * 获得地主的座位，即叫分最高的座位。
+	 * @return 还没有人叫分时返回-1。
+	 */
+	public int getLandlord() {
+		int landlord = -1;
+		int highest = Game.BASIC_SCORE_NONE;
+		for (int i = 0; i < bidCount; i++) {
+			if (bids[i] > highest) {
+				highest = bids[i];
+				landlord = (firstBidder + i) % SEATS;
+			}
+		}
+		return landlord;
+	}
+
+	public int getMoveCount() {
+		return moveCount;
+	}
+
+	/** 获得第 index 步打出的卡牌集合，不出为 {@link CardSet#EMPTY}。 */
+	public long getMove(int index) {
+		return moves[index];
+	}
+
+	/** 获得第 index 步出牌的座位。 */
+	public int getMoveSeat(int index) {
+		return (getLandlord() + index) % SEATS;
+	}
+
+	/**
+	 * 把记录编码到缓冲区的当前位置，缓冲区应当为小端序。
+	 * @throws IllegalStateException 出牌序列不合法，例如牌不在手中、自由出牌时不出，或者本局结束后仍有出牌。
+	 */
+	public void encode(ByteBuffer out) {
+		int header = (seeded ? 0 : FLAG_EXPLICIT_DEAL) | (firstBidder << FIRST_BIDDER_SHIFT)
+				| (bidCount << BID_COUNT_SHIFT);
+		for (int i = 0; i < bidCount; i++) {
+			header |= bids[i] << (BIDS_SHIFT + i * 2);
+		}
+		out.putShort((short) header);
+		if (seeded) {
+			out.putLong(dealSeed);
+		}
+		else {
+			encodeDeal(out);
+		}
+		int landlord = beginMoves();
+		long before = MoveCode.NONE;
+		int passes = 0;
+		for (int i = 0; i < moveCount; i++) {
+			int seat = (landlord + i) % SEATS;
+			long hand = hands[seat];
+			long cards = moves[i];
+			if (hand == CardSet.EMPTY) {
+				throw new IllegalStateException("move " + i + " after game over.");
+			}
+			if (cards == CardSet.EMPTY) {
+				if (before == MoveCode.NONE) {
+					throw new IllegalStateException("move " + i + " passes a free turn.");
+				}
+				putVarint(out, 0);
+				if (++passes == SEATS - 1) {
+					before = MoveCode.NONE;
+				}
+				continue;
+			}
+			//记录的手牌中花色可能与实际不同，只要求每个点数的张数足够
+			long code = MoveCode.fromCardSet(cards);
+			long played = lowestSuits(hand, cards);
+			if (code == MoveCode.NONE || CardSet.size(played) != CardSet.size(cards)) {
+				throw new IllegalStateException("invalid move " + i + ":" + cards);
+			}
+			int base = before == MoveCode.NONE ? 0 : 1;
+			int index = indexOf(hand, before, code);
+			//列出的出牌中找到了这手牌，并且按序号还原的结果相同
+			if (index >= 0 && MoveCode.toCardSet(code, hand) == played) {
+				putVarint(out, base + index);
+			}
+			else {
+				putVarint(out, base + (index >= 0 ? countMoves(hand, before) : -1 - index));
+				putVarint(out, compress(hand, played));
+			}
+			hands[seat] = hand & ~played;
+			before = code;
+			passes = 0;
+		}
+	}
+
+	/**
+	 * 从缓冲区的当前位置解码一局记录，直到缓冲区的 limit 为止。
+	 * @throws IllegalArgumentException 数据不是合法的记录。
+	 * @throws java.nio.BufferUnderflowException 数据不完整。
+	 */
+	public void decode(ByteBuffer in) {
+		int header = in.getShort() & 0xFFFF;
+		if ((header & FLAG_EXPLICIT_DEAL) == 0) {
+			reset(in.getLong());
+		}
+		else {
+			decodeDeal(in);
+		}
+		int first = (header >>> FIRST_BIDDER_SHIFT) & 3;
+		int count = (header >>> BID_COUNT_SHIFT) & 3;
+		if (first >= SEATS) {
+			throw new IllegalArgumentException("invalid first bidder:" + first);
+		}
+		for (int i = 0; i < count; i++) {
+			addBid((first + i) % SEATS, (header >>> (BIDS_SHIFT + i * 2)) & 3);
+		}
+		if (!in.hasRemaining()) {
+			return;
+		}
+		int landlord = getLandlord();
+		if (landlord < 0) {
+			throw new IllegalArgumentException("moves without landlord.");
+		}
+		beginMoves();
+		long before = MoveCode.NONE;
+		int passes = 0;
+		for (int i = 0; in.hasRemaining(); i++) {
+			int seat = (landlord + i) % SEATS;
+			long hand = hands[seat];
+			int index = getVarint(in);
+			if (before != MoveCode.NONE) {
+				if (index == 0) {
+					addMove(CardSet.EMPTY);
+					if (++passes == SEATS - 1) {
+						before = MoveCode.NONE;
+					}
+					continue;
+				}
+				index--;
+			}
+			long code = MoveCode.NONE;
+			int listed = 0;
+			generator.reset(hand, before);
+			while (listed <= index && generator.hasNext()) {
+				code = generator.next();
+				listed++;
+			}
+			long played;
+			if (listed == index + 1) {
+				played = MoveCode.toCardSet(code, hand);
+			}
+			else if (listed == index) {
+				//序号等于出牌的总数，后面是按位记录的卡牌
+				played = expand(hand, getVarint(in));
+				code = MoveCode.fromCardSet(played);
+			}
+			else {
+				played = CardSet.EMPTY;
+			}
+			if (hand == CardSet.EMPTY || played == CardSet.EMPTY || code == MoveCode.NONE) {
+				throw new IllegalArgumentException("invalid move " + i);
+			}
+			addMove(played);
+			hands[seat] = hand & ~played;
+			before = code;
+			passes = 0;
+		}
+	}
+
+	//准备逐步出牌：复制三家的手牌，底牌归地主，返回地主的座位
+	private int beginMoves() {
+		int landlord = getLandlord();
+		if (landlord < 0) {
+			if (moveCount > 0) {
+				throw new IllegalStateException("moves without landlord.");
+			}
+			return 0;
+		}
+		System.arraycopy(deal, 0, hands, 0, SEATS);
+		hands[landlord] |= deal[SEATS];
+		return landlord;
+	}
+
+	//返回这手牌在列出的出牌中的序号；找不到时返回 -1 - 出牌的总数
+	private int indexOf(long hand, long before, long code) {
+		int index = 0;
+		generator.reset(hand, before);
+		while (generator.hasNext()) {
+			if (generator.next() == code) {
+				return index;
+			}
+			index++;
+		}
+		return -1 - index;
+	}
+
+	private int countMoves(long hand, long before) {
+		int count = 0;
+		generator.reset(hand, before);
+		while (generator.hasNext()) {
+			generator.next();
+			count++;
+		}
+		return count;
+	}
+
+	private void encodeDeal(ByteBuffer out) {
+		long low = 0L;		//第0~31张
+		long high = 0L;		//第32~53张
+		for (int seat = 0; seat <= SEATS; seat++) {
+			for (long rest = deal[seat]; rest != CardSet.EMPTY; rest = CardSet.removeFirst(rest)) {
+				int ordinal = CardSet.first(rest);
+				if (ordinal < 32) {
+					low |= (long) seat << (ordinal * 2);
+				}
+				else {
+					high |= (long) seat << ((ordinal - 32) * 2);
+				}
+			}
+		}
+		out.putLong(low);
+		for (int i = 8; i < DEAL_BYTES; i++, high >>>= 8) {
+			out.put((byte) high);
+		}
+	}
+
+	private void decodeDeal(ByteBuffer in) {
+		long low = in.getLong();
+		long high = 0L;
+		for (int i = 8; i < DEAL_BYTES; i++) {
+			high |= (in.get() & 0xFFL) << ((i - 8) * 8);
+		}
+		Arrays.fill(hands, CardSet.EMPTY);
+		for (int ordinal = 0; ordinal < CardSet.PACK_SIZE; ordinal++) {
+			int place = (int) (ordinal < 32 ? low >>> (ordinal * 2) : high >>> ((ordinal - 32) * 2)) & 3;
+			if (place != KITTY) {
+				hands[place] |= 1L << ordinal;
+			}
+		}
+		reset(hands[0], hands[1], hands[2]);
+	}
+
+	//对 cards 中的每个点数，从手牌中选出同样张数、花色序号最小的牌
+	private static long lowestSuits(long hand, long cards) {
+		long played = CardSet.EMPTY;
+		for (long rest = cards; rest != CardSet.EMPTY; ) {
+			int value = CardSet.valueOfOrdinal(CardSet.first(rest));
+			long available = CardSet.ofValue(hand, value);
+			for (int n = CardSet.countOfValue(cards, value); n > 0 && available != CardSet.EMPTY; n--) {
+				long lowest = available & -available;
+				played |= lowest;
+				available ^= lowest;
+			}
+			rest &= ~CardSet.valueMask(value);
+		}
+		return played;
+	}
+
+	//把手牌的子集压缩为按手牌顺序编号的位掩码
+	private static int compress(long hand, long subset) {
+		int bits = 0;
+		int bit = 0;
+		for (long rest = hand; rest != CardSet.EMPTY; rest = CardSet.removeFirst(rest), bit++) {
+			if ((subset & rest & -rest) != 0) {
+				bits |= 1 << bit;
+			}
+		}
+		return bits;
+	}
+
+	private static long expand(long hand, int bits) {
+		long subset = CardSet.EMPTY;
+		for (long rest = hand; rest != CardSet.EMPTY && bits != 0; rest = CardSet.removeFirst(rest), bits >>>= 1) {
+			if ((bits & 1) != 0) {
+				subset |= rest & -rest;
+			}
+		}
+		return bits == 0 ? subset : CardSet.EMPTY;
+	}
+
+	/**
+	 * 写入一个变长整数。
+	 * @param value 非负整数。
+	 */
+	static void putVarint(ByteBuffer out, int value) {
+		while ((value & ~0x7F) != 0) {
+			out.put((byte) ((value & 0x7F) | 0x80));
+			value >>>= 7;
+		}
+		out.put((byte) value);
+	}
+
+	/**
+	 * 读取一个变长整数。
+	 * @throws IllegalArgumentException 超过5个字节。
+	 */
+	static int getVarint(ByteBuffer in) {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.get();
+			value |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				return value;
+			}
+		}
+		throw new IllegalArgumentException("malformed varint.");
+	}
+
+	/**
+	 * 在 {@link GameEngine}运行时填写记录的监听器。每次发牌时清除记录，因此三家都不叫而重新发牌时只保留最后一副牌。
+	 * 本局结束后通过 {@link #getRecord()}取得记录。
+	 * <pre>
+	 * GameRecord.Recorder recorder = new GameRecord.Recorder(engine);
+	 * engine.addListener(recorder);
+	 * engine.run();
+	 * writer.write(recorder.getRecord());
+	 * </pre>
+	 */
+	public static final class Recorder extends GameEngine.SimpleListener {
+		private final GameEngine engine;
+		private final GameRecord record = new GameRecord();
+
+		public Recorder(GameEngine engine) {
+			this.engine = engine;
+		}
+
+		/** 获得正在填写的记录，每局都是同一个对象。 */
+		public GameRecord getRecord() {
+			return record;
+		}
+
+		@Override
+		public void onCardsDealt(List<Card> landlordCards) {
+			record.reset(engine.getDealSeed());
+		}
+
+		@Override
+		public void onCalled(Player player, int score) {
+			record.addBid(engine.getSeat(player), score);
+		}
+
+		@Override
+		public void onPlayed(Player player, CardType type, boolean isFirst) {
+			record.addMove(type == null ? CardSet.EMPTY : type.getCardSet());
+		}
+	}
+}
@@ -0,0 +1,126 @@
+package com.mym.landlords.ai;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 逐局读取 {@link GameRecordWriter}写入的记录文件。
+ * <pre>
+ * GameRecord record = new GameRecord();
+ * GameRecordReader reader = new GameRecordReader(file);
+ * try {
+ *     while (reader.next(record)) {
+ *         ...
+ *     }
+ * } finally {
+ *     reader.close();
+ * }
+ * </pre>
+ * 文件通过一个反复使用的缓冲区分段读入，每局记录都解码到调用者提供的同一个 {@link GameRecord}对象中，
+ * 出牌以卡牌集合的形式给出，遍历整个文件不会创建 {@link com.mym.landlords.card.Card}或其他对象。
+ * 读取器不是线程安全的。
+ */
+public final class GameRecordReader implements Closeable {
+
+	private final FileInputStream stream;
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(GameRecordWriter.BUFFER_SIZE)
+			.order(ByteOrder.LITTLE_ENDIAN);
+	private long records;
+
+	/**
+	 * 打开记录文件并检查文件开头。
+	 * @throws IOException 文件不是记录文件，或者版本不受支持。
+	 */
+	public GameRecordReader(File file) throws IOException {
+		stream = new FileInputStream(file);
+		channel = stream.getChannel();
+		buffer.flip();
+		byte[] magic = GameRecordWriter.MAGIC;
+		boolean valid = fill(magic.length + 1);
+		for (int i = 0; valid && i < magic.length; i++) {
+			valid = buffer.get() == magic[i];
+		}
+		if (!valid || buffer.get() != GameRecordWriter.VERSION) {
+			stream.close();
+			throw new IOException("not a game record file:" + file);
+		}
+	}
+
+	/**
+	 * 读取下一局记录。
+	 * @param record 用于保存结果的记录对象，原有的内容被覆盖。
+	 * @return 已经读到文件末尾时返回false。
+	 * @throws IOException 读取失败，或者记录不完整、已损坏。
+	 */
+	public boolean next(GameRecord record) throws IOException {
+		if (!fill(1)) {
+			return false;
+		}
+		int length = 0;
+		for (int shift = 0; ; shift += 7) {
+			if (shift > 14 || !fill(1)) {
+				throw new IOException("corrupted length at record " + records);
+			}
+			int b = buffer.get();
+			length |= (b & 0x7F) << shift;
+			if (b >= 0) {
+				break;
+			}
+		}
+		if (length > GameRecord.MAX_ENCODED_SIZE) {
+			throw new IOException("record " + records + " is too long:" + length);
+		}
+		if (!fill(length)) {
+			throw new EOFException("truncated record " + records);
+		}
+		int limit = buffer.limit();
+		int end = buffer.position() + length;
+		buffer.limit(end);
+		try {
+			record.decode(buffer);
+		} catch (IllegalArgumentException | BufferUnderflowException e) {
+			throw new IOException("corrupted record " + records, e);
+		} finally {
+			buffer.limit(limit);
+			buffer.position(end);
+		}
+		records++;
+		return true;
+	}
+
+	/** 获得已经读取的记录数目。 */
+	public long getRecordCount() {
+		return records;
+	}
+
+	@Override
+	public void close() throws IOException {
+		stream.close();
+	}
+
+	//确保缓冲区中至少有 count 个字节未读，到达文件末尾时返回false
+	private boolean fill(int count) throws IOException {
+		if (buffer.remaining() >= count) {
+			return true;
+		}
+		buffer.compact();
+		try {
+			while (buffer.position() < count) {
+				if (channel.read(buffer) < 0) {
+					break;
+				}
+			}
+		} finally {
+			buffer.flip();
+		}
+		return buffer.remaining() >= count;
+	}
+}
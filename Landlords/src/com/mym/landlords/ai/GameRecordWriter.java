@@ -0,0 +1,104 @@
+package com.mym.landlords.ai;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * 把 {@link GameRecord}逐局追加到文件末尾的写入器。
+ * <p>
+ * 文件以 {@link #MAGIC}和版本号 {@link #VERSION}开头（只在新文件中写入），之后每局记录由一个变长整数表示的长度
+ * 和 {@link GameRecord#encode(ByteBuffer)}的结果组成。记录先编码到一个反复使用的缓冲区中，
+ * 缓冲区满时才写入文件，因此写入记录不产生任何对象，也很少进行系统调用。
+ * </p>
+ * 写入器不是线程安全的，多个线程应当各自写入不同的文件。用完后必须调用 {@link #close()}，否则缓冲区中的记录会丢失。
+ */
+public final class GameRecordWriter implements Closeable {
+
+	/** 记录文件开头的标识。 */
+	static final byte[] MAGIC = {'L', 'L', 'G', 'R'};
+	/** 记录格式的版本号。 */
+	static final byte VERSION = 1;
+	/** 写入缓冲区的大小。 */
+	static final int BUFFER_SIZE = 64 * 1024;
+	//长度字段最多占用的字节数
+	private static final int MAX_LENGTH_BYTES = 2;
+
+	private final FileOutputStream stream;
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+	private final ByteBuffer encoded = ByteBuffer.allocate(GameRecord.MAX_ENCODED_SIZE)
+			.order(ByteOrder.LITTLE_ENDIAN);
+	private long records;
+	private long bytes;
+
+	/**
+	 * 打开记录文件，文件不存在时创建，已经存在时在末尾追加。
+	 */
+	public GameRecordWriter(File file) throws IOException {
+		stream = new FileOutputStream(file, true);
+		channel = stream.getChannel();
+		if (channel.size() == 0) {
+			buffer.put(MAGIC);
+			buffer.put(VERSION);
+		}
+	}
+
+	/**
+	 * 追加一局记录。
+	 * @throws IllegalStateException 记录的出牌序列不合法，参见 {@link GameRecord#encode(ByteBuffer)}。
+	 */
+	public void write(GameRecord record) throws IOException {
+		encoded.clear();
+		record.encode(encoded);
+		encoded.flip();
+		int length = encoded.remaining();
+		if (buffer.remaining() < length + MAX_LENGTH_BYTES) {
+			flushBuffer();
+		}
+		int start = buffer.position();
+		GameRecord.putVarint(buffer, length);
+		buffer.put(encoded);
+		bytes += buffer.position() - start;
+		records++;
+	}
+
+	/** 获得已经写入的记录数目。 */
+	public long getRecordCount() {
+		return records;
+	}
+
+	/** 获得已经写入的记录的总字节数（含长度，不含文件开头）。 */
+	public long getRecordBytes() {
+		return bytes;
+	}
+
+	/**
+	 * 把缓冲区中的记录写入文件。
+	 */
+	public void flush() throws IOException {
+		flushBuffer();
+		stream.flush();
+	}
+
+	@Override
+	public void close() throws IOException {
+		try {
+			flushBuffer();
+		} finally {
+			stream.close();
+		}
+	}
+
+	private void flushBuffer() throws IOException {
+		buffer.flip();
+		while (buffer.hasRemaining()) {
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+}
@@ -0,0 +1,49 @@
+package com.mym.landlords.ai;
+
+import com.mym.landlords.card.CardSet;
+import com.mym.landlords.card.MoveCode;
+import com.mym.landlords.card.RankHistogram;
+
+/**
+ * 贪心出牌策略，直接按 {@link RolloutPolicy}的规则出牌，不进行搜索，耗时与截止时间无关。
+ * <p>对手的手牌只用于判断张数（例如对手快出完时才使用炸弹），因此不需要猜测其内容。</p>
+ * 策略对象不是线程安全的，每个玩家应当使用各自的对象。
+ */
+public final class GreedyStrategy implements PlayStrategy {
+
+	private static final int SEATS = 3;
+
+	private final RolloutPolicy policy = new RolloutPolicy();
+	private final long[] layers = new long[SEATS];
+	private volatile boolean cancelled;
+
+	@Override
+	public long decide(long[] known, int[] sizes, long unseenCards, int landlordSeat,
+			long before, int beforeSeat, BeliefState belief, long deadline) {
+		if (cancelled) {
+			return UNDECIDED;
+		}
+		layers[0] = RolloutPolicy.toLayers(RankHistogram.of(known[0]));
+		long rest = unseenCards;
+		for (int seat = 1; seat < SEATS; seat++) {
+			//任取张数相同的牌代替对手的手牌
+			long hand = CardSet.EMPTY;
+			for (int i = 0; i < sizes[seat] && rest != 0; i++) {
+				long card = rest & -rest;
+				hand |= card;
+				rest ^= card;
+			}
+			layers[seat] = RolloutPolicy.toLayers(RankHistogram.of(hand));
+		}
+		long lastMove = before;
+		if (before != MoveCode.NONE && beforeSeat == 0) {
+			lastMove = MoveCode.NONE;
+		}
+		return policy.choose(layers, landlordSeat, 0, lastMove, beforeSeat);
+	}
+
+	@Override
+	public void cancel() {
+		cancelled = true;
+	}
+}
@@ -0,0 +1,149 @@
+package com.mym.landlords.ai;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 手牌分析结果的缓存，供 {@link AI#makeCards(java.util.List)}使用。
+ * <p>
+ * <h1>键和值</h1>
+ * 手牌的组合结果只与每种点数的张数有关，而与花色无关，因此使用手牌的点数直方图（参见
+ * {@link com.mym.landlords.card.RankHistogram}）作为键。值是组合结果中各个牌型的出牌编码（参见
+ * {@link com.mym.landlords.card.MoveCode}），按排好的顺序保存在数组中，使用时再从实际的手牌中挑出对应的卡牌。
+ * 缓存的数组不会被修改，也不会暴露给调用者。
+ * </p>
+ * <p>
+ * <h1>容量与并发</h1>
+ * 缓存按键分为若干段，每段是一个按访问顺序排列的 {@link LinkedHashMap}，超过容量时淘汰最久未使用的项。
+ * 不同段之间互不影响，因此多个AI或模拟线程可以同时使用同一个缓存。
+ * </p>
+ */
+public final class HandAnalysisCache {
+
+	private static final int SEGMENT_COUNT = 16;
+
+	private final Segment[] segments;
+	private final AtomicLong hitCount = new AtomicLong();
+	private final AtomicLong missCount = new AtomicLong();
+	private final AtomicLong evictionCount = new AtomicLong();
+
+	/**
+	 * 创建一个缓存。
+	 * @param capacity 最多缓存的手牌数目，必须为正数。
+	 */
+	public HandAnalysisCache(int capacity) {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("invalid capacity:" + capacity);
+		}
+		int segmentCapacity = (capacity + SEGMENT_COUNT - 1) / SEGMENT_COUNT;
+		segments = new Segment[SEGMENT_COUNT];
+		for (int i = 0; i < SEGMENT_COUNT; i++) {
+			segments[i] = new Segment(segmentCapacity);
+		}
+	}
+
+	/**
+	 * 获取缓存的组合结果。
+	 * @param histogram 手牌的点数直方图。
+	 * @return 返回各个牌型的出牌编码；如果没有缓存则返回null。
+	 */
+	long[] get(long histogram) {
+		Segment segment = segmentFor(histogram);
+		long[] moves;
+		synchronized (segment) {
+			moves = segment.get(histogram);
+		}
+		if (moves == null) {
+			missCount.incrementAndGet();
+		} else {
+			hitCount.incrementAndGet();
+		}
+		return moves;
+	}
+
+	/**
+	 * 缓存组合结果。
+	 * @param histogram 手牌的点数直方图。
+	 * @param moves 各个牌型的出牌编码，调用后不能再修改该数组。
+	 */
+	void put(long histogram, long[] moves) {
+		Segment segment = segmentFor(histogram);
+		synchronized (segment) {
+			segment.put(histogram, moves);
+		}
+	}
+
+	/**
+	 * 清空缓存，但不重置计数。
+	 */
+	public void clear() {
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				segment.clear();
+			}
+		}
+	}
+
+	/** 获得当前缓存的手牌数目。 */
+	public int size() {
+		int size = 0;
+		for (Segment segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	/** 获得命中次数。 */
+	public long getHitCount() {
+		return hitCount.get();
+	}
+
+	/** 获得未命中次数。 */
+	public long getMissCount() {
+		return missCount.get();
+	}
+
+	/** 获得因超出容量而淘汰的次数。 */
+	public long getEvictionCount() {
+		return evictionCount.get();
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder();
+		builder.append("HandAnalysisCache [size=").append(size())
+				.append(", hit=").append(getHitCount())
+				.append(", miss=").append(getMissCount())
+				.append(", eviction=").append(getEvictionCount()).append("]");
+		return builder.toString();
+	}
+
+	private Segment segmentFor(long histogram) {
+		//直方图的低位变化较少，先混合高位再取段号
+		long hash = histogram * 0x9E3779B97F4A7C15L;
+		return segments[(int) (hash >>> 60) & (SEGMENT_COUNT - 1)];
+	}
+
+	//按访问顺序淘汰的一段缓存
+	private final class Segment extends LinkedHashMap<Long, long[]> {
+		private static final long serialVersionUID = 1L;
+		private final int capacity;
+
+		Segment(int capacity) {
+			super(16, 0.75f, true);
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Long, long[]> eldest) {
+			if (size() > capacity) {
+				evictionCount.incrementAndGet();
+				return true;
+			}
+			return false;
+		}
+	}
+}
@@ -0,0 +1,327 @@
+package com.mym.landlords.ai;
+
+import java.util.Arrays;
+
+import com.mym.landlords.card.Card;
+import com.mym.landlords.card.CardKind;
+import com.mym.landlords.card.MoveCode;
+import com.mym.landlords.card.RankHistogram;
+
+/**
+ * 手牌拆分器，求出一手牌出完所需手数最少的组合方式。
+ * <p>
+ * <h1>目标</h1>
+ * 组合结果由单牌、对子、三条、顺子、连对、飞机（不带牌）、炸弹和王炸组成，与 {@link AI#makeCards(java.util.List)}
+ * 的结果一致。AI出三条时会带上一个2以下的单牌或对子（参见 {@link AI#optimizeThreeAttachments}），因此计算手数时，
+ * 每个三条可以“吸收”一个2以下的单牌或对子。手数相同时，优先选择控制牌更多的组合：炸弹、王炸以及由2或王组成的牌型各算一个控制牌。
+ * 例如一手牌中有4张相同点数的牌时，拆成三带一与保留炸弹的手数相同，但会保留炸弹。
+ * </p>
+ * <p>
+ * <h1>算法</h1>
+ * 每次取出点数最小的一张牌，枚举所有以它为最小点数的牌型，对剩余的直方图递归求解，并按直方图记忆结果。
+ * 三条吸收带牌的数目只与“尚未配对的三条或带牌的数目之差”有关，因此把这个差值也作为状态的一部分，使代价可以逐步累加。
+ * 搜索时按照当前的最优解和剩余牌的下界剪枝，被剪掉的状态只记录下界。
+ * </p>
+ * 拆分器对象可以反复使用，但不是线程安全的，每个线程应当使用各自的对象。
+ */
+public final class HandDecomposer {
+
+	/** 每一手牌的代价，控制牌从中扣除，因此手数总是优先比较。 */
+	public static final int PLAY_COST = 64;
+	private static final int INFINITY = Integer.MAX_VALUE / 2;
+	private static final int INDEX_2 = Card.CARD_VALUE_2 - Card.CARD_VALUE_3;
+	private static final int INDEX_JOKER_S = Card.CARD_VALUE_JOKER_S - Card.CARD_VALUE_3;
+	private static final int INDEX_JOKER_B = Card.CARD_VALUE_JOKER_B - Card.CARD_VALUE_3;
+	private static final int CHAIN_VALUE_KINDS = Card.CARD_VALUE_2 - Card.CARD_VALUE_3;
+	private static final long NIBBLE_MASK = 0xFL;
+	//2以下的点数所占的位
+	private static final long LOW_VALUES = (1L << (INDEX_2 * 4)) - 1;
+	//2和大小王所占的位
+	private static final long CONTROL_VALUES = ~LOW_VALUES;
+	private static final long ROCKET_HISTOGRAM = (1L << (INDEX_JOKER_S * 4))
+			| (1L << (INDEX_JOKER_B * 4));
+	private static final long ROCKET_CODE = MoveCode.encode(CardKind.ROCKET, 2,
+			Card.CARD_VALUE_JOKER_S, 1, 0);
+	//RUNS[n]表示连续n个点数各一张的直方图（从最低位开始）
+	private static final long[] RUNS = new long[CHAIN_VALUE_KINDS + 1];
+	static {
+		for (int n = 1; n <= CHAIN_VALUE_KINDS; n++) {
+			RUNS[n] = (RUNS[n - 1] << 4) | 1L;
+		}
+	}
+
+	private static final int INITIAL_CAPACITY = 1 << 12;
+	//记忆表，使用开放寻址；stamps与generation相等的项才有效，因此每次求解不需要清空
+	private long[] keys = new long[INITIAL_CAPACITY];
+	private int[] pendings = new int[INITIAL_CAPACITY];
+	private int[] values = new int[INITIAL_CAPACITY];
+	private boolean[] exacts = new boolean[INITIAL_CAPACITY];
+	private long[] bestMoves = new long[INITIAL_CAPACITY];
+	private int[] stamps = new int[INITIAL_CAPACITY];
+	private int generation;
+	private int size;
+
+	/**
+	 * 求出手数最少的组合。
+	 * @param histogram 手牌的点数直方图，参见 {@link RankHistogram}。
+	 * @return 返回各个牌型的出牌编码，按 {@link MoveCode#sortKey(long)}从小到大排列。
+	 */
+	public long[] decompose(long histogram) {
+		newGeneration();
+		search(histogram, 0, INFINITY);
+		long[] moves = new long[RankHistogram.size(histogram)];
+		int count = 0;
+		long rest = histogram;
+		int pending = 0;
+		while (rest != 0) {
+			pending = clampPending(rest, pending);
+			int slot = find(rest, pending);
+			long move = bestMoves[slot];
+			moves[count++] = move;
+			pending = nextPending(move, pending);
+			rest -= MoveCode.toHistogram(move);
+		}
+		long[] result = new long[count];
+		//插入排序，保持相同排序键的牌型的相对顺序
+		for (int i = 0; i < count; i++) {
+			long move = moves[i];
+			int key = MoveCode.sortKey(move);
+			int j = i;
+			for (; j > 0 && MoveCode.sortKey(result[j - 1]) > key; j--) {
+				result[j] = result[j - 1];
+			}
+			result[j] = move;
+		}
+		return result;
+	}
+
+	/**
+	 * 计算出完一手牌所需的最少手数，即 {@link #decompose(long)}的结果中未被三条带走的牌型数目。
+	 * @param histogram 手牌的点数直方图。
+	 */
+	public int countPlays(long histogram) {
+		newGeneration();
+		int value = search(histogram, 0, INFINITY);
+		//控制牌的数目一定小于每手牌的代价
+		return (value + PLAY_COST - 1) / PLAY_COST;
+	}
+
+	/**
+	 * 计算最优组合的代价：最少手数乘以 {@link #PLAY_COST}，再减去该组合中控制牌的数目。代价越小，手牌越好。
+	 * @param histogram 手牌的点数直方图。
+	 */
+	public int cost(long histogram) {
+		newGeneration();
+		return search(histogram, 0, INFINITY);
+	}
+
+	/*
+	 * 对剩余的直方图求解。pending为正数表示有多少个带牌还没有三条可带，为负数表示有多少个三条还没有带牌。
+	 * 返回值小于bound时是精确值，否则只是一个下界。
+	 */
+	private int search(long histogram, int pending, int bound) {
+		if (histogram == 0) {
+			return 0;
+		}
+		pending = clampPending(histogram, pending);
+		int slot = find(histogram, pending);
+		if (slot >= 0 && (exacts[slot] || values[slot] >= bound)) {
+			return values[slot];
+		}
+		int lowest = Long.numberOfTrailingZeros(histogram) >>> 2;
+		int count = (int) ((histogram >>> (lowest * 4)) & NIBBLE_MASK);
+		int best = INFINITY;
+		long bestMove = MoveCode.NONE;
+		//先尝试张数多的牌型，尽早得到较小的上界
+		if (lowest < CHAIN_VALUE_KINDS) {
+			for (int width = 3; width >= 1; width--) {
+				if (count < width) {
+					continue;
+				}
+				int kind = width == 3 ? CardKind.AIRPLANE
+						: (width == 2 ? CardKind.DOUBLE_STRAIGHT : CardKind.STRAIGHT);
+				int minLength = width == 3 ? 2 : (width == 2 ? 3 : 5);
+				int length = StraightAnalyst.runLengthFrom(
+						StraightAnalyst.chainMask(histogram, width), lowest);
+				for (; length >= minLength; length--) {
+					long move = MoveCode.encode(kind, width * length, Card.CARD_VALUE_3
+							+ lowest, length, 0);
+					int cost = stepCost(move, pending);
+					int limit = Math.min(best, bound) - cost;
+					long rest = histogram - width * (RUNS[length] << (lowest * 4));
+					if (lowerBound(rest, nextPending(move, pending)) >= limit) {
+						continue;
+					}
+					int value = cost + search(rest, nextPending(move, pending), limit);
+					if (value < best) {
+						best = value;
+						bestMove = move;
+					}
+				}
+			}
+		}
+		if (lowest == INDEX_JOKER_S && histogram == ROCKET_HISTOGRAM) {
+			int value = stepCost(ROCKET_CODE, pending);
+			if (value < best) {
+				best = value;
+				bestMove = ROCKET_CODE;
+			}
+		}
+		for (int width = Math.min(count, 4); width >= 1; width--) {
+			int kind = width == 4 ? CardKind.BOMB : (width == 3 ? CardKind.THREE
+					: (width == 2 ? CardKind.PAIR : CardKind.SINGLE));
+			long move = MoveCode.encode(kind, width, Card.CARD_VALUE_3 + lowest, 1, 0);
+			int cost = stepCost(move, pending);
+			int limit = Math.min(best, bound) - cost;
+			long rest = histogram - ((long) width << (lowest * 4));
+			if (lowerBound(rest, nextPending(move, pending)) >= limit) {
+				continue;
+			}
+			int value = cost + search(rest, nextPending(move, pending), limit);
+			if (value < best) {
+				best = value;
+				bestMove = move;
+			}
+		}
+		if (best < bound) {
+			store(histogram, pending, best, true, bestMove);
+			return best;
+		}
+		store(histogram, pending, bound, false, MoveCode.NONE);
+		return bound;
+	}
+
+	//出一手牌的代价：一手牌扣除被带走的部分，再扣除控制牌
+	private static int stepCost(long move, int pending) {
+		int kind = MoveCode.kind(move);
+		int plays = 1;
+		if (kind == CardKind.THREE && pending > 0) {
+			plays = 0;
+		} else if (isKicker(move) && pending < 0) {
+			plays = 0;
+		}
+		int control = (kind == CardKind.BOMB || kind == CardKind.ROCKET
+				|| MoveCode.primaryValue(move) >= Card.CARD_VALUE_2) ? 1 : 0;
+		return plays * PLAY_COST - control;
+	}
+
+	private static int nextPending(long move, int pending) {
+		if (MoveCode.kind(move) == CardKind.THREE) {
+			return pending - 1;
+		}
+		return isKicker(move) ? pending + 1 : pending;
+	}
+
+	//三条可以带的单牌或对子
+	private static boolean isKicker(long move) {
+		int kind = MoveCode.kind(move);
+		return (kind == CardKind.SINGLE || kind == CardKind.PAIR)
+				&& MoveCode.primaryValue(move) < Card.CARD_VALUE_2;
+	}
+
+	//超出剩余牌所能配对数目的差值不会再影响结果，截断后可以合并更多状态
+	private static int clampPending(long histogram, int pending) {
+		int cards = RankHistogram.size(histogram);
+		if (pending > cards / 3) {
+			return cards / 3;
+		}
+		if (pending < -cards) {
+			return -cards;
+		}
+		return pending;
+	}
+
+	/*
+	 * 剩余牌的代价下界：含有王的牌型至少一手；其余的牌在没有尚未配对的三条或带牌时至少一手。
+	 * 尚未带走的带牌可以让之后的三条都不算手数，多余的三条也可以带走2以下的牌，这两种情况下只能保守估计。
+	 * 控制牌的数目不超过2和王的张数加上炸弹的个数。
+	 */
+	private static int lowerBound(long histogram, int pending) {
+		if (histogram == 0) {
+			return 0;
+		}
+		int jokers = (histogram & ROCKET_HISTOGRAM) != 0 ? 1 : 0;
+		int others = 0;
+		if (pending == 0) {
+			others = (histogram & ~ROCKET_HISTOGRAM) != 0 ? 1 : 0;
+		} else if (pending < 0) {
+			others = (histogram & (NIBBLE_MASK << (INDEX_2 * 4))) != 0 ? 1 : 0;
+		}
+		int controls = RankHistogram.size(histogram & CONTROL_VALUES)
+				+ Integer.bitCount(RankHistogram.valuesWithCount(histogram, 4));
+		return (jokers + others) * PLAY_COST - controls;
+	}
+
+	private void newGeneration() {
+		generation++;
+		size = 0;
+		if (generation == 0) {
+			//计数回绕后旧的标记可能重新生效，清空一次
+			Arrays.fill(stamps, 0);
+			generation = 1;
+		}
+	}
+
+	private static int hash(long histogram, int pending) {
+		long h = (histogram ^ ((long) pending << 60)) * 0x9E3779B97F4A7C15L;
+		return (int) (h >>> 32);
+	}
+
+	//查找状态所在的位置，不存在时返回-1
+	private int find(long histogram, int pending) {
+		int mask = keys.length - 1;
+		for (int slot = hash(histogram, pending) & mask; stamps[slot] == generation; slot = (slot + 1)
+				& mask) {
+			if (keys[slot] == histogram && pendings[slot] == pending) {
+				return slot;
+			}
+		}
+		return -1;
+	}
+
+	private void store(long histogram, int pending, int value, boolean exact, long bestMove) {
+		int mask = keys.length - 1;
+		int slot = hash(histogram, pending) & mask;
+		for (; stamps[slot] == generation; slot = (slot + 1) & mask) {
+			if (keys[slot] == histogram && pendings[slot] == pending) {
+				break;
+			}
+		}
+		if (stamps[slot] != generation) {
+			stamps[slot] = generation;
+			keys[slot] = histogram;
+			pendings[slot] = pending;
+			size++;
+		}
+		values[slot] = value;
+		exacts[slot] = exact;
+		bestMoves[slot] = bestMove;
+		if (size * 2 > keys.length) {
+			grow();
+		}
+	}
+
+	private void grow() {
+		long[] oldKeys = keys;
+		int[] oldPendings = pendings;
+		int[] oldValues = values;
+		boolean[] oldExacts = exacts;
+		long[] oldBestMoves = bestMoves;
+		int[] oldStamps = stamps;
+		int capacity = oldKeys.length * 2;
+		keys = new long[capacity];
+		pendings = new int[capacity];
+		values = new int[capacity];
+		exacts = new boolean[capacity];
+		bestMoves = new long[capacity];
+		stamps = new int[capacity];
+		int oldGeneration = generation;
+		generation = 1;
+		size = 0;
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldStamps[i] == oldGeneration) {
+				store(oldKeys[i], oldPendings[i], oldValues[i], oldExacts[i], oldBestMoves[i]);
+			}
+		}
+	}
+}
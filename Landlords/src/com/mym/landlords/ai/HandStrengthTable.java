@@ -0,0 +1,150 @@
+package com.mym.landlords.ai;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+import com.mym.landlords.card.Card;
+import com.mym.landlords.card.RankHistogram;
+
+/**
+ * 离线生成的手牌强度表，按手牌的特征分桶。
+ * <p>
+ * <h1>键</h1>
+ * 17张和20张手牌的点数直方图分别有约5900万和1.5亿种，无法全部预先计算，因此表不以直方图为键，而是把手牌按特征分桶：
+ * 张数、最少手数、2的张数、大小王、炸弹数目和A的张数，打包为一个 int 值，参见 {@link #keyOf(long, int)}。
+ * 实际出现的桶只有约3000个，同一个桶中的手牌共用一个值，即拿到这种手牌当地主、由自己先出时的平均获胜概率，
+ * 由 {@link HandStrengthTableGenerator}通过大量随机牌局模拟得出。
+ * 最少手数需要调用者先用 {@link HandDecomposer#countPlays(long)}求出，它是查询中唯一需要搜索的部分。
+ * </p>
+ * <p>
+ * <h1>文件格式</h1>
+ * 文件由头部、按从小到大排列的键数组和对应的值数组组成，均为大端序：
+ * <ul>
+ * <li>int 魔数 {@link #MAGIC}，int 版本号 {@link #VERSION}，int 表项数目 n；</li>
+ * <li>n 个 int 键；</li>
+ * <li>n 个无符号16位的值，获胜概率乘以65535。</li>
+ * </ul>
+ * 文件只有十几KB，打开时全部读入数组，查询时二分查找，不分配任何对象。表是只读的，可以由任意多个线程同时查询。
+ * </p>
+ */
+public final class HandStrengthTable {
+
+	/** 文件的魔数，即 "HSTB"。 */
+	public static final int MAGIC = 0x48535442;
+	/** 文件格式的版本号。 */
+	public static final int VERSION = 1;
+	/** 获胜概率的缩放系数。 */
+	static final int VALUE_SCALE = 0xFFFF;
+	//表项数目的上限，超过时认为文件已损坏
+	private static final int MAX_ENTRIES = 1 << 20;
+
+	private static final int INDEX_2 = Card.CARD_VALUE_2 - Card.CARD_VALUE_3;
+	private static final int INDEX_A = Card.CARD_VALUE_A - Card.CARD_VALUE_3;
+	private static final int INDEX_JOKER_S = Card.CARD_VALUE_JOKER_S - Card.CARD_VALUE_3;
+	private static final int INDEX_JOKER_B = Card.CARD_VALUE_JOKER_B - Card.CARD_VALUE_3;
+
+	private final int[] keys;
+	private final char[] values;
+
+	private HandStrengthTable(int[] keys, char[] values) {
+		this.keys = keys;
+		this.values = values;
+	}
+
+	/**
+	 * 读取强度表文件。
+	 * @param file 由 {@link HandStrengthTableGenerator}生成的文件。
+	 * @throws IOException 文件无法读取或格式不正确时抛出。
+	 */
+	public static HandStrengthTable read(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			return read(in);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * 从输入流读取强度表，例如打包在安装包中的资源文件。输入流由调用者关闭。
+	 * @throws IOException 读取失败或格式不正确时抛出。
+	 */
+	public static HandStrengthTable read(InputStream input) throws IOException {
+		DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+		if (in.readInt() != MAGIC) {
+			throw new IOException("not a hand strength table");
+		}
+		int version = in.readInt();
+		if (version != VERSION) {
+			throw new IOException("unsupported version:" + version);
+		}
+		int count = in.readInt();
+		if (count < 0 || count > MAX_ENTRIES) {
+			throw new IOException("invalid entries:" + count);
+		}
+		int[] keys = new int[count];
+		for (int i = 0; i < count; i++) {
+			keys[i] = in.readInt();
+			if (i > 0 && keys[i] <= keys[i - 1]) {
+				throw new IOException("keys out of order at entry " + i);
+			}
+		}
+		char[] values = new char[count];
+		for (int i = 0; i < count; i++) {
+			values[i] = in.readChar();
+		}
+		return new HandStrengthTable(keys, values);
+	}
+
+	/**
+	 * 由手牌的特征得出表的键。
+	 * @param histogram 手牌的点数直方图，参见 {@link RankHistogram}。
+	 * @param plays 出完这手牌所需的最少手数，参见 {@link HandDecomposer#countPlays(long)}。
+	 */
+	public static int keyOf(long histogram, int plays) {
+		int bombs = 0;
+		for (int index = 0; index < INDEX_JOKER_S; index++) {
+			if (((histogram >>> (index * 4)) & 0xF) == 4) {
+				bombs++;
+			}
+		}
+		int jokers = (int) (((histogram >>> (INDEX_JOKER_S * 4)) & 1)
+				| (((histogram >>> (INDEX_JOKER_B * 4)) & 1) << 1));
+		int twos = (int) ((histogram >>> (INDEX_2 * 4)) & 0xF);
+		int aces = (int) ((histogram >>> (INDEX_A * 4)) & 0xF);
+		return (RankHistogram.size(histogram) << 15) | (Math.min(plays, 15) << 11)
+				| (twos << 8) | (jokers << 6) | (bombs << 3) | aces;
+	}
+
+	/**
+	 * 查询获胜概率。
+	 * @param key 由 {@link #keyOf(long, int)}得出的键。
+	 * @return 返回0~1之间的获胜概率；表中没有该键时返回 {@link Double#NaN}。
+	 */
+	public double lookup(int key) {
+		int index = Arrays.binarySearch(keys, key);
+		return index < 0 ? Double.NaN : values[index] / (double) VALUE_SCALE;
+	}
+
+	/**
+	 * 查询一手牌所在的桶的获胜概率。
+	 * @param histogram 手牌的点数直方图。
+	 * @param plays 出完这手牌所需的最少手数，参见 {@link HandDecomposer#countPlays(long)}。
+	 * @return 返回0~1之间的获胜概率；表中没有该桶时返回 {@link Double#NaN}。
+	 */
+	public double lookup(long histogram, int plays) {
+		return lookup(keyOf(histogram, plays));
+	}
+
+	/**
+	 * 获得表项数目。
+	 */
+	public int size() {
+		return keys.length;
+	}
+}
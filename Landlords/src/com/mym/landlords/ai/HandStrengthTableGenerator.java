@@ -0,0 +1,154 @@
+package com.mym.landlords.ai;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+import com.mym.landlords.card.CardSet;
+import com.mym.landlords.card.MoveCode;
+import com.mym.landlords.card.RankHistogram;
+import com.mym.util.SplitMix64;
+import com.mym.util.WorkerPool;
+
+/**
+ * 离线生成 {@link HandStrengthTable}的工具。
+ * <p>
+ * 反复随机发牌，由座位0拿到底牌当地主并先出，用 {@link RolloutPolicy}模拟到终局，
+ * 把结果同时计入地主叫牌时的17张手牌和拿到底牌后的20张手牌对应的键。
+ * 样本数目不足 {@link #MIN_SAMPLES}的键不写入文件，查询时由调用者改用其他方法。
+ * </p>
+ * 在桌面JVM上直接运行 main 方法即可，参数依次为输出文件、牌局数目和线程数。
+ */
+public final class HandStrengthTableGenerator {
+
+	/** 写入文件的键至少需要的样本数目。 */
+	public static final int MIN_SAMPLES = 30;
+	private static final int KEY_SPACE = 1 << 20;
+	private static final int SEATS = 3;
+	private static final int FARMER_SIZE = 17;
+	private static final int LANDLORD_SIZE = 20;
+
+	private final long[] games = new long[KEY_SPACE];
+	private final long[] wins = new long[KEY_SPACE];
+
+	public static void main(String[] args) throws IOException {
+		File output = new File(args.length > 0 ? args[0] : "hand_strength.bin");
+		long deals = args.length > 1 ? Long.parseLong(args[1]) : 1000000L;
+		int threads = args.length > 2 ? Integer.parseInt(args[2])
+				: Runtime.getRuntime().availableProcessors();
+		long start = System.nanoTime();
+		HandStrengthTableGenerator generator = new HandStrengthTableGenerator();
+		generator.generate(deals, threads, 20150505L);
+		int entries = generator.write(output);
+		System.out.println("deals=" + deals + ", entries=" + entries + ", bytes=" + output.length()
+				+ ", " + (System.nanoTime() - start) / 1000000 + "ms");
+	}
+
+	/**
+	 * 模拟指定数目的牌局，结果累加到已有的统计中。
+	 * @param deals 牌局数目。
+	 * @param threads 线程数，必须为正数。
+	 * @param seed 随机数种子。
+	 */
+	public void generate(long deals, int threads, long seed) {
+		WorkerPool pool = new WorkerPool("TableWorker", threads);
+		SplitMix64 random = new SplitMix64(seed);
+		Worker[] workers = new Worker[threads];
+		for (int i = 0; i < threads; i++) {
+			long quota = deals / threads + (i < deals % threads ? 1 : 0);
+			workers[i] = new Worker(random.split(), quota);
+		}
+		try {
+			if (!pool.runAll(workers)) {
+				return;
+			}
+			for (Worker worker : workers) {
+				for (int key = 0; key < KEY_SPACE; key++) {
+					games[key] += worker.games[key];
+					wins[key] += worker.wins[key];
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * 把样本数目足够的键写入文件，格式参见 {@link HandStrengthTable}。
+	 * @return 返回写入的表项数目。
+	 */
+	public int write(File file) throws IOException {
+		int count = 0;
+		for (int key = 0; key < KEY_SPACE; key++) {
+			if (games[key] >= MIN_SAMPLES) {
+				count++;
+			}
+		}
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+				new FileOutputStream(file)));
+		try {
+			out.writeInt(HandStrengthTable.MAGIC);
+			out.writeInt(HandStrengthTable.VERSION);
+			out.writeInt(count);
+			for (int key = 0; key < KEY_SPACE; key++) {
+				if (games[key] >= MIN_SAMPLES) {
+					out.writeInt(key);
+				}
+			}
+			for (int key = 0; key < KEY_SPACE; key++) {
+				if (games[key] >= MIN_SAMPLES) {
+					out.writeChar((int) Math.round((double) wins[key] / games[key]
+							* HandStrengthTable.VALUE_SCALE));
+				}
+			}
+		} finally {
+			out.close();
+		}
+		return count;
+	}
+
+	//工作线程：发牌、模拟，并按键统计
+	private static final class Worker implements Callable<Worker> {
+		private final SplitMix64 random;
+		private final long quota;
+		private final RolloutPolicy policy = new RolloutPolicy();
+		private final HandDecomposer decomposer = new HandDecomposer();
+		private final long[] hands = new long[SEATS];
+		private final int[] games = new int[KEY_SPACE];
+		private final int[] wins = new int[KEY_SPACE];
+
+		Worker(SplitMix64 random, long quota) {
+			this.random = random;
+			this.quota = quota;
+		}
+
+		@Override
+		public Worker call() {
+			for (long deal = 0; deal < quota && !Thread.currentThread().isInterrupted(); deal++) {
+				//地主的20张牌中随机的17张是叫牌时的手牌，其余3张是底牌
+				long landlord = CardSet.pick(CardSet.FULL_PACK, LANDLORD_SIZE, random);
+				long bidding = CardSet.pick(landlord, FARMER_SIZE, random);
+				long next = CardSet.pick(CardSet.minus(CardSet.FULL_PACK, landlord), FARMER_SIZE,
+						random);
+				hands[0] = landlord;
+				hands[1] = next;
+				hands[2] = CardSet.minus(CardSet.FULL_PACK, landlord | next);
+				boolean win = policy.playout(hands, 0, 0, MoveCode.NONE, 0) == 0;
+				record(RankHistogram.of(bidding), win);
+				record(RankHistogram.of(landlord), win);
+			}
+			return this;
+		}
+
+		private void record(long histogram, boolean win) {
+			int key = HandStrengthTable.keyOf(histogram, decomposer.countPlays(histogram));
+			games[key]++;
+			if (win) {
+				wins[key]++;
+			}
+		}
+	}
+}
@@ -0,0 +1,457 @@
+package com.mym.landlords.ai;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import com.mym.landlords.card.CardSet;
+import com.mym.landlords.card.MoveCode;
+import com.mym.landlords.card.MoveGenerator;
+import com.mym.landlords.card.RankHistogram;
+import com.mym.util.SplitMix64;
+import com.mym.util.WorkerPool;
+
+/**
+ * 基于信息集蒙特卡洛树搜索（ISMCTS）的出牌策略。
+ * <p>
+ * <h1>算法</h1>
+ * 每次迭代先像 {@link PimcStrategy}一样随机分配看不到的牌，得到一个确定的牌局；然后从根节点向下，
+ * 在该牌局能打出的出牌中按UCB公式选择子节点，遇到还没有节点的出牌时展开一个新节点，再用
+ * {@link RolloutPolicy}模拟到终局，并把结果沿路径回传。所有牌局共用同一棵树，节点只按出牌编码区分，
+ * 选择时用子节点“可以被选择的次数”代替父节点的访问次数。
+ * </p>
+ * <p>
+ * <h1>并行</h1>
+ * 若干个工作线程同时在同一棵树上迭代。节点的统计数据用原子操作更新，子节点用CAS插入链表，整个搜索不使用锁。
+ * 向下选择时先增加访问次数、回传时才增加胜利次数，相当于“虚拟损失”，使不同线程倾向于探索不同的路径。
+ * </p>
+ * <p>
+ * <h1>树的重用</h1>
+ * 同一局相邻两次决策之间，根据两个对手剩余张数和看不到的牌的变化推断出他们的出牌；
+ * 如果上次的树中有对应的路径，就把该节点作为新的根节点，保留已有的统计数据。
+ * </p>
+ * {@link #decide}不能被多个线程同时调用。座位的编号与 {@link EndgameSolver}相同：座位0为自己，座位 i 的下家是座位 (i+1)%3。
+ */
+public final class IsmctsStrategy implements PlayStrategy {
+
+	private static final int SEATS = 3;
+	//UCB公式中的探索系数
+	private static final double EXPLORATION = 0.7;
+	//一局中的最大步数：每次出牌至少一张，两次出牌之间最多两次不出
+	private static final int MAX_PLIES = CardSet.PACK_SIZE * SEATS;
+
+	private final WorkerPool pool;
+	private final Worker[] workers;
+	//调用者线程在决策开始时使用的出牌生成器
+	private final MoveGenerator generator = new MoveGenerator();
+	private volatile boolean cancelled;
+
+	//本次决策的输入，由各工作线程只读共享
+	private final long[] knownHands = new long[SEATS];
+	private final int[] handSizes = new int[SEATS];
+	private long unseen;
+	private BeliefState belief;
+	private int landlord;
+	private long lastMove;
+	private int lastMover;
+	private long deadline;
+	private Node root;
+	private long lastIterationCount;
+
+	//上一次决策的局面与选择的节点，用于重用搜索树
+	private Node chosen;
+	private long previousHand;
+	private long previousUnseen;
+	private final int[] previousSizes = new int[SEATS];
+	private int previousLandlord;
+
+	/**
+	 * 创建一个线程数与处理器数目相同的策略。
+	 */
+	public IsmctsStrategy() {
+		this(Runtime.getRuntime().availableProcessors(), System.nanoTime());
+	}
+
+	/**
+	 * 创建策略。
+	 * @param threads 工作线程数，必须为正数。
+	 * @param seed 随机数种子。
+	 */
+	public IsmctsStrategy(int threads, long seed) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("invalid threads:" + threads);
+		}
+		SplitMix64 random = new SplitMix64(seed);
+		workers = new Worker[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Worker(random.split());
+		}
+		pool = new WorkerPool("IsmctsWorker", threads);
+	}
+
+	/**
+	 * 丢弃保存的搜索树，下一次决策将从头开始搜索。
+	 */
+	public void reset() {
+		root = null;
+		chosen = null;
+	}
+
+	/**
+	 * 关闭工作线程，与 {@link #cancel()}相同。
+	 */
+	public void shutdown() {
+		cancel();
+	}
+
+	@Override
+	public void cancel() {
+		//工作线程看到标志后立即结束；不中断线程，以免排队的任务被丢弃而使决策无法返回
+		cancelled = true;
+		pool.shutdown();
+	}
+
+	/**
+	 * 选择一手牌，有信念状态时对手的手牌从其粒子中按权重抽取。
+	 * @param beliefState 与当前局面一致的信念状态；为null或不一致时退回均匀随机分配。
+	 * @param deadlineNanos 截止时间，以 {@link System#nanoTime()}为准。
+	 * @see PlayStrategy#decide
+	 */
+	@Override
+	public long decide(long[] known, int[] sizes, long unseenCards, int landlordSeat,
+			long before, int beforeSeat, BeliefState beliefState, long deadlineNanos) {
+		if (cancelled) {
+			reset();
+			return UNDECIDED;
+		}
+		belief = beliefState != null && beliefState.matches(unseenCards, sizes) ? beliefState : null;
+		Node reused = advance(known[0], sizes, unseenCards, landlordSeat, before, beforeSeat);
+		root = reused != null ? reused : new Node(MoveCode.NONE, SEATS - 1, null);
+		//没有能打过的牌时只能不出，不需要搜索
+		if (before != MoveCode.NONE && !generator.hasMoveBeating(known[0], before)) {
+			lastIterationCount = 0;
+			chosen = root.child(MoveCode.NONE, 0);
+			rememberInputs(known[0], sizes, unseenCards, landlordSeat);
+			return MoveCode.NONE;
+		}
+		for (int seat = 0; seat < SEATS; seat++) {
+			knownHands[seat] = known[seat];
+			handSizes[seat] = sizes[seat];
+		}
+		unseen = unseenCards;
+		landlord = landlordSeat;
+		lastMove = before;
+		lastMover = beforeSeat;
+		rememberInputs(known[0], sizes, unseenCards, landlordSeat);
+
+		deadline = deadlineNanos;
+		for (Worker worker : workers) {
+			worker.iterations = 0;
+		}
+		if (!pool.runAll(workers)) {
+			//已经被取消，或者调用者线程被中断
+			reset();
+			return UNDECIDED;
+		}
+		long iterations = 0;
+		for (Worker worker : workers) {
+			iterations += worker.iterations;
+		}
+		lastIterationCount = iterations;
+
+		//选择访问次数最多的出牌
+		Node best = null;
+		for (Node child = root.firstChild; child != null; child = child.sibling) {
+			if (best == null || child.visits > best.visits) {
+				best = child;
+			}
+		}
+		chosen = best;
+		return best == null ? UNDECIDED : best.move;
+	}
+
+	/**
+	 * 获得最近一次决策的迭代次数。
+	 */
+	public long getLastIterationCount() {
+		return lastIterationCount;
+	}
+
+	/**
+	 * 获得最近一次决策后根节点的访问次数，包括从上一次决策继承的访问。
+	 */
+	public int getRootVisits() {
+		Node current = root;
+		return current == null ? 0 : current.visits;
+	}
+
+	private void rememberInputs(long hand, int[] sizes, long unseenCards, int landlordSeat) {
+		previousHand = hand;
+		previousUnseen = unseenCards;
+		previousLandlord = landlordSeat;
+		System.arraycopy(sizes, 0, previousSizes, 0, SEATS);
+	}
+
+	//从上次选择的节点出发，沿两个对手的出牌找到当前局面对应的节点；找不到时返回null
+	private Node advance(long hand, int[] sizes, long unseenCards, int landlordSeat,
+			long before, int beforeSeat) {
+		if (chosen == null || landlordSeat != previousLandlord
+				|| !CardSet.containsAll(previousUnseen, unseenCards)) {
+			return null;
+		}
+		long expectedHand = RankHistogram.of(previousHand) - MoveCode.toHistogram(chosen.move);
+		if (RankHistogram.of(hand) != expectedHand) {
+			return null;
+		}
+		int nextPlayed = previousSizes[1] - sizes[1];
+		int priorPlayed = previousSizes[2] - sizes[2];
+		long played = RankHistogram.of(CardSet.minus(previousUnseen, unseenCards));
+		if (nextPlayed < 0 || priorPlayed < 0
+				|| nextPlayed + priorPlayed != RankHistogram.size(played)) {
+			return null;
+		}
+		//上家出了牌时，其出牌就是场上最后一手牌
+		long priorMove = 0;
+		if (priorPlayed > 0) {
+			if (beforeSeat != 2 || MoveCode.size(before) != priorPlayed) {
+				return null;
+			}
+			priorMove = MoveCode.toHistogram(before);
+		}
+		Node node = findChild(chosen, played - priorMove);
+		return node == null ? null : findChild(node, priorMove);
+	}
+
+	//查找打出的点数与直方图相同的子节点，直方图为0表示不出
+	private static Node findChild(Node parent, long histogram) {
+		for (Node child = parent.firstChild; child != null; child = child.sibling) {
+			if (MoveCode.toHistogram(child.move) == histogram) {
+				return child;
+			}
+		}
+		return null;
+	}
+
+	//搜索树的节点，保存到达该节点的出牌及其统计数据
+	private static final class Node {
+		private static final AtomicReferenceFieldUpdater<Node, Node> FIRST_CHILD =
+				AtomicReferenceFieldUpdater.newUpdater(Node.class, Node.class, "firstChild");
+		private static final AtomicIntegerFieldUpdater<Node> VISITS =
+				AtomicIntegerFieldUpdater.newUpdater(Node.class, "visits");
+		private static final AtomicIntegerFieldUpdater<Node> WINS =
+				AtomicIntegerFieldUpdater.newUpdater(Node.class, "wins");
+		private static final AtomicIntegerFieldUpdater<Node> AVAILABILITY =
+				AtomicIntegerFieldUpdater.newUpdater(Node.class, "availability");
+
+		final long move;
+		final int mover;			//出牌的座位
+		final Node sibling;			//下一个兄弟节点
+		volatile Node firstChild;
+		volatile int visits;
+		volatile int wins;			//出牌方获胜的次数
+		volatile int availability;	//该出牌可以被选择的次数
+
+		Node(long move, int mover, Node sibling) {
+			this.move = move;
+			this.mover = mover;
+			this.sibling = sibling;
+		}
+
+		//获得出牌为 move 的子节点，不存在时插入到链表头部
+		Node child(long childMove, int childMover) {
+			while (true) {
+				Node head = firstChild;
+				for (Node node = head; node != null; node = node.sibling) {
+					if (node.move == childMove) {
+						return node;
+					}
+				}
+				Node created = new Node(childMove, childMover, head);
+				if (FIRST_CHILD.compareAndSet(this, head, created)) {
+					return created;
+				}
+			}
+		}
+	}
+
+	//工作线程：在共享的树上反复迭代，直到超过时间预算
+	private final class Worker implements Callable<Worker> {
+		private final SplitMix64 workerRandom;
+		private final RolloutPolicy policy = new RolloutPolicy();
+		private final MoveGenerator generator = new MoveGenerator();
+		private final long[] hands = new long[SEATS];
+		private final Node[] path = new Node[MAX_PLIES + 1];
+		//当前节点可以打出的出牌，以及按出牌编码查找其下标的开放寻址表
+		private long[] moves = new long[64];
+		private int[] tried = new int[64];
+		private long[] tableKeys = new long[128];
+		private int[] tableIndexes = new int[128];
+		private int[] tableStamps = new int[128];
+		private int stamp;
+		private boolean expanded;	//最近一次选择是否展开了新节点
+		private long iterations;
+
+		Worker(SplitMix64 random) {
+			workerRandom = random;
+		}
+
+		@Override
+		public Worker call() {
+			do {
+				iterate();
+				iterations++;
+			} while (System.nanoTime() < deadline && !cancelled);
+			return this;
+		}
+
+		private void iterate() {
+			Determinizer.sample(knownHands, handSizes, unseen, belief, workerRandom, hands);
+			Node node = root;
+			Node.VISITS.incrementAndGet(node);
+			int depth = 0;
+			int toMove = 0;
+			long before = lastMove;
+			int beforeSeat = lastMover;
+			int winner = -1;
+			while (depth < MAX_PLIES) {
+				if (before != MoveCode.NONE && toMove == beforeSeat) {
+					before = MoveCode.NONE;
+				}
+				int count = collectMoves(hands[toMove], before);
+				Node selected = select(node, count, toMove);
+				Node.VISITS.incrementAndGet(selected);
+				path[depth++] = selected;
+				long move = selected.move;
+				if (move != MoveCode.NONE) {
+					hands[toMove] = CardSet.minus(hands[toMove],
+							MoveCode.toCardSet(move, hands[toMove]));
+					if (hands[toMove] == CardSet.EMPTY) {
+						winner = toMove;
+						break;
+					}
+					before = move;
+					beforeSeat = toMove;
+				}
+				toMove = (toMove + 1) % SEATS;
+				node = selected;
+				if (expanded) {
+					break;
+				}
+			}
+			if (winner < 0) {
+				winner = policy.playout(hands, landlord, toMove, before, beforeSeat);
+			}
+			boolean landlordWins = winner == landlord;
+			for (int i = 0; i < depth; i++) {
+				Node visited = path[i];
+				if ((visited.mover == landlord) == landlordWins) {
+					Node.WINS.incrementAndGet(visited);
+				}
+				path[i] = null;
+			}
+		}
+
+		//在可以打出的出牌中选择：有未展开的出牌时随机展开一个，否则按UCB公式选择
+		private Node select(Node node, int count, int toMove) {
+			Node best = null;
+			double bestScore = Double.NEGATIVE_INFINITY;
+			int untried = count;
+			expanded = false;
+			for (Node child = node.firstChild; child != null; child = child.sibling) {
+				int index = indexOf(child.move);
+				if (index < 0) {
+					continue;
+				}
+				tried[index] = stamp;
+				untried--;
+				int available = Node.AVAILABILITY.incrementAndGet(child);
+				int visits = child.visits;
+				//其他线程刚刚插入的节点还没有访问次数，优先选择
+				double score = visits == 0 ? Double.POSITIVE_INFINITY
+						: (double) child.wins / visits
+								+ EXPLORATION * Math.sqrt(Math.log(available) / visits);
+				if (score > bestScore) {
+					bestScore = score;
+					best = child;
+				}
+			}
+			if (untried > 0) {
+				int pick = workerRandom.nextInt(untried);
+				for (int i = 0; i < count; i++) {
+					if (tried[i] != stamp && pick-- == 0) {
+						Node created = node.child(moves[i], toMove);
+						Node.AVAILABILITY.incrementAndGet(created);
+						expanded = true;
+						return created;
+					}
+				}
+			}
+			return best;
+		}
+
+		//列出可以打出的出牌：相同主体只保留第一个带牌组合；跟牌时可以不出
+		private int collectMoves(long hand, long before) {
+			int count = 0;
+			long previousBody = -1L;
+			generator.reset(hand, before);
+			while (generator.hasNext()) {
+				long move = generator.next();
+				long body = MoveCode.encode(MoveCode.kind(move), MoveCode.size(move),
+						MoveCode.primaryValue(move), MoveCode.chainLength(move), 0);
+				if (body != previousBody) {
+					previousBody = body;
+					count = addMove(count, move);
+				}
+			}
+			if (before != MoveCode.NONE) {
+				count = addMove(count, MoveCode.NONE);
+			}
+			if (tableKeys.length < count * 2) {
+				int capacity = Integer.highestOneBit(count * 4);
+				tableKeys = new long[capacity];
+				tableIndexes = new int[capacity];
+				tableStamps = new int[capacity];
+			}
+			if (++stamp == 0) {
+				Arrays.fill(tableStamps, 0);
+				Arrays.fill(tried, 0);
+				stamp = 1;
+			}
+			int mask = tableKeys.length - 1;
+			for (int i = 0; i < count; i++) {
+				int slot = (int) SplitMix64.mix(moves[i]) & mask;
+				while (tableStamps[slot] == stamp) {
+					slot = (slot + 1) & mask;
+				}
+				tableStamps[slot] = stamp;
+				tableKeys[slot] = moves[i];
+				tableIndexes[slot] = i;
+			}
+			return count;
+		}
+
+		private int addMove(int count, long move) {
+			if (count == moves.length) {
+				long[] grown = new long[moves.length * 2];
+				System.arraycopy(moves, 0, grown, 0, count);
+				moves = grown;
+				tried = new int[grown.length];
+			}
+			moves[count] = move;
+			tried[count] = 0;
+			return count + 1;
+		}
+
+		private int indexOf(long move) {
+			int mask = tableKeys.length - 1;
+			for (int slot = (int) SplitMix64.mix(move) & mask; tableStamps[slot] == stamp;
+					slot = (slot + 1) & mask) {
+				if (tableKeys[slot] == move) {
+					return tableIndexes[slot];
+				}
+			}
+			return -1;
+		}
+	}
+}
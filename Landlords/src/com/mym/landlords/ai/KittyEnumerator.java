@@ -0,0 +1,237 @@
+package com.mym.landlords.ai;
+
+import java.util.concurrent.Callable;
+
+import com.mym.landlords.card.Card;
+import com.mym.landlords.card.CardSet;
+import com.mym.landlords.card.RankHistogram;
+import com.mym.util.WorkerPool;
+
+/**
+ * 叫牌时精确枚举所有可能的底牌，计算拿到底牌后手牌的期望强度。
+ * <p>
+ * <h1>算法</h1>
+ * 底牌是自己看不到的37张牌中的3张，共 C(37,3)=7770 种。手牌的强度只与点数有关，因此按点数把底牌分类：
+ * 点数相同的底牌得到的20张手牌完全等价，只需计算一次，再乘以这一类的组合数 ∏C(u<sub>r</sub>,k<sub>r</sub>)
+ * 作为权重（u<sub>r</sub>为点数 r 看不到的张数，k<sub>r</sub>为底牌中该点数的张数）。类的数目最多为680，通常只有几百个。
+ * 每一类用 {@link HandDecomposer}求出最少手数和控制牌数目，强度定义为控制牌数目减去手数。
+ * </p>
+ * <p>
+ * <h1>并行</h1>
+ * 所有类按下标交错分给若干个工作线程，每个线程使用各自的拆分器，最后汇总加权的结果。
+ * 线程池在对象创建时建立，不再使用时应调用 {@link #shutdown()}。{@link #evaluate(long)}是同步的。
+ * </p>
+ */
+public final class KittyEnumerator {
+
+	private static final int KITTY_SIZE = 3;
+	private static final int VALUE_KINDS = Card.CARD_VALUE_JOKER_B - Card.CARD_VALUE_3 + 1;
+	//BINOMIALS[n][k]=C(n,k)，n不超过4
+	private static final int[][] BINOMIALS = {
+		{1, 0, 0, 0}, {1, 1, 0, 0}, {1, 2, 1, 0}, {1, 3, 3, 1}, {1, 4, 6, 4}};
+
+	private final WorkerPool pool;
+	private final Worker[] workers;
+	private volatile boolean cancelled;
+
+	//本次枚举的各类底牌及其组合数，由各工作线程只读共享
+	private long hand;
+	private long[] kitties = new long[64];
+	private int[] weights = new int[64];
+	private int classCount;
+
+	/**
+	 * 创建一个线程数与处理器数目相同的枚举器。
+	 */
+	public KittyEnumerator() {
+		this(Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * 创建枚举器。
+	 * @param threads 工作线程数，必须为正数。
+	 */
+	public KittyEnumerator(int threads) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("invalid threads:" + threads);
+		}
+		workers = new Worker[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Worker(i, threads);
+		}
+		pool = new WorkerPool("KittyWorker", threads);
+	}
+
+	/**
+	 * 关闭工作线程，可以在任意线程调用。正在进行的枚举会尽快返回null，之后的枚举直接返回null。
+	 */
+	public void shutdown() {
+		cancelled = true;
+		pool.shutdown();
+	}
+
+	/**
+	 * 枚举所有可能的底牌，计算拿到底牌后的期望强度。
+	 * @param handCards 叫牌时的手牌（以 {@link CardSet}表示），不含底牌。
+	 * @return 返回统计结果；枚举器已经关闭或者线程被中断时返回null。
+	 */
+	public synchronized Estimate evaluate(long handCards) {
+		if (cancelled) {
+			return null;
+		}
+		hand = RankHistogram.of(handCards);
+		long unseen = RankHistogram.of(CardSet.minus(CardSet.FULL_PACK, handCards));
+		classCount = 0;
+		enumerate(unseen, 0, KITTY_SIZE, 0L, 1);
+		if (!pool.runAll(workers) || cancelled) {
+			return null;
+		}
+		long combinations = 0;
+		long plays = 0;
+		long controls = 0;
+		int minStrength = Integer.MAX_VALUE;
+		int maxStrength = Integer.MIN_VALUE;
+		for (Worker worker : workers) {
+			combinations += worker.combinations;
+			plays += worker.plays;
+			controls += worker.controls;
+			minStrength = Math.min(minStrength, worker.minStrength);
+			maxStrength = Math.max(maxStrength, worker.maxStrength);
+		}
+		return new Estimate(classCount, combinations, (double) plays / combinations,
+				(double) controls / combinations, minStrength, maxStrength);
+	}
+
+	//按点数从小到大，列出张数为 remaining 的所有底牌点数组合
+	private void enumerate(long unseen, int index, int remaining, long kitty, int weight) {
+		if (remaining == 0) {
+			addClass(kitty, weight);
+			return;
+		}
+		if (index == VALUE_KINDS) {
+			return;
+		}
+		int shift = index * 4;
+		int available = (int) ((unseen >>> shift) & 0xF);
+		for (int k = Math.min(available, remaining); k >= 0; k--) {
+			enumerate(unseen, index + 1, remaining - k, kitty + ((long) k << shift),
+					weight * BINOMIALS[available][k]);
+		}
+	}
+
+	private void addClass(long kitty, int weight) {
+		if (classCount == kitties.length) {
+			long[] grownKitties = new long[kitties.length * 2];
+			int[] grownWeights = new int[weights.length * 2];
+			System.arraycopy(kitties, 0, grownKitties, 0, classCount);
+			System.arraycopy(weights, 0, grownWeights, 0, classCount);
+			kitties = grownKitties;
+			weights = grownWeights;
+		}
+		kitties[classCount] = kitty;
+		weights[classCount] = weight;
+		classCount++;
+	}
+
+	/**
+	 * 枚举的统计结果。强度定义为控制牌数目减去最少手数，越大越好。
+	 */
+	public static final class Estimate {
+		private final int classCount;
+		private final long combinations;
+		private final double expectedPlays;
+		private final double expectedControls;
+		private final int minStrength;
+		private final int maxStrength;
+
+		Estimate(int classCount, long combinations, double expectedPlays,
+				double expectedControls, int minStrength, int maxStrength) {
+			this.classCount = classCount;
+			this.combinations = combinations;
+			this.expectedPlays = expectedPlays;
+			this.expectedControls = expectedControls;
+			this.minStrength = minStrength;
+			this.maxStrength = maxStrength;
+		}
+
+		/** 获得按点数分类后实际计算的底牌数目。 */
+		public int getClassCount() {
+			return classCount;
+		}
+
+		/** 获得所有可能的底牌数目。 */
+		public long getCombinations() {
+			return combinations;
+		}
+
+		/** 获得最少手数的期望。 */
+		public double getExpectedPlays() {
+			return expectedPlays;
+		}
+
+		/** 获得控制牌数目的期望。 */
+		public double getExpectedControls() {
+			return expectedControls;
+		}
+
+		/** 获得强度的期望。 */
+		public double getExpectedStrength() {
+			return expectedControls - expectedPlays;
+		}
+
+		/** 获得最差的底牌带来的强度。 */
+		public int getMinStrength() {
+			return minStrength;
+		}
+
+		/** 获得最好的底牌带来的强度。 */
+		public int getMaxStrength() {
+			return maxStrength;
+		}
+
+		@Override
+		public String toString() {
+			return "Estimate [classes=" + classCount + ", combinations=" + combinations
+					+ ", plays=" + expectedPlays + ", controls=" + expectedControls
+					+ ", strength=" + minStrength + "~" + maxStrength + "]";
+		}
+	}
+
+	//工作线程：计算下标为 offset, offset+stride, ... 的各类底牌
+	private final class Worker implements Callable<Worker> {
+		private final HandDecomposer decomposer = new HandDecomposer();
+		private final int offset;
+		private final int stride;
+		private long combinations;
+		private long plays;
+		private long controls;
+		private int minStrength;
+		private int maxStrength;
+
+		Worker(int offset, int stride) {
+			this.offset = offset;
+			this.stride = stride;
+		}
+
+		@Override
+		public Worker call() {
+			combinations = 0;
+			plays = 0;
+			controls = 0;
+			minStrength = Integer.MAX_VALUE;
+			maxStrength = Integer.MIN_VALUE;
+			for (int i = offset; i < classCount && !cancelled; i += stride) {
+				int cost = decomposer.cost(hand + kitties[i]);
+				int playCount = (cost + HandDecomposer.PLAY_COST - 1) / HandDecomposer.PLAY_COST;
+				int controlCount = playCount * HandDecomposer.PLAY_COST - cost;
+				int weight = weights[i];
+				combinations += weight;
+				plays += (long) playCount * weight;
+				controls += (long) controlCount * weight;
+				minStrength = Math.min(minStrength, controlCount - playCount);
+				maxStrength = Math.max(maxStrength, controlCount - playCount);
+			}
+			return this;
+		}
+	}
+}
@@ -0,0 +1,231 @@
+package com.mym.landlords.ai;
+
+import java.util.concurrent.Callable;
+
+import com.mym.landlords.card.CardSet;
+import com.mym.landlords.card.MoveCode;
+import com.mym.landlords.card.MoveGenerator;
+import com.mym.util.SplitMix64;
+import com.mym.util.WorkerPool;
+
+/**
+ * 基于蒙特卡洛抽样（PIMC，完美信息蒙特卡洛）的出牌策略。
+ * <p>
+ * <h1>算法</h1>
+ * 对手的手牌未知，但未出现过的牌、每家剩余的张数以及地主尚未打出的底牌都是已知的。
+ * 每次决策时反复随机分配未出现的牌，得到与已知信息一致的若干种牌局；在每种牌局中，对每个候选出牌都用
+ * {@link RolloutPolicy}快速模拟到终局，最后选择己方获胜次数最多的出牌。
+ * 主体相同、只有所带的牌不同的出牌只保留所带点数最小的一个，以减少候选数目。
+ * </p>
+ * <p>
+ * <h1>并行与截止时间</h1>
+ * 抽样分给若干个工作线程同时进行，每个线程使用各自的模拟策略和随机数生成器，直到截止时间或被取消，
+ * 然后按目前为止的统计结果选择出牌。线程池在策略对象创建时建立，不再使用时应调用 {@link #cancel()}。
+ * {@link #decide}不能被多个线程同时调用。
+ * </p>
+ * 座位的编号与 {@link EndgameSolver}相同：座位0为自己，座位 i 的下家是座位 (i+1)%3。
+ */
+public final class PimcStrategy implements PlayStrategy {
+
+	private static final int SEATS = 3;
+
+	private final WorkerPool pool;
+	private final Worker[] workers;
+	//调用者线程列出候选出牌时使用的出牌生成器
+	private final MoveGenerator generator = new MoveGenerator();
+	private final SplitMix64 random;
+	private volatile boolean cancelled;
+
+	//本次决策的输入，由各工作线程只读共享
+	private long[] candidates = new long[16];
+	private int candidateCount;
+	private final long[] knownHands = new long[SEATS];
+	private final int[] handSizes = new int[SEATS];
+	private long unseen;
+	private BeliefState belief;
+	private int landlord;
+	private long lastMove;
+	private int lastMover;
+	private long deadline;
+	private long lastSampleCount;
+
+	/**
+	 * 创建一个线程数与处理器数目相同的策略。
+	 */
+	public PimcStrategy() {
+		this(Runtime.getRuntime().availableProcessors(), System.nanoTime());
+	}
+
+	/**
+	 * 创建策略。
+	 * @param threads 工作线程数，必须为正数。
+	 * @param seed 随机数种子，相同的种子在单线程时可以重现相同的决策。
+	 */
+	public PimcStrategy(int threads, long seed) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("invalid threads:" + threads);
+		}
+		random = new SplitMix64(seed);
+		workers = new Worker[threads];
+		for (int i = 0; i < threads; i++) {
+			workers[i] = new Worker(random.split());
+		}
+		pool = new WorkerPool("PimcWorker", threads);
+	}
+
+	/**
+	 * 关闭工作线程，与 {@link #cancel()}相同。
+	 */
+	public void shutdown() {
+		cancel();
+	}
+
+	@Override
+	public void cancel() {
+		//工作线程看到标志后立即结束；不中断线程，以免排队的任务被丢弃而使决策无法返回
+		cancelled = true;
+		pool.shutdown();
+	}
+
+	/**
+	 * 选择一手牌，有信念状态时对手的手牌从其粒子中按权重抽取。
+	 * @param beliefState 与当前局面一致的信念状态；为null或不一致时退回均匀随机分配。
+	 * @param deadlineNanos 截止时间，以 {@link System#nanoTime()}为准。
+	 * @see PlayStrategy#decide
+	 */
+	@Override
+	public long decide(long[] known, int[] sizes, long unseenCards, int landlordSeat,
+			long before, int beforeSeat, BeliefState beliefState, long deadlineNanos) {
+		if (cancelled) {
+			return UNDECIDED;
+		}
+		belief = beliefState != null && beliefState.matches(unseenCards, sizes) ? beliefState : null;
+		for (int seat = 0; seat < SEATS; seat++) {
+			knownHands[seat] = known[seat];
+			handSizes[seat] = sizes[seat];
+		}
+		unseen = unseenCards;
+		landlord = landlordSeat;
+		lastMove = before;
+		lastMover = beforeSeat;
+		collectCandidates(known[0], before);
+		if (candidateCount == 1) {
+			return candidates[0];
+		}
+		deadline = deadlineNanos;
+		for (Worker worker : workers) {
+			worker.reset(candidateCount);
+		}
+		if (!pool.runAll(workers)) {
+			//已经被取消，或者调用者线程被中断
+			return UNDECIDED;
+		}
+		long[] wins = new long[candidateCount];
+		long samples = 0;
+		for (Worker worker : workers) {
+			samples += worker.samples;
+			for (int i = 0; i < candidateCount; i++) {
+				wins[i] += worker.wins[i];
+			}
+		}
+		int best = 0;
+		for (int i = 1; i < candidateCount; i++) {
+			if (wins[i] > wins[best]) {
+				best = i;
+			}
+		}
+		lastSampleCount = samples;
+		return candidates[best];
+	}
+
+	/**
+	 * 获得最近一次决策所用的抽样次数。
+	 */
+	public long getLastSampleCount() {
+		return lastSampleCount;
+	}
+
+	//列出候选出牌：相同主体只保留第一个（即所带点数最小的）带牌组合；跟牌时可以不出
+	private void collectCandidates(long hand, long before) {
+		candidateCount = 0;
+		long previousBody = -1L;
+		generator.reset(hand, before);
+		while (generator.hasNext()) {
+			long move = generator.next();
+			long body = MoveCode.encode(MoveCode.kind(move), MoveCode.size(move),
+					MoveCode.primaryValue(move), MoveCode.chainLength(move), 0);
+			if (body == previousBody) {
+				continue;
+			}
+			previousBody = body;
+			addCandidate(move);
+		}
+		if (before != MoveCode.NONE) {
+			addCandidate(MoveCode.NONE);
+		}
+	}
+
+	private void addCandidate(long move) {
+		if (candidateCount == candidates.length) {
+			long[] grown = new long[candidates.length * 2];
+			System.arraycopy(candidates, 0, grown, 0, candidateCount);
+			candidates = grown;
+		}
+		candidates[candidateCount++] = move;
+	}
+
+	//工作线程：反复抽样，对每个候选出牌模拟一局
+	private final class Worker implements Callable<Worker> {
+		private final SplitMix64 workerRandom;
+		private final RolloutPolicy policy = new RolloutPolicy();
+		private final long[] sampled = new long[SEATS];
+		private final long[] hands = new long[SEATS];
+		private long[] wins = new long[0];
+		private long samples;
+
+		Worker(SplitMix64 random) {
+			workerRandom = random;
+		}
+
+		void reset(int count) {
+			if (wins.length < count) {
+				wins = new long[count];
+			}
+			for (int i = 0; i < count; i++) {
+				wins[i] = 0;
+			}
+			samples = 0;
+		}
+
+		@Override
+		public Worker call() {
+			do {
+				Determinizer.sample(knownHands, handSizes, unseen, belief, workerRandom, sampled);
+				for (int i = 0; i < candidateCount; i++) {
+					if (simulate(candidates[i])) {
+						wins[i]++;
+					}
+				}
+				samples++;
+			} while (System.nanoTime() < deadline && !cancelled);
+			return this;
+		}
+
+		//先打出候选出牌，再模拟到终局，返回己方是否获胜
+		private boolean simulate(long candidate) {
+			hands[0] = sampled[0];
+			hands[1] = sampled[1];
+			hands[2] = sampled[2];
+			int winner;
+			if (candidate == MoveCode.NONE) {
+				long next = lastMover == 1 ? MoveCode.NONE : lastMove;
+				winner = policy.playout(hands, landlord, 1, next, lastMover);
+			} else {
+				hands[0] = CardSet.minus(hands[0], MoveCode.toCardSet(candidate, hands[0]));
+				winner = hands[0] == CardSet.EMPTY ? 0
+						: policy.playout(hands, landlord, 1, candidate, 0);
+			}
+			return winner == 0 || (winner != landlord && landlord != 0);
+		}
+	}
+}
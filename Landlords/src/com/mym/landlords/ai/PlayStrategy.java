@@ -0,0 +1,45 @@
+package com.mym.landlords.ai;
+
+import com.mym.landlords.card.CardSet;
+import com.mym.landlords.card.MoveCode;
+
+/**
+ * 出牌策略，由 {@link AI}在每次出牌时调用。
+ * <p>
+ * <h1>截止时间</h1>
+ * 每次决策都给出一个截止时间，策略必须在此之前返回。搜索类的策略是“随时可停”的：时间用完时返回目前为止最好的出牌，
+ * 因此AI的出牌延迟由每步的时间预算决定（参见 {@link Difficulty}），而不取决于局面的复杂程度。
+ * </p>
+ * <p>
+ * <h1>取消</h1>
+ * {@link #cancel()}可以在任意线程调用，例如界面销毁时。正在进行的决策会尽快返回目前最好的结果，
+ * 之后的决策直接返回 {@link #UNDECIDED}，工作线程等资源也会被释放。
+ * </p>
+ * 座位的编号与 {@link EndgameSolver}相同：座位0为自己，座位 i 的下家是座位 (i+1)%3。
+ */
+public interface PlayStrategy {
+
+	/** 没有做出决定，调用者应当改用基本的出牌逻辑。 */
+	long UNDECIDED = -1L;
+
+	/**
+	 * 选择一手牌。
+	 * @param known 每个座位已知的手牌（以 {@link CardSet}表示）：座位0为自己的全部手牌，
+	 *            其他座位为确定在其手中的牌（例如地主尚未打出的底牌），没有则为 {@link CardSet#EMPTY}。
+	 * @param sizes 每个座位剩余的张数。
+	 * @param unseenCards 自己看不到的所有牌，即其他两家手牌的并集，包含 known 中其他座位的牌。
+	 * @param landlordSeat 地主的座位。
+	 * @param before 场上最后一手牌；{@link MoveCode#NONE}表示自由出牌。
+	 * @param beforeSeat 最后一手牌的出牌者座位，自由出牌时忽略。
+	 * @param belief 对手手牌的信念状态，可以为null。
+	 * @param deadline 截止时间，以 {@link System#nanoTime()}为准。
+	 * @return 返回出牌编码；{@link MoveCode#NONE}表示不出；{@link #UNDECIDED}表示没有做出决定。
+	 */
+	long decide(long[] known, int[] sizes, long unseenCards, int landlordSeat, long before,
+			int beforeSeat, BeliefState belief, long deadline);
+
+	/**
+	 * 取消正在进行和之后的所有决策，并释放资源。
+	 */
+	void cancel();
+}
@@ -1,14 +1,14 @@
 package com.mym.landlords.ai;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 
-import android.util.Log;
-
 import com.mym.landlords.ai.Game.Status;
 import com.mym.landlords.card.Card;
+import com.mym.landlords.card.CardSet;
 import com.mym.landlords.card.CardType;
+import com.mym.landlords.card.Dealer;
+import com.mym.util.GameLog;
 
 /**
  * 代表玩家的实体类。
@@ -19,12 +19,16 @@ import com.mym.landlords.card.CardType;
 public final class Player {
 	private String playerName;			//玩家名称
 	private ArrayList<Card> handCards; 	// 手牌列表
+	private long handCardSet;			// 与手牌列表同步的卡牌集合
+	private long playedCardSet;			// 本局已经打出的卡牌集合
+	private long awardCardSet;			// 作为地主得到的底牌集合
 	private boolean isLandlord;			// 是否是地主
 	private boolean isAiPlayer; 		// 是否是AI玩家
 	private Player priorPlayer; 		// 上手玩家
 	private Player nextPlayer; 			// 下手玩家
 	private CardType lastCards;			//出的最后一手牌，用于AI判断和逻辑控制
 	private int calledScore = Integer.MIN_VALUE;// 叫的分数, Integer.MIN_VALUE表示未赋值
+	private CardTracker cardTracker;	//记牌器，为null表示不记录
 	
 	/* 以下部分为 AI需要用到的属性 */
 	private AI aiRobot;					//机器AI
@@ -44,6 +48,18 @@ public final class Player {
 		return player;
 	}
 
+	/**
+	 * 创建一个使用指定策略出牌的AI玩家实例，每步的时间预算为 {@link Difficulty#Normal}。
+	 * @param name 玩家名称。
+	 * @param strategy 出牌策略。{@link PimcStrategy}可以由多个玩家共用（这些玩家不能同时出牌），
+	 *            {@link IsmctsStrategy}会保存本局的搜索树，每个玩家应当使用各自的对象。
+	 */
+	public static final Player newAiPlayer(String name, PlayStrategy strategy) {
+		Player player = newAiPlayer(name);
+		player.aiRobot.setPlayStrategy(strategy);
+		return player;
+	}
+
 	/**
 	 * 创建一个非AI玩家实例。
 	 * @param name 玩家名称
@@ -57,14 +73,19 @@ public final class Player {
 	 * <ul>
 	 * <li>重置地主标志位；</li>
 	 * <li>清空手牌；</li>
-	 * <li>重置最后打出的牌和叫的地主分数等。</li>
+	 * <li>重置最后打出的牌、叫的地主分数和与地主的相对位置等。</li>
 	 * </ul>
 	 */
 	public synchronized final void reset(){
 		isLandlord = false;
 		handCards.clear();
+		handCardSet = CardSet.EMPTY;
+		playedCardSet = CardSet.EMPTY;
+		awardCardSet = CardSet.EMPTY;
 		lastCards = null;
 		calledScore = Integer.MIN_VALUE;
+		isPriorOfLandlord = false;
+		isNextOfLandlord = false;
 	}
 
 	private Player(boolean isAi, String name) {
@@ -80,6 +101,27 @@ public final class Player {
 		return handCards;
 	}
 
+	/**
+	 * 获得以 {@link CardSet}表示的手牌集合。
+	 */
+	public long getHandCardSet() {
+		return handCardSet;
+	}
+
+	/**
+	 * 获得本局已经打出的卡牌集合（以 {@link CardSet}表示）。
+	 */
+	public long getPlayedCardSet() {
+		return playedCardSet;
+	}
+
+	/**
+	 * 获得作为地主得到的底牌集合（以 {@link CardSet}表示）；不是地主时为空集。
+	 */
+	public long getAwardCardSet() {
+		return awardCardSet;
+	}
+
 	public CardType getLastCards() {
 		return lastCards;
 	}
@@ -90,15 +132,107 @@ public final class Player {
 	 */
 	public final synchronized void giveOutCards(CardType type){
 		lastCards = type;
+		notifyAiRobots(type);
+		if (cardTracker!=null){
+			if (type!=null){
+				cardTracker.recordPlay(this, type);
+			}
+			else{
+				cardTracker.recordPass(this);
+			}
+		}
 		if (lastCards!=null){
-			Log.d(playerName, "giveoutcard:"+type);
-			handCards.removeAll(lastCards.getCardList());
+			GameLog.d(playerName, "giveoutcard:"+type);
+			long played = lastCards.getCardSet();
+			handCardSet = CardSet.minus(handCardSet, played);
+			playedCardSet = CardSet.union(playedCardSet, played);
+			CardSet.removeFrom(handCards, played);
 			if (isAiPlayer){
-				refreshCardsInfo();
+				if (cardsInfo==null || cardsInfo.cardTypes==null){
+					refreshCardsInfo();
+				}
+				else{
+					aiRobot.updateCardsInfo(cardsInfo, played);
+				}
 			}
 		}
 	}
 	
+	//让自己和其他两家的AI观察这次出牌，必须在手牌改变之前调用
+	private void notifyAiRobots(CardType type){
+		Player[] observers = {this, nextPlayer, priorPlayer};
+		for (Player observer : observers){
+			if (observer!=null && observer.aiRobot!=null){
+				observer.aiRobot.observe(this, type);
+			}
+		}
+	}
+	
+	/**
+	 * 设置难度，即每步出牌的时间预算，只对AI玩家有效。
+	 */
+	public void setDifficulty(Difficulty difficulty) {
+		setMoveBudgetMillis(difficulty.getBudgetMillis());
+	}
+
+	/**
+	 * 设置每步出牌的时间预算，只对AI玩家有效。出牌策略在预算用完时返回目前为止最好的出牌。
+	 * @param budgetMillis 时间预算（毫秒），0表示不搜索，只使用基本的出牌逻辑。
+	 */
+	public void setMoveBudgetMillis(long budgetMillis) {
+		checkAiPlayer();
+		aiRobot.setMoveBudgetMillis(budgetMillis);
+	}
+
+	/**
+	 * 取消出牌策略正在进行和之后的所有搜索，可以在任意线程调用，例如界面销毁时。
+	 * 正在进行的出牌会尽快返回，之后只使用基本的出牌逻辑。
+	 */
+	public void cancelThinking() {
+		checkAiPlayer();
+		aiRobot.cancel();
+	}
+
+	/**
+	 * 设置叫牌时使用的评估器，只对AI玩家有效。
+	 * @param evaluator 叫牌评估器，为null表示按大牌计分叫牌。
+	 */
+	public void setBiddingEvaluator(BiddingEvaluator evaluator) {
+		checkAiPlayer();
+		aiRobot.setBiddingEvaluator(evaluator);
+	}
+
+	/**
+	 * 设置叫牌时使用的手牌强度表，只对AI玩家有效，没有设置叫牌评估器时才使用。
+	 * 表是只读的，可以由任意多个玩家共用。
+	 * @param table 手牌强度表，为null表示不使用。
+	 */
+	public void setHandStrengthTable(HandStrengthTable table) {
+		checkAiPlayer();
+		aiRobot.setHandStrengthTable(table);
+	}
+
+	/**
+	 * 设置叫牌时使用的底牌枚举器，只对AI玩家有效，没有设置叫牌评估器时才使用。
+	 * @param enumerator 底牌枚举器，为null表示不使用。
+	 */
+	public void setKittyEnumerator(KittyEnumerator enumerator) {
+		checkAiPlayer();
+		aiRobot.setKittyEnumerator(enumerator);
+	}
+
+	/**
+	 * 关联记牌器，之后的每次出牌和不出都会被记录。
+	 * @param tracker 记牌器，为null表示不记录。
+	 */
+	public void setCardTracker(CardTracker tracker) {
+		cardTracker = tracker;
+	}
+
+	public CardTracker getCardTracker() {
+		return cardTracker;
+	}
+
 	public Player getNextPlayer() {
 		return nextPlayer;
 	}
@@ -139,7 +273,7 @@ public final class Player {
 			cardsInfo.recycle();
 		}
 		cardsInfo = aiRobot.makeCards(handCards);
-		Log.v(playerName, "Final playerInfo:"+cardsInfo);
+		GameLog.v(playerName, "Final playerInfo:"+cardsInfo);
 	}
 
 	/**
@@ -174,10 +308,21 @@ public final class Player {
 		if (handCards == null) {
 			throw new RuntimeException("handCards cannot be null.");
 		}
-		this.handCards = new ArrayList<>(handCards.size());
-		this.handCards.addAll(handCards);
-		Collections.sort(this.handCards, Card.COMPARATOR_WITH_SUIT);
+		setHandCards(CardSet.of(handCards));
+	}
+
+	/**
+	 * 设置手牌。手牌列表按集合的顺序（即已经排好序）重新填充，不创建新的列表。
+	 * @param cardSet 手牌集合（以 {@link CardSet}表示），例如 {@link Dealer#getHand(int)}。
+	 */
+	public void setHandCards(long cardSet) {
+		if (handCards == null) {
+			handCards = new ArrayList<>(CardSet.size(cardSet) + Dealer.KITTY_SIZE);
+		}
+		CardSet.fill(handCards, cardSet);
+		this.handCardSet = cardSet;
 		if (isAiPlayer){
+			aiRobot.resetBelief();
 			refreshCardsInfo();
 		}
 	}
@@ -192,19 +337,21 @@ public final class Player {
 		if (awardCards == null) {
 			throw new RuntimeException("awardCards cannot be null.");
 		}
+		setLandlord(CardSet.of(awardCards));
+	}
+
+	/**
+	 * 设置为地主并将底牌加入手中。
+	 * @param awardCards 底牌集合（以 {@link CardSet}表示）。
+	 */
+	public void setLandlord(long awardCards) {
 		this.isLandlord = true;
 		getPriorPlayer().isPriorOfLandlord = true;
 		getNextPlayer().isNextOfLandlord = true;
 		
-		//实现底牌加入手中时的选中状态
-		for (Card card : this.handCards){
-			card.setPicked(false);
-		}
-		for (Card card : awardCards){
-			card.setPicked(true);
-			this.handCards.add(card);
-		}
-		Collections.sort(this.handCards, Card.COMPARATOR_WITH_SUIT);
+		this.awardCardSet = awardCards;
+		this.handCardSet = CardSet.union(handCardSet, awardCardSet);
+		CardSet.fill(handCards, handCardSet);
 		
 		//对于 AI，重新组合手牌
 		if (isAiPlayer){
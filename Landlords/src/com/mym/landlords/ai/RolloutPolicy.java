@@ -0,0 +1,293 @@
+package com.mym.landlords.ai;
+
+import com.mym.landlords.card.Card;
+import com.mym.landlords.card.CardKind;
+import com.mym.landlords.card.CardSet;
+import com.mym.landlords.card.MoveCode;
+import com.mym.landlords.card.RankHistogram;
+
+/**
+ * 模拟对局时使用的快速出牌策略，从任意局面开始把一局牌打完。
+ * <p>
+ * <h1>策略</h1>
+ * 与 {@link AI#followCards(com.mym.landlords.card.CardType)}的基本思路相同：
+ * <ul>
+ * <li>自由出牌时从最小的点数打起，能组成连对或顺子时打出最长的一组，三条带上2以下最小的单牌或对子；</li>
+ * <li>跟牌时不压队友；压对手时优先使用不用拆开的点数，其次才拆牌，对手快出完时才使用炸弹；</li>
+ * <li>不拆炸弹和王炸。</li>
+ * </ul>
+ * </p>
+ * <p>
+ * <h1>张数掩码</h1>
+ * 出牌只与点数有关，因此模拟时每家的手牌用一个 long 值的“张数掩码”表示：第 15(k-1)位开始的15位是
+ * 张数不少于 k 的点数掩码（k=1~4），点数掩码的含义与 {@link RankHistogram}相同。
+ * 这样所有判断都只需要移位和按位运算，整个掩码的位数就是手牌张数；从一组点数中各去掉一张牌时，
+ * 只要把这些点数在每一层的位换成上一层的位即可。出牌只以 {@link MoveCode}表示，模拟过程中不产生任何对象。
+ * </p>
+ * 座位的编号与 {@link EndgameSolver}相同：座位 i 的下家是座位 (i+1)%3。
+ * 策略对象可以反复使用，但不是线程安全的，每个线程应当使用各自的对象。
+ */
+final class RolloutPolicy {
+
+	private static final int SEATS = 3;
+	//对手剩余的张数不超过该值时才使用炸弹
+	private static final int BOMB_THRESHOLD = 6;
+	//模拟的最大步数，正常对局远远达不到
+	private static final int MAX_STEPS = 1000;
+	//顺子和连对的最小长度
+	private static final int MIN_STRAIGHT_LENGTH = 5;
+	private static final int MIN_DOUBLE_STRAIGHT_LENGTH = 3;
+	//张数掩码中每一层的位数和掩码
+	private static final int LAYER_BITS = 15;
+	private static final int LAYER_MASK = (1 << LAYER_BITS) - 1;
+	//点数掩码复制到四层的乘数
+	private static final long LAYER_SPREAD = 1L | (1L << LAYER_BITS)
+			| (1L << (2 * LAYER_BITS)) | (1L << (3 * LAYER_BITS));
+	//小王和大王的点数掩码
+	private static final int JOKER_VALUES = 3 << (Card.CARD_VALUE_JOKER_S - Card.CARD_VALUE_3);
+	private static final long ROCKET_CODE = MoveCode.encode(CardKind.ROCKET, 2,
+			Card.CARD_VALUE_JOKER_S, 1, 0);
+
+	//模拟过程中三个座位的张数掩码
+	private final long[] layers = new long[SEATS];
+
+	/**
+	 * 从指定局面开始模拟到一方出完牌。
+	 * @param hands 三个座位的手牌（以 {@link CardSet}表示），不会被修改。
+	 * @param landlord 地主的座位。
+	 * @param toMove 轮到出牌的座位。
+	 * @param lastMove 场上最后一手牌；{@link MoveCode#NONE}表示自由出牌。
+	 * @param lastMover 最后一手牌的出牌者座位，自由出牌时忽略。
+	 * @return 返回最先出完牌的座位。
+	 */
+	int playout(long[] hands, int landlord, int toMove, long lastMove, int lastMover) {
+		for (int seat = 0; seat < SEATS; seat++) {
+			layers[seat] = toLayers(RankHistogram.of(hands[seat]));
+		}
+		for (int step = 0; step < MAX_STEPS; step++) {
+			if (lastMove != MoveCode.NONE && toMove == lastMover) {
+				lastMove = MoveCode.NONE;
+			}
+			long move = choose(layers, landlord, toMove, lastMove, lastMover);
+			if (move != MoveCode.NONE) {
+				layers[toMove] = remove(layers[toMove], move);
+				if (layers[toMove] == 0) {
+					return toMove;
+				}
+				lastMove = move;
+				lastMover = toMove;
+			}
+			toMove = (toMove + 1) % SEATS;
+		}
+		throw new IllegalStateException("playout does not terminate.");
+	}
+
+	/**
+	 * 为轮到的座位选择一手牌。
+	 * @param hands 三个座位手牌的张数掩码。
+	 * @return 返回出牌编码；{@link MoveCode#NONE}表示不出（自由出牌时不会返回该值）。
+	 */
+	long choose(long[] hands, int landlord, int toMove, long lastMove, int lastMover) {
+		long hand = hands[toMove];
+		if (lastMove == MoveCode.NONE) {
+			return lead(hand);
+		}
+		boolean partner = toMove != landlord && lastMover != landlord;
+		if (partner) {
+			return MoveCode.NONE;
+		}
+		long move = follow(hand, lastMove);
+		if (move != MoveCode.NONE) {
+			return move;
+		}
+		long bomb = smallestBomb(hand, lastMove);
+		if (bomb != MoveCode.NONE && (Long.bitCount(hands[lastMover]) <= BOMB_THRESHOLD
+				|| MoveCode.size(bomb) == Long.bitCount(hand))) {
+			return bomb;
+		}
+		return MoveCode.NONE;
+	}
+
+	/**
+	 * 把直方图转换为张数掩码。
+	 */
+	static long toLayers(long histogram) {
+		long hand = 0;
+		for (int count = 1; count <= 4; count++) {
+			hand |= (long) RankHistogram.valuesWithCount(histogram, count)
+					<< ((count - 1) * LAYER_BITS);
+		}
+		return hand;
+	}
+
+	//张数不少于 count 的点数掩码
+	private static int atLeast(long hand, int count) {
+		return (int) (hand >>> ((count - 1) * LAYER_BITS)) & LAYER_MASK;
+	}
+
+	//张数恰好为 count 的点数掩码
+	private static int exactly(long hand, int count) {
+		return atLeast(hand, count) & ~(count == 4 ? 0 : atLeast(hand, count + 1));
+	}
+
+	//从点数掩码中的每个点数各去掉 width 张牌
+	private static long take(long hand, int values, int width) {
+		long spread = values * LAYER_SPREAD;
+		for (int i = 0; i < width; i++) {
+			hand = (hand & ~spread) | ((hand >>> LAYER_BITS) & spread);
+		}
+		return hand;
+	}
+
+	//从手牌中去掉一手牌
+	private static long remove(long hand, long move) {
+		int kind = MoveCode.kind(move);
+		hand = take(hand, MoveCode.bodyValues(move),
+				kind == CardKind.ROCKET ? 1 : MoveCode.bodyWidth(move));
+		int kickers = MoveCode.kickerValues(move);
+		if (kickers != 0) {
+			int width = (MoveCode.size(move) - MoveCode.chainLength(move) * 3)
+					/ Integer.bitCount(kickers);
+			hand = take(hand, kickers, width);
+		}
+		return hand;
+	}
+
+	//不属于炸弹和王炸、可以自由拆分的点数
+	private static int looseValues(long hand) {
+		int present = atLeast(hand, 1);
+		int loose = present & ~atLeast(hand, 4);
+		return (present & JOKER_VALUES) == JOKER_VALUES ? loose & ~JOKER_VALUES : loose;
+	}
+
+	//从最小的点数打起：优先组成连对和顺子，三条带上2以下最小的单牌或对子
+	private static long lead(long hand) {
+		int loose = looseValues(hand);
+		if (loose == 0) {
+			//只剩炸弹和王炸
+			return smallestBomb(hand, MoveCode.NONE);
+		}
+		int index = Integer.numberOfTrailingZeros(loose);
+		int value = Card.CARD_VALUE_3 + index;
+		int chainValues = loose & RankHistogram.CHAIN_VALUES_MASK;
+		int pairRun = StraightAnalyst.runLengthFrom(chainValues & atLeast(hand, 2), index);
+		if (pairRun >= MIN_DOUBLE_STRAIGHT_LENGTH) {
+			return MoveCode.encode(CardKind.DOUBLE_STRAIGHT, pairRun * 2, value, pairRun, 0);
+		}
+		int run = StraightAnalyst.runLengthFrom(chainValues, index);
+		if (run >= MIN_STRAIGHT_LENGTH) {
+			return MoveCode.encode(CardKind.STRAIGHT, run, value, run, 0);
+		}
+		int bit = 1 << index;
+		if ((atLeast(hand, 3) & bit) != 0) {
+			int others = chainValues & ~bit;
+			int singles = others & exactly(hand, 1);
+			if (singles != 0) {
+				return MoveCode.encode(CardKind.THREE, 4, value, 1, Integer.lowestOneBit(singles));
+			}
+			int pairs = others & exactly(hand, 2);
+			if (pairs != 0) {
+				return MoveCode.encode(CardKind.THREE, 5, value, 1, Integer.lowestOneBit(pairs));
+			}
+			return MoveCode.encode(CardKind.THREE, 3, value, 1, 0);
+		}
+		return (atLeast(hand, 2) & bit) != 0 ? MoveCode.encode(CardKind.PAIR, 2, value, 1, 0)
+				: MoveCode.encode(CardKind.SINGLE, 1, value, 1, 0);
+	}
+
+	//用最小的非炸弹牌型压牌，优先使用不用拆开的点数
+	private static long follow(long hand, long before) {
+		int loose = looseValues(hand);
+		//比要跟的牌的主体点数大的最小下标
+		int start = MoveCode.primaryValue(before) - Card.CARD_VALUE_3 + 1;
+		int value;
+		switch (MoveCode.kind(before)) {
+		case CardKind.SINGLE:
+			value = pickValue(hand, loose & -(1 << start), 1);
+			return value == 0 ? MoveCode.NONE : MoveCode.encode(CardKind.SINGLE, 1, value, 1, 0);
+		case CardKind.PAIR:
+			value = pickValue(hand, loose & -(1 << start), 2);
+			return value == 0 ? MoveCode.NONE : MoveCode.encode(CardKind.PAIR, 2, value, 1, 0);
+		case CardKind.THREE:
+			value = pickValue(hand, loose & -(1 << start), 3);
+			if (value == 0) {
+				return MoveCode.NONE;
+			}
+			int size = MoveCode.size(before);
+			if (size == 3) {
+				return MoveCode.encode(CardKind.THREE, 3, value, 1, 0);
+			}
+			int kicker = pickValue(hand, loose & ~(1 << (value - Card.CARD_VALUE_3)), size - 3);
+			return kicker == 0 ? MoveCode.NONE : MoveCode.encode(CardKind.THREE, size, value, 1,
+					1 << (kicker - Card.CARD_VALUE_3));
+		case CardKind.STRAIGHT:
+		case CardKind.DOUBLE_STRAIGHT:
+		case CardKind.AIRPLANE:
+			return followChain(hand, loose, before, start);
+		default:
+			return MoveCode.NONE;
+		}
+	}
+
+	//跟顺子、连对和飞机：主体取最低的起点，飞机所带的牌取最小的几个点数
+	private static long followChain(long hand, int loose, long before, int start) {
+		int width = MoveCode.bodyWidth(before);
+		int length = MoveCode.chainLength(before);
+		int starts = StraightAnalyst.chainStarts(
+				loose & atLeast(hand, width) & RankHistogram.CHAIN_VALUES_MASK, length, start);
+		if (starts == 0) {
+			return MoveCode.NONE;
+		}
+		int lowest = Integer.numberOfTrailingZeros(starts);
+		int size = MoveCode.size(before);
+		int kickerWidth = (size - width * length) / length;
+		int kickers = 0;
+		if (kickerWidth > 0) {
+			int candidates = loose & atLeast(hand, kickerWidth) & ~(((1 << length) - 1) << lowest);
+			kickers = lowestValues(candidates & exactly(hand, kickerWidth), length);
+			kickers |= lowestValues(candidates & ~kickers, length - Integer.bitCount(kickers));
+			if (Integer.bitCount(kickers) < length) {
+				return MoveCode.NONE;
+			}
+		}
+		return MoveCode.encode(MoveCode.kind(before), size, Card.CARD_VALUE_3 + lowest,
+				length, kickers);
+	}
+
+	//点数掩码中最小的 count 个点数；不足时返回全部
+	private static int lowestValues(int values, int count) {
+		int result = 0;
+		for (int i = 0; i < count && values != 0; i++) {
+			int lowest = Integer.lowestOneBit(values);
+			result |= lowest;
+			values ^= lowest;
+		}
+		return result;
+	}
+
+	//在候选点数中选出最小的点数：先找张数恰好为 count 的，再找张数更多的（拆牌）
+	private static int pickValue(long hand, int candidates, int count) {
+		int exact = candidates & exactly(hand, count);
+		if (exact == 0) {
+			exact = candidates & atLeast(hand, count);
+		}
+		return RankHistogram.minValue(exact);
+	}
+
+	//能压过前一手牌的最小炸弹，没有炸弹时使用王炸
+	private static long smallestBomb(long hand, long before) {
+		int bombs = atLeast(hand, 4);
+		int beforeKind = MoveCode.kind(before);
+		if (beforeKind == CardKind.ROCKET) {
+			return MoveCode.NONE;
+		}
+		if (beforeKind == CardKind.BOMB) {
+			bombs &= -(2 << (MoveCode.primaryValue(before) - Card.CARD_VALUE_3));
+		}
+		if (bombs != 0) {
+			return MoveCode.encode(CardKind.BOMB, 4, RankHistogram.minValue(bombs), 1, 0);
+		}
+		int jokers = atLeast(hand, 1) & JOKER_VALUES;
+		return jokers == JOKER_VALUES ? ROCKET_CODE : MoveCode.NONE;
+	}
+}
@@ -0,0 +1,399 @@
+package com.mym.landlords.ai;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.mym.landlords.ai.Game.Status;
+import com.mym.landlords.card.Card;
+import com.mym.landlords.card.CardType;
+import com.mym.util.SplitMix64;
+import com.mym.util.WorkerPool;
+
+/**
+ * 批量的AI自我对局模拟器，用 {@link GameEngine}全速进行完整的牌局（发牌、叫地主、出牌），统计吞吐量和胜率。
+ * <p>
+ * <h1>并行</h1>
+ * 每个工作线程拥有各自的三个AI玩家、游戏变量和引擎，互不共享状态（{@link AI}的拆分缓存本身是线程安全的）。
+ * 牌局不预先平分给各个线程，而是由线程每次从共享的计数器领取 {@link #BATCH_SIZE}局，
+ * 做完再领，因此较快的线程自然分担更多的牌局，不会有线程提前空闲。
+ * </p>
+ * <p>
+ * <h1>统计</h1>
+ * 报告包括每秒牌局数和出牌数、每个阶段（发牌、叫地主、出牌）的平均耗时，以及按座位和按身份的胜率，
+ * 参见 {@link Report}。座位按 {@link GameEngine}的出牌顺序编号为0、1、2。
+ * </p>
+ * <p>
+ * <h1>记录</h1>
+ * 设置了记录文件（参见 {@link #setRecordFile(File)}）时，每个线程把自己的牌局用 {@link GameRecordWriter}写入各自的文件。
+ * </p>
+ * 在桌面JVM上直接运行 main 方法即可，参数依次为牌局数目、线程数、AI每步的时间预算（毫秒）、
+ * 可选的记录文件（空字符串表示不记录）和可选的手牌强度表文件（AI叫牌时使用，参见 {@link HandStrengthTable}）。
+ */
+public final class SelfPlaySimulator {
+
+	/** 工作线程每次领取的牌局数目。 */
+	public static final int BATCH_SIZE = 64;
+	private static final int SEATS = 3;
+	//统计耗时的阶段，依次为发牌、叫地主、出牌
+	private static final Status[] PHASES = {Status.Preparing, Status.CallingLandlord, Status.Playing};
+
+	private final int threads;
+	private final long seed;
+	private volatile long moveBudgetMillis;
+	private volatile File recordFile;
+	private volatile HandStrengthTable strengthTable;
+
+	public static void main(String[] args) throws IOException {
+		long games = args.length > 0 ? Long.parseLong(args[0]) : 100000L;
+		int threads = args.length > 1 ? Integer.parseInt(args[1])
+				: Runtime.getRuntime().availableProcessors();
+		long budget = args.length > 2 ? Long.parseLong(args[2]) : 0L;
+		SelfPlaySimulator simulator = new SelfPlaySimulator(threads, 20150508L);
+		simulator.setMoveBudgetMillis(budget);
+		if (args.length > 3 && !args[3].isEmpty()) {
+			simulator.setRecordFile(new File(args[3]));
+		}
+		if (args.length > 4) {
+			simulator.setHandStrengthTable(HandStrengthTable.read(new File(args[4])));
+		}
+		System.out.println(simulator.run(games));
+	}
+
+	/**
+	 * 创建模拟器。
+	 * @param threads 工作线程数，必须为正数。
+	 * @param seed 随机数种子，相同的种子和线程数下每个线程的牌局序列相同。
+	 */
+	public SelfPlaySimulator(int threads, long seed) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("invalid threads:" + threads);
+		}
+		this.threads = threads;
+		this.seed = seed;
+	}
+
+	/**
+	 * 设置AI每步出牌的时间预算，默认为0，即只使用基本的出牌逻辑。
+	 * @param budgetMillis 时间预算（毫秒），参见 {@link Player#setMoveBudgetMillis(long)}。
+	 */
+	public void setMoveBudgetMillis(long budgetMillis) {
+		if (budgetMillis < 0) {
+			throw new IllegalArgumentException("invalid budget:" + budgetMillis);
+		}
+		moveBudgetMillis = budgetMillis;
+	}
+
+	/**
+	 * 设置牌局记录文件，默认为null，即不记录。
+	 * @param file 第 i 个线程写入文件名为 file 加后缀“.i”的文件，已经存在的文件在末尾追加。
+	 */
+	public void setRecordFile(File file) {
+		recordFile = file;
+	}
+
+	/**
+	 * 设置AI叫牌时使用的手牌强度表，默认为null，即按大牌计分叫牌。
+	 * @param table 手牌强度表，由所有AI玩家共用。
+	 */
+	public void setHandStrengthTable(HandStrengthTable table) {
+		strengthTable = table;
+	}
+
+	/**
+	 * 进行指定数目的牌局，直到全部完成才返回。
+	 * @param games 牌局数目。
+	 * @return 返回统计报告。
+	 */
+	public Report run(long games) {
+		WorkerPool pool = new WorkerPool("SelfPlayWorker", threads);
+		AtomicLong remaining = new AtomicLong(games);
+		SplitMix64 random = new SplitMix64(seed);
+		Worker[] workers = new Worker[threads];
+		long start = System.nanoTime();
+		File file = recordFile;
+		HandStrengthTable table = strengthTable;
+		for (int i = 0; i < threads; i++) {
+			File workerFile = file == null ? null : new File(file.getPath() + "." + i);
+			workers[i] = new Worker(remaining, random.nextLong(), moveBudgetMillis, table, workerFile);
+		}
+		Report report = new Report(threads);
+		try {
+			//被中断时工作线程的统计不完整，报告中只有耗时
+			if (pool.runAll(workers)) {
+				for (Worker worker : workers) {
+					report.add(worker);
+				}
+			}
+		} finally {
+			pool.shutdownNow();
+		}
+		report.elapsedNanos = System.nanoTime() - start;
+		return report;
+	}
+
+	/**
+	 * 模拟的统计报告。
+	 */
+	public static final class Report {
+		private final int threads;
+		private long elapsedNanos;
+		private long games;
+		private long redeals;
+		private long plays;
+		private long passes;
+		private long bombs;
+		private long scores;
+		private long landlordWins;
+		private long recordBytes;
+		private final long[] phaseNanos = new long[PHASES.length];
+		private final long[] seatWins = new long[SEATS];
+		private final long[] seatLandlords = new long[SEATS];
+		private final long[] seatLandlordWins = new long[SEATS];
+
+		Report(int threads) {
+			this.threads = threads;
+		}
+
+		private void add(Worker worker) {
+			games += worker.games;
+			redeals += worker.deals - worker.games;
+			plays += worker.plays;
+			passes += worker.passes;
+			bombs += worker.bombs;
+			scores += worker.scores;
+			landlordWins += worker.landlordWins;
+			recordBytes += worker.recordBytes;
+			for (int i = 0; i < PHASES.length; i++) {
+				phaseNanos[i] += worker.phaseNanos[i];
+			}
+			for (int seat = 0; seat < SEATS; seat++) {
+				seatWins[seat] += worker.seatWins[seat];
+				seatLandlords[seat] += worker.seatLandlords[seat];
+				seatLandlordWins[seat] += worker.seatLandlordWins[seat];
+			}
+		}
+
+		/** 获得完成的牌局数目。 */
+		public long getGames() {
+			return games;
+		}
+
+		/** 获得三家都不叫而重新发牌的次数。 */
+		public long getRedeals() {
+			return redeals;
+		}
+
+		/** 获得所有牌局的出牌和不出的总次数。 */
+		public long getMoves() {
+			return plays + passes;
+		}
+
+		/** 获得从开始到全部完成的时间（纳秒）。 */
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+
+		/** 获得每秒完成的牌局数目。 */
+		public double getGamesPerSecond() {
+			return games * 1e9 / elapsedNanos;
+		}
+
+		/** 获得每秒的出牌和不出的次数。 */
+		public double getMovesPerSecond() {
+			return getMoves() * 1e9 / elapsedNanos;
+		}
+
+		/**
+		 * 获得平均每局在某个阶段花费的时间（微秒），为各线程的累计时间，与线程数无关。
+		 * @param phase {@link Status#Preparing}、{@link Status#CallingLandlord}或 {@link Status#Playing}。
+		 */
+		public double getPhaseMicros(Status phase) {
+			for (int i = 0; i < PHASES.length; i++) {
+				if (PHASES[i] == phase) {
+					return games == 0 ? 0 : phaseNanos[i] / 1000.0 / games;
+				}
+			}
+			throw new IllegalArgumentException("untimed phase:" + phase);
+		}
+
+		/** 获得座位的胜率（不论身份）。 */
+		public double getSeatWinRate(int seat) {
+			return games == 0 ? 0 : (double) seatWins[seat] / games;
+		}
+
+		/** 获得座位当地主的比例。 */
+		public double getSeatLandlordRate(int seat) {
+			return games == 0 ? 0 : (double) seatLandlords[seat] / games;
+		}
+
+		/** 获得座位当地主时的胜率。 */
+		public double getSeatLandlordWinRate(int seat) {
+			return seatLandlords[seat] == 0 ? 0 : (double) seatLandlordWins[seat] / seatLandlords[seat];
+		}
+
+		/** 获得平均每局记录的字节数，没有记录时为0。 */
+		public double getRecordBytesPerGame() {
+			return games == 0 ? 0 : (double) recordBytes / games;
+		}
+
+		/** 获得地主的胜率。 */
+		public double getLandlordWinRate() {
+			return games == 0 ? 0 : (double) landlordWins / games;
+		}
+
+		@Override
+		public String toString() {
+			StringBuilder builder = new StringBuilder();
+			builder.append(String.format(Locale.US,
+					"games=%d, threads=%d, elapsed=%dms, %.0f games/s, %.0f moves/s%n",
+					games, threads, elapsedNanos / 1000000, getGamesPerSecond(),
+					getMovesPerSecond()));
+			builder.append(String.format(Locale.US,
+					"per game: deal=%.1fus, bidding=%.1fus, playing=%.1fus, moves=%.1f, redeals=%.3f%n",
+					getPhaseMicros(Status.Preparing), getPhaseMicros(Status.CallingLandlord),
+					getPhaseMicros(Status.Playing), games == 0 ? 0 : (double) getMoves() / games,
+					games == 0 ? 0 : (double) redeals / games));
+			builder.append(String.format(Locale.US,
+					"landlord win=%.2f%%, farmer win=%.2f%%, bombs/game=%.3f, score/game=%.3f%n",
+					getLandlordWinRate() * 100, (1 - getLandlordWinRate()) * 100,
+					games == 0 ? 0 : (double) bombs / games, games == 0 ? 0 : (double) scores / games));
+			if (recordBytes > 0) {
+				builder.append(String.format(Locale.US, "record: %.1f bytes/game%n",
+						getRecordBytesPerGame()));
+			}
+			for (int seat = 0; seat < SEATS; seat++) {
+				builder.append(String.format(Locale.US,
+						"seat %d: win=%.2f%%, landlord=%.2f%%, win as landlord=%.2f%%%n", seat,
+						getSeatWinRate(seat) * 100, getSeatLandlordRate(seat) * 100,
+						getSeatLandlordWinRate(seat) * 100));
+			}
+			return builder.toString();
+		}
+	}
+
+	//工作线程：使用各自的玩家和引擎，反复领取一批牌局直到领完
+	private static final class Worker extends GameEngine.SimpleListener implements Callable<Worker> {
+		private final AtomicLong remaining;
+		private final Player[] players = new Player[SEATS];
+		private final GameEngine engine;
+		private final GameRecord.Recorder recorder;
+		private final File recordFile;
+		private int phase = -1;
+		private long phaseStart;
+		private long games;
+		private long deals;
+		private long plays;
+		private long passes;
+		private long bombs;
+		private long scores;
+		private long landlordWins;
+		private long recordBytes;
+		private final long[] phaseNanos = new long[PHASES.length];
+		private final long[] seatWins = new long[SEATS];
+		private final long[] seatLandlords = new long[SEATS];
+		private final long[] seatLandlordWins = new long[SEATS];
+
+		Worker(AtomicLong remaining, long seed, long budgetMillis, HandStrengthTable table,
+				File recordFile) {
+			this.remaining = remaining;
+			for (int seat = 0; seat < SEATS; seat++) {
+				players[seat] = Player.newAiPlayer("sim" + seat);
+				players[seat].setMoveBudgetMillis(budgetMillis);
+				players[seat].setHandStrengthTable(table);
+			}
+			engine = new GameEngine(Game.newStandaloneGame(), players[0], players[1], players[2], seed);
+			engine.addListener(this);
+			this.recordFile = recordFile;
+			recorder = recordFile == null ? null : new GameRecord.Recorder(engine);
+			if (recorder != null) {
+				engine.addListener(recorder);
+			}
+		}
+
+		@Override
+		public Worker call() throws IOException {
+			GameRecordWriter writer = recordFile == null ? null : new GameRecordWriter(recordFile);
+			try {
+				while (!Thread.currentThread().isInterrupted()) {
+					long batch = Math.min(BATCH_SIZE, remaining.getAndAdd(-BATCH_SIZE));
+					if (batch <= 0) {
+						break;
+					}
+					for (long i = 0; i < batch; i++) {
+						engine.restart();
+						if (engine.run() != Status.Gameover) {
+							throw new IllegalStateException("game stopped at " + engine.getGame().status);
+						}
+						record();
+						if (writer != null) {
+							writer.write(recorder.getRecord());
+						}
+					}
+				}
+			} finally {
+				if (writer != null) {
+					writer.close();
+					recordBytes = writer.getRecordBytes();
+				}
+			}
+			return this;
+		}
+
+		private void record() {
+			Game game = engine.getGame();
+			List<Player> winners = engine.getWinners();
+			boolean landlordWon = winners.contains(game.landlordPlayer);
+			games++;
+			bombs += game.boomCount;
+			scores += game.basicScore;
+			if (landlordWon) {
+				landlordWins++;
+			}
+			for (int seat = 0; seat < SEATS; seat++) {
+				if (winners.contains(players[seat])) {
+					seatWins[seat]++;
+				}
+				if (players[seat] == game.landlordPlayer) {
+					seatLandlords[seat]++;
+					if (landlordWon) {
+						seatLandlordWins[seat]++;
+					}
+				}
+			}
+		}
+
+		@Override
+		public void onStatusChanged(Status status) {
+			long now = System.nanoTime();
+			if (phase >= 0) {
+				phaseNanos[phase] += now - phaseStart;
+			}
+			phase = -1;
+			for (int i = 0; i < PHASES.length; i++) {
+				if (PHASES[i] == status) {
+					phase = i;
+				}
+			}
+			phaseStart = now;
+		}
+
+		@Override
+		public void onCardsDealt(List<Card> landlordCards) {
+			deals++;
+		}
+
+		@Override
+		public void onPlayed(Player player, CardType type, boolean isFirst) {
+			if (type == null) {
+				passes++;
+			}
+			else {
+				plays++;
+			}
+		}
+	}
+}
@@ -1,271 +1,149 @@
 package com.mym.landlords.ai;
 
-import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
-
-import android.util.Log;
-
 import com.mym.landlords.card.Card;
-import com.mym.landlords.card.DoubleStraight;
-import com.mym.landlords.card.Straight;
+import com.mym.landlords.card.CardKind;
+import com.mym.landlords.card.MoveCode;
+import com.mym.landlords.card.RankHistogram;
 
-//package access
+/**
+ * 顺子、连对和飞机的分析工具，全部基于查表完成。
+ * <p>
+ * <h1>点数掩码</h1>
+ * 只有3~A这12种点数能组成连续的牌型，因此使用12位的掩码表示哪些点数可用：第 (v-3) 位为1表示点数 v 可用。
+ * 对于顺子、连对和飞机，分别取张数至少为1、2、3的点数（参见 {@link #chainMask(long, int)}），
+ * 之后的分析方法对三者完全相同。
+ * </p>
+ * <p>
+ * <h1>查找表</h1>
+ * 12位掩码只有4096种，类加载时为每一种预先算出其中所有的极大连续段（起始下标和长度），
+ * 以及从最低位开始的连续段长度。查询某种长度、某个最小点数以上的连续牌型时，只需要遍历不超过6个极大连续段。
+ * </p>
+ * @author Muyangmin
+ * @create 2015-4-27
+ */
 final class StraightAnalyst {
-	
-	private static final String LOG_TAG = "StraightAnalyst";
-	
-	/**
-	 * 找出所有能组成顺子的数值组合。
-	 * @param cardList 卡牌列表。
-	 * @return 顺子数值列表
-	 */
-	protected static List<StraightNumbers> getAllStraights(
-			ArrayList<Card> cardList) {
-//		Log.d(LOG_TAG, "original list:"+cardList.toString());
-		//transfer int array
-		ArrayList<Integer> leftCardValues = new ArrayList<>();
-		for (Card card: cardList){
-			//过滤2和王
-			if (card.getValue() < Card.CARD_VALUE_2){
-				leftCardValues.add(card.getValue());	
+
+	/** 能组成连续牌型的点数种类数（3~A）。 */
+	static final int CHAIN_VALUE_KINDS = Card.CARD_VALUE_2 - Card.CARD_VALUE_3;
+	private static final int MASK_COUNT = 1 << CHAIN_VALUE_KINDS;
+	//每个连续段占用8位：高4位为起始下标，低4位为长度
+	private static final int RUN_BITS = 8;
+
+	//每种掩码的极大连续段，按起始下标从小到大排列
+	private static final long[] RUNS = new long[MASK_COUNT];
+	//每种掩码的极大连续段个数
+	private static final byte[] RUN_COUNTS = new byte[MASK_COUNT];
+	//每种掩码从最低位开始的连续段长度
+	private static final byte[] LOW_RUN_LENGTHS = new byte[MASK_COUNT];
+	static {
+		for (int mask = 0; mask < MASK_COUNT; mask++) {
+			long runs = 0;
+			int count = 0;
+			for (int start = 0; start < CHAIN_VALUE_KINDS;) {
+				if ((mask & (1 << start)) == 0) {
+					start++;
+					continue;
+				}
+				int length = Integer.numberOfTrailingZeros(~(mask >>> start));
+				runs |= (long) ((start << 4) | length) << (count * RUN_BITS);
+				count++;
+				start += length;
 			}
+			RUNS[mask] = runs;
+			RUN_COUNTS[mask] = (byte) count;
+			LOW_RUN_LENGTHS[mask] = (byte) Integer.numberOfTrailingZeros(~mask);
 		}
-//		Log.d(LOG_TAG, "leftCardValue:" + leftCardValues.toString());
-		List<StraightNumbers> shortList = getShortestStraightList(leftCardValues);
-//		Log.d(LOG_TAG, "shortest:"+shortList.toString());
-		extendStraight(shortList, leftCardValues);
-//		Log.d(LOG_TAG, "after extends:"+shortList.toString());
-		concatPossibleStraights(shortList);
-		Log.d(LOG_TAG, "final concat:"+shortList.toString());
-		return shortList;
 	}
-	
+
+	//hide constructor
+	private StraightAnalyst() {}
+
 	/**
-	 * 强行凑出顺子。
-	 * @param follow 要跟牌的顺子
-	 * @return 返回一个所有可能点数情况的列表，这些顺子的点数彼此可能有所重叠。如果无牌可出，则列表为空。
+	 * 取得能组成连续牌型的点数掩码。
+	 * @param histogram 手牌的点数直方图，参见 {@link RankHistogram}。
+	 * @param width 每个点数需要的张数：顺子为1，连对为2，飞机为3。
 	 */
-	protected static ArrayList<Straight> forceGetStraights(Straight follow,
-			ArrayList<Card> cards) {
-		if (follow==null || cards.size()< follow.length){
-			return null;
-		}
-		ArrayList<Straight> forceStraights = new ArrayList<>();
-		Card lastCard = null;
-		int size = cards.size();
-		ArrayList<Card> tempCards = new ArrayList<>(); 
-		for (int i=0; i<size-follow.length; i++){
-			lastCard=null;
-			tempCards.clear();
-			for (int j=0; i+j < size ; j++){
-				Card thisCard = cards.get(i+j);
-				if (thisCard.getValue()>=Card.CARD_VALUE_2){
-					break;
-				}
-				//比较点数
-				if (thisCard.compareTo(follow.getCardList().get(0)) <= 0){
-					continue;
-				}
-				if (lastCard==null){
-					tempCards.add(thisCard);
-					lastCard = thisCard;
-					continue;
-				}
-				int increment = thisCard.getValue()-lastCard.getValue();
-				if (increment==0){
-					continue;
-				}
-				else if (increment==1){
-					tempCards.add(thisCard);
-					lastCard = thisCard;
-					if (tempCards.size()==follow.length){
-						break;
-					}
-				}
-				//大于1不会构成顺子。
-				else {
-					break;
-				}
-			}
-			if (tempCards.size()==follow.length){
-				Straight straight = new Straight(tempCards);
-				if (straight.compareTo(follow) > 0){
-					forceStraights.add(straight);
-				}
-			}
-		}
-		return forceStraights;
+	static int chainMask(long histogram, int width) {
+		return RankHistogram.valuesWithCount(histogram, width) & RankHistogram.CHAIN_VALUES_MASK;
 	}
 
 	/**
-	 * 强行凑出双顺。
-	 * @param follow 要跟牌的双顺
-	 * @return 返回一个所有可能点数情况的列表，这些双顺的点数彼此可能有所重叠。如果无牌可出，则列表为空。
+	 * 获得掩码中极大连续段的个数。
 	 */
-	protected static ArrayList<DoubleStraight> forceGetDoubleStraights(
-			DoubleStraight follow, ArrayList<Card> cards) {
-		if (follow==null || cards.size()< follow.length){
-			return null;
-		}
-		ArrayList<DoubleStraight> forceStraights = new ArrayList<>();
-		int size = cards.size();
-		ArrayList<Card> tempCards = new ArrayList<>(); 
-		for (int i=0; i<size-follow.length*2; i++){
-			tempCards.clear();
-			for (int j = 0, lastValue=0; i+j+1 < size;/*empty!*/) {
-				Card card1 = cards.get(i+j);
-				if (card1.getValue()==lastValue){
-					j++;
-					continue;
-				}
-				Card card2 = cards.get(i+j + 1);
-				j+=2;	//执行变量自增
-				if (card1.isSameValueAs(card2) 				//两张一样大
-						&& card1.getValue()<Card.CARD_VALUE_2	//2以上不能组成连对
-						&& (lastValue==0 || card1.getValue()==lastValue+1)	//与前一个对子是连续的
-						) {
-					lastValue = card1.getValue();
-					tempCards.add(card1);
-					tempCards.add(card2);
-					if (tempCards.size()==follow.length*2){
-						break;
-					}
-				} else {
-					break;
-				}
-			}
-			if (tempCards.size()==follow.length*2){
-				DoubleStraight straight = new DoubleStraight(tempCards);
-				if (straight.compareTo(follow) > 0){
-					forceStraights.add(straight);
-				}
-			}
-		}
-		return forceStraights;
+	static int runCount(int mask) {
+		return RUN_COUNTS[mask];
 	}
 
 	/**
-	 *  获取所有的最短顺子，即所有的五连。
-	 * @param cardValues 剩余卡牌点数。
-	 * @return 返回匹配成功的所有五连顺子列表。
+	 * 获得掩码中所有的极大连续段，按起始下标从小到大排列。
+	 * 使用 {@link #runStart(long, int)}和 {@link #runLength(long, int)}读取其中的第 index 个连续段。
 	 */
-	private static List<StraightNumbers> getShortestStraightList(
-			ArrayList<Integer> cardValues) {
-		List<StraightNumbers> strList = new ArrayList<>();
-		StraightNumbers straight;
-		while ((straight = getSmallestShortList(cardValues)) != null) {
-			cardValues.removeAll(straight.numbers);
-			strList.add(straight);
-		}
-		return strList;
+	static long maximalRuns(int mask) {
+		return RUNS[mask];
+	}
+
+	/** 获得第 index 个连续段的起始下标（点数-3）。 */
+	static int runStart(long runs, int index) {
+		return (int) (runs >>> (index * RUN_BITS + 4)) & 0xF;
+	}
+
+	/** 获得第 index 个连续段的长度。 */
+	static int runLength(long runs, int index) {
+		return (int) (runs >>> (index * RUN_BITS)) & 0xF;
 	}
 
 	/**
-	 *  选取最小的五连，参数必须非递减有序。
-	 * @param values 剩余牌值
-	 * @return 一旦选取到5张组成的顺子则立即返回这5张牌组成的列表，否则返回null。
+	 * 获得从指定下标开始的连续段长度。
+	 * @param start 起始下标（点数-3）。
 	 */
-	private static StraightNumbers getSmallestShortList(ArrayList<Integer> values) {
-		ArrayList<Integer> integers = new ArrayList<>();
-		for (Integer current : values) {
-			if (integers.size() == 0) {
-				integers.add(current);
-				continue;
-			}
-			int increment = current - integers.get(integers.size() - 1);
-			// 如果相等，不做理会
-			if (increment == 0) {
-				continue;
-			}
-			// 如果增量恰好为1，则加入列表
-			else if (increment == 1) {
-				integers.add(current);
-				if (integers.size() == 5) {
-					break;
-				}
-			}
-			// 如果增量大于1则已经无法组成顺子，清空暂存列表
-			else {
-				integers.clear();
-				continue;
-			}
-		}// end of loop for
-		return integers.size() >= 5 ? new StraightNumbers(integers) : null;
+	static int runLengthFrom(int mask, int start) {
+		return start >= CHAIN_VALUE_KINDS ? 0 : LOW_RUN_LENGTHS[mask >>> start];
 	}
 
-	// 扩展所有五连，以使能拼接的单牌都拼接上。
-	private static void extendStraight(List<StraightNumbers> strList,
-			ArrayList<Integer> leftCards) {
-		Iterator<StraightNumbers> strIter = strList.iterator();
-		while (strIter.hasNext()) {
-			StraightNumbers straight = strIter.next();
-			if (leftCards.size()<=0){
-				break ;
-			}
-			Iterator<Integer> numIter = leftCards.iterator();
-			while (numIter.hasNext()){
-				Integer number = numIter.next();
-				ArrayList<Integer> list = straight.numbers;
-				if (list.get(0)-number==1){
-					list.add(0, number);
-					numIter.remove();
-				}
-				else if (number - list.get(list.size()-1)==1){
-					list.add(number);
-					numIter.remove();
-				}
+	/**
+	 * 找出所有长度为 length、起始下标不小于 minStart的连续牌型。
+	 * @return 返回起始下标的掩码，第 i 位为1表示可以组成从下标 i 开始的连续牌型。
+	 */
+	static int chainStarts(int mask, int length, int minStart) {
+		long runs = RUNS[mask];
+		int starts = 0;
+		for (int i = RUN_COUNTS[mask] - 1; i >= 0; i--) {
+			int runLength = runLength(runs, i);
+			if (runLength >= length) {
+				starts |= ((1 << (runLength - length + 1)) - 1) << runStart(runs, i);
 			}
-		} // end of while loop
+		}
+		return starts & -(1 << minStart);
 	}
-	
-	// 连接扩展顺子，消除可以无缝连接的顺子。
-	private static void concatPossibleStraights(List<StraightNumbers> strList){
-		//using HashMap instead of ArrayList to improve performance
-		HashMap<Integer, Boolean> concatedMap = new HashMap<>(strList.size());
-		
-		Iterator<StraightNumbers> strIterator = strList.iterator();//遍历迭代器
-		final int listLength = strList.size();
-		while (strIterator.hasNext()){
-			ArrayList<Integer> list = strIterator.next().numbers;
-			if (list.size()<=0){
-				continue;
-			}
-			//内层循环因为要随机访问所以不使用iterator迭代
-			Integer max = list.get(list.size()-1);
-			//因为顺子已经按照最小值有序排列，因此检测顺子的连接时只需要比较每一个的最小值和当前的最大值
-			for (int i=0; i<listLength; i++){
-				//如果已经是被连接过的顺子，则跳过
-				Boolean concated = concatedMap.get(i);
-				//因为是HashMap，取值出来的数据会是null而不是false
-				if (concated!=null){
-					continue;
-				}
-				StraightNumbers bigger = strList.get(i);
-				int biggerMax = bigger.numbers.get(0);
-				if (biggerMax - max == 1) {
-					list.addAll(bigger.numbers);
-					max = list.get(list.size()-1);
-					Collections.sort(list);
-					concatedMap.put(i, true);//标记已被连接，避免多个顺子重复连接
-				}
-			}//当前顺子可连接的已测试完
+
+	/**
+	 * 找出所有能打过指定顺子、连对或飞机（不带牌）的同类牌型。
+	 * @param follow 要跟的牌的出牌编码。
+	 * @param histogram 手牌的点数直方图。
+	 * @return 返回起始下标的掩码，含义同 {@link #chainStarts(int, int, int)}；如果要跟的牌不是这几种牌型则返回0。
+	 */
+	static int forceGetChains(long follow, long histogram) {
+		int kind = MoveCode.kind(follow);
+		if ((kind != CardKind.STRAIGHT && kind != CardKind.DOUBLE_STRAIGHT
+				&& kind != CardKind.AIRPLANE) || MoveCode.kickerValues(follow) != 0) {
+			return 0;
 		}
-		//将待删除列表的数据反向排序，确保删除的时候从最大的下标开始倒序删除  ← ← ← ← 。
-		ArrayList<Integer> toRemoveList = new ArrayList<>(concatedMap.keySet());
-		Collections.sort(toRemoveList, new Comparator<Integer>() {
-			@Override
-			public int compare(Integer o1, Integer o2) {
-				return o2.compareTo(o1); //reverse compare
-			}
-		});
-		//注意：这里的遍历必须是int类型而不是 Integer类型，因为是记录的下标而不是元素自身的引用。
-		for (int key : toRemoveList){
-			strList.remove(key);
+		int width = MoveCode.bodyWidth(follow);
+		int minStart = MoveCode.primaryValue(follow) - Card.CARD_VALUE_3 + 1;
+		return chainStarts(chainMask(histogram, width), MoveCode.chainLength(follow), minStart);
+	}
+
+	/**
+	 * 找出能打过指定顺子、连对或飞机（不带牌）的最小的同类牌型。
+	 * @return 返回出牌编码；如果没有则返回 {@link MoveCode#NONE}。
+	 */
+	static long forceGetSmallestChain(long follow, long histogram) {
+		int starts = forceGetChains(follow, histogram);
+		if (starts == 0) {
+			return MoveCode.NONE;
 		}
-		return ;
+		int start = Integer.numberOfTrailingZeros(starts);
+		return MoveCode.encode(MoveCode.kind(follow), MoveCode.size(follow),
+				Card.CARD_VALUE_3 + start, MoveCode.chainLength(follow), 0);
 	}
-}
\ No newline at end of file
+}
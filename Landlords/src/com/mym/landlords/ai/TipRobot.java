@@ -1,18 +1,15 @@
 package com.mym.landlords.ai;
 
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collections;
 import java.util.List;
 
-import com.mym.landlords.card.Bomb;
 import com.mym.landlords.card.Card;
+import com.mym.landlords.card.CardSet;
 import com.mym.landlords.card.CardType;
-import com.mym.landlords.card.DoubleStraight;
-import com.mym.landlords.card.Pair;
-import com.mym.landlords.card.Rocket;
+import com.mym.landlords.card.MoveCode;
+import com.mym.landlords.card.MoveGenerator;
+import com.mym.landlords.card.RankHistogram;
 import com.mym.landlords.card.Single;
-import com.mym.landlords.card.Straight;
 import com.mym.landlords.card.Three;
 
 /**
@@ -42,116 +39,30 @@ public final class TipRobot {
 			}
 			return cardTypes;
 		}
-		//否则只能强制找出所有能组合出的适合当前牌型的牌
+		//否则找出所有能打过当前牌型的牌，顺序参见 MoveGenerator
 		ArrayList<CardType> types = new ArrayList<>();
-		ArrayList<Card> cloneList = new ArrayList<>(handCards);
-		//王炸无法跟牌，直接返回空即可。
-		if (followType instanceof Rocket){
-			return types;
+		long hand = CardSet.of(handCards);
+		//炸弹和王炸只作为整体提示，不拆开用于其他牌型
+		long bombCards = CardSet.EMPTY;
+		for (int values = RankHistogram.valuesWithCount(RankHistogram.of(hand), 4);
+				values != 0; values &= values - 1) {
+			bombCards |= CardSet.ofValue(hand, RankHistogram.minValue(values));
 		}
-		Card[] tempBombCards = new Card[4];
-		final boolean followBomb = followType instanceof Bomb;
-		final int bombValue = followType.getCardList().get(0).getValue();
-		//先找出炸弹
-		for (int i=0,lastValue=0; i<cloneList.size();i++){
-			int thisValue = cloneList.get(i).getValue();
-			//排除比前一个炸弹小的炸弹。
-			if (followBomb && thisValue <= bombValue) {
-				continue;
-			}
-			if (thisValue==lastValue){
-				continue;
-			}
-			lastValue = thisValue;
-			int realLength=0;
-			for (int j=0; j<4 && i+j<cloneList.size(); j++){
-				tempBombCards[j] = cloneList.get(i+j);
-				realLength++;
-			}
-			//没有四张牌
-			if (realLength<4){
-				break;
-			}
-			if (tempBombCards[0].isSameValueAs(tempBombCards[1])
-					&& tempBombCards[1].isSameValueAs(tempBombCards[2])
-					&& tempBombCards[2].isSameValueAs(tempBombCards[3])){
-				ArrayList<Card> cards =new ArrayList<>(Arrays.asList(tempBombCards)); 
-				types.add(new Bomb(cards));
-				cloneList.removeAll(cards);
-			}
-		}
-		//如果是单牌，则找出所有比目标大的就可以了。
-		if (followType instanceof Single){
-			Card before = followType.getCardList().get(0);
-			for (Card card: cloneList){
-				if (card.compareTo(before) > 0){
-					types.add(new Single(card));
-				}
-			}
-		}
-		//王炸可以拆开打单牌，但是对于其他情形就只能用作炸弹了
-		int[] rocketPattern = new int[]{Card.CARD_VALUE_JOKER_S, Card.CARD_VALUE_JOKER_B};
-		ArrayList<Card> rocketCards = robot.takeoutCards(rocketPattern, cloneList);
-		if (rocketCards!=null){
-			types.add(new Rocket(rocketCards));
-			cloneList.removeAll(rocketCards);
-		}
-		//继续在剩下的卡片中寻找匹配的牌型
-		if (followType instanceof Pair){
-			//跳过比原牌小的
-			Card before = followType.getCardList().get(0);
-			for (int i=0, lastValue = 0; i+1<cloneList.size(); i++){
-				Card thisCard = handCards.get(i);	
-				if (thisCard.compareTo(before)<=0){
-					continue;
-				}
-				if (thisCard.getValue()==lastValue){
-					continue;
-				}
-				Card nextCard = handCards.get(i+1);
-				if (thisCard.isSameValueAs(nextCard)){
-					types.add(new Pair(createArrayList(thisCard, nextCard)));
-					//因可能存在三条的情形，为避免对同一点数提示两次，直接跳过已经找到的对子。
-					lastValue = thisCard.getValue();
-				}
-			}
-		}
-		else if (followType instanceof Three){
-			Card before = followType.getCardList().get(0);
-			for (int i=0, lastValue = 0; i<cloneList.size()-2; i++){
-				Card thisCard = handCards.get(i);
-				//跳过比原牌小的
-				if (thisCard.compareTo(before)<=0){
-					continue;
-				}
-				if (thisCard.getValue()==lastValue){
-					continue;
-				}
-				Card nextCard = handCards.get(i+1);
-				Card thirdCard = handCards.get(i+2);
-				if (thisCard.isSameValueAs(nextCard) 
-						&& nextCard.isSameValueAs(thirdCard)){
-					types.add(new Three(createArrayList(thisCard, nextCard, thirdCard)));
-				}
-				//因为已经在之前找出了炸弹，因此这里主要涉及没有组成三个的对子，跳过这些对子的第二张牌。
-				lastValue = thisCard.getValue();
-			}
+		//王炸可以拆开打单牌
+		long rocketCards = CardSet.valueMask(Card.CARD_VALUE_JOKER_S)
+				| CardSet.valueMask(Card.CARD_VALUE_JOKER_B);
+		if (CardSet.containsAll(hand, rocketCards) && !(followType instanceof Single)) {
+			bombCards |= rocketCards;
 		}
-		else if (followType instanceof Straight){
-			ArrayList<Straight> straights = StraightAnalyst.forceGetStraights(
-					(Straight) followType, cloneList);
-			if (straights!=null){
-				types.addAll(straights);	
-			}
-		}
-		else if (followType instanceof DoubleStraight){
-			ArrayList<DoubleStraight> straights = StraightAnalyst.forceGetDoubleStraights(
-					(DoubleStraight) followType, cloneList);
-			if (straights!=null){
-				types.addAll(straights);	
+		MoveGenerator generator = new MoveGenerator().reset(hand, followType.getMoveCode());
+		while (generator.hasNext()) {
+			long move = generator.next();
+			if (!MoveCode.isBomb(move)
+					&& CardSet.intersect(MoveCode.toCardSet(move, hand), bombCards) != 0) {
+				continue;
 			}
+			types.add(MoveCode.toCardType(move, handCards));
 		}
-		Collections.sort(types, CardType.SORT_COMPARATOR);
 		return types;
 	}
 	
@@ -1,8 +1,6 @@
 package com.mym.landlords.card;
 
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
 
 
 /**
@@ -14,84 +12,56 @@ public class Airplane extends CardType implements NonBombType {
 	private ArrayList<Three> bodyThrees;
 	
 	public Airplane(ArrayList<Card> list) {
-		try {
-			bodyThrees = getThreeLists(list);
-			cardList = list;
-		} catch (IllegalArgumentException e) {
-			e.printStackTrace();
-			throw new IllegalArgumentException("cannot makeup airplane: "+e.getMessage());
-		}
+		this(list, RankHistogram.of(list));
 	}
 	
-	private ArrayList<Three> getThreeLists(ArrayList<Card> list) throws IllegalArgumentException{
-		if (list==null || list.isEmpty()){
-			throw new IllegalArgumentException("param is null.");
-		}
-		//记录每张卡的点数对应的卡牌张数
-		HashMap<Integer, Integer> cardCountMap = new HashMap<>();
-		//与 cardCountMap 同步更新的一个映射，保存相同点数的卡牌，以备后用。
-		HashMap<Integer, ArrayList<Card>> cardMap = new HashMap<>();
-		int three=0, two=0, one=0;	//记录卡组数目
-		for (Card card: list){
-			int value = card.getValue();
-			Integer already = cardCountMap.get(value);
-			if (already==null){
-				already = 0;
-			}
-			already++;
-			if (already > 3){//超过四张一样的牌，不允许出牌。
-				throw new IllegalArgumentException("too many same cards.");
-			}
-			//更新卡牌映射
-			ArrayList<Card> sameCards = cardMap.get(value);
-			if (sameCards==null){
-				sameCards = new ArrayList<>();
-			}
-			sameCards.add(card);
-			cardMap.put(value, sameCards);
-			//更新计数
-			cardCountMap.put(value, already);
+	//使用已经计算好的点数直方图创建对象
+	Airplane(ArrayList<Card> list, long histogram) {
+		if (list==null || !matches(histogram, list.size())){
+			throw new IllegalArgumentException("cannot makeup airplane: "+list);
 		}
-		for (ArrayList<Card> cards: cardMap.values()){
-			switch (cards.size()){
-				case 3: three++;break;
-				case 2: two++;	break;
-				case 1: one++;	break;
-			}
+		bodyThrees = getThreeLists(list, histogram);
+		//保护性复制
+		cardList = new ArrayList<>(list);
+	}
+	
+	/**
+	 * 根据点数直方图判断卡牌能否组成飞机：至少两个点数连续的三条（不包含2和王），
+	 * 可以不带牌，或者每个三条各带一张单牌，或者每个三条各带一个对子，所带的牌点数彼此不同。
+	 */
+	static boolean matches(long histogram, int size){
+		int bodyValues = RankHistogram.valuesWithExactCount(histogram, 3);
+		int bodyCount = Integer.bitCount(bodyValues);
+		if (!RankHistogram.isChain(bodyValues, 2)){
+			return false;
 		}
-		if ( (one!=0 && two!=0) ){
-			throw new IllegalArgumentException("mixed attachment, one="+one+",two="+two);
+		if (size==bodyCount*3){
+			return true;
 		}
-		if ( (one!=0 && three!=one) || (two!=0 && three != two) ){
-			throw new IllegalArgumentException("body and attachment not match."
-					+ "one=" + one + ",two=" + two + ",three=" + three);
+		if (size==bodyCount*4){
+			return Integer.bitCount(RankHistogram.valuesWithExactCount(histogram, 1))==bodyCount;
 		}
-		//组装三条并带牌
-		Iterator<Integer> iterator = cardCountMap.keySet().iterator();
-		ArrayList<ArrayList<Card>> bodyLists = new ArrayList<>();
-		ArrayList<ArrayList<Card>> attachLists = new ArrayList<>();
-		while (iterator.hasNext()){
-			int value = iterator.next();
-			if (cardCountMap.get(value)==3){	//是三条
-				bodyLists.add(cardMap.get(value));
-			}
-			else{
-				attachLists.add(cardMap.get(value));
-			}
+		if (size==bodyCount*5){
+			return Integer.bitCount(RankHistogram.valuesWithExactCount(histogram, 2))==bodyCount;
 		}
-		//bodyLists & attachLists must be same size.
-		int size = bodyLists.size();
-		//补充不带牌的情况
-		if (attachLists.size()<size){
-			int sub = size-attachLists.size();
-			for (int i=0; i<sub; i++){
-				attachLists.add(null);
+		return false;
+	}
+	
+	//按点数从小到大把三条和带的牌一一组合。
+	private ArrayList<Three> getThreeLists(ArrayList<Card> list, long histogram){
+		int bodyValues = RankHistogram.valuesWithExactCount(histogram, 3);
+		int attachValues = RankHistogram.valuesWithCount(histogram, 1) & ~bodyValues;
+		ArrayList<Three> tempThrees = new ArrayList<>(Integer.bitCount(bodyValues));
+		while (bodyValues!=0){
+			int bodyValue = RankHistogram.minValue(bodyValues);
+			bodyValues &= bodyValues-1;
+			ArrayList<Card> attachment = null;
+			if (attachValues!=0){
+				attachment = cardsOfValue(list, RankHistogram.minValue(attachValues));
+				attachValues &= attachValues-1;
 			}
+			tempThrees.add(new Three(cardsOfValue(list, bodyValue), attachment));
 		}
-		ArrayList<Three> tempThrees = new ArrayList<>();
-		for (int i=0; i<size; i++ ){
-			tempThrees.add(new Three(bodyLists.get(i), attachLists.get(i)));
- 		}
 		return tempThrees;
 	}
 
@@ -5,30 +5,25 @@ import java.util.ArrayList;
 public final class Bomb extends CardType implements BombType{
 	
 	public Bomb(ArrayList<Card> list){
-		if (list==null || list.size()!=4 || (!list.get(0).isSameValueAs(list.get(1)))
-			|| (!list.get(1).isSameValueAs(list.get(2)))
-			|| (!list.get(2).isSameValueAs(list.get(3)))){
-			throw new IllegalArgumentException("this type must be 4 same cards!" + list.toString());
+		this(list, RankHistogram.of(list));
+	}
+	
+	//使用已经计算好的点数直方图创建对象
+	Bomb(ArrayList<Card> list, long histogram){
+		if (list==null || !matches(histogram, list.size())){
+			throw new IllegalArgumentException("this type must be 4 same cards!" + list);
 		}
 		//保护性复制
 		cardList = new ArrayList<>(list);
 	}
 	
-	@Override
-	public int compareTo(CardType another){
-		int superCompare = super.compareTo(another);
-		if (superCompare != UNDEFINED_COMPARE){
-			return superCompare;
-		}
-		if (another instanceof Rocket){
-			return -1;
-		}
-		if ( !(another instanceof Bomb) ){
-			throw new ClassCastException("compare to wrong type:" + another.getClass().getSimpleName());
-		}
-		return cardList.get(0).compareTo(((Bomb)another).cardList.get(0));
+	/**
+	 * 根据点数直方图判断卡牌能否组成炸弹。
+	 */
+	static boolean matches(long histogram, int size){
+		return size==4 && RankHistogram.valuesWithExactCount(histogram, 4)!=0;
 	}
-
+	
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
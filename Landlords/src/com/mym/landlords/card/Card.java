@@ -10,10 +10,16 @@ import java.util.Comparator;
  * 一般而言，在实现卡牌逻辑时只需要关心其大小；而在需要排序时往往还需要按照花色进行排序。
  * 因此，在排序时使用 {@link #COMPARATOR_WITH_SUIT}，而在仅需要比较大小时请使用 {@link #compareTo(Card)}。
  * </p>
+ * <p>
+ * <h1>卡牌的获取</h1>
+ * 一副牌中的54张卡牌都是预先创建好的不可变对象，通过 {@link #valueOf(CardSuit, int)}或 {@link #fromOrdinal(int)}获得，
+ * 因此同一张牌在任何地方都是同一个对象，可以在多局游戏、AI和模拟线程之间安全地共享。
+ * 卡牌的选中状态等界面属性不再保存在卡牌中，而是由界面自行维护（参见 {@link CardSet}）。
+ * </p>
  * @author Muyangmin
  * @create 2015-3-14
  */
-public final class Card implements Serializable, Comparable<Card>, Pickable{
+public final class Card implements Serializable, Comparable<Card>{
 	//-------------- 卡牌数值大小定义 BEGIN --------
 	//NOTE:这里将所有卡牌按单打的大小依次+1，便于在构造器中检查参数合法性。
 	public static final int CARD_VALUE_3 = 3;
@@ -37,10 +43,27 @@ public final class Card implements Serializable, Comparable<Card>, Pickable{
 	
 	private static final long serialVersionUID = 1L;
 	
-	private CardSuit suit;		//卡牌花色
-	private int value;			//卡牌数值。即上面的大小值之一。
-	private String valueStr;	//卡牌数值的字符描述，主要用于提示或日志输出
-	private boolean isPicked; // 该卡牌是否被选中。
+	private final CardSuit suit;	//卡牌花色
+	private final int value;		//卡牌数值。即上面的大小值之一。
+	private final int ordinal;		//卡牌在一副牌中的序号，同时也是其在 CardSet 中的位序号。
+	
+	//卡牌数值的字符描述，主要用于提示或日志输出，下标为卡牌数值。
+	private static final String[] VALUE_LITERALS = { null, null, null, "3", "4",
+			"5", "6", "7", "8", "9", "10", "J", "Q", "K", "A", "2", "S", "B" };
+	
+	//按序号索引的全部卡牌
+	private static final Card[] PACK = new Card[CardSet.PACK_SIZE];
+	static {
+		CardSuit[] suits = CardSuit.values();
+		for (int value = CARD_VALUE_3; value <= CARD_VALUE_2; value++) {
+			for (int i = 0; i < 4; i++) {
+				Card card = new Card(suits[i], value);
+				PACK[card.ordinal] = card;
+			}
+		}
+		PACK[CardSet.ORDINAL_JOKER_S] = new Card(CardSuit.Joker, CARD_VALUE_JOKER_S);
+		PACK[CardSet.ORDINAL_JOKER_B] = new Card(CardSuit.Joker, CARD_VALUE_JOKER_B);
+	}
 	
 	/**
 	 * 按卡牌花色和点数排序的Comparator。
@@ -61,18 +84,39 @@ public final class Card implements Serializable, Comparable<Card>, Pickable{
 
 	};
 
+	//仅用于初始化卡牌表
+	private Card(CardSuit suit, int value) {
+		this.suit = suit;
+		this.value = value;
+		this.ordinal = ordinalOf(suit, value);
+	}
+	
+	//点数3~2的牌按 (点数-3)*4+花色序号 编号，大小王排在最后
+	private static int ordinalOf(CardSuit suit, int value) {
+		return value >= CARD_VALUE_JOKER_S ? CardSet.ORDINAL_JOKER_S
+				+ (value - CARD_VALUE_JOKER_S) : (value - CARD_VALUE_3) * 4
+				+ suit.ordinal();
+	}
+	
 	/**
-	 * 创建一张新的卡牌。
-	 * @param suit 卡牌的花色。
+	 * 获得指定花色和点数的卡牌。
+	 * @param suit 卡牌的花色，大小王必须使用 {@link CardSuit#Joker}。
 	 * @param value 卡牌的面值，必须为 {@value #CARD_VALUE_3} ~ {@value #CARD_VALUE_JOKER_B}之间的值。
 	 */
-	public Card(CardSuit suit, int value) {
-		if (suit == null || value < CARD_VALUE_3 || value > CARD_VALUE_JOKER_B) {
+	public static Card valueOf(CardSuit suit, int value) {
+		if (suit == null || value < CARD_VALUE_3 || value > CARD_VALUE_JOKER_B
+				|| ((suit == CardSuit.Joker) != (value >= CARD_VALUE_JOKER_S))) {
 			throw new IllegalArgumentException("invalid card!suit="+suit+", value="+value);
 		}
-		this.suit = suit;
-		this.value = value;
-		this.valueStr = getValueLiteral(value);
+		return PACK[ordinalOf(suit, value)];
+	}
+	
+	/**
+	 * 根据序号获得卡牌。
+	 * @param ordinal 0~53之间的序号，参见 {@link #getOrdinal()}。
+	 */
+	public static Card fromOrdinal(int ordinal) {
+		return PACK[ordinal];
 	}
 
 //	public int compareToXS(Card another) {
@@ -101,62 +145,11 @@ public final class Card implements Serializable, Comparable<Card>, Pickable{
 		return value==another.value;
 	}
 
-	@Override
-	public boolean isPicked() {
-		return isPicked;
-	}
-
-	@Override
-	public void setPicked(boolean isPicked) {
-		this.isPicked = isPicked;
-	}
-
-	
-	private final String getValueLiteral(int value){
-		String str;
-		switch (value) {
-		case CARD_VALUE_3:
-		case CARD_VALUE_4:
-		case CARD_VALUE_5:
-		case CARD_VALUE_6:
-		case CARD_VALUE_7:
-		case CARD_VALUE_8:
-		case CARD_VALUE_9:
-		case CARD_VALUE_10:
-			str =String.valueOf(value);
-			break;
-		case CARD_VALUE_2:
-			str = "2";
-			break;
-		case CARD_VALUE_J:
-			str = "J";
-			break;
-		case CARD_VALUE_Q:
-			str = "Q";
-			break;
-		case CARD_VALUE_K:
-			str = "K";
-			break;
-		case CARD_VALUE_A:
-			str = "A";
-			break;
-		case CARD_VALUE_JOKER_S:
-			str = "S";
-			break;
-		case CARD_VALUE_JOKER_B:
-			str = "B";
-			break;
-		default:
-			throw new RuntimeException("Invalid default branch exec, cardvalue="+value);
-		}
-		return str;
-	}
-	
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
 		//仅输出类似 "SPADE A"之类文本。
-		builder./*append("Card [").*/append(suit).append(" ").append(valueStr)/*.append("]")*/;
+		builder./*append("Card [").*/append(suit).append(" ").append(VALUE_LITERALS[value])/*.append("]")*/;
 		return builder.toString();
 	}
 
@@ -167,13 +160,18 @@ public final class Card implements Serializable, Comparable<Card>, Pickable{
 	public int getValue() {
 		return value;
 	}
-}
-/**
- * 实现逻辑上的可选择接口。
- * @author Muyangmin
- * @create 2015-3-24
- */
-interface Pickable{
-	public boolean isPicked();
-	public void setPicked(boolean isPicked);
+
+	/**
+	 * 获得该卡牌在一副牌中的序号（0~53）。
+	 * 点数3~2的牌按 (点数-3)*4+花色序号 编号，小王为52，大王为53，因此序号的顺序与 {@link #COMPARATOR_WITH_SUIT}一致。
+	 * @see CardSet
+	 */
+	public int getOrdinal() {
+		return ordinal;
+	}
+	
+	//反序列化时仍然返回表中的卡牌
+	private Object readResolve() {
+		return PACK[ordinal];
+	}
 }
\ No newline at end of file
@@ -10,25 +10,25 @@ import java.util.ArrayList;
 public final class CardFactory {
 	
 	/**
-	 * 获得一副新牌。
+	 * 获得一副新牌。列表是新建的，但其中的卡牌都是共享的不可变对象，参见 {@link Card#valueOf(CardSuit, int)}。
 	 * @return 返回的卡牌按花色排列，大小王在最后。
 	 */
 	public static ArrayList<Card> newCardPack(){
-		ArrayList<Card> cards = new ArrayList<>();
+		ArrayList<Card> cards = new ArrayList<>(CardSet.PACK_SIZE);
 		for (int i=Card.CARD_VALUE_3; i<=Card.CARD_VALUE_2; i++){
-			cards.add(new Card(CardSuit.Spade, i));
+			cards.add(Card.valueOf(CardSuit.Spade, i));
 		}
 		for (int i=Card.CARD_VALUE_3; i<=Card.CARD_VALUE_2; i++){
-			cards.add(new Card(CardSuit.Heart, i));
+			cards.add(Card.valueOf(CardSuit.Heart, i));
 		}
 		for (int i=Card.CARD_VALUE_3; i<=Card.CARD_VALUE_2; i++){
-			cards.add(new Card(CardSuit.Club, i));
+			cards.add(Card.valueOf(CardSuit.Club, i));
 		}
 		for (int i=Card.CARD_VALUE_3; i<=Card.CARD_VALUE_2; i++){
-			cards.add(new Card(CardSuit.Diamond, i));
+			cards.add(Card.valueOf(CardSuit.Diamond, i));
 		}
-		cards.add(new Card(CardSuit.Joker, Card.CARD_VALUE_JOKER_S));
-		cards.add(new Card(CardSuit.Joker, Card.CARD_VALUE_JOKER_B));
+		cards.add(Card.valueOf(CardSuit.Joker, Card.CARD_VALUE_JOKER_S));
+		cards.add(Card.valueOf(CardSuit.Joker, Card.CARD_VALUE_JOKER_B));
 		return cards;
 	}
 }
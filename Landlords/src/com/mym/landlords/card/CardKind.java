@@ -0,0 +1,103 @@
+package com.mym.landlords.card;
+
+/**
+ * 以整数常量表示的牌型种类，以及不创建任何对象的表驱动牌型识别。
+ * <p>
+ * {@link #classify(long, int)}根据卡牌张数从 {@link #CANDIDATES}表中取出候选牌型，再依次使用各个牌型的
+ * 点数直方图判定方法（例如 {@link Straight#matches(long, int)}）进行检验，返回第一个符合的牌型。
+ * 候选顺序与原先 {@link CardType#createObjectFromCards(java.util.ArrayList)}中的尝试顺序一致。
+ * </p>
+ */
+public final class CardKind {
+	/** 不能组成任何牌型。 */
+	public static final int NONE = 0;
+	/** 单牌，对应 {@link Single}。 */
+	public static final int SINGLE = 1;
+	/** 对子，对应 {@link Pair}。 */
+	public static final int PAIR = 2;
+	/** 三条（可带单牌或对子），对应 {@link Three}。 */
+	public static final int THREE = 3;
+	/** 顺子，对应 {@link Straight}。 */
+	public static final int STRAIGHT = 4;
+	/** 连对，对应 {@link DoubleStraight}。 */
+	public static final int DOUBLE_STRAIGHT = 5;
+	/** 飞机，对应 {@link Airplane}。 */
+	public static final int AIRPLANE = 6;
+	/** 炸弹，对应 {@link Bomb}。 */
+	public static final int BOMB = 7;
+	/** 王炸，对应 {@link Rocket}。 */
+	public static final int ROCKET = 8;
+
+	//按卡牌张数索引的候选牌型表，6张及以上的偶数张和奇数张分别使用最后两行。
+	private static final int[][] CANDIDATES = {
+		{},
+		{ SINGLE },
+		{ PAIR, ROCKET },
+		{ THREE },
+		{ BOMB, THREE },
+		{ STRAIGHT, THREE },
+		{ DOUBLE_STRAIGHT, STRAIGHT, AIRPLANE },
+		{ STRAIGHT, AIRPLANE },
+	};
+	private static final int EVEN_ROW = 6;
+	private static final int ODD_ROW = 7;
+
+	//隐藏构造方法
+	private CardKind() {}
+
+	/**
+	 * 识别一组卡牌能组成的牌型。
+	 * @param histogram 这组卡牌的点数直方图，参见 {@link RankHistogram}。
+	 * @param size 卡牌张数。
+	 * @return 返回牌型常量之一；如果不能组成任何牌型，则返回 {@link #NONE}。
+	 */
+	public static int classify(long histogram, int size) {
+		if (size <= 0) {
+			return NONE;
+		}
+		int[] candidates = CANDIDATES[size < EVEN_ROW ? size
+				: (size % 2 == 0 ? EVEN_ROW : ODD_ROW)];
+		for (int i = 0; i < candidates.length; i++) {
+			if (matches(candidates[i], histogram, size)) {
+				return candidates[i];
+			}
+		}
+		return NONE;
+	}
+
+	/**
+	 * 判断一组卡牌能否组成指定的牌型。
+	 * @param kind 牌型常量。
+	 * @param histogram 这组卡牌的点数直方图。
+	 * @param size 卡牌张数。
+	 */
+	public static boolean matches(int kind, long histogram, int size) {
+		switch (kind) {
+		case SINGLE:
+			return size == 1;
+		case PAIR:
+			return Pair.matches(histogram, size);
+		case THREE:
+			return Three.matches(histogram, size);
+		case STRAIGHT:
+			return Straight.matches(histogram, size);
+		case DOUBLE_STRAIGHT:
+			return DoubleStraight.matches(histogram, size);
+		case AIRPLANE:
+			return Airplane.matches(histogram, size);
+		case BOMB:
+			return Bomb.matches(histogram, size);
+		case ROCKET:
+			return Rocket.matches(histogram, size);
+		default:
+			return false;
+		}
+	}
+
+	/**
+	 * 判断牌型是否属于炸弹类型（炸弹或王炸）。
+	 */
+	public static boolean isBomb(int kind) {
+		return kind == BOMB || kind == ROCKET;
+	}
+}
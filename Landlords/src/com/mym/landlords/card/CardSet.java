@@ -0,0 +1,256 @@
+package com.mym.landlords.card;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mym.util.SplitMix64;
+
+/**
+ * 使用一个 long 值表示一组卡牌（例如一手牌或一手出牌）的位集合工具类。
+ * <p>
+ * <h1>位布局</h1>
+ * 每张实体卡牌占用一个二进制位，位序号即 {@link Card#getOrdinal()}：点数3~2的52张牌按
+ * (点数-3)*4+花色序号 排列，小王为第52位，大王为第53位。因此同一点数的牌总是位于相邻的4个位中，
+ * 且从低位到高位遍历的顺序与 {@link Card#COMPARATOR_WITH_SUIT}的排序结果一致。
+ * </p>
+ * <p>
+ * <h1>集合运算</h1>
+ * 所有方法均为静态方法并直接操作 long 值，不会产生任何对象。例如从手牌中移除一手出牌只需
+ * {@code hand = CardSet.minus(hand, played)}，即一次 AND-NOT 运算。
+ * </p>
+ * <p>
+ * <h1>遍历</h1>
+ * 按从小到大的顺序遍历一个集合中的所有卡牌序号：
+ * <pre>
+ * for (long rest = set; rest != 0; rest = CardSet.removeFirst(rest)) {
+ *     int ordinal = CardSet.first(rest);
+ *     ...
+ * }
+ * </pre>
+ * </p>
+ */
+public final class CardSet {
+	/** 小王的序号。 */
+	public static final int ORDINAL_JOKER_S = 52;
+	/** 大王的序号。 */
+	public static final int ORDINAL_JOKER_B = 53;
+	/** 一副牌的总张数。 */
+	public static final int PACK_SIZE = 54;
+
+	/** 空集合。 */
+	public static final long EMPTY = 0L;
+	/** 一整副牌。 */
+	public static final long FULL_PACK = (1L << PACK_SIZE) - 1;
+
+	//按点数索引的位掩码，下标为卡牌点数（3~17），其余下标为0。
+	private static final long[] VALUE_MASKS = new long[Card.CARD_VALUE_JOKER_B + 1];
+	static {
+		for (int value = Card.CARD_VALUE_3; value <= Card.CARD_VALUE_2; value++) {
+			VALUE_MASKS[value] = 0xFL << ((value - Card.CARD_VALUE_3) * 4);
+		}
+		VALUE_MASKS[Card.CARD_VALUE_JOKER_S] = 1L << ORDINAL_JOKER_S;
+		VALUE_MASKS[Card.CARD_VALUE_JOKER_B] = 1L << ORDINAL_JOKER_B;
+	}
+
+	//隐藏构造方法
+	private CardSet() {}
+
+	/**
+	 * 获得仅包含一张卡牌的集合。
+	 */
+	public static long of(Card card) {
+		return 1L << card.getOrdinal();
+	}
+
+	/**
+	 * 获得包含列表中所有卡牌的集合。
+	 * @param cards 卡牌列表，可以为null（返回空集合）。
+	 */
+	public static long of(List<Card> cards) {
+		long set = EMPTY;
+		if (cards != null) {
+			for (int i = 0, size = cards.size(); i < size; i++) {
+				set |= 1L << cards.get(i).getOrdinal();
+			}
+		}
+		return set;
+	}
+
+	/** 求两个集合的并集。 */
+	public static long union(long set, long another) {
+		return set | another;
+	}
+
+	/** 求两个集合的差集，即从 set 中移除 another 包含的所有卡牌。 */
+	public static long minus(long set, long another) {
+		return set & ~another;
+	}
+
+	/** 求两个集合的交集。 */
+	public static long intersect(long set, long another) {
+		return set & another;
+	}
+
+	/** 判断 subset 是否为 set 的子集。 */
+	public static boolean containsAll(long set, long subset) {
+		return (subset & ~set) == 0;
+	}
+
+	/** 判断集合中是否包含指定的卡牌。 */
+	public static boolean contains(long set, Card card) {
+		return (set & (1L << card.getOrdinal())) != 0;
+	}
+
+	/** 获得集合中卡牌的张数。 */
+	public static int size(long set) {
+		return Long.bitCount(set);
+	}
+
+	/**
+	 * 获得指定点数的所有卡牌在集合中占用的位掩码。
+	 * @param value 卡牌点数，必须为 {@link Card#CARD_VALUE_3} ~ {@link Card#CARD_VALUE_JOKER_B}之间的值。
+	 */
+	public static long valueMask(int value) {
+		return VALUE_MASKS[value];
+	}
+
+	/**
+	 * 取出集合中指定点数的所有卡牌。
+	 * @param value 卡牌点数，必须为 {@link Card#CARD_VALUE_3} ~ {@link Card#CARD_VALUE_JOKER_B}之间的值。
+	 */
+	public static long ofValue(long set, int value) {
+		return set & VALUE_MASKS[value];
+	}
+
+	/**
+	 * 获得集合中指定点数的卡牌张数。
+	 * @param value 卡牌点数，必须为 {@link Card#CARD_VALUE_3} ~ {@link Card#CARD_VALUE_JOKER_B}之间的值。
+	 */
+	public static int countOfValue(long set, int value) {
+		return Long.bitCount(set & VALUE_MASKS[value]);
+	}
+
+	/**
+	 * 获得集合中最小的卡牌的序号。
+	 * @return 如果集合为空则返回-1。
+	 */
+	public static int first(long set) {
+		return set == EMPTY ? -1 : Long.numberOfTrailingZeros(set);
+	}
+
+	/** 移除集合中最小的卡牌。 */
+	public static long removeFirst(long set) {
+		return set & (set - 1);
+	}
+
+	/**
+	 * 获得集合中序号大于 ordinal 的最小卡牌的序号，用于顺序遍历集合。
+	 * @return 如果不存在则返回-1。
+	 */
+	public static int next(long set, int ordinal) {
+		if (ordinal >= PACK_SIZE - 1) {
+			return -1;
+		}
+		return first(set & (-1L << (ordinal + 1)));
+	}
+
+	/**
+	 * 从集合中随机选出 count 张牌，每一种选法被选中的概率相同。
+	 * @param random 调用者的随机数生成器。
+	 * @return 返回选出的牌；集合不足 count 张时返回整个集合，count 不是正数时返回空集合。
+	 */
+	public static long pick(long set, int count, SplitMix64 random) {
+		int size = size(set);
+		if (count >= size) {
+			return set;
+		}
+		//选出 count 张与留下 size-count 张是等价的，只需要选出较少的一方
+		if (count > size - count) {
+			return minus(set, pick(set, size - count, random));
+		}
+		long chosen = EMPTY;
+		for (; count > 0; count--, size--) {
+			long rest = set;
+			for (int skip = random.nextInt(size); skip > 0; skip--) {
+				rest = removeFirst(rest);
+			}
+			long card = rest & -rest;
+			chosen |= card;
+			set ^= card;
+		}
+		return chosen;
+	}
+
+	/**
+	 * 根据卡牌序号获得其点数。
+	 */
+	public static int valueOfOrdinal(int ordinal) {
+		return ordinal >= ORDINAL_JOKER_S ? Card.CARD_VALUE_JOKER_S
+				+ (ordinal - ORDINAL_JOKER_S) : Card.CARD_VALUE_3 + (ordinal >> 2);
+	}
+
+	/**
+	 * 从卡牌列表中挑出属于集合的卡牌。
+	 * @param set 卡牌集合
+	 * @param source 卡牌来源，通常是玩家的手牌列表。
+	 * @return 返回一个新的列表，其顺序与 source 中的顺序一致。
+	 */
+	public static ArrayList<Card> toList(long set, List<Card> source) {
+		ArrayList<Card> list = new ArrayList<>(size(set));
+		for (int i = 0, size = source.size(); i < size; i++) {
+			Card card = source.get(i);
+			if ((set & (1L << card.getOrdinal())) != 0) {
+				list.add(card);
+			}
+		}
+		return list;
+	}
+
+	/**
+	 * 获得集合中所有卡牌组成的列表。
+	 * @return 返回一个新的列表，按 {@link Card#COMPARATOR_WITH_SUIT}的顺序排列。
+	 */
+	public static ArrayList<Card> toList(long set) {
+		ArrayList<Card> list = new ArrayList<>(size(set));
+		for (long rest = set; rest != EMPTY; rest = removeFirst(rest)) {
+			list.add(Card.fromOrdinal(first(rest)));
+		}
+		return list;
+	}
+
+	/**
+	 * 清空列表，再放入集合中的所有卡牌，不创建新的列表。
+	 * @param cards 需要填充的卡牌列表。
+	 * @param set 卡牌集合，放入的顺序与 {@link Card#COMPARATOR_WITH_SUIT}一致。
+	 */
+	public static void fill(ArrayList<Card> cards, long set) {
+		cards.clear();
+		for (long rest = set; rest != EMPTY; rest = removeFirst(rest)) {
+			cards.add(Card.fromOrdinal(first(rest)));
+		}
+	}
+
+	/**
+	 * 从卡牌列表中就地移除属于集合的卡牌，只对列表做一次线性扫描。
+	 * @param cards 需要修改的卡牌列表。
+	 * @param set 需要移除的卡牌集合。
+	 * @return 返回实际移除的卡牌张数。
+	 */
+	public static int removeFrom(ArrayList<Card> cards, long set) {
+		int size = cards.size();
+		int kept = 0;
+		for (int i = 0; i < size; i++) {
+			Card card = cards.get(i);
+			if ((set & (1L << card.getOrdinal())) == 0) {
+				if (kept != i) {
+					cards.set(kept, card);
+				}
+				kept++;
+			}
+		}
+		for (int i = size - 1; i >= kept; i--) {
+			cards.remove(i);
+		}
+		return size - kept;
+	}
+}
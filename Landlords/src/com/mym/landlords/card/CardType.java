@@ -1,10 +1,8 @@
 package com.mym.landlords.card;
 
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Comparator;
-
-import android.util.Log;
+import java.util.List;
 
 /**
  * 牌型的抽象父类。每个该类及其子类的实例都代表一手符合牌型规则的牌。所有的牌型都必须实现 {@link BombType}和
@@ -17,14 +15,16 @@ import android.util.Log;
  * <p>
  * <h1>从卡牌列表创建牌型</h1>
  * 在与用户交互的过程中，程序可能需要把用户的卡牌列表组合成牌型对象。{@link #createObjectFromCards(ArrayList)}方法
- * 可以完成这项工作。但是，<b>子类必须有一个构造器仅带有ArrayList&lt;Card&gt;参数</b>。
+ * 可以完成这项工作。该方法通过 {@link CardKind}查表识别牌型，因此新增的子类需要同时在 {@link CardKind}中登记。
  * </p>
  * <p>
  * <h1>牌型的排序</h1>
  * CardType类自身实现了 {@link Comparable}接口，{@link #SORT_COMPARATOR}实现了
  * {@link Comparator}接口。<br/>
  * 当需要对两手牌进行对比（例如出牌阶段下家和上家手牌大小的判断）时，使用 {@link CardType#compareTo(CardType)}方法；
- * 需要对不同手牌进行排序时（例如，出牌时总是希望先从包含最小卡牌的牌型开始），使用 {@link #SORT_COMPARATOR}进行排序。
+ * 需要对不同手牌进行排序时（例如，出牌时总是希望先从包含最小卡牌的牌型开始），使用 {@link #SORT_COMPARATOR}进行排序。<br/>
+ * 这两种比较以及 {@link #canAgainstType(CardType)}都基于缓存的出牌编码（{@link #getMoveCode()}）实现，
+ * 不需要逐张比较卡牌。
  * </p>
  * 
  * @author Muyangmin
@@ -58,86 +58,56 @@ public abstract class CardType implements Comparable<CardType> {
 	}
 	
 	/**
-	 * 用于实现所有牌型之间的排序。
-	 * @see CardType#getMinCard()
+	 * 用于实现所有牌型之间的排序：炸弹排在其他牌型之后，其余按这手牌中最小的点数排序。
+	 * @see MoveCode#sortKey(long)
 	 */
 	public static final Comparator<CardType> SORT_COMPARATOR = new Comparator<CardType>() {
 		
 		@Override
 		public int compare(CardType lhs, CardType rhs) {
-			Card left = lhs.getMinCard();
-			Card right = rhs.getMinCard();
-			if (left == null || right==null){
-				throw new RuntimeException("subclass must implement getMinCard() method properly."
-						+ "leftclass=" + lhs.getClass().getSimpleName() 
-						+ "rightclass=" + right.getClass().getSimpleName());
-			}
-			//由于大小王的点数本身比其他牌都要大，因此免去对王炸的判断，仅令炸弹牌大于非炸弹牌即可。
-			if (lhs instanceof Bomb && (!(rhs instanceof Bomb))){
-				return 1;
-			}
-			else if( (rhs instanceof Bomb) && (!(lhs instanceof Bomb)) ){
-				return -1;
-			}
-			//按照牌的最小点数排序
-			return left.compareTo(right);
+			return MoveCode.sortKey(lhs.getMoveCode()) - MoveCode.sortKey(rhs.getMoveCode());
 		}
 	};
-
-	/**
-	 * 用于表示结果是未定义的、不明确的。
-	 */
-	protected static final int UNDEFINED_COMPARE = -100;
 	
 	/**
 	 * 该种牌型的卡牌列表。子类必须在构造函数中为之赋值。
 	 */
 	protected ArrayList<Card> cardList = null; 
 	
-	/**
-	 * 获取该牌型中数值最小的卡牌，供 {@link #SORT_COMPARATOR} 排序时使用。
-	 */
-	protected final Card getMinCard(){
-		//assume list is sorted before this call
-//		Collections.sort(cardList);
-		//using getter method instead of field to check null pointer
-		ArrayList<Card> list = getCardList();
-		if (list.isEmpty()){
-			Log.i("", "card is empty."+this.toString());
-		}
-		return getCardList().get(0);
-	};
-	
+	//缓存的出牌编码，NONE表示尚未计算
+	private long moveCode = MoveCode.NONE;
 	
 	/**
 	 * 实现牌型对象之间的对比。由于斗地主游戏不允许下家的点数和上家的点数相同，因此忽略花色。
 	 * 用于比较的两个对象要么至少一个是炸弹或王炸，要么必须是相同类型，否则将会抛出异常。
 	 * @param another
 	 *            需要进行比较的另一个对象
-	 * @return 实现炸弹类型和非炸弹类型的基本比对，该方法认为炸弹始终比另一个大。
-	 * 		当且仅当其中一个是炸弹时会返回compareTo方法约定的值，
-	 *      如果两个都是炸弹或都不是炸弹， 则返回 {@link #UNDEFINED_COMPARE}。
+	 * @return 炸弹类型始终比非炸弹类型大，王炸始终比炸弹大；相同类型之间按主体的最小点数比较
+	 * （例如顺子按起始点数，三条按三张的点数）。
 	 * @throws ClassCastException 如果两种牌型无法判断大小又无法转换时将抛出该异常。
 	 */
 	@Override
 	public int compareTo(CardType another) {
-		//this super implementation just verify bomb type & class.
-		//concrete value compare must be specified in subclass implementation.
 		if (this instanceof NonBombType && another instanceof BombType) {
 			return -1;
 		} else if (this instanceof BombType && another instanceof NonBombType) {
 			return 1;
-		} else {
-			//after bomb type check:
-			Class<?> thisClz = getClass();
-			Class<?> anotherClz = another.getClass();
-			if (!thisClz.equals(anotherClz)) {
-				throw new ClassCastException(
-						"compareTo wrong type, this=" + thisClz.getSimpleName()
-								+ ", another=" + anotherClz.getSimpleName());
+		}
+		Class<?> thisClz = getClass();
+		Class<?> anotherClz = another.getClass();
+		if (!thisClz.equals(anotherClz)) {
+			//炸弹和王炸之间
+			if (this instanceof Rocket) {
+				return 1;
+			} else if (another instanceof Rocket) {
+				return -1;
 			}
-			return UNDEFINED_COMPARE;
+			throw new ClassCastException(
+					"compareTo wrong type, this=" + thisClz.getSimpleName()
+							+ ", another=" + anotherClz.getSimpleName());
 		}
+		return MoveCode.primaryValue(getMoveCode())
+				- MoveCode.primaryValue(another.getMoveCode());
 	}
 
 	/**
@@ -154,6 +124,47 @@ public abstract class CardType implements Comparable<CardType> {
 		return cardList;
 	}
 	
+	/**
+	 * 从卡牌列表中依次取出指定点数的所有卡牌，供子类拆分牌型时使用。
+	 * @return 返回一个新的列表，不会为null。
+	 */
+	protected static ArrayList<Card> cardsOfValue(List<Card> list, int value){
+		ArrayList<Card> cards = new ArrayList<>(4);
+		for (int i=0, size=list.size(); i<size; i++){
+			Card card = list.get(i);
+			if (card.getValue()==value){
+				cards.add(card);
+			}
+		}
+		return cards;
+	}
+	
+	/**
+	 * 获得这一手牌的卡牌集合。
+	 * @return 以 {@link CardSet}表示的卡牌集合。
+	 */
+	public final long getCardSet() {
+		return CardSet.of(getCardList());
+	}
+	
+	/**
+	 * 获得这一手牌的编码，编码在第一次调用时计算并缓存。
+	 * @return 参见 {@link MoveCode}；如果卡牌列表不能组成合法的牌型，则返回 {@link MoveCode#NONE}。
+	 */
+	public final long getMoveCode() {
+		if (moveCode == MoveCode.NONE) {
+			moveCode = MoveCode.fromCardSet(getCardSet());
+		}
+		return moveCode;
+	}
+	
+	/**
+	 * 子类在构造完成后修改了 {@link #cardList}时，需要调用该方法使缓存的编码失效。
+	 */
+	protected final void invalidateMoveCode() {
+		moveCode = MoveCode.NONE;
+	}
+	
 	/**
 	 * 判断当前牌能否打前一手牌。
 	 * @param before 前一手牌
@@ -163,16 +174,8 @@ public abstract class CardType implements Comparable<CardType> {
 		if (before==null){
 			return true;
 		}
-		if (this instanceof Rocket) {
-			return true;
-		}
-		if (this instanceof BombType && before instanceof NonBombType) {
-			return true;
-		}
-		//否则需要类型相同且大于参数值。
-		return getClass().equals(before.getClass())
-				&& (getCardList().size()==before.getCardList().size())
-				&& (this.compareTo(before) > 0);
+		//王炸、炸弹以及类型、张数相同且点数更大的规则均由编码比较实现
+		return MoveCode.beats(getMoveCode(), before.getMoveCode());
 	}
 //	
 //	/**
@@ -185,73 +188,35 @@ public abstract class CardType implements Comparable<CardType> {
 	
 	/**
 	 * 简单的工厂方法，用于把特定的卡牌列表转换为一个合适的类型。
+	 * <p>该方法只计算一次点数直方图，并通过 {@link CardKind#classify(long, int)}查表识别牌型，
+	 * 不使用反射，也不会在识别失败时抛出和捕获异常。</p>
 	 * @param cards 卡牌列表
 	 * @return 如果能把指定的卡牌转换为一个特定的类型，则返回这个类型的对象，否则返回null。
 	 */
 	public static final CardType createObjectFromCards(ArrayList<Card> cards){
-		CardType instance = null;
-		int cardCount;
-		if (cards==null || ((cardCount=cards.size())==0) ){
+		if (cards==null || cards.isEmpty()){
 			return null;
 		}
-		if (cardCount==1){
-			//仅有一种情况，因此直接尝试创建对象并返回。为符合单一出口原则，并不在这里直接return
-			instance=createObject(cards, Single.class);
-		}
-		else if (cardCount==2){
-			//只有对子和王炸两种情况
-			if ((instance=createObject(cards, Pair.class))==null){
-				instance = createObject(cards, Rocket.class);
-			}
-		}
-		else if (cardCount==3) {
-			instance = createObject(cards, Three.class);
-		}
-		else if (cardCount==4) {
-			instance = createObject(cards, Bomb.class);
-			//三带一
-			if (instance==null){
-				instance = createObject(cards, Three.class);
-			}
-		}
-		else if (cardCount==5){
-			instance = createObject(cards, Straight.class);
-			//三带对
-			if (instance==null){
-				instance = createObject(cards, Three.class);
-			}
-		}
-		else if (cardCount>=5){
-			if (cardCount %2 ==0){
-				instance = createObject(cards, DoubleStraight.class);
-			}
-			if (instance==null){
-				instance = createObject(cards, Straight.class);
-			}
-			if (instance==null){
-				instance = createObject(cards, Airplane.class);
-			}
-		}
-		return instance;
-	}
-
-	//创建子类对象。该方法假定子类均有一个仅带有一个ArrayList参数的构造器。
-	private static final CardType createObject(ArrayList<Card> cards,
-			Class<? extends CardType> clz) {
-		try {
-			CardType instance = clz.getConstructor(ArrayList.class).newInstance(cards);
-			return instance;
-		}catch (InvocationTargetException e) {
-			//ignore
-		} catch (IllegalArgumentException e) {
-			e.printStackTrace();
-		} catch (InstantiationException e) {
-			e.printStackTrace();
-		} catch (IllegalAccessException e) {
-			e.printStackTrace();
-		} catch (NoSuchMethodException e) {
-			e.printStackTrace();
+		long histogram = RankHistogram.of(cards);
+		switch (CardKind.classify(histogram, cards.size())) {
+		case CardKind.SINGLE:
+			return new Single(cards);
+		case CardKind.PAIR:
+			return new Pair(cards, histogram);
+		case CardKind.THREE:
+			return new Three(cards, histogram);
+		case CardKind.STRAIGHT:
+			return new Straight(cards, histogram);
+		case CardKind.DOUBLE_STRAIGHT:
+			return new DoubleStraight(cards, histogram);
+		case CardKind.AIRPLANE:
+			return new Airplane(cards, histogram);
+		case CardKind.BOMB:
+			return new Bomb(cards, histogram);
+		case CardKind.ROCKET:
+			return new Rocket(cards, histogram);
+		default:
+			return null;
 		}
-		return null;
 	}
-}
\ No newline at end of file
+}
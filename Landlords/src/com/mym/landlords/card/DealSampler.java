@@ -0,0 +1,363 @@
+package com.mym.landlords.card;
+
+import com.mym.util.SplitMix64;
+
+/**
+ * 带约束的发牌抽样器，用于生成特定的牌局场景，例如“地主有王炸”“某个农民至少有两个炸弹”“座位1拿到指定的17张牌”。
+ * <p>
+ * <h1>约束</h1>
+ * <ul>
+ * <li>每个座位和底牌的张数，默认三家各17张、底牌3张；也可以设为地主20张、底牌0张等；</li>
+ * <li>每个座位和底牌确定持有的牌，参见 {@link #fix(int, long)}；</li>
+ * <li>每个座位某个点数的张数范围，参见 {@link #requireCount(int, int, int, int)}；</li>
+ * <li>每个座位至少有几个炸弹（四张相同点数，不含王炸），参见 {@link #requireBombs(int, int)}。</li>
+ * </ul>
+ * </p>
+ * <p>
+ * <h1>算法</h1>
+ * 抽样不使用“随机发牌、不满足就重来”的拒绝法，而是直接构造：按点数从小到大决定每种点数的牌在四处（三家和底牌）各分几张。
+ * {@link #prepare()}从最大的点数倒推，计算每种局面（各处剩余的张数、已经凑成的炸弹数）下满足约束的发牌数目，
+ * 抽样时每种点数按 分法的组合数×之后的发牌数目 的比例选择分法，再在该点数的牌中随机挑出具体的花色。
+ * 这样约束再苛刻也不会变慢。
+ * </p>
+ * <p>
+ * <h1>均匀性</h1>
+ * 发牌数目可能超出 long 的范围（不加约束时约为10^24），因此以 double 保存，抽样时也用 {@link SplitMix64#nextDouble()}选择分法，
+ * 挑选花色用的 {@link CardSet#pick(long, int, SplitMix64)}还带有 {@link SplitMix64#nextInt(int)}的微小偏差。
+ * 所以每一种满足约束的发牌被抽中的概率只是近似相同：偏差来自舍入误差和53位的随机数精度，
+ * 对生成测试场景和统计胜率可以忽略；概率本身极小（低于2^-53量级）的分法可能偏差较大甚至抽不到。
+ * </p>
+ * <p>
+ * <h1>并发</h1>
+ * 设置约束的方法不是线程安全的。{@link #prepare()}之后，{@link #sample(SplitMix64, long[])}只读取计算好的表，
+ * 不产生任何对象，可以由多个线程各自使用自己的随机数生成器同时调用。修改约束后需要重新调用 {@link #prepare()}。
+ * </p>
+ */
+public final class DealSampler {
+
+	/** 表示底牌的座位号，用于 {@link #fix(int, long)}和 {@link #sample(SplitMix64, long[])}的结果。 */
+	public static final int KITTY = 3;
+	private static final int SEATS = 3;
+	private static final int PLACES = 4;
+	private static final int VALUE_KINDS = RankHistogram.VALUE_KINDS;
+	//能组成炸弹的点数（3~2）的种类数
+	private static final int BOMB_VALUE_KINDS = Card.CARD_VALUE_2 - Card.CARD_VALUE_3 + 1;
+	private static final int MAX_BOMBS = BOMB_VALUE_KINDS;
+	//每个分法占用的 int 数目：四处各分几张、组合数、凑成炸弹的座位掩码
+	private static final int SPLIT_FIELDS = PLACES + 2;
+
+	private final int[] sizes = new int[PLACES];
+	private final long[] fixed = new long[PLACES];
+	private final int[][] minCounts = new int[SEATS][VALUE_KINDS];
+	private final int[][] maxCounts = new int[SEATS][VALUE_KINDS];
+	private final int[] minBombs = new int[SEATS];
+
+	//以下由 prepare() 计算
+	private volatile boolean prepared;
+	private long fixedAll;
+	private int[] capacities;
+	private int[] bombDims;
+	private int[] strides;
+	private int[][] splits;		//每种点数所有合法的分法
+	private double[][] counts;	//counts[i][state]：从点数 i 开始满足约束的发牌数目
+
+	/**
+	 * 创建一个三家各17张、底牌3张，没有任何约束的抽样器。
+	 */
+	public DealSampler() {
+		this(Dealer.HAND_SIZE, Dealer.HAND_SIZE, Dealer.HAND_SIZE);
+	}
+
+	/**
+	 * 创建抽样器，底牌的张数为剩下的牌。
+	 * @param size0 座位0的张数。
+	 * @param size1 座位1的张数。
+	 * @param size2 座位2的张数。
+	 */
+	public DealSampler(int size0, int size1, int size2) {
+		sizes[0] = size0;
+		sizes[1] = size1;
+		sizes[2] = size2;
+		sizes[KITTY] = CardSet.PACK_SIZE - size0 - size1 - size2;
+		for (int size : sizes) {
+			if (size < 0) {
+				throw new IllegalArgumentException("invalid sizes:" + size0 + "," + size1 + "," + size2);
+			}
+		}
+		for (int seat = 0; seat < SEATS; seat++) {
+			for (int i = 0; i < VALUE_KINDS; i++) {
+				maxCounts[seat][i] = CardSet.size(CardSet.valueMask(Card.CARD_VALUE_3 + i));
+			}
+		}
+	}
+
+	/**
+	 * 指定某处确定持有的牌，会覆盖之前为该处指定的牌。
+	 * @param place 座位0~2，或者 {@link #KITTY}。
+	 * @param cards 卡牌集合（以 {@link CardSet}表示），各处之间不能重叠。
+	 */
+	public void fix(int place, long cards) {
+		fixed[place] = cards;
+		prepared = false;
+	}
+
+	/**
+	 * 要求某个座位持有某个点数的张数在指定范围内（含确定持有的牌）。
+	 * @param seat 座位0~2。
+	 * @param value 点数，{@link Card#CARD_VALUE_3}~{@link Card#CARD_VALUE_JOKER_B}。
+	 * @param min 最少张数。
+	 * @param max 最多张数。
+	 */
+	public void requireCount(int seat, int value, int min, int max) {
+		if (min > max || min < 0) {
+			throw new IllegalArgumentException("invalid range:" + min + "~" + max);
+		}
+		int index = value - Card.CARD_VALUE_3;
+		minCounts[seat][index] = min;
+		maxCounts[seat][index] = Math.min(max, CardSet.size(CardSet.valueMask(value)));
+		prepared = false;
+	}
+
+	/**
+	 * 要求某个座位有王炸。
+	 */
+	public void requireRocket(int seat) {
+		requireCount(seat, Card.CARD_VALUE_JOKER_S, 1, 1);
+		requireCount(seat, Card.CARD_VALUE_JOKER_B, 1, 1);
+	}
+
+	/**
+	 * 要求某个座位至少有几个炸弹（四张相同点数，不含王炸）。
+	 * @param seat 座位0~2。
+	 * @param bombs 最少的炸弹数目，0表示不要求。
+	 */
+	public void requireBombs(int seat, int bombs) {
+		if (bombs < 0 || bombs > MAX_BOMBS) {
+			throw new IllegalArgumentException("invalid bombs:" + bombs);
+		}
+		minBombs[seat] = bombs;
+		prepared = false;
+	}
+
+	/**
+	 * 根据当前的约束计算抽样使用的表。约束修改后第一次抽样前必须调用。
+	 * @throws IllegalArgumentException 确定持有的牌互相重叠或超过该处的张数时抛出。
+	 * @throws IllegalStateException 没有任何发牌满足约束时抛出。
+	 */
+	public void prepare() {
+		fixedAll = CardSet.EMPTY;
+		capacities = new int[PLACES];
+		for (int place = 0; place < PLACES; place++) {
+			if (CardSet.intersect(fixedAll, fixed[place]) != CardSet.EMPTY) {
+				throw new IllegalArgumentException("fixed cards overlap at place " + place);
+			}
+			fixedAll |= fixed[place];
+			capacities[place] = sizes[place] - CardSet.size(fixed[place]);
+			if (capacities[place] < 0) {
+				throw new IllegalArgumentException("too many fixed cards at place " + place);
+			}
+		}
+		bombDims = new int[SEATS];
+		for (int seat = 0; seat < SEATS; seat++) {
+			bombDims[seat] = minBombs[seat] + 1;
+		}
+		//状态：三家剩余的张数和已经凑成的炸弹数（不超过要求的数目），底牌剩余的张数由其余各项推出
+		strides = new int[2 * SEATS];
+		int stride = 1;
+		for (int k = 2 * SEATS - 1; k >= 0; k--) {
+			strides[k] = stride;
+			stride *= k < SEATS ? capacities[k] + 1 : bombDims[k - SEATS];
+		}
+		int stateCount = stride;
+		splits = new int[VALUE_KINDS][];
+		int[] freeSuffix = new int[VALUE_KINDS + 1];
+		for (int i = VALUE_KINDS - 1; i >= 0; i--) {
+			splits[i] = enumerateSplits(i);
+			freeSuffix[i] = freeSuffix[i + 1] + CardSet.size(freeOf(i));
+		}
+		counts = new double[VALUE_KINDS + 1][stateCount];
+		counts[VALUE_KINDS][stateOf(0, 0, 0, minBombs[0], minBombs[1], minBombs[2])] = 1;
+		int[] state = new int[2 * SEATS];
+		for (int i = VALUE_KINDS - 1; i >= 0; i--) {
+			double[] current = counts[i];
+			double[] next = counts[i + 1];
+			int[] rankSplits = splits[i];
+			for (int index = 0; index < stateCount; index++) {
+				decode(index, state);
+				int kitty = freeSuffix[i] - state[0] - state[1] - state[2];
+				if (kitty < 0 || kitty > capacities[KITTY]) {
+					continue;
+				}
+				double sum = 0;
+				for (int s = 0; s < rankSplits.length; s += SPLIT_FIELDS) {
+					int target = transit(state, rankSplits, s, kitty);
+					if (target >= 0) {
+						sum += rankSplits[s + PLACES] * next[target];
+					}
+				}
+				current[index] = sum;
+			}
+		}
+		if (counts[0][initialState()] == 0) {
+			throw new IllegalStateException("no deal satisfies the constraints");
+		}
+		prepared = true;
+	}
+
+	/**
+	 * 获得满足约束的发牌数目（不区分底牌中的顺序）的近似值，需要先调用 {@link #prepare()}。
+	 */
+	public double getDealCount() {
+		checkPrepared();
+		return counts[0][initialState()];
+	}
+
+	/**
+	 * 抽取一副满足约束的牌，所有满足约束的发牌被抽中的概率近似相同（参见类说明）。不产生任何对象。
+	 * @param random 调用者的随机数生成器。
+	 * @param out 长度至少为4的数组，依次写入三家的手牌和底牌（以 {@link CardSet}表示）。
+	 */
+	public void sample(SplitMix64 random, long[] out) {
+		checkPrepared();
+		for (int place = 0; place < PLACES; place++) {
+			out[place] = fixed[place];
+		}
+		int c0 = capacities[0];
+		int c1 = capacities[1];
+		int c2 = capacities[2];
+		int b0 = 0;
+		int b1 = 0;
+		int b2 = 0;
+		for (int i = 0; i < VALUE_KINDS; i++) {
+			int[] rankSplits = splits[i];
+			double[] next = counts[i + 1];
+			double target = random.nextDouble() * counts[i][stateOf(c0, c1, c2, b0, b1, b2)];
+			int chosen = -1;
+			for (int s = 0; s < rankSplits.length; s += SPLIT_FIELDS) {
+				int a0 = rankSplits[s];
+				int a1 = rankSplits[s + 1];
+				int a2 = rankSplits[s + 2];
+				if (a0 > c0 || a1 > c1 || a2 > c2) {
+					continue;
+				}
+				int bombs = rankSplits[s + PLACES + 1];
+				int nextState = stateOf(c0 - a0, c1 - a1, c2 - a2,
+						Math.min(b0 + (bombs & 1), minBombs[0]),
+						Math.min(b1 + ((bombs >> 1) & 1), minBombs[1]),
+						Math.min(b2 + ((bombs >> 2) & 1), minBombs[2]));
+				double weight = rankSplits[s + PLACES] * next[nextState];
+				if (weight <= 0) {
+					continue;
+				}
+				chosen = s;
+				target -= weight;
+				if (target < 0) {
+					break;
+				}
+			}
+			//浮点误差可能使 target 略大于总和，此时使用最后一个可行的分法
+			long free = freeOf(i);
+			for (int place = 0; place < SEATS; place++) {
+				long picked = CardSet.pick(free, rankSplits[chosen + place], random);
+				out[place] |= picked;
+				free ^= picked;
+			}
+			out[KITTY] |= free;
+			c0 -= rankSplits[chosen];
+			c1 -= rankSplits[chosen + 1];
+			c2 -= rankSplits[chosen + 2];
+			int bombs = rankSplits[chosen + PLACES + 1];
+			b0 = Math.min(b0 + (bombs & 1), minBombs[0]);
+			b1 = Math.min(b1 + ((bombs >> 1) & 1), minBombs[1]);
+			b2 = Math.min(b2 + ((bombs >> 2) & 1), minBombs[2]);
+		}
+	}
+
+	private void checkPrepared() {
+		if (!prepared) {
+			throw new IllegalStateException("prepare() must be called after changing constraints.");
+		}
+	}
+
+	//某种点数中不确定归属的牌
+	private long freeOf(int index) {
+		return CardSet.minus(CardSet.valueMask(Card.CARD_VALUE_3 + index), fixedAll);
+	}
+
+	//列出把点数 index 中不确定归属的牌分给四处、且满足各座位张数范围的所有分法
+	private int[] enumerateSplits(int index) {
+		long valueMask = CardSet.valueMask(Card.CARD_VALUE_3 + index);
+		int free = CardSet.size(freeOf(index));
+		int[] fixedCounts = new int[SEATS];
+		for (int seat = 0; seat < SEATS; seat++) {
+			fixedCounts[seat] = CardSet.size(CardSet.intersect(fixed[seat], valueMask));
+		}
+		int[] result = new int[35 * SPLIT_FIELDS];
+		int length = 0;
+		for (int a0 = 0; a0 <= free; a0++) {
+			for (int a1 = 0; a0 + a1 <= free; a1++) {
+				for (int a2 = 0; a0 + a1 + a2 <= free; a2++) {
+					int[] split = {a0, a1, a2};
+					int bombs = 0;
+					boolean valid = true;
+					for (int seat = 0; seat < SEATS && valid; seat++) {
+						int count = fixedCounts[seat] + split[seat];
+						valid = count >= minCounts[seat][index] && count <= maxCounts[seat][index];
+						if (count == 4 && index < BOMB_VALUE_KINDS) {
+							bombs |= 1 << seat;
+						}
+					}
+					if (!valid) {
+						continue;
+					}
+					int ak = free - a0 - a1 - a2;
+					result[length++] = a0;
+					result[length++] = a1;
+					result[length++] = a2;
+					result[length++] = ak;
+					result[length++] = factorial(free)
+							/ (factorial(a0) * factorial(a1) * factorial(a2) * factorial(ak));
+					result[length++] = bombs;
+				}
+			}
+		}
+		int[] trimmed = new int[length];
+		System.arraycopy(result, 0, trimmed, 0, length);
+		return trimmed;
+	}
+
+	//按分法转移到下一种点数的状态，不可行时返回-1
+	private int transit(int[] state, int[] rankSplits, int s, int kitty) {
+		int a0 = rankSplits[s];
+		int a1 = rankSplits[s + 1];
+		int a2 = rankSplits[s + 2];
+		if (a0 > state[0] || a1 > state[1] || a2 > state[2] || rankSplits[s + 3] > kitty) {
+			return -1;
+		}
+		int bombs = rankSplits[s + PLACES + 1];
+		return stateOf(state[0] - a0, state[1] - a1, state[2] - a2,
+				Math.min(state[3] + (bombs & 1), minBombs[0]),
+				Math.min(state[4] + ((bombs >> 1) & 1), minBombs[1]),
+				Math.min(state[5] + ((bombs >> 2) & 1), minBombs[2]));
+	}
+
+	private int initialState() {
+		return stateOf(capacities[0], capacities[1], capacities[2], 0, 0, 0);
+	}
+
+	private int stateOf(int c0, int c1, int c2, int b0, int b1, int b2) {
+		return c0 * strides[0] + c1 * strides[1] + c2 * strides[2] + b0 * strides[3]
+				+ b1 * strides[4] + b2 * strides[5];
+	}
+
+	private void decode(int index, int[] state) {
+		for (int k = 0; k < state.length; k++) {
+			state[k] = index / strides[k];
+			index %= strides[k];
+		}
+	}
+
+	private static int factorial(int n) {
+		return n <= 1 ? 1 : n * factorial(n - 1);
+	}
+}
@@ -0,0 +1,108 @@
+package com.mym.landlords.card;
+
+import com.mym.util.SplitMix64;
+
+/**
+ * 洗牌发牌器，每次发牌的结果是三家的手牌和底牌（均以 {@link CardSet}表示）。
+ * <p>
+ * <h1>重现</h1>
+ * 每次发牌先从发牌器的随机数序列中取出一个种子，再用这个种子对按序号排列的一副牌做一遍 Fisher-Yates 洗牌，
+ * 因此发牌的结果只由这个种子决定（参见 {@link #getSeed()}），用 {@link #deal(long)}可以原样重现，便于回放和调试。
+ * 不同的牌桌或模拟线程应当使用不同的种子或由 {@link SplitMix64#split()}派生的随机数序列，互相之间没有竞争。
+ * </p>
+ * <p>
+ * <h1>性能</h1>
+ * 牌保存在一个54个元素的 int 数组中，每张牌只交换一次，结果直接写入位集合。由于位集合按点数从小到大排列，
+ * 发出的手牌天然是有序的，不需要再排序。发牌不产生任何对象。
+ * </p>
+ * 发牌器不是线程安全的。
+ */
+public final class Dealer {
+
+	/** 每家发到的张数。 */
+	public static final int HAND_SIZE = 17;
+	/** 底牌的张数。 */
+	public static final int KITTY_SIZE = 3;
+	private static final int SEATS = 3;
+
+	private final SplitMix64 seeds;
+	private final SplitMix64 shuffler = new SplitMix64(0L);
+	private final int[] ordinals = new int[CardSet.PACK_SIZE];
+	private final long[] hands = new long[SEATS];
+	private long kitty;
+	private long seed;
+
+	/**
+	 * 使用指定的种子创建发牌器。
+	 */
+	public Dealer(long seed) {
+		this(new SplitMix64(seed));
+	}
+
+	/**
+	 * 使用指定的随机数序列创建发牌器，每次发牌从中取出一个种子。
+	 * @param random 随机数序列，之后由发牌器独占使用。
+	 */
+	public Dealer(SplitMix64 random) {
+		seeds = random;
+	}
+
+	/**
+	 * 发下一副牌。
+	 */
+	public void deal() {
+		deal(seeds.nextLong());
+	}
+
+	/**
+	 * 按指定的种子发牌，相同的种子总是得到相同的结果。
+	 * @param dealSeed 本次发牌的种子，通常是之前某次发牌的 {@link #getSeed()}。
+	 */
+	public void deal(long dealSeed) {
+		seed = dealSeed;
+		shuffler.setSeed(dealSeed);
+		for (int i = 0; i < CardSet.PACK_SIZE; i++) {
+			ordinals[i] = i;
+		}
+		for (int i = CardSet.PACK_SIZE - 1; i > 0; i--) {
+			int j = shuffler.nextInt(i + 1);
+			int ordinal = ordinals[j];
+			ordinals[j] = ordinals[i];
+			ordinals[i] = ordinal;
+		}
+		int index = 0;
+		for (int seat = 0; seat < SEATS; seat++) {
+			long hand = CardSet.EMPTY;
+			for (int end = index + HAND_SIZE; index < end; index++) {
+				hand |= 1L << ordinals[index];
+			}
+			hands[seat] = hand;
+		}
+		kitty = CardSet.EMPTY;
+		for (; index < CardSet.PACK_SIZE; index++) {
+			kitty |= 1L << ordinals[index];
+		}
+	}
+
+	/**
+	 * 获得最近一次发牌时某家的手牌。
+	 * @param seat 0~2。
+	 */
+	public long getHand(int seat) {
+		return hands[seat];
+	}
+
+	/**
+	 * 获得最近一次发牌的底牌。
+	 */
+	public long getKitty() {
+		return kitty;
+	}
+
+	/**
+	 * 获得最近一次发牌使用的种子。
+	 */
+	public long getSeed() {
+		return seed;
+	}
+}
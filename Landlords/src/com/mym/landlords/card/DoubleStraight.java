@@ -3,8 +3,6 @@ package com.mym.landlords.card;
 import java.util.ArrayList;
 import java.util.Collections;
 
-import com.mym.util.LangUtils;
-
 /**
  * 双顺（连对）牌型。
  * 
@@ -21,55 +19,36 @@ public class DoubleStraight extends CardType implements NonBombType {
 	public final int length;
 
 	public DoubleStraight(ArrayList<Card> list) {
-		pairs = dividePairs(list);
-		if (pairs == null) {
+		this(list, RankHistogram.of(list));
+	}
+
+	//使用已经计算好的点数直方图创建对象
+	DoubleStraight(ArrayList<Card> list, long histogram) {
+		if (list == null || !matches(histogram, list.size())) {
 			throw new IllegalArgumentException(
-					"cannot make up double straight:" + list.toString());
+					"cannot make up double straight:" + list);
 		}
 		//保护性复制
 		cardList = new ArrayList<>(list);
-		length = pairs.size();
+		Collections.sort(cardList, Card.COMPARATOR_WITH_SUIT);
+		length = cardList.size() / 2;
 		startValue = cardList.get(0).getValue();
-	}
-
-	// 分析连对，如果能组成连对，则返回对子的顺序列表，否则返回null。
-	private ArrayList<Pair> dividePairs(ArrayList<Card> list) {
-		if (list == null || list.isEmpty()) {
-			return null;
-		}
-		int listSize = list.size();
-		if (listSize<6 || listSize%2==1){
-			return null;
-		}
-		Collections.sort(list, Card.COMPARATOR_WITH_SUIT);
-		ArrayList<Pair> pairs = new ArrayList<>();
-		for (int i = 0, lastValue=0; i < listSize; i += 2) {
-			Card card1 = list.get(i);
-			Card card2 = list.get(i + 1);
-			if (card1.isSameValueAs(card2) 				//两张一样大
-					&& card1.getValue()<Card.CARD_VALUE_2	//2以上不能组成连对
-					&& (lastValue==0 || card1.getValue()==lastValue+1)	//与前一个对子是连续的
-					) {
-				lastValue = card1.getValue();
-				pairs.add(new Pair(LangUtils.createList(card1,card2)));
-			} else {
-				break;
-			}
+		pairs = new ArrayList<>(length);
+		for (int i = 0; i < cardList.size(); i += 2) {
+			pairs.add(new Pair(new ArrayList<>(cardList.subList(i, i + 2))));
 		}
-		if (pairs.size() == listSize / 2) {
-			return pairs;
-		}
-		return null;
 	}
-	
-	@Override
-	public int compareTo(CardType another) {
-		int superCompare = super.compareTo(another);
-		if (superCompare != UNDEFINED_COMPARE){
-			return superCompare;
+
+	/**
+	 * 根据点数直方图判断卡牌能否组成连对：每个点数恰好两张，点数连续，至少三对且不包含2和王。
+	 */
+	static boolean matches(long histogram, int size) {
+		if (size < 6 || size % 2 == 1) {
+			return false;
 		}
-		return Integer.valueOf(startValue).compareTo(
-				((DoubleStraight) another).startValue);
+		int pairValues = RankHistogram.valuesWithExactCount(histogram, 2);
+		return Integer.bitCount(pairValues) * 2 == size
+				&& RankHistogram.isChain(pairValues, 3);
 	}
 	
 //	@Override
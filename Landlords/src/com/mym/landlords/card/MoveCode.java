@@ -0,0 +1,305 @@
+package com.mym.landlords.card;
+
+import java.util.List;
+
+/**
+ * 把一手牌编码为一个 long 值的工具类，供搜索和模拟等需要大量比较出牌的场合使用。
+ * <p>
+ * <h1>编码布局</h1>
+ * <ul>
+ * <li>第0~3位：牌型，即 {@link CardKind}中的常量；</li>
+ * <li>第4~8位：卡牌张数；</li>
+ * <li>第9~12位：主体的最小点数减3（例如顺子的起始点数、三条或飞机中最小的三张的点数）；</li>
+ * <li>第13~16位：主体的连续点数个数，单牌、对子、三条、炸弹和王炸为1；</li>
+ * <li>第17~31位：所带的牌的点数掩码（参见 {@link RankHistogram}），仅三条和飞机使用。</li>
+ * </ul>
+ * 编码只记录点数而不记录花色，因此同样点数组成的出牌（例如不同花色的两个对子Q）具有相同的编码。
+ * 值 {@link #NONE}（即0）表示不出或者无效的牌。
+ * </p>
+ * <p>
+ * <h1>比较与排序</h1>
+ * {@link #beats(long, long)}实现了与 {@link CardType#canAgainstType(CardType)}相同的规则，
+ * {@link #sortKey(long)}给出与 {@link CardType#SORT_COMPARATOR}相同的顺序。这些方法只使用整数运算，不会产生任何对象。
+ * </p>
+ */
+public final class MoveCode {
+	/** 表示不出或无效的牌。 */
+	public static final long NONE = 0L;
+
+	private static final int KIND_SHIFT = 0;
+	private static final int SIZE_SHIFT = 4;
+	private static final int VALUE_SHIFT = 9;
+	private static final int CHAIN_SHIFT = 13;
+	private static final int KICKER_SHIFT = 17;
+	//牌型、张数和连续个数相同的两手牌才能互相比较
+	private static final long SHAPE_MASK = (0xFL << KIND_SHIFT)
+			| (0x1FL << SIZE_SHIFT) | (0xFL << CHAIN_SHIFT);
+
+	//隐藏构造方法
+	private MoveCode() {}
+
+	/**
+	 * 使用各个字段直接组装编码。
+	 * @param kind 牌型常量。
+	 * @param size 卡牌张数。
+	 * @param primaryValue 主体的最小点数（卡牌点数，例如 {@link Card#CARD_VALUE_3}）。
+	 * @param chainLength 主体的连续点数个数。
+	 * @param kickerValues 所带的牌的点数掩码。
+	 */
+	public static long encode(int kind, int size, int primaryValue,
+			int chainLength, int kickerValues) {
+		return ((long) kind << KIND_SHIFT) | ((long) size << SIZE_SHIFT)
+				| ((long) (primaryValue - Card.CARD_VALUE_3) << VALUE_SHIFT)
+				| ((long) chainLength << CHAIN_SHIFT)
+				| ((long) kickerValues << KICKER_SHIFT);
+	}
+
+	/**
+	 * 根据点数直方图编码一手牌。
+	 * @param histogram 卡牌的点数直方图。
+	 * @param size 卡牌张数。
+	 * @return 如果不能组成任何牌型则返回 {@link #NONE}。
+	 */
+	public static long fromHistogram(long histogram, int size) {
+		int kind = CardKind.classify(histogram, size);
+		int body;
+		int kickers = 0;
+		switch (kind) {
+		case CardKind.SINGLE:
+		case CardKind.STRAIGHT:
+			body = RankHistogram.valuesWithCount(histogram, 1);
+			break;
+		case CardKind.PAIR:
+		case CardKind.DOUBLE_STRAIGHT:
+			body = RankHistogram.valuesWithCount(histogram, 2);
+			break;
+		case CardKind.THREE:
+		case CardKind.AIRPLANE:
+			body = RankHistogram.valuesWithExactCount(histogram, 3);
+			kickers = RankHistogram.valuesWithCount(histogram, 1) & ~body;
+			break;
+		case CardKind.BOMB:
+			body = RankHistogram.valuesWithCount(histogram, 4);
+			break;
+		case CardKind.ROCKET:
+			//王炸按小王记录
+			body = 1 << (Card.CARD_VALUE_JOKER_S - Card.CARD_VALUE_3);
+			break;
+		default:
+			return NONE;
+		}
+		return encode(kind, size, RankHistogram.minValue(body),
+				Integer.bitCount(body), kickers);
+	}
+
+	/**
+	 * 编码一个卡牌集合。
+	 * @param cardSet 以 {@link CardSet}表示的卡牌集合。
+	 * @return 如果不能组成任何牌型则返回 {@link #NONE}。
+	 */
+	public static long fromCardSet(long cardSet) {
+		return fromHistogram(RankHistogram.of(cardSet), CardSet.size(cardSet));
+	}
+
+	/**
+	 * 编码一个牌型对象。
+	 * @param type 牌型对象，为null时返回 {@link #NONE}。
+	 */
+	public static long of(CardType type) {
+		return type == null ? NONE : type.getMoveCode();
+	}
+
+	/** 获得牌型常量。 */
+	public static int kind(long code) {
+		return (int) (code >>> KIND_SHIFT) & 0xF;
+	}
+
+	/** 获得卡牌张数。 */
+	public static int size(long code) {
+		return (int) (code >>> SIZE_SHIFT) & 0x1F;
+	}
+
+	/** 获得主体的最小点数（卡牌点数）。 */
+	public static int primaryValue(long code) {
+		return ((int) (code >>> VALUE_SHIFT) & 0xF) + Card.CARD_VALUE_3;
+	}
+
+	/** 获得主体的连续点数个数。 */
+	public static int chainLength(long code) {
+		return (int) (code >>> CHAIN_SHIFT) & 0xF;
+	}
+
+	/** 获得所带的牌的点数掩码。 */
+	public static int kickerValues(long code) {
+		return (int) (code >>> KICKER_SHIFT) & 0x7FFF;
+	}
+
+	/** 判断是否为炸弹或王炸。 */
+	public static boolean isBomb(long code) {
+		return CardKind.isBomb(kind(code));
+	}
+
+	/**
+	 * 获得主体中每个点数的张数，例如连对为2，飞机为3。
+	 */
+	public static int bodyWidth(long code) {
+		switch (kind(code)) {
+		case CardKind.PAIR:
+		case CardKind.DOUBLE_STRAIGHT:
+			return 2;
+		case CardKind.THREE:
+		case CardKind.AIRPLANE:
+			return 3;
+		case CardKind.BOMB:
+			return 4;
+		default:
+			return 1;
+		}
+	}
+
+	/**
+	 * 获得主体占用的点数掩码。王炸返回小王和大王两个点数。
+	 */
+	public static int bodyValues(long code) {
+		int start = primaryValue(code) - Card.CARD_VALUE_3;
+		if (kind(code) == CardKind.ROCKET) {
+			return 3 << start;
+		}
+		return ((1 << chainLength(code)) - 1) << start;
+	}
+
+	/**
+	 * 判断一手牌能否打前一手牌，规则与 {@link CardType#canAgainstType(CardType)}一致。
+	 * @param code 当前的牌。
+	 * @param before 前一手牌，{@link #NONE}表示自由出牌。
+	 */
+	public static boolean beats(long code, long before) {
+		if (code == NONE) {
+			return false;
+		}
+		if (before == NONE) {
+			return true;
+		}
+		int kind = kind(code);
+		int beforeKind = kind(before);
+		if (beforeKind == CardKind.ROCKET) {
+			return false;
+		}
+		if (kind == CardKind.ROCKET) {
+			return true;
+		}
+		if (kind == CardKind.BOMB && beforeKind != CardKind.BOMB) {
+			return true;
+		}
+		return ((code ^ before) & SHAPE_MASK) == 0
+				&& primaryValue(code) > primaryValue(before);
+	}
+
+	/**
+	 * 获得排序键，按该值升序排列与按 {@link CardType#SORT_COMPARATOR}排序的结果一致：
+	 * 炸弹排在所有其他牌型之后，其余按这手牌中最小的点数排序。
+	 */
+	public static int sortKey(long code) {
+		if (code == NONE) {
+			return 0;
+		}
+		int values = bodyValues(code) | kickerValues(code);
+		int key = Integer.numberOfTrailingZeros(values) + Card.CARD_VALUE_3;
+		return kind(code) == CardKind.BOMB ? key | 0x100 : key;
+	}
+
+	/**
+	 * 从手牌中挑出组成这手牌的具体卡牌。每个点数总是优先选择花色序号较小的牌。
+	 * @param code 牌的编码。
+	 * @param hand 以 {@link CardSet}表示的手牌。
+	 * @return 返回卡牌集合；如果手牌中没有足够的牌则返回 {@link CardSet#EMPTY}。
+	 */
+	public static long toCardSet(long code, long hand) {
+		if (code == NONE) {
+			return CardSet.EMPTY;
+		}
+		long cards = takeValues(hand, bodyValues(code), kind(code) == CardKind.ROCKET
+				? 1 : bodyWidth(code));
+		int kickers = kickerValues(code);
+		if (kickers != 0) {
+			int bodySize = chainLength(code) * 3;
+			int width = (size(code) - bodySize) / Integer.bitCount(kickers);
+			cards |= takeValues(hand, kickers, width);
+		}
+		return CardSet.size(cards) == size(code) ? cards : CardSet.EMPTY;
+	}
+
+	/**
+	 * 获得这手牌的点数直方图，参见 {@link RankHistogram}。
+	 * @return 返回直方图；{@link #NONE}返回0。
+	 */
+	public static long toHistogram(long code) {
+		if (code == NONE) {
+			return 0L;
+		}
+		long histogram = spreadValues(bodyValues(code), kind(code) == CardKind.ROCKET
+				? 1 : bodyWidth(code));
+		int kickers = kickerValues(code);
+		if (kickers != 0) {
+			int bodySize = chainLength(code) * 3;
+			histogram += spreadValues(kickers, (size(code) - bodySize) / Integer.bitCount(kickers));
+		}
+		return histogram;
+	}
+
+	/**
+	 * 把编码还原为牌型对象，主要用于显示。
+	 * @param code 牌的编码。
+	 * @param handCards 手牌列表，具体的卡牌将从中选取。
+	 * @return 如果编码无效或手牌中没有足够的牌则返回null。
+	 */
+	public static CardType toCardType(long code, List<Card> handCards) {
+		long cards = toCardSet(code, CardSet.of(handCards));
+		if (cards == CardSet.EMPTY) {
+			return null;
+		}
+		return CardType.createObjectFromCards(CardSet.toList(cards, handCards));
+	}
+
+	//从手牌中对掩码中的每个点数各取出 width 张花色最小的牌。
+	private static long takeValues(long hand, int valueMask, int width) {
+		long cards = CardSet.EMPTY;
+		while (valueMask != 0) {
+			int value = Card.CARD_VALUE_3 + Integer.numberOfTrailingZeros(valueMask);
+			valueMask &= valueMask - 1;
+			long available = CardSet.ofValue(hand, value);
+			for (int i = 0; i < width && available != 0; i++) {
+				long lowest = available & -available;
+				cards |= lowest;
+				available ^= lowest;
+			}
+		}
+		return cards;
+	}
+
+	//对掩码中的每个点数各计 width 张，得到直方图。
+	private static long spreadValues(int valueMask, int width) {
+		long histogram = 0L;
+		while (valueMask != 0) {
+			int index = Integer.numberOfTrailingZeros(valueMask);
+			valueMask &= valueMask - 1;
+			histogram |= (long) width << (index << 2);
+		}
+		return histogram;
+	}
+
+	/**
+	 * 输出编码的可读形式，主要用于日志。
+	 */
+	public static String toString(long code) {
+		if (code == NONE) {
+			return "MoveCode[NONE]";
+		}
+		StringBuilder builder = new StringBuilder();
+		builder.append("MoveCode[kind=").append(kind(code)).append(", size=")
+				.append(size(code)).append(", value=").append(primaryValue(code))
+				.append(", chain=").append(chainLength(code)).append(", kickers=0x")
+				.append(Integer.toHexString(kickerValues(code))).append("]");
+		return builder.toString();
+	}
+}
@@ -0,0 +1,255 @@
+package com.mym.landlords.card;
+
+/**
+ * 出牌生成器，按固定的顺序逐个列出一手牌中所有能打过指定牌的出牌。
+ * <p>
+ * <h1>使用方法</h1>
+ * <pre>
+ * MoveGenerator generator = new MoveGenerator();
+ * generator.reset(handCardSet, beforeMoveCode);
+ * while (generator.hasNext()) {
+ *     long move = generator.next();
+ *     long cards = MoveCode.toCardSet(move, handCardSet);
+ *     ...
+ * }
+ * </pre>
+ * 出牌以 {@link MoveCode}的形式给出，生成过程是惰性的，调用者可以随时停止遍历。生成器对象可以通过
+ * {@link #reset(long, long)}反复使用，遍历过程中不会产生任何对象。但生成器不是线程安全的，每个线程应当使用各自的对象。
+ * </p>
+ * <p>
+ * <h1>出牌的顺序</h1>
+ * 只按点数区分出牌，花色不同而点数相同的出牌只会出现一次。
+ * <ul>
+ * <li>自由出牌（前一手牌为 {@link MoveCode#NONE}）时，依次列出单牌、对子、三条（不带、带单、带对）、顺子、连对、
+ * 飞机（不带、带单、带对）、炸弹和王炸；</li>
+ * <li>跟牌时，先列出与前一手牌相同牌型、相同张数的出牌，再列出炸弹（如果前一手牌是炸弹，则只列出更大的炸弹），最后是王炸。</li>
+ * </ul>
+ * 同一牌型中按连续点数个数从短到长，再按主体的最小点数从小到大排列；所带的牌按点数组合从小到大排列。
+ * </p>
+ */
+public final class MoveGenerator {
+
+	//每种出牌形状占用的字段数：牌型、主体每个点数的张数、连续点数个数、所带的每个点数的张数、最小起始点数下标
+	private static final int SHAPE_FIELDS = 5;
+	private static final int ALL_VALUES_MASK = (1 << RankHistogram.VALUE_KINDS) - 1;
+	//王炸的出牌编码
+	private static final long ROCKET_CODE = MoveCode.encode(CardKind.ROCKET, 2,
+			Card.CARD_VALUE_JOKER_S, 1, 0);
+	private static final long ROCKET_CARDS = (1L << CardSet.ORDINAL_JOKER_S)
+			| (1L << CardSet.ORDINAL_JOKER_B);
+
+	//自由出牌时依次尝试的出牌形状
+	private static final int[] LEAD_SHAPES;
+	static {
+		int[] shapes = new int[64 * SHAPE_FIELDS];
+		int count = 0;
+		count = addShape(shapes, count, CardKind.SINGLE, 1, 1, 0);
+		count = addShape(shapes, count, CardKind.PAIR, 2, 1, 0);
+		for (int kicker = 0; kicker <= 2; kicker++) {
+			count = addShape(shapes, count, CardKind.THREE, 3, 1, kicker);
+		}
+		for (int length = 5; length <= 12; length++) {
+			count = addShape(shapes, count, CardKind.STRAIGHT, 1, length, 0);
+		}
+		for (int length = 3; length <= 10; length++) {
+			count = addShape(shapes, count, CardKind.DOUBLE_STRAIGHT, 2, length, 0);
+		}
+		//一手牌最多20张
+		for (int kicker = 0; kicker <= 2; kicker++) {
+			for (int length = 2; length * (3 + kicker) <= 20; length++) {
+				count = addShape(shapes, count, CardKind.AIRPLANE, 3, length, kicker);
+			}
+		}
+		count = addShape(shapes, count, CardKind.BOMB, 4, 1, 0);
+		count = addShape(shapes, count, CardKind.ROCKET, 1, 1, 0);
+		LEAD_SHAPES = new int[count * SHAPE_FIELDS];
+		System.arraycopy(shapes, 0, LEAD_SHAPES, 0, LEAD_SHAPES.length);
+	}
+
+	private long hand;
+	private long histogram;
+	//跟牌时使用的出牌形状，每个生成器只创建一次
+	private final int[] followShapes = new int[3 * SHAPE_FIELDS];
+	private int[] shapes;
+	private int shapeCount;
+
+	//遍历状态
+	private int shapeIndex;
+	private int start;				//主体的最小点数下标（点数-3）
+	private int body;				//当前主体的点数掩码，0表示需要寻找下一个主体
+	private int kickerCandidates;	//可以作为所带的牌的点数掩码
+	private int kickerCombination;	//在候选点数中选取的组合，按候选点数的序号记录
+	private long nextMove;			//预先找到的下一个出牌，NONE表示已经结束
+
+	/**
+	 * 重新开始生成出牌。
+	 * @param handCardSet 以 {@link CardSet}表示的手牌。
+	 * @param before 需要打过的牌的编码；{@link MoveCode#NONE}表示自由出牌。
+	 * @return 返回生成器本身。
+	 */
+	public MoveGenerator reset(long handCardSet, long before) {
+		hand = handCardSet;
+		histogram = RankHistogram.of(handCardSet);
+		if (before == MoveCode.NONE) {
+			shapes = LEAD_SHAPES;
+			shapeCount = LEAD_SHAPES.length / SHAPE_FIELDS;
+		} else {
+			shapes = followShapes;
+			shapeCount = 0;
+			int kind = MoveCode.kind(before);
+			int beforeStart = MoveCode.primaryValue(before) - Card.CARD_VALUE_3;
+			if (kind == CardKind.BOMB) {
+				shapeCount = addShape(followShapes, shapeCount, CardKind.BOMB, 4, 1, 0,
+						beforeStart + 1);
+				shapeCount = addShape(followShapes, shapeCount, CardKind.ROCKET, 1, 1, 0);
+			} else if (kind != CardKind.ROCKET) {
+				int length = MoveCode.chainLength(before);
+				int width = MoveCode.bodyWidth(before);
+				int kickers = MoveCode.kickerValues(before);
+				int kickerWidth = kickers == 0 ? 0 : (MoveCode.size(before) - length
+						* width) / Integer.bitCount(kickers);
+				shapeCount = addShape(followShapes, shapeCount, kind, width, length,
+						kickerWidth, beforeStart + 1);
+				shapeCount = addShape(followShapes, shapeCount, CardKind.BOMB, 4, 1, 0);
+				shapeCount = addShape(followShapes, shapeCount, CardKind.ROCKET, 1, 1, 0);
+			}
+		}
+		shapeIndex = -1;
+		nextShape();
+		nextMove = findNext();
+		return this;
+	}
+
+	/**
+	 * 判断是否还有下一个出牌。
+	 */
+	public boolean hasNext() {
+		return nextMove != MoveCode.NONE;
+	}
+
+	/**
+	 * 获得下一个出牌。
+	 * @return 出牌的编码；如果已经没有出牌则返回 {@link MoveCode#NONE}。
+	 */
+	public long next() {
+		long move = nextMove;
+		if (move != MoveCode.NONE) {
+			nextMove = findNext();
+		}
+		return move;
+	}
+
+	/**
+	 * 获得当前手牌，即最近一次调用 {@link #reset(long, long)}时传入的值。
+	 */
+	public long getHand() {
+		return hand;
+	}
+
+	/**
+	 * 判断手牌中是否有能打过指定牌的出牌。生成器会被重置为这手牌，原来的遍历状态不再保留。
+	 */
+	public boolean hasMoveBeating(long handCardSet, long before) {
+		return reset(handCardSet, before).hasNext();
+	}
+
+	//找出下一个出牌，依次推进所带的牌的组合、主体的起始点数和出牌形状。
+	private long findNext() {
+		while (shapeIndex < shapeCount) {
+			int offset = shapeIndex * SHAPE_FIELDS;
+			int kind = shapes[offset];
+			int width = shapes[offset + 1];
+			int length = shapes[offset + 2];
+			int kickerWidth = shapes[offset + 3];
+			if (kind == CardKind.ROCKET) {
+				nextShape();
+				if ((hand & ROCKET_CARDS) == ROCKET_CARDS) {
+					return ROCKET_CODE;
+				}
+				continue;
+			}
+			if (body != 0) {
+				//继续当前主体的下一个带牌组合
+				if (kickerWidth != 0 && nextCombination()) {
+					return encode(kind, width, length, kickerWidth);
+				}
+				body = 0;
+				start++;
+			}
+			int available = RankHistogram.valuesWithCount(histogram, width)
+					& (length > 1 || kind == CardKind.STRAIGHT ? RankHistogram.CHAIN_VALUES_MASK
+							: ALL_VALUES_MASK);
+			int run = (1 << length) - 1;
+			for (; start + length <= RankHistogram.VALUE_KINDS; start++) {
+				int candidate = run << start;
+				if ((available & candidate) != candidate) {
+					continue;
+				}
+				if (kickerWidth == 0) {
+					body = candidate;
+					return encode(kind, width, length, 0);
+				}
+				kickerCandidates = RankHistogram.valuesWithCount(histogram, kickerWidth)
+						& ~candidate;
+				if (Integer.bitCount(kickerCandidates) >= length) {
+					body = candidate;
+					kickerCombination = (1 << length) - 1;
+					return encode(kind, width, length, kickerWidth);
+				}
+			}
+			nextShape();
+		}
+		return MoveCode.NONE;
+	}
+
+	private void nextShape() {
+		shapeIndex++;
+		body = 0;
+		start = shapeIndex < shapeCount ? shapes[shapeIndex * SHAPE_FIELDS + 4] : 0;
+	}
+
+	//按Gosper方法取得下一个元素个数相同的组合，没有更多组合时返回false。
+	private boolean nextCombination() {
+		int lowest = kickerCombination & -kickerCombination;
+		int ripple = kickerCombination + lowest;
+		int next = ripple | (((ripple ^ kickerCombination) >>> 2) / lowest);
+		if (next >= (1 << Integer.bitCount(kickerCandidates)) || next <= 0) {
+			return false;
+		}
+		kickerCombination = next;
+		return true;
+	}
+
+	private long encode(int kind, int width, int length, int kickerWidth) {
+		int kickers = 0;
+		if (kickerWidth != 0) {
+			//把组合中的序号映射到候选点数上
+			int candidates = kickerCandidates;
+			for (int index = 0; candidates != 0; index++) {
+				int lowest = candidates & -candidates;
+				candidates ^= lowest;
+				if ((kickerCombination & (1 << index)) != 0) {
+					kickers |= lowest;
+				}
+			}
+		}
+		int size = width * length + kickerWidth * Integer.bitCount(kickers);
+		return MoveCode.encode(kind, size, Card.CARD_VALUE_3 + start, length, kickers);
+	}
+
+	private static int addShape(int[] shapes, int count, int kind, int width,
+			int length, int kickerWidth) {
+		return addShape(shapes, count, kind, width, length, kickerWidth, 0);
+	}
+
+	private static int addShape(int[] shapes, int count, int kind, int width,
+			int length, int kickerWidth, int minStart) {
+		int offset = count * SHAPE_FIELDS;
+		shapes[offset] = kind;
+		shapes[offset + 1] = width;
+		shapes[offset + 2] = length;
+		shapes[offset + 3] = kickerWidth;
+		shapes[offset + 4] = minStart;
+		return count + 1;
+	}
+}
@@ -9,8 +9,12 @@ import java.util.ArrayList;
 public final class Pair extends CardType implements NonBombType {
 
 	public Pair(ArrayList<Card> list) {
-		if (list == null || list.size() != 2
-				|| (!(list.get(0).isSameValueAs(list.get(1))))) {
+		this(list, RankHistogram.of(list));
+	}
+
+	//使用已经计算好的点数直方图创建对象
+	Pair(ArrayList<Card> list, long histogram) {
+		if (list == null || !matches(histogram, list.size())) {
 			throw new IllegalArgumentException("A pair must be 2 same cards!");
 		}
 		//保护性复制
@@ -18,20 +22,10 @@ public final class Pair extends CardType implements NonBombType {
 	}
 
 	/**
-	 * 实现对子牌型大小比对。
-	 * @return 如果参数是炸弹，则始终返回负数；否则返回按点数的比较结果。
-	 * @see com.mym.landlords.card.CardType#compareTo(com.mym.landlords.card.CardType)
+	 * 根据点数直方图判断卡牌能否组成对子。
 	 */
-	@Override
-	public int compareTo(CardType another) {
-		int superCompare = super.compareTo(another);
-		if (superCompare != UNDEFINED_COMPARE) {
-			return superCompare;
-		}
-		if (!(another instanceof Pair)) {
-			throw new ClassCastException("compare to wrong object.");
-		}
-		return cardList.get(0).compareTo(((Pair) another).cardList.get(0));
+	static boolean matches(long histogram, int size) {
+		return size == 2 && RankHistogram.valuesWithExactCount(histogram, 2) != 0;
 	}
 
 	@Override
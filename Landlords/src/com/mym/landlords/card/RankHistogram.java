@@ -0,0 +1,186 @@
+package com.mym.landlords.card;
+
+import java.util.List;
+
+/**
+ * 点数直方图工具类，用一个 long 值记录一组卡牌中每种点数的张数，供牌型识别和AI分析使用。
+ * <p>
+ * <h1>位布局</h1>
+ * 从3到大王共15种点数，每种点数占用4个二进制位作为计数器：点数 v 的张数保存在第 (v-3)*4 位开始的4个位中，
+ * 即3在最低的4位，大王在第56~59位。由于一副牌中同一点数最多4张，计数器不会溢出。
+ * </p>
+ * <p>
+ * <h1>点数掩码</h1>
+ * {@link #valuesWithCount(long, int)}等方法返回一个15位的“点数掩码”，第 (v-3) 位为1表示点数 v 满足条件。
+ * 其中第0~11位对应3~A，可以用于判断顺子、连对和飞机；第12位对应2，第13、14位分别对应小王和大王。
+ * </p>
+ * 所有方法都是静态的，且只使用整数运算，不会产生任何对象。
+ */
+public final class RankHistogram {
+	/** 点数的种类数（3~大王）。 */
+	public static final int VALUE_KINDS = Card.CARD_VALUE_JOKER_B - Card.CARD_VALUE_3 + 1;
+	/** 能组成顺子、连对和飞机的点数掩码（3~A）。 */
+	public static final int CHAIN_VALUES_MASK = (1 << (Card.CARD_VALUE_2 - Card.CARD_VALUE_3)) - 1;
+
+	//每个计数器最低位组成的掩码
+	private static final long NIBBLE_LOW_BITS = 0x0111111111111111L;
+	//每个计数器最高位组成的掩码
+	private static final long NIBBLE_HIGH_BITS = 0x0888888888888888L;
+	//52张带花色的卡牌所占的位
+	private static final long SUITED_CARDS = (1L << CardSet.ORDINAL_JOKER_S) - 1;
+
+	//隐藏构造方法
+	private RankHistogram() {}
+
+	/**
+	 * 根据卡牌集合计算直方图。
+	 * @param cardSet 以 {@link CardSet}表示的卡牌集合。
+	 */
+	public static long of(long cardSet) {
+		//CardSet中每种点数恰好占用一个4位的组，因此逐组统计位数即可。
+		long x = cardSet & SUITED_CARDS;
+		x = x - ((x >>> 1) & 0x5555555555555555L);
+		x = (x & 0x3333333333333333L) + ((x >>> 2) & 0x3333333333333333L);
+		//小王恰好位于第13个计数器的最低位，大王需要移到第14个计数器。
+		return x | (cardSet & (1L << CardSet.ORDINAL_JOKER_S))
+				| (((cardSet >>> CardSet.ORDINAL_JOKER_B) & 1L) << 56);
+	}
+
+	/**
+	 * 根据卡牌列表计算直方图。
+	 */
+	public static long of(List<Card> cards) {
+		return of(CardSet.of(cards));
+	}
+
+	/**
+	 * 根据直方图构造一个卡牌集合，每个点数取花色序号最小的若干张牌。
+	 * 主要用于只关心点数的场合，例如在分析时把直方图交给 {@link MoveGenerator}。
+	 */
+	public static long toCardSet(long histogram) {
+		long cards = CardSet.EMPTY;
+		for (int index = 0; index < Card.CARD_VALUE_JOKER_S - Card.CARD_VALUE_3; index++) {
+			int count = (int) (histogram >>> (index << 2)) & 0xF;
+			cards |= ((1L << count) - 1) << (index << 2);
+		}
+		//小王恰好位于第13个计数器的最低位，大王需要从第14个计数器移回。
+		return cards | (histogram & (1L << CardSet.ORDINAL_JOKER_S))
+				| (((histogram >>> 56) & 1L) << CardSet.ORDINAL_JOKER_B);
+	}
+
+	/**
+	 * 获得指定点数的张数。
+	 * @param value 卡牌点数，必须为 {@link Card#CARD_VALUE_3} ~ {@link Card#CARD_VALUE_JOKER_B}之间的值。
+	 */
+	public static int count(long histogram, int value) {
+		return (int) (histogram >>> ((value - Card.CARD_VALUE_3) << 2)) & 0xF;
+	}
+
+	/**
+	 * 增加（或减少）指定点数的张数。调用者需要保证计数器不会越界。
+	 */
+	public static long add(long histogram, int value, int delta) {
+		return histogram + ((long) delta << ((value - Card.CARD_VALUE_3) << 2));
+	}
+
+	/**
+	 * 获得直方图记录的卡牌总张数。
+	 */
+	public static int size(long histogram) {
+		//先两两相加再按字节相加，每个计数器最大为4，不会产生进位溢出。
+		long x = (histogram & 0x0F0F0F0F0F0F0F0FL) + ((histogram >>> 4) & 0x0F0F0F0F0F0F0F0FL);
+		return (int) ((x * 0x0101010101010101L) >>> 56);
+	}
+
+	/**
+	 * 逐个点数取两个直方图中较小的张数。
+	 */
+	public static long min(long histogram, long another) {
+		//每个计数器不超过4，借用第4位判断是否发生借位：未借位说明 histogram 的张数不小于 another。
+		long notLess = (((histogram | NIBBLE_HIGH_BITS) - another) & NIBBLE_HIGH_BITS) >>> 3;
+		long select = notLess * 0xF;
+		return (another & select) | (histogram & ~select);
+	}
+
+	/**
+	 * 获得张数不少于 minCount 的所有点数组成的点数掩码。
+	 * @param minCount 1~4之间的张数。
+	 */
+	public static int valuesWithCount(long histogram, int minCount) {
+		long bits;
+		switch (minCount) {
+		case 1:
+			bits = histogram | (histogram >>> 1) | (histogram >>> 2);
+			break;
+		case 2:
+			bits = (histogram >>> 1) | (histogram >>> 2);
+			break;
+		case 3:
+			bits = (histogram >>> 2) | (histogram & (histogram >>> 1));
+			break;
+		case 4:
+			bits = histogram >>> 2;
+			break;
+		default:
+			throw new IllegalArgumentException("invalid count:" + minCount);
+		}
+		return compress(bits & NIBBLE_LOW_BITS);
+	}
+
+	/**
+	 * 获得张数恰好为 count 的所有点数组成的点数掩码。
+	 * @param count 1~4之间的张数。
+	 */
+	public static int valuesWithExactCount(long histogram, int count) {
+		int atLeast = valuesWithCount(histogram, count);
+		return count == 4 ? atLeast : atLeast & ~valuesWithCount(histogram, count + 1);
+	}
+
+	/**
+	 * 判断点数掩码中的点数是否连续。
+	 * @return 如果掩码非空且所有点数连续则返回true。
+	 */
+	public static boolean isContinuous(int valueMask) {
+		if (valueMask == 0) {
+			return false;
+		}
+		int shifted = valueMask >>> Integer.numberOfTrailingZeros(valueMask);
+		return (shifted & (shifted + 1)) == 0;
+	}
+
+	/**
+	 * 获得点数掩码中的最小点数。
+	 * @return 返回对应的卡牌点数；如果掩码为空则返回0。
+	 */
+	public static int minValue(int valueMask) {
+		return valueMask == 0 ? 0 : Card.CARD_VALUE_3
+				+ Integer.numberOfTrailingZeros(valueMask);
+	}
+
+	/**
+	 * 获得点数掩码中的最大点数。
+	 * @return 返回对应的卡牌点数；如果掩码为空则返回0。
+	 */
+	public static int maxValue(int valueMask) {
+		return valueMask == 0 ? 0 : Card.CARD_VALUE_3 + 31
+				- Integer.numberOfLeadingZeros(valueMask);
+	}
+
+	/**
+	 * 判断点数掩码是否构成了一个长度不小于 minLength 的连续序列，且不包含2和王。
+	 */
+	public static boolean isChain(int valueMask, int minLength) {
+		return (valueMask & ~CHAIN_VALUES_MASK) == 0
+				&& Integer.bitCount(valueMask) >= minLength
+				&& isContinuous(valueMask);
+	}
+
+	//把每个计数器的最低位（第4i位）压缩到第i位。
+	private static int compress(long bits) {
+		bits = (bits | (bits >>> 3)) & 0x0303030303030303L;
+		bits = (bits | (bits >>> 6)) & 0x000F000F000F000FL;
+		bits = (bits | (bits >>> 12)) & 0x000000FF000000FFL;
+		bits = (bits | (bits >>> 24)) & 0xFFFFL;
+		return (int) bits;
+	}
+}
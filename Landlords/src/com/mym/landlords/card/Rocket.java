@@ -4,8 +4,12 @@ import java.util.ArrayList;
 
 public final class Rocket extends CardType implements BombType{
 	public Rocket(ArrayList<Card> list){
-		if (list==null || list.size()!=2 || list.get(0).getSuit()!= CardSuit.Joker 
-			|| list.get(1).getSuit()!= CardSuit.Joker){
+		this(list, RankHistogram.of(list));
+	}
+	
+	//使用已经计算好的点数直方图创建对象
+	Rocket(ArrayList<Card> list, long histogram){
+		if (list==null || !matches(histogram, list.size())){
 			throw new IllegalArgumentException("this type must be 2 cards in joker suit!");
 		}
 		//保护性复制
@@ -13,13 +17,13 @@ public final class Rocket extends CardType implements BombType{
 	}
 	
 	/**
-	 * 该方法将总是返回1。
+	 * 根据点数直方图判断卡牌能否组成王炸。
 	 */
-	@Override
-	public int compareTo(CardType another){
-		return 1;
+	static boolean matches(long histogram, int size){
+		return size==2 && RankHistogram.count(histogram, Card.CARD_VALUE_JOKER_S)==1
+				&& RankHistogram.count(histogram, Card.CARD_VALUE_JOKER_B)==1;
 	}
-
+	
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
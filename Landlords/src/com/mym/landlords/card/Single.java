@@ -22,24 +22,6 @@ public final class Single extends CardType implements NonBombType {
 		cardList = new ArrayList<>(cards);
 	}
 
-	/**
-	 * 实现单张牌牌型大小比对。
-	 * @return 如果参数是炸弹，则始终返回负数；否则返回按点数的比较结果。
-	 * @see com.mym.landlords.card.CardType#compareTo(com.mym.landlords.card.CardType)
-	 */
-	@Override
-	public int compareTo(CardType another){
-		int superCompare = super.compareTo(another);
-		if (superCompare!=UNDEFINED_COMPARE){
-			return superCompare;
-		}
-		if (!(another instanceof Single)){
-			throw new ClassCastException("compare to wrong object.");
-		}
-		return cardList.get(0).compareTo(
-				((Single) another).cardList.get(0));
-	}
-
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
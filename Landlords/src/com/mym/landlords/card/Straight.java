@@ -1,7 +1,6 @@
 package com.mym.landlords.card;
 
 import java.util.ArrayList;
-import java.util.Iterator;
 
 /**
  * 顺子牌型。
@@ -14,47 +13,33 @@ public class Straight extends CardType implements NonBombType{
 	public final int length;
 	
 	public Straight(ArrayList<Card> list){
-		if (list == null || (!canMakeupStraight(list))) {
+		this(list, RankHistogram.of(list));
+	}
+	
+	//使用已经计算好的点数直方图创建对象
+	Straight(ArrayList<Card> list, long histogram){
+		if (list == null || (!matches(histogram, list.size()))) {
 			throw new IllegalArgumentException(
 					"A straight must be made up of more than 5 continuous value."
-							+ list.toString());
+							+ list);
 		}
 		//保护性复制
 		this.cardList = new ArrayList<>(list);
-		this.startValue = list.get(0).getValue();
+		this.startValue = RankHistogram.minValue(RankHistogram.valuesWithCount(histogram, 1));
 		this.length = list.size();
 	}
 	
-	private final boolean canMakeupStraight(ArrayList<Card> list){
-		int listSize = list.size();
-		if (listSize < 5){
+	/**
+	 * 根据点数直方图判断卡牌能否组成顺子：每个点数恰好一张，点数连续，长度不小于5且不包含2和王。
+	 */
+	static boolean matches(long histogram, int size){
+		if (size < 5){
 			return false;
 		}
-		boolean res = true;
-		Iterator<Card> iterator = list.iterator();
-		//设定起始数值。由于list的长度在前面已经做过检验，因此这里的第一次 next操作一定是安全的。 
-		int lastValue = iterator.next().getValue(); 
-		while (iterator.hasNext()){
-			int currentValue = iterator.next().getValue();
-			if ((currentValue != lastValue + 1)			//检查每张牌的连续性
-					|| (currentValue >= Card.CARD_VALUE_2)) { //2和王不能被连
-				res = false;
-				break;
-			}
-			lastValue = currentValue;//更新迭代比较变量
-		}
-		return res;
+		int values = RankHistogram.valuesWithCount(histogram, 1);
+		return Integer.bitCount(values)==size && RankHistogram.isChain(values, 5);
 	}
 	
-	@Override
-	public int compareTo(CardType another){
-		int superCompare = super.compareTo(another);
-		if (superCompare != UNDEFINED_COMPARE){
-			return superCompare;
-		}
-		return Integer.valueOf(startValue).compareTo(
-				((Straight) another).startValue);
-	}
 //	
 //	@Override
 //	protected boolean isSameConcreteSubclass(CardType another) {
@@ -22,10 +22,49 @@ public final class Three extends CardType implements NonBombType{
 	 * @param list 要执行的卡牌列表；长度必须大于3.
 	 */
 	public Three(ArrayList<Card> list) {
-		try {
-			divideListAndCreate(list);
-		} catch (IllegalArgumentException e) {
-			throw new IllegalArgumentException("wrong cards:" + list.toString());
+		this(list, RankHistogram.of(list));
+	}
+	
+	//使用已经计算好的点数直方图创建对象
+	Three(ArrayList<Card> list, long histogram) {
+		if (list == null || !matches(histogram, list.size())) {
+			throw new IllegalArgumentException("wrong cards:" + list);
+		}
+		int bodyValue = RankHistogram.minValue(RankHistogram
+				.valuesWithExactCount(histogram, 3));
+		bodyList = new ArrayList<>(3);
+		ArrayList<Card> attachment = new ArrayList<>(2);
+		for (Card card : list) {
+			if (card.getValue() == bodyValue) {
+				bodyList.add(card);
+			} else {
+				attachment.add(card);
+			}
+		}
+		//保护性复制
+		cardList = new ArrayList<>(list);
+		if (attachment.size() == 1) {
+			attachType = new Single(attachment);
+		} else if (attachment.size() == 2) {
+			attachType = new Pair(attachment);
+		}
+	}
+	
+	/**
+	 * 根据点数直方图判断卡牌能否组成三条：三张相同点数的牌，可以再带一张单牌或一个对子。
+	 */
+	static boolean matches(long histogram, int size) {
+		if (Integer.bitCount(RankHistogram.valuesWithExactCount(histogram, 3)) != 1) {
+			return false;
+		}
+		switch (size) {
+		case 3:
+		case 4:
+			return true;
+		case 5:
+			return RankHistogram.valuesWithExactCount(histogram, 2) != 0;
+		default:
+			return false;
 		}
 	}
 	
@@ -36,7 +75,7 @@ public final class Three extends CardType implements NonBombType{
 	 */
 	public Three(ArrayList<Card> bodyList, ArrayList<Card> attachment){
 		if (bodyList!=null && bodyList.size()==3){
-			bodyList = new ArrayList<>(bodyList);
+			this.bodyList = new ArrayList<>(bodyList);
 			cardList = new ArrayList<>(bodyList);
 			if (attachment!=null){
 				if (attachment.size()==1){
@@ -53,74 +92,6 @@ public final class Three extends CardType implements NonBombType{
 				+ bodyList + ", attachment=" + attachment);
 	}
 	
-	/**
-	 * 尝试识别三条和它所带的卡牌类型。
-	 * @param list
-	 * @throws IllegalArgumentException
-	 */
-	private void divideListAndCreate(ArrayList<Card> list) throws IllegalArgumentException{
-		if (list.size()<3 || list.size()>5){
-			throw new IllegalArgumentException();
-		}
-		int cardValue=0, attachValue=0;
-		ArrayList<Card> tempCardList = new ArrayList<>();
-		ArrayList<Card> tempAttachList= new ArrayList<>();
-		for (Card card: list){
-			int currentValue = card.getValue();
-			if (cardValue==0 || currentValue==cardValue){
-				cardValue = currentValue;
-				tempCardList.add(card);
-			}
-			else if (attachValue==0 || currentValue==attachValue) {
-				attachValue=currentValue;
-				tempAttachList.add(card);
-			}
-			//出现了第三种值
-			else {
-				throw new IllegalArgumentException();
-			}
-		}
-		//检查元素的个数
-		int tmpListSize = tempCardList.size();
-		int tmpAttachSize = tempAttachList.size();
-		if ( (tmpListSize==3 && (tmpAttachSize<3)) ){
-			bodyList = tempCardList;
-		}
-		else if (tmpAttachSize==3 && (tmpListSize<3)){
-			bodyList = tempAttachList;
-			tempAttachList = tempCardList;
-			tmpAttachSize = tmpListSize;
-		}
-		else{
-			throw new IllegalArgumentException();
-		}
-		//保护性复制
-		cardList = new ArrayList<>(list);
-		if (tmpListSize == 1) {
-			this.attachType = new Single(tempCardList);
-		} else if (tmpAttachSize == 2) {
-			this.attachType = new Pair(tempCardList);
-		}
-	}
-	
-	/**
-	 * 实现三张牌型大小比对。
-	 * @return 如果参数是炸弹，则始终返回负数；否则返回按点数的比较结果。
-	 * @see com.mym.landlords.card.CardType#compareTo(com.mym.landlords.card.CardType)
-	 */
-	@Override
-	public int compareTo(CardType another){
-		int superCompare = super.compareTo(another);
-		if (superCompare != UNDEFINED_COMPARE){
-			return superCompare;
-		}
-		if (!(another instanceof Three)) {
-			throw new ClassCastException("compare to wrong type:"
-					+ another.getClass().getSimpleName());
-		}
-		return bodyList.get(0).compareTo(((Three)another).bodyList.get(0));
-	}
-
 	@Override
 	public String toString() {
 		StringBuilder builder = new StringBuilder();
@@ -141,10 +112,10 @@ public final class Three extends CardType implements NonBombType{
 		return bodyList;
 	}
 
-	//设置这个三条所带的牌。
+	//设置这个三条所带的牌，参数为null表示不带牌。
 	public void setAttachType(CardType attachType) {
 		CardType beforeType = this.attachType;
-		if (attachType!=null && beforeType!=null){
+		if (beforeType!=null){
 			cardList.removeAll(beforeType.getCardList());
 		}
 		this.attachType = attachType;
@@ -152,6 +123,7 @@ public final class Three extends CardType implements NonBombType{
 			cardList.addAll(attachType.getCardList());
 			Collections.sort(cardList, Card.COMPARATOR_WITH_SUIT);
 		}
+		invalidateMoveCode();
 	}
 	
 }
\ No newline at end of file
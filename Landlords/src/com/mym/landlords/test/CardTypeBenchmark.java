@@ -0,0 +1,382 @@
+package com.mym.landlords.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Random;
+
+import com.mym.landlords.card.Airplane;
+import com.mym.landlords.card.Bomb;
+import com.mym.landlords.card.Card;
+import com.mym.landlords.card.CardFactory;
+import com.mym.landlords.card.CardSuit;
+import com.mym.landlords.card.CardType;
+import com.mym.landlords.card.DoubleStraight;
+import com.mym.landlords.card.Pair;
+import com.mym.landlords.card.Rocket;
+import com.mym.landlords.card.Single;
+import com.mym.landlords.card.Straight;
+import com.mym.landlords.card.Three;
+
+/**
+ * 牌型识别的微基准测试，比较 {@link CardType#createObjectFromCards(ArrayList)}与原先基于反射和异常的实现。
+ * <p>
+ * 在桌面JVM上直接运行 main 方法即可，可选参数为测量的轮数。样本模拟玩家在排好序的手牌中连续点选若干张牌，
+ * 既包含合法牌型也包含大量不合法的组合。运行前会先核对两种实现对每个样本的识别结果是否一致，
+ * 原先的实现保留为各构造器中检查的冻结副本，其已知错误造成的差异单独计数。
+ * </p>
+ */
+public class CardTypeBenchmark {
+
+	private static final int SAMPLE_COUNT = 4096;
+
+	public static void main(String[] args) {
+		int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+		ArrayList<ArrayList<Card>> samples = createSamples(new Random(20150422L));
+		int mismatch = 0;
+		int legacyDefects = 0;
+		for (ArrayList<Card> sample : samples) {
+			Class<? extends CardType> legacy = legacyCreateObjectFromCards(sample);
+			CardType current = CardType.createObjectFromCards(sample);
+			Class<?> currentClass = current == null ? null : current.getClass();
+			if (legacy == currentClass) {
+				continue;
+			}
+			if (isLegacyDefect(sample, legacy, currentClass)) {
+				legacyDefects++;
+			} else {
+				mismatch++;
+				System.out.println("mismatch: " + sample + ", legacy=" + legacy
+						+ ", current=" + currentClass);
+			}
+		}
+		//预热，使两种实现都经过JIT编译
+		for (int i = 0; i < 3; i++) {
+			runLegacy(samples, rounds / 10 + 1);
+			runCurrent(samples, rounds / 10 + 1);
+		}
+		long start = System.nanoTime();
+		int legacyHits = runLegacy(samples, rounds);
+		long legacyNanos = System.nanoTime() - start;
+		start = System.nanoTime();
+		int currentHits = runCurrent(samples, rounds);
+		long currentNanos = System.nanoTime() - start;
+
+		long operations = (long) rounds * samples.size();
+		System.out.println("samples=" + samples.size() + ", rounds=" + rounds
+				+ ", mismatch=" + mismatch + ", legacy defects=" + legacyDefects);
+		System.out.println(String.format("legacy : %8.1f ns/op (%d types)",
+				(double) legacyNanos / operations, legacyHits));
+		System.out.println(String.format("current: %8.1f ns/op (%d types)",
+				(double) currentNanos / operations, currentHits));
+		System.out.println(String.format("speed-up: %.1fx", (double) legacyNanos
+				/ currentNanos));
+	}
+
+	/*
+	 * 原先的实现有两个已知的错误，这样的差异不算作不一致：
+	 * 三条在前的三带对被拒绝；飞机不检查三条是否连续，也不排除2。
+	 */
+	private static boolean isLegacyDefect(ArrayList<Card> sample, Class<?> legacy,
+			Class<?> current) {
+		if (legacy == null && current == Three.class) {
+			return sample.size() == 5 && sample.get(0).isSameValueAs(sample.get(2));
+		}
+		if (legacy == Airplane.class && current == null) {
+			int[] counts = new int[Card.CARD_VALUE_JOKER_B + 1];
+			for (Card card : sample) {
+				counts[card.getValue()]++;
+			}
+			int last = 0;
+			for (int value = 0; value < counts.length; value++) {
+				if (counts[value] == 3) {
+					if (value >= Card.CARD_VALUE_2 || (last != 0 && value != last + 1)) {
+						return true;
+					}
+					last = value;
+				}
+			}
+		}
+		return false;
+	}
+
+	//模拟玩家点选：从一手排好序的牌中选取连续的1~10张。
+	private static ArrayList<ArrayList<Card>> createSamples(Random random) {
+		ArrayList<ArrayList<Card>> samples = new ArrayList<>(SAMPLE_COUNT);
+		ArrayList<Card> pack = CardFactory.newCardPack();
+		while (samples.size() < SAMPLE_COUNT) {
+			Collections.shuffle(pack, random);
+			ArrayList<Card> hand = new ArrayList<>(pack.subList(0, 20));
+			Collections.sort(hand, Card.COMPARATOR_WITH_SUIT);
+			int length = 1 + random.nextInt(10);
+			int from = random.nextInt(hand.size() - length + 1);
+			samples.add(new ArrayList<>(hand.subList(from, from + length)));
+		}
+		return samples;
+	}
+
+	private static int runCurrent(ArrayList<ArrayList<Card>> samples, int rounds) {
+		int hits = 0;
+		for (int r = 0; r < rounds; r++) {
+			for (int i = 0, size = samples.size(); i < size; i++) {
+				if (CardType.createObjectFromCards(samples.get(i)) != null) {
+					hits++;
+				}
+			}
+		}
+		return hits;
+	}
+
+	private static int runLegacy(ArrayList<ArrayList<Card>> samples, int rounds) {
+		int hits = 0;
+		for (int r = 0; r < rounds; r++) {
+			for (int i = 0, size = samples.size(); i < size; i++) {
+				if (legacyCreateObjectFromCards(samples.get(i)) != null) {
+					hits++;
+				}
+			}
+		}
+		return hits;
+	}
+
+	//原先的实现：按张数依次尝试各个子类的构造器，构造失败（抛出异常）即视为不是该牌型。
+	private static Class<? extends CardType> legacyCreateObjectFromCards(ArrayList<Card> cards) {
+		Class<? extends CardType> instance = null;
+		int cardCount;
+		if (cards == null || ((cardCount = cards.size()) == 0)) {
+			return null;
+		}
+		if (cardCount == 1) {
+			instance = legacyCreateObject(cards, Single.class);
+		} else if (cardCount == 2) {
+			if ((instance = legacyCreateObject(cards, Pair.class)) == null) {
+				instance = legacyCreateObject(cards, Rocket.class);
+			}
+		} else if (cardCount == 3) {
+			instance = legacyCreateObject(cards, Three.class);
+		} else if (cardCount == 4) {
+			instance = legacyCreateObject(cards, Bomb.class);
+			if (instance == null) {
+				instance = legacyCreateObject(cards, Three.class);
+			}
+		} else if (cardCount == 5) {
+			instance = legacyCreateObject(cards, Straight.class);
+			if (instance == null) {
+				instance = legacyCreateObject(cards, Three.class);
+			}
+		} else {
+			if (cardCount % 2 == 0) {
+				instance = legacyCreateObject(cards, DoubleStraight.class);
+			}
+			if (instance == null) {
+				instance = legacyCreateObject(cards, Straight.class);
+			}
+			if (instance == null) {
+				instance = legacyCreateObject(cards, Airplane.class);
+			}
+		}
+		return instance;
+	}
+
+	/*
+	 * 以下是原先各构造器中检查的冻结副本，与当前的牌型类无关，因此核对结果是真正的前后对比。
+	 * 原先通过反射调用构造器，这里改为直接调用，并去掉了 Airplane 失败时的 printStackTrace，
+	 * 所以测得的加速比只是下限。
+	 */
+	private static Class<? extends CardType> legacyCreateObject(ArrayList<Card> cards,
+			Class<? extends CardType> clz) {
+		try {
+			if (clz == Single.class) {
+				legacySingle(cards);
+			} else if (clz == Pair.class) {
+				legacyPair(cards);
+			} else if (clz == Rocket.class) {
+				legacyRocket(cards);
+			} else if (clz == Three.class) {
+				legacyThree(cards);
+			} else if (clz == Bomb.class) {
+				legacyBomb(cards);
+			} else if (clz == Straight.class) {
+				legacyStraight(cards);
+			} else if (clz == DoubleStraight.class) {
+				legacyDoubleStraight(cards);
+			} else {
+				legacyAirplane(cards);
+			}
+			return clz;
+		} catch (IllegalArgumentException e) {
+			//ignore
+		}
+		return null;
+	}
+
+	private static void legacySingle(ArrayList<Card> cards) {
+		if (cards == null || cards.size() > 1) {
+			throw new IllegalArgumentException("a single type cannot contain more than 1 card.");
+		}
+		new ArrayList<>(cards);
+	}
+
+	private static void legacyPair(ArrayList<Card> list) {
+		if (list == null || list.size() != 2
+				|| (!(list.get(0).isSameValueAs(list.get(1))))) {
+			throw new IllegalArgumentException("A pair must be 2 same cards!");
+		}
+		new ArrayList<>(list);
+	}
+
+	private static void legacyRocket(ArrayList<Card> list) {
+		if (list == null || list.size() != 2 || list.get(0).getSuit() != CardSuit.Joker
+				|| list.get(1).getSuit() != CardSuit.Joker) {
+			throw new IllegalArgumentException("this type must be 2 cards in joker suit!");
+		}
+		new ArrayList<>(list);
+	}
+
+	private static void legacyBomb(ArrayList<Card> list) {
+		if (list == null || list.size() != 4 || (!list.get(0).isSameValueAs(list.get(1)))
+				|| (!list.get(1).isSameValueAs(list.get(2)))
+				|| (!list.get(2).isSameValueAs(list.get(3)))) {
+			throw new IllegalArgumentException("this type must be 4 same cards!" + list.toString());
+		}
+		new ArrayList<>(list);
+	}
+
+	//原先的 Three.divideListAndCreate，包括三条在前、对子在后时用三条去构造对子而失败的问题
+	private static void legacyThree(ArrayList<Card> list) {
+		try {
+			if (list.size() < 3 || list.size() > 5) {
+				throw new IllegalArgumentException();
+			}
+			int cardValue = 0, attachValue = 0;
+			ArrayList<Card> tempCardList = new ArrayList<>();
+			ArrayList<Card> tempAttachList = new ArrayList<>();
+			for (Card card : list) {
+				int currentValue = card.getValue();
+				if (cardValue == 0 || currentValue == cardValue) {
+					cardValue = currentValue;
+					tempCardList.add(card);
+				} else if (attachValue == 0 || currentValue == attachValue) {
+					attachValue = currentValue;
+					tempAttachList.add(card);
+				}
+				//出现了第三种值
+				else {
+					throw new IllegalArgumentException();
+				}
+			}
+			int tmpListSize = tempCardList.size();
+			int tmpAttachSize = tempAttachList.size();
+			if ((tmpListSize == 3 && (tmpAttachSize < 3))) {
+				//三条在前
+			} else if (tmpAttachSize == 3 && (tmpListSize < 3)) {
+				tmpAttachSize = tmpListSize;
+			} else {
+				throw new IllegalArgumentException();
+			}
+			new ArrayList<>(list);
+			if (tmpListSize == 1) {
+				legacySingle(tempCardList);
+			} else if (tmpAttachSize == 2) {
+				legacyPair(tempCardList);
+			}
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("wrong cards:" + list.toString());
+		}
+	}
+
+	private static void legacyStraight(ArrayList<Card> list) {
+		boolean res = list.size() >= 5;
+		if (res) {
+			Iterator<Card> iterator = list.iterator();
+			int lastValue = iterator.next().getValue();
+			while (iterator.hasNext()) {
+				int currentValue = iterator.next().getValue();
+				if ((currentValue != lastValue + 1) || (currentValue >= Card.CARD_VALUE_2)) {
+					res = false;
+					break;
+				}
+				lastValue = currentValue;
+			}
+		}
+		if (!res) {
+			throw new IllegalArgumentException(
+					"A straight must be made up of more than 5 continuous value."
+							+ list.toString());
+		}
+		new ArrayList<>(list);
+	}
+
+	//原先的 DoubleStraight.dividePairs，原实现就地排序，这里对副本排序以免改动样本
+	private static void legacyDoubleStraight(ArrayList<Card> cards) {
+		int listSize = cards.size();
+		int pairs = 0;
+		if (listSize >= 6 && listSize % 2 == 0) {
+			ArrayList<Card> list = new ArrayList<>(cards);
+			Collections.sort(list, Card.COMPARATOR_WITH_SUIT);
+			for (int i = 0, lastValue = 0; i < listSize; i += 2) {
+				Card card1 = list.get(i);
+				Card card2 = list.get(i + 1);
+				if (card1.isSameValueAs(card2)
+						&& card1.getValue() < Card.CARD_VALUE_2
+						&& (lastValue == 0 || card1.getValue() == lastValue + 1)) {
+					lastValue = card1.getValue();
+					legacyPair(new ArrayList<>(Arrays.asList(card1, card2)));
+					pairs++;
+				} else {
+					break;
+				}
+			}
+		}
+		if (pairs != listSize / 2 || listSize < 6) {
+			throw new IllegalArgumentException("cannot make up double straight:" + cards.toString());
+		}
+		new ArrayList<>(cards);
+	}
+
+	//原先的 Airplane.getThreeLists：不检查三条是否连续，也不排除2
+	private static void legacyAirplane(ArrayList<Card> list) {
+		HashMap<Integer, Integer> cardCountMap = new HashMap<>();
+		HashMap<Integer, ArrayList<Card>> cardMap = new HashMap<>();
+		int three = 0, two = 0, one = 0;
+		for (Card card : list) {
+			int value = card.getValue();
+			Integer already = cardCountMap.get(value);
+			if (already == null) {
+				already = 0;
+			}
+			already++;
+			if (already > 3) {
+				throw new IllegalArgumentException("too many same cards.");
+			}
+			ArrayList<Card> sameCards = cardMap.get(value);
+			if (sameCards == null) {
+				sameCards = new ArrayList<>();
+			}
+			sameCards.add(card);
+			cardMap.put(value, sameCards);
+			cardCountMap.put(value, already);
+		}
+		for (ArrayList<Card> cards : cardMap.values()) {
+			switch (cards.size()) {
+				case 3: three++; break;
+				case 2: two++; break;
+				case 1: one++; break;
+			}
+		}
+		if ((one != 0 && two != 0)) {
+			throw new IllegalArgumentException("mixed attachment, one=" + one + ",two=" + two);
+		}
+		if ((one != 0 && three != one) || (two != 0 && three != two)) {
+			throw new IllegalArgumentException("body and attachment not match."
+					+ "one=" + one + ",two=" + two + ",three=" + three);
+		}
+		for (ArrayList<Card> cards : cardMap.values()) {
+			if (cards.size() == 2) {
+				legacyPair(cards);
+			}
+		}
+	}
+}
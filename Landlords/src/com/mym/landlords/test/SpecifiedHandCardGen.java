@@ -12,8 +12,11 @@ public class SpecifiedHandCardGen {
 			throw new IllegalArgumentException("length :"+cardsValue.length);
 		}
 		ArrayList<Card> cards = new ArrayList<>();
+		//卡牌是唯一的，相同点数的牌依次使用不同的花色
+		int[] used = new int[Card.CARD_VALUE_JOKER_B + 1];
+		CardSuit[] suits = CardSuit.values();
 		for (int value:cardsValue){
-			cards.add(new Card(value>=Card.CARD_VALUE_JOKER_S?CardSuit.Joker:CardSuit.Spade, value));
+			cards.add(Card.valueOf(value>=Card.CARD_VALUE_JOKER_S?CardSuit.Joker:suits[used[value]++], value));
 		}
 		return cards;
 	}
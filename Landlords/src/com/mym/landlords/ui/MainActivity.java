@@ -1,19 +1,23 @@
 package com.mym.landlords.ui;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.List;
 import java.util.Random;
 
+import com.mym.landlords.ai.BiddingEvaluator;
+import com.mym.landlords.ai.Difficulty;
 import com.mym.landlords.ai.Game;
+import com.mym.landlords.ai.GameEngine;
 import com.mym.landlords.ai.TipRobot;
 import com.mym.landlords.ai.Game.Status;
+import com.mym.landlords.ai.PimcStrategy;
+import com.mym.landlords.ai.PlayStrategy;
 import com.mym.landlords.ai.Player;
 import com.mym.landlords.card.Airplane;
 import com.mym.landlords.card.Bomb;
 import com.mym.landlords.card.BombType;
 import com.mym.landlords.card.Card;
-import com.mym.landlords.card.CardFactory;
+import com.mym.landlords.card.CardSet;
 import com.mym.landlords.card.CardType;
 import com.mym.landlords.card.DoubleStraight;
 import com.mym.landlords.card.Pair;
@@ -31,6 +35,7 @@ import com.mym.landlords.widget.BitmapButton.onClickListener;
 import com.mym.landlords.widget.GameScreen;
 import com.mym.landlords.widget.GameView;
 import com.mym.landlords.widget.MappedTouchEvent;
+import com.mym.util.GameLog;
 import com.mym.util.PollingThread;
 
 import android.app.Activity;
@@ -52,6 +57,7 @@ import android.view.WindowManager;
 public class MainActivity extends Activity implements GameScreen{
 	
 	private static final String LOG_TAG = "MainActivity";
+	private static final Difficulty DEFAULT_DIFFICULTY = Difficulty.Normal;
 	private GameGraphics graphics;
 	private GameView gameView;
 	
@@ -62,18 +68,17 @@ public class MainActivity extends Activity implements GameScreen{
 	private Player playerHuman;		//中路，人类玩家
 	private Player playerRight;		//右路，AI
 	
-	private ArrayList<Card> cardPack;			//总的卡牌包
-	private List<Card> landlordCards;			//地主底牌
 	private Game currentGame;					//当前游戏记录
+	private GameEngine engine;					//牌局流程
+	private BiddingEvaluator biddingEvaluator;	//AI叫牌时使用的评估器
+	private PlayStrategy playStrategy;			//两个AI共用的出牌策略，AI不会同时出牌
 	
     private Rect cardsTouchZone = new Rect();	//用于判断点击事件是否在玩家手牌区域内
     private float cardOffset;					//用于判断玩家点选的是哪张卡牌
     private GameLogicThread logicThread;
-    private boolean isWaitingForUser;			//当前逻辑线程是否被玩家阻塞
     private boolean pickedTypeNotMatch;			//标记当前人类玩家选择的卡牌不符合规则
     private boolean humanNoBiggerCards;			//标记当前人类玩家没有大于上家的卡牌
-    
-    private ArrayList<Player> winners = new ArrayList<>();;			//获胜的玩家
+    private volatile long pickedCards;			//人类玩家当前选中的卡牌集合，参见 CardSet
 
     private ArrayList<BitmapButton> btnCallLandlords;	//叫地主系列按钮
     private ArrayList<BitmapButton> btnGiveCards;		//出牌系列按钮
@@ -81,191 +86,164 @@ public class MainActivity extends Activity implements GameScreen{
     private Handler handler = new Handler();
     
     /**
-     * 逻辑控制线程。
+     * 逻辑控制线程，反复驱动 {@link GameEngine}执行下一步。
      * @author Muyangmin
      * @create 2015-3-22
      */
     private class GameLogicThread extends PollingThread{
         private static final long LOGIC_THREAD_INTERVAL = 100;	//逻辑线程的间隔时间
-        private static final long SHOW_AICARDS_DURATION = 1500;	//展示AI手牌的时间
-    	private Player currentPlayer = null;	//记录当前已经进行的循环值
-    	private Player startPlayer;				//当前循环第一次操作的玩家
-    	private Player tempLandlord = null;		//记录叫地主分数最高的玩家
-    	private CardType currentType;			//当前正在打的牌型
-        private ArrayList<CardType> currentTips;	//当前提示的出牌列表
-    	private TipBtnListener tipBtnListener = new TipBtnListener();
+        private static final long AI_ACTION_DELAY = 1000;		//AI操作前的暂停时间
+        private volatile long lastActionTime;					//最近一次发牌、叫地主或出牌的时间
 
     	public GameLogicThread() {
 			super("GameLogicThread", LOGIC_THREAD_INTERVAL);
 		}
     	
+    	/**
+    	 * 记录一次操作的时间，操作可能来自AI，也可能来自主线程中的人类玩家。
+    	 */
+    	public void markAction(){
+    		lastActionTime = System.currentTimeMillis();
+    	}
+    	
     	@Override
     	protected void action() {
-    		switch (currentGame.status) {
-			case Preparing:
-				shuffleAndDealCards();
-				Log.d(LOG_TAG, playerLeft.getPlayerName()+" cards:"+playerLeft.getHandCards().toString());
-				Log.d(LOG_TAG, playerHuman.getPlayerName()+" cards:"+playerHuman.getHandCards().toString());
-				Log.d(LOG_TAG, playerRight.getPlayerName()+" cards:"+playerRight.getHandCards().toString());
-				Log.d(LOG_TAG, "landlord cards:"+landlordCards.toString());
-				currentGame.status = Status.CallingLandlord;
-				break;
-			case CallingLandlord:
-				callLandlord();
-				break;
-			case Playing:
-				playing();
-				break;
-			case ShowingAICards:
-				break;
-			case Gameover:
-				break;
-			default:
-				break;
-			}
+    		//如果接下来进行操作的是AI，则距离上一次操作（包括人类玩家的操作）至少等待一段时间再操作（主要是避免音效重叠）。
+    		Player currentPlayer = engine.getCurrentPlayer();
+    		if (currentPlayer!=null && currentPlayer.isAiPlayer()
+    				&& System.currentTimeMillis() - lastActionTime < AI_ACTION_DELAY){
+    			return ;
+    		}
+    		engine.step();
     	}
+    }
+    
+    /**
+     * 把牌局事件转换为音效、动画和按钮。回调可能在逻辑线程，也可能在处理人类玩家操作的主线程。
+     */
+    private class GameEventListener implements GameEngine.Listener{
+        private static final long SHOW_AICARDS_DURATION = 1500;	//展示AI手牌的时间
+        private ArrayList<CardType> currentTips;	//当前提示的出牌列表
+    	private TipBtnListener tipBtnListener = new TipBtnListener();
     	
-		private void performShowAiCards() {
-			currentGame.status = Status.ShowingAICards;
-			final boolean humanWonGame = winners.contains(playerHuman);
-			// 播放结束音效
-			soundPool.playSound(humanWonGame ? assets.soundPlayWin
-					: assets.soundPlayLose);
-			//等待一段时间后进入GameOver状态
-			handler.postDelayed(new Runnable() {
-
-				@Override
-				public void run() {
-					// 重置各种变量
-					currentPlayer = startPlayer = tempLandlord =  null;
-					pickedTypeNotMatch = humanNoBiggerCards = isWaitingForUser = false;
-					currentType = null;
-					playerHuman.reset();
-					playerLeft.reset();
-					playerRight.reset();
-					landlordCards.clear();
-					handler.post(new Runnable() {
-
-						@Override
-						public void run() {
-							currentGame.status = Status.Gameover;
-							showGameOverDialog(humanWonGame);
-						}
-					});
-				}
-			}, SHOW_AICARDS_DURATION);
-		}
-
-    	private void playing(){
-    		if (isWaitingForUser){
-//    			Log.v(LOG_TAG, "waiting for user...");
-    			return ;
+    	@Override
+    	public void onStatusChanged(Status status) {
+    		if (status == Status.Playing){
+    			handler.post(new Runnable() {
+					
+					@Override
+					public void run() {
+						graphics.setAlpha(playerHuman, 0);
+						graphics.setAlpha(playerLeft, 0);
+						graphics.setAlpha(playerRight, 0);
+					}
+				});
     		}
-    		//检查游戏是否应该结束
-    		Player zeroCardPlayer = getWinnerPlayer();
-    		if (zeroCardPlayer!=null){
-    			winners.clear(); 
-				winners.add(zeroCardPlayer);
-				//如果率先达到0手牌的玩家不是地主，则另一个农民同时获胜
-    			if (!zeroCardPlayer.isLandlord()){
-					winners.add(zeroCardPlayer.getNextPlayer().isLandlord() 
-							? zeroCardPlayer.getPriorPlayer() 
-									: zeroCardPlayer.getNextPlayer());
-    			}
-    			Log.i(LOG_TAG, "winner:"+winners);
-    			performShowAiCards();
+    	}
+    	
+    	@Override
+    	public void onCardsDealt(List<Card> landlordCards) {
+    		logicThread.markAction();
+    		pickedCards = CardSet.EMPTY;
+			Log.d(LOG_TAG, playerLeft.getPlayerName()+" cards:"+playerLeft.getHandCards().toString());
+			Log.d(LOG_TAG, playerHuman.getPlayerName()+" cards:"+playerHuman.getHandCards().toString());
+			Log.d(LOG_TAG, playerRight.getPlayerName()+" cards:"+playerRight.getHandCards().toString());
+			Log.d(LOG_TAG, "landlord cards:"+landlordCards.toString());
+    	}
+    	
+    	@Override
+    	public void onBidding(Player player, int minScore) {
+    		if (!player.isAiPlayer()){
+    			setActiveCallButtons(minScore);
+    		}
+    	}
+    	
+    	@Override
+    	public void onCalled(Player player, int score) {
+    		logicThread.markAction();
+    		performCallLandlord(player, score);
+    	}
+    	
+    	@Override
+    	public void onLandlord(Player landlord, List<Card> landlordCards) {
+			//人类玩家成为地主时，选中加入手中的底牌以示提醒
+			if (landlord==playerHuman){
+				pickedCards = CardSet.of(landlordCards);
+			}
+			Log.d(LOG_TAG, "Landlord:"+landlord.getHandCards().toString());
+    	}
+    	
+    	@Override
+    	public void onTurn(final Player player, CardType lastType) {
+    		if (player.isAiPlayer()){
     			return ;
     		}
-    		
-    		//如果已经在出牌中
-    		if (startPlayer!=null){
-    			CardType tempCardType;
-    			//如果当前的玩家是AI，则执行跟牌策略
-    			if (currentPlayer.isAiPlayer()){
-    				boolean isFirst = (currentType==null) ;
-    				tempCardType = currentPlayer.followCards(currentType);
-    				currentPlayer.giveOutCards(tempCardType);
-    				performGiveCard(tempCardType, isFirst);
-    				//初始化AI信息的画笔Alpha
-    				if (currentPlayer.getLastCards()==null){
-    					handler.post(new Runnable() {
-							
-							@Override
-							public void run() {
-		    					graphics.setAlpha(currentPlayer, 255);
-							}
-						});
-    				}
-    				//检查游戏的结束
-    				if (currentPlayer.getHandCards().size()==0){
-    					return ;
-    				}
-    			}
-    			//否则直接取出人类玩家的卡牌类型。
-    			else{
-					tempCardType = currentPlayer.getLastCards();
-					synchronized (activeButtons) {
-						activeButtons.removeAll(btnGiveCards);
-					}
-    			}//end of current Player
-				if (tempCardType!=null){
-					currentType = tempCardType;
-				}
-    			switchToNextPlayer();
-    			if (currentPlayer.getPriorPlayer().getLastCards()==null
-    					&& currentPlayer.getNextPlayer().getLastCards()==null){
-    				Log.d(LOG_TAG, "no bigger cards, exec next round.");
-    				//重置当前的卡牌。
-    				currentType = null;
-    			}
-    			if (!currentPlayer.isAiPlayer()){
-					isWaitingForUser = true;
-					currentTips = TipRobot.getTips(currentType, currentPlayer.getHandCards());
-					if (currentTips==null || currentTips.isEmpty()){
-						Log.d(LOG_TAG, "human has no bigger cards.");
-						//使用post方式在主线程进行状态的修改。
-						handler.post(new Runnable() {
-							
-							@Override
-							public void run() {
-								graphics.setAlpha(currentPlayer, 255);
-								humanNoBiggerCards = true;
-								currentPlayer.giveOutCards(null);
-								performGiveCard(null, false);
-								isWaitingForUser = false;
-							}
-						});
-					}
-					else{
-						//继续等待用户指令
-						humanNoBiggerCards = false;
-						tipBtnListener.resetCurrentTips();
-						setActiveGiveCardButtons(currentType==null);
+			currentTips = TipRobot.getTips(lastType, player.getHandCards());
+			if (currentTips==null || currentTips.isEmpty()){
+				Log.d(LOG_TAG, "human has no bigger cards.");
+				//使用post方式在主线程进行状态的修改。
+				handler.post(new Runnable() {
+					
+					@Override
+					public void run() {
+						graphics.setAlpha(player, 255);
+						humanNoBiggerCards = true;
+						engine.submitPlay(null);
 					}
+				});
+			}
+			else{
+				//继续等待用户指令
+				humanNoBiggerCards = false;
+				tipBtnListener.resetCurrentTips();
+				setActiveGiveCardButtons(lastType==null);
+			}
+    	}
+    	
+    	@Override
+    	public void onPlayed(final Player player, CardType type, boolean isFirst) {
+    		logicThread.markAction();
+    		performGiveCard(type, isFirst);
+    		if (!player.isAiPlayer()){
+				synchronized (activeButtons) {
+					activeButtons.removeAll(btnGiveCards);
 				}
     		}
-    		//如果所有人都还未出过牌
-    		else{
-    			startPlayer = currentGame.landlordPlayer;
-    			currentPlayer = startPlayer;
+    		//初始化AI信息的画笔Alpha
+    		else if (type==null){
     			handler.post(new Runnable() {
 					
 					@Override
 					public void run() {
-						graphics.setAlpha(playerHuman, 0);
-						graphics.setAlpha(playerLeft, 0);
-						graphics.setAlpha(playerRight, 0);
+    					graphics.setAlpha(player, 255);
 					}
 				});
-    			if (!currentPlayer.isAiPlayer()){
-    				isWaitingForUser = true;
-    				//初始化一开局的提示，避免玩家一开始就点提示导致崩溃
-    				currentTips = TipRobot.getTips(null, currentPlayer.getHandCards());
-					setActiveGiveCardButtons(currentType==null);
-    			}
     		}
     	}
     	
+    	@Override
+    	public void onGameOver(List<Player> winners) {
+    		performShowAiCards(winners.contains(playerHuman));
+    	}
+    	
+		private void performShowAiCards(final boolean humanWonGame) {
+			currentGame.status = Status.ShowingAICards;
+			// 播放结束音效
+			soundPool.playSound(humanWonGame ? assets.soundPlayWin
+					: assets.soundPlayLose);
+			//等待一段时间后进入GameOver状态
+			handler.postDelayed(new Runnable() {
+
+				@Override
+				public void run() {
+					// 重置各种变量
+					pickedTypeNotMatch = humanNoBiggerCards = false;
+					currentGame.status = Status.Gameover;
+					showGameOverDialog(humanWonGame);
+				}
+			}, SHOW_AICARDS_DURATION);
+		}
+    	
     	private void setActiveGiveCardButtons(final boolean isFirstOfCurrentRound){
     		if (btnGiveCards == null){
     			btnGiveCards = new ArrayList<>(4);
@@ -278,47 +256,30 @@ public class MainActivity extends Activity implements GameScreen{
 					@Override
 					public void onClicked(BitmapButton btn) {
 						//XXX whether should clear pick status?
-						currentPlayer.giveOutCards(null);
-						performGiveCard(null, false);
-						isWaitingForUser = false;
+						engine.submitPlay(null);
 					}
 				});
     			btnGiveCard.setOnClickListener(new onClickListener() {
 					
 					@Override
 					public void onClicked(BitmapButton btn) {
-						ArrayList<Card> pickedList = getPickedCards(currentPlayer);
+						ArrayList<Card> pickedList = getPickedCards(playerHuman);
 	    				if (pickedList.size()==0){
 	    					Log.d(LOG_TAG, "no card selected.");
-	    					graphics.setAlpha(currentPlayer, 255);
+	    					graphics.setAlpha(playerHuman, 255);
 	    					pickedTypeNotMatch = true;
 	    					return;
 	    				}
 	    				CardType tempCardType = CardType.createObjectFromCards(pickedList);
-	    				//既然是点击出牌，则不允许打不出合适的牌型
-	    				if (tempCardType==null){
-	    					graphics.setAlpha(currentPlayer, 255);
+	    				//既然是点击出牌，则不允许打不出合适的牌型，也不能比当前的牌小
+	    				if (tempCardType==null || !engine.submitPlay(tempCardType)){
+	    					Log.d(LOG_TAG, "cardtype not match the rule, currentType="+engine.getCurrentType());
+	    					graphics.setAlpha(playerHuman, 255);
 	    					pickedTypeNotMatch = true;
 	    				}
-	    				//也不能比当前的牌小
-	    				else if (!tempCardType.canAgainstType(currentType)) {
-	    					Log.d(LOG_TAG, "cardtype not match the rule, currentType="+currentType);
-	    					graphics.setAlpha(currentPlayer, 255);
-	    					pickedTypeNotMatch = true;
-	    					return ;
-	    				}
 	    				else{
-	    					currentPlayer.giveOutCards(tempCardType);
+	    					pickedCards = CardSet.EMPTY;
 	    					pickedTypeNotMatch = false;
-	    					//打出最后一手牌时无需播放卡牌音效
-	    					performGiveCard(tempCardType, currentType==null);
-	    					//用于消除玩家打出最后一手牌后按钮的残留。
-	    					if (currentPlayer.getHandCards().isEmpty()){
-	    						synchronized (activeButtons) {
-		    						activeButtons.removeAll(btnGiveCards);
-		    					}
-	    					}
-	    					isWaitingForUser = false;
 	    				}
 					}
 				});
@@ -326,11 +287,7 @@ public class MainActivity extends Activity implements GameScreen{
 					
 					@Override
 					public void onClicked(BitmapButton btn) {
-						synchronized (currentPlayer) {
-							for (Card card : currentPlayer.getHandCards()){
-								card.setPicked(false);
-							}
-						}
+						pickedCards = CardSet.EMPTY;
 					}
 				});
     			btnTips.setOnClickListener(tipBtnListener);
@@ -352,104 +309,7 @@ public class MainActivity extends Activity implements GameScreen{
     	
     	//获取玩家选中的手牌列表
     	private ArrayList<Card> getPickedCards(Player player){
-    		ArrayList<Card> pickedList = new ArrayList<>();
-    		for (Card card: player.getHandCards()){
-    			if (card.isPicked()){
-    				pickedList.add(card);
-    			}
-    		}
-    		return pickedList;
-    	}
-    	
-    	//检查手牌为0的玩家
-    	private Player getWinnerPlayer(){
-    		if (playerLeft.getHandCards().size()==0){
-    			return playerLeft;
-    		}
-    		else if (playerRight.getHandCards().size()==0){
-    			return playerRight;
-    		}
-    		else if (playerHuman.getHandCards().size()==0){
-    			return playerHuman;
-    		}
-    		return null;
-    	}
-    	
-    	//负责标记当前玩家的引用及切换之间的暂停。
-    	private final void switchToNextPlayer(){
-    		//如果接下来进行操作的是AI，则让AI等待一段时间再操作（主要是避免音效重叠）。
-			currentPlayer = currentPlayer.getNextPlayer();
-			if (currentPlayer.isAiPlayer()){
-				try {
-					Thread.sleep(1000);
-				} catch (InterruptedException e) {
-					e.printStackTrace();
-				}
-			}
-    	}
-    	
-		//模拟叫牌
-    	private void callLandlord(){
-			if (isWaitingForUser){	//如果已经在等候玩家操作，则不做处理
-//    			Log.v(LOG_TAG, "waiting for user...");
-   				return ;
-    		}
-    		if (startPlayer!=null){	//循环已经开始
-    			//只有AI才需要执行回合，非AI玩家的操作已经在UI线程执行。
-    			if (currentPlayer.isAiPlayer()){
-					currentPlayer.callLandlord(tempLandlord == null ? 0
-							: tempLandlord.getCalledScore());
-    			}
-    			//得到该玩家的叫牌分数
-    			int calledScore = currentPlayer.getCalledScore();
-				//记录叫牌分数最高者，作为暂时的地主，如果到最后仍无人叫，则将其设置为地主。
-    			if (calledScore> Game.BASIC_SCORE_NONE){
-    				if (tempLandlord==null || calledScore>tempLandlord.getCalledScore()){
-    					tempLandlord = currentPlayer;
-    				}
-    			}
-				performCallLandlord(currentPlayer, calledScore);
-				boolean isFinalCall = currentPlayer.getNextPlayer() == startPlayer;
-				if (isFinalCall && (tempLandlord==null) ){
-					//TODO alert it and decide what to do.
-//					currentGame.status = Status.Gameover;
-					return ;
-				}
-				//如果已经叫到三分或已经是最后一个，开始游戏
-				if (calledScore == Game.BASIC_SCORE_THREE || isFinalCall) {
-					tempLandlord.setLandlord(landlordCards);
-					currentGame.landlordPlayer = tempLandlord;
-					Log.d(LOG_TAG, "Landlord is "+ tempLandlord.getPlayerName());
-					Log.d(LOG_TAG, "Landlord:"+tempLandlord.getHandCards().toString());
-					currentGame.status = Status.Playing;
-					startPlayer = null;
-					currentPlayer = null;
-					return;
-				}
-				else{
-					//由下一个人叫地主
-					switchToNextPlayer();
-					if (!currentPlayer.isAiPlayer()){
-						isWaitingForUser = true;
-						setActiveCallButtons(tempLandlord == null ? Game.BASIC_SCORE_NONE
-								: tempLandlord.getCalledScore());
-					}
-				}
-				
-    		}
-    		else{	//循环尚未开始，做初始化工作。
-    			Log.d(LOG_TAG, "loopinit");
-    			Random random = new Random(System.currentTimeMillis());
-    			int x = random.nextInt(3);
-    			startPlayer = (x == 0) ? playerLeft
-    					: (x == 1 ? playerHuman : playerRight);
-    			Log.d(LOG_TAG, "startPlayer index = "+x);
-				currentPlayer = startPlayer;
-    			if (!currentPlayer.isAiPlayer()){
-    				isWaitingForUser = true;
-    				setActiveCallButtons(Game.BASIC_SCORE_NONE);
-    			}
-    		}
+    		return CardSet.toList(pickedCards, player.getHandCards());
     	}
     	
     	//init human action buttons
@@ -490,18 +350,14 @@ public class MainActivity extends Activity implements GameScreen{
     		
 			@Override
 			public void onClicked(BitmapButton btn) {
-				for (Card card: currentPlayer.getHandCards()){
-					card.setPicked(false);
-				}
+				pickedCards = CardSet.EMPTY;
 				synchronized(currentTips){
 					if (tipIndex >= currentTips.size()) {
 						Log.w(LOG_TAG, "amazing tipIndex:" + tipIndex
 								+ ", currentTips=" + currentTips);
 						return;
 					}
-					for (Card card: currentTips.get(tipIndex).getCardList()){
-						card.setPicked(true);
-					}
+					pickedCards = currentTips.get(tipIndex).getCardSet();
 					tipIndex++;
 //					tipIndex = (tipIndex+1)%currentTips.size();
 					if (tipIndex>=currentTips.size()){
@@ -525,14 +381,13 @@ public class MainActivity extends Activity implements GameScreen{
 			@Override
 			public void onClicked(BitmapButton btn) {
 				Log.d(LOG_TAG, "btn on click");
-				currentPlayer.setCalledScore(score);
-				isWaitingForUser = false;
-				Log.d(LOG_TAG, "human player operation completed.");
 				// 加锁避免并发修改（主要是主线程需要迭代该列表）
 				synchronized (activeButtons) {
 					activeButtons.removeAll(btnCallLandlords);
 					Log.d(LOG_TAG, "btns clear.");
 				}
+				engine.submitCall(score);
+				Log.d(LOG_TAG, "human player operation completed.");
 			}
 		}
         
@@ -553,9 +408,18 @@ public class MainActivity extends Activity implements GameScreen{
 		setVolumeControlStream(AudioManager.STREAM_MUSIC);
 		soundPool = GlobalSoundPool.getInstance(this);
 		assets = Assets.getInstance();
+		GameLog.setPrinter(new GameLog.Printer() {
+			
+			@Override
+			public void println(int priority, String tag, String msg) {
+				Log.println(priority, tag, msg);
+			}
+		});
 		currentGame = Game.newGame();
-		currentGame.status = Status.Preparing;
 		initPlayerSeats();
+		engine = new GameEngine(currentGame, playerLeft, playerHuman, playerRight,
+				System.currentTimeMillis());
+		engine.addListener(new GameEventListener());
 		logicThread = new GameLogicThread();
 		logicThread.start();
 	}
@@ -566,66 +430,31 @@ public class MainActivity extends Activity implements GameScreen{
 		if (logicThread!=null && logicThread.isAlive()){
 			logicThread.requestStopThread();
 		}
+		//取消AI正在进行的搜索，使逻辑线程能够尽快结束
+		if (playStrategy!=null){
+			playStrategy.cancel();
+		}
+		if (biddingEvaluator!=null){
+			biddingEvaluator.shutdown();
+		}
 	}
 	
 	//重置游戏结束后的各项属性。
 	private void resetGame() {
-		currentGame = Game.newGame();
+		engine.restart();
 	}
 	
-	//初始化玩家并分配座位
+	//初始化玩家，座位由 GameEngine 分配
 	private void initPlayerSeats(){
-		playerLeft = Player.newAiPlayer("aiLeft");
+		playStrategy = new PimcStrategy();
+		playerLeft = Player.newAiPlayer("aiLeft", playStrategy);
 		playerHuman= Player.newHumanPlayer("Human");
-		playerRight = Player.newAiPlayer("aiRight");
-		
-		playerLeft.setSeat(playerRight, playerHuman);
-		playerHuman.setSeat(playerLeft, playerRight);
-		playerRight.setSeat(playerHuman, playerLeft);
-	}
-	
-	//洗牌发牌
-	private void shuffleAndDealCards(){
-		if (cardPack==null){
-			cardPack = CardFactory.newCardPack();
-		}
-		for (Card card: cardPack){
-			card.setPicked(false);
-		}
-		//洗牌五次
-		for (int i=0; i<5; i++){
-			Collections.shuffle(cardPack);
-		}
-		//test code begin
-//		playerLeft.setHandCards(SpecifiedHandCardGen.createHandCards(
-//				Card.CARD_VALUE_3, Card.CARD_VALUE_3,
-//				Card.CARD_VALUE_3, Card.CARD_VALUE_4,
-//				Card.CARD_VALUE_4, Card.CARD_VALUE_5,
-//				Card.CARD_VALUE_5, Card.CARD_VALUE_6,
-//				
-//				Card.CARD_VALUE_6, Card.CARD_VALUE_Q,
-//				Card.CARD_VALUE_Q, Card.CARD_VALUE_Q,
-//				Card.CARD_VALUE_K, Card.CARD_VALUE_K,
-//				Card.CARD_VALUE_K, Card.CARD_VALUE_JOKER_S,
-//				Card.CARD_VALUE_JOKER_B
-//				));
-//		playerHuman.setHandCards(SpecifiedHandCardGen.createHandCards(
-//				Card.CARD_VALUE_3, Card.CARD_VALUE_3,
-//				Card.CARD_VALUE_3, Card.CARD_VALUE_3,
-//				Card.CARD_VALUE_4, Card.CARD_VALUE_4,
-//				Card.CARD_VALUE_4, Card.CARD_VALUE_5,
-//				Card.CARD_VALUE_5, Card.CARD_VALUE_5,
-//				Card.CARD_VALUE_J, Card.CARD_VALUE_J,
-//				Card.CARD_VALUE_Q, Card.CARD_VALUE_Q,
-//				Card.CARD_VALUE_K, Card.CARD_VALUE_K,
-//				Card.CARD_VALUE_JOKER_B
-//				));
-		//test code end
-		playerLeft.setHandCards(cardPack.subList(0, 17));
-		playerHuman.setHandCards(cardPack.subList(17, 34));
-		playerRight.setHandCards(cardPack.subList(34, 51));
-		//保护性复制，避免执行clear()操作后原始卡牌包丢失卡牌出现异常
-		landlordCards = new ArrayList<>(cardPack.subList(51, 54));
+		playerRight = Player.newAiPlayer("aiRight", playStrategy);
+		playerLeft.setDifficulty(DEFAULT_DIFFICULTY);
+		playerRight.setDifficulty(DEFAULT_DIFFICULTY);
+		biddingEvaluator = new BiddingEvaluator();
+		playerLeft.setBiddingEvaluator(biddingEvaluator);
+		playerRight.setBiddingEvaluator(biddingEvaluator);
 	}
 	
 	private Random randomSoundGenerator = new Random();
@@ -762,7 +591,7 @@ public class MainActivity extends Activity implements GameScreen{
 			offset = 30 + 3;
     		for (int i = 0; i < 3; i++)
     		{
-    			 Card card = landlordCards.get(i);
+    			 Card card = engine.getLandlordCards().get(i);
     			 g.drawBitmap(canvas, assets.getCorrespondSmallBitmap(card), 300 + i * offset, 5, 30, 40);
     		}
 			break;
@@ -792,7 +621,7 @@ public class MainActivity extends Activity implements GameScreen{
         for(int i = 0; i < len; i++) {
         	int drawY = offsetY;
         	Card card = list.get(i);
-        	if (card.isPicked())
+        	if (CardSet.contains(pickedCards, card))
         	{
         		drawY -= GameGraphics.Card_PICKED_OFFSET;
         	}
@@ -878,7 +707,7 @@ public class MainActivity extends Activity implements GameScreen{
 			graphics.drawTextUsingAlpha(canvas, playerHuman, "不出", offsetX, offsetY);
 		}
 		//等待玩家操作时无需绘制玩家的手牌，否则会叠在按钮下面很不好看
-		else if (!isWaitingForUser) {
+		else if (!engine.isWaitingForHuman()) {
 			ArrayList<Card> cards = playerHuman.getLastCards().getCardList();
 			int len = cards.size();
 			offsetX = (int) ((GameGraphics.BASE_SCREEN_WIDTH - len * 35) / 2);
@@ -1072,7 +901,7 @@ public class MainActivity extends Activity implements GameScreen{
 				int index = getCardsIndex(event.x);
 				if (index >=0){
 					Card handCard = playerHuman.getHandCards().get(index);
-					handCard.setPicked(!handCard.isPicked());
+					pickedCards ^= CardSet.of(handCard);
 				}
 			}
 		}
@@ -1095,7 +924,7 @@ public class MainActivity extends Activity implements GameScreen{
 		}
 		drawBottomCards(graphics, canvas);
 		//画手牌背面和数字
-		if (currentGame.status != Status.ShowingAICards){
+		if (currentGame.status != Status.ShowingAICards && currentGame.status != Status.Gameover){
 			drawBackLittleCards(graphics, canvas,
 					GameGraphics.SCREEN_PADDING_HORIZONTAL + 10, 130,
 					playerLeft.getHandCards().size());
@@ -0,0 +1,63 @@
+package com.mym.util;
+
+/**
+ * 与平台无关的日志入口，方法与 android.util.Log 对应。
+ * <p>
+ * 游戏逻辑和AI通过这个类输出日志，因此可以在普通的JVM上运行（例如服务器和批量模拟）。
+ * 实际的输出由 {@link Printer}完成：在Android上由界面设置为转发到 android.util.Log 的实现，
+ * 没有设置时丢弃所有日志。
+ * </p>
+ */
+public final class GameLog {
+
+	public static final int VERBOSE = 2;
+	public static final int DEBUG = 3;
+	public static final int INFO = 4;
+	public static final int WARN = 5;
+
+	/**
+	 * 日志的实际输出者，可以在任意线程调用。
+	 */
+	public interface Printer {
+		/**
+		 * 输出一条日志。
+		 * @param priority 优先级，取值与 android.util.Log 相同。
+		 */
+		void println(int priority, String tag, String msg);
+	}
+
+	private static volatile Printer printer;
+
+	private GameLog() {}
+
+	/**
+	 * 设置日志的输出者。
+	 * @param logPrinter 输出者，为null表示丢弃所有日志。
+	 */
+	public static void setPrinter(Printer logPrinter) {
+		printer = logPrinter;
+	}
+
+	public static void v(String tag, String msg) {
+		println(VERBOSE, tag, msg);
+	}
+
+	public static void d(String tag, String msg) {
+		println(DEBUG, tag, msg);
+	}
+
+	public static void i(String tag, String msg) {
+		println(INFO, tag, msg);
+	}
+
+	public static void w(String tag, String msg) {
+		println(WARN, tag, msg);
+	}
+
+	private static void println(int priority, String tag, String msg) {
+		Printer current = printer;
+		if (current != null) {
+			current.println(priority, tag, msg);
+		}
+	}
+}
@@ -0,0 +1,70 @@
+package com.mym.util;
+
+/**
+ * SplitMix64伪随机数生成器。
+ * <p>状态只有一个 long 值，生成速度快且不产生任何对象；同一种子总是生成相同的序列，便于重现。
+ * 通过 {@link #split()}可以派生出互相独立的生成器，供不同线程各自使用，避免共享同一个生成器带来的竞争。</p>
+ * 生成器不是线程安全的。
+ */
+public final class SplitMix64 {
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+	private long state;
+
+	/**
+	 * 使用指定的种子创建生成器。
+	 */
+	public SplitMix64(long seed) {
+		state = seed;
+	}
+
+	/**
+	 * 重新设置种子，之后的序列与用该种子新建的生成器相同。
+	 */
+	public void setSeed(long seed) {
+		state = seed;
+	}
+
+	/**
+	 * 生成下一个 long 值。
+	 */
+	public long nextLong() {
+		state += GOLDEN_GAMMA;
+		return mix(state);
+	}
+
+	/**
+	 * 生成 [0, bound) 之间均匀分布的整数。
+	 * @param bound 上限（不含），必须为正数。
+	 */
+	public int nextInt(int bound) {
+		if (bound <= 0) {
+			throw new IllegalArgumentException("invalid bound:" + bound);
+		}
+		//取高32位与bound相乘，偏差不超过 bound/2^32，对洗牌等用途可以忽略
+		return (int) (((nextLong() >>> 32) * bound) >>> 32);
+	}
+
+	/**
+	 * 生成 [0, 1) 之间均匀分布的 double 值。
+	 */
+	public double nextDouble() {
+		return (nextLong() >>> 11) * 0x1.0p-53;
+	}
+
+	/**
+	 * 派生一个新的生成器，其序列与本生成器之后的序列互相独立。
+	 */
+	public SplitMix64 split() {
+		return new SplitMix64(nextLong());
+	}
+
+	/**
+	 * SplitMix64的混合函数，也可以单独用于散列。
+	 */
+	public static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
@@ -0,0 +1,87 @@
+package com.mym.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 由固定数目的守护线程组成的线程池，用于把一组工作同时交给各个线程并等待全部完成。
+ * <p>
+ * 工作的结果由调用者直接从工作对象中读取，{@link #runAll(Callable[])}只负责提交和等待。
+ * 守护线程不会阻止进程退出，但线程池不再使用时仍应调用 {@link #shutdown()}。
+ * </p>
+ */
+public final class WorkerPool {
+
+	private final ExecutorService executor;
+
+	/**
+	 * 创建线程池。
+	 * @param name 线程名称的前缀，各线程依次命名为 name-0、name-1……
+	 * @param threads 线程数，必须为正数。
+	 */
+	public WorkerPool(final String name, int threads) {
+		if (threads <= 0) {
+			throw new IllegalArgumentException("invalid threads:" + threads);
+		}
+		executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+			private final AtomicInteger count = new AtomicInteger();
+
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, name + "-" + count.getAndIncrement());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+	}
+
+	/**
+	 * 同时执行所有工作，等待它们全部完成后返回。
+	 * @return 全部完成时返回true；线程池已经关闭，或者等待时调用者线程被中断（中断状态会被保留）时返回false，
+	 *         此时工作对象中的结果不完整。
+	 * @throws RuntimeException 某个工作抛出异常时，以该异常为原因抛出。
+	 */
+	public boolean runAll(Callable<?>[] works) {
+		List<Future<?>> futures = new ArrayList<>(works.length);
+		try {
+			for (Callable<?> work : works) {
+				futures.add(executor.submit(work));
+			}
+		} catch (RejectedExecutionException e) {
+			return false;
+		}
+		try {
+			for (Future<?> future : futures) {
+				future.get();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		} catch (ExecutionException e) {
+			throw new RuntimeException(e.getCause());
+		}
+		return true;
+	}
+
+	/**
+	 * 关闭线程池，已经提交的工作仍会执行完毕，之后的 {@link #runAll(Callable[])}返回false。可以在任意线程调用。
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * 关闭线程池并中断正在执行的工作。
+	 */
+	public void shutdownNow() {
+		executor.shutdownNow();
+	}
+}